@@ -0,0 +1,173 @@
+package org.gora.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.avro.util.Utf8;
+import org.gora.avro.store.AvroStore;
+import org.gora.avro.store.AvroStore.CodecType;
+import org.gora.avro.store.DataFileAvroStore;
+import org.gora.examples.generated.Employee;
+import org.gora.examples.generated.Metadata;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.memory.store.OffHeapMemStore;
+import org.gora.sql.store.SqlStore;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.FileBackedDataStoreBase;
+
+/**
+ * Creates the records and the data stores used by the benchmarks. The
+ * web pages are like the ones of {@link org.gora.examples.WebPageDataCreator},
+ * with configurable content sizes.
+ */
+public class BenchmarkData {
+
+  /** The DataStore classes, by the names used in the benchmark parameters */
+  @SuppressWarnings("rawtypes")
+  public static final Map<String, Class<? extends DataStore>> STORES =
+    new HashMap<String, Class<? extends DataStore>>();
+
+  static {
+    STORES.put("memory", MemStore.class);
+    STORES.put("offheap", OffHeapMemStore.class);
+    STORES.put("avro", AvroStore.class);
+    STORES.put("datafileavro", DataFileAvroStore.class);
+    STORES.put("sql", SqlStore.class);
+  }
+
+  /** The keys are padded, so that their order is the order of the ids */
+  private static final String KEY_FORMAT = "http://www.example.com/%010d.html";
+
+  private static final String[] WORDS = {
+    "foo", "bar", "baz", "gora", "avro", "hadoop", "hbase", "sql", "store", "query",
+  };
+
+  private static final int NUM_OUTLINKS = 8;
+
+  private BenchmarkData() { }
+
+  /**
+   * Returns the key of the i'th record
+   */
+  public static String getKey(int i) {
+    return String.format(KEY_FORMAT, i);
+  }
+
+  /**
+   * Creates the i'th web page, with contentSize random bytes of content.
+   */
+  public static WebPage createWebPage(int i, int contentSize, Random random) {
+    WebPage page = new WebPage();
+    page.setUrl(new Utf8(getKey(i)));
+
+    byte[] content = new byte[contentSize];
+    random.nextBytes(content);
+    page.setContent(ByteBuffer.wrap(content));
+
+    for(int j=0; j<WORDS.length; j++) {
+      page.addToParsedContent(new Utf8(WORDS[random.nextInt(WORDS.length)]));
+    }
+    for(int j=0; j<NUM_OUTLINKS; j++) {
+      page.putToOutlinks(new Utf8(getKey(random.nextInt(Integer.MAX_VALUE)))
+          , new Utf8(WORDS[j % WORDS.length]));
+    }
+
+    Metadata metadata = new Metadata();
+    metadata.setVersion(1);
+    metadata.putToData(new Utf8("metakey"), new Utf8("metavalue"));
+    page.setMetadata(metadata);
+    return page;
+  }
+
+  /**
+   * Creates the i'th employee
+   */
+  public static Employee createEmployee(int i) {
+    Employee employee = new Employee();
+    employee.setName(new Utf8("Employee " + i));
+    employee.setDateOfBirth(i * 86400000L);
+    employee.setSsn(new Utf8(String.format("%09d", i)));
+    employee.setSalary(10000 + i);
+    return employee;
+  }
+
+  /**
+   * Returns the directory the file backed stores write to
+   */
+  public static String getDataPath() {
+    return System.getProperty("test.build.data"
+        , System.getProperty("java.io.tmpdir")) + "/gora-benchmark";
+  }
+
+  /**
+   * Creates a data store of web pages, emptying the keyed stores.
+   * @param storeName one of the keys of {@link #STORES}
+   */
+  public static DataStore<String, WebPage> createWebPageStore(String storeName)
+  throws IOException {
+    return createWebPageStore(storeName, DataStoreFactory.properties);
+  }
+
+  /**
+   * Creates a data store of web pages, emptying the keyed stores.
+   * The file backed stores read and write the file named as the store,
+   * see {@link #setDataFile(DataStore, String)}.
+   * @param storeName one of the keys of {@link #STORES}
+   */
+  @SuppressWarnings("unchecked")
+  public static DataStore<String, WebPage> createWebPageStore(String storeName
+      , Properties properties) throws IOException {
+    Class<? extends DataStore<String, WebPage>> storeClass =
+      (Class<? extends DataStore<String, WebPage>>) STORES.get(storeName);
+    if(storeClass == null) {
+      throw new IllegalArgumentException("Unknown data store: " + storeName
+          + ", should be one of " + STORES.keySet());
+    }
+
+    DataStore<String, WebPage> store = DataStoreFactory.createDataStore(
+        storeClass, String.class, WebPage.class, properties);
+    if(store == null) {
+      throw new IOException("Cannot create the data store " + storeClass);
+    }
+
+    if(store instanceof FileBackedDataStoreBase) {
+      setDataFile(store, storeName);
+      if(store instanceof AvroStore) {
+        ((AvroStore<String, WebPage>)store).setCodecType(CodecType.BINARY);
+      }
+    } else {
+      store.deleteSchema();
+      store.createSchema();
+    }
+    return store;
+  }
+
+  /**
+   * Sets the input and output paths of the file backed store to the file
+   * of the given name in the {@link #getDataPath()} directory.
+   */
+  public static void setDataFile(DataStore<?, ?> store, String name) {
+    String path = getDataPath() + "/" + name + ".data";
+    new File(path).getParentFile().mkdirs();
+    ((FileBackedDataStoreBase<?, ?>)store).setInputPath(path);
+    ((FileBackedDataStoreBase<?, ?>)store).setOutputPath(path);
+  }
+
+  /**
+   * Puts the web pages with the ids in [0, numRecords) to the store.
+   */
+  public static void loadWebPages(DataStore<String, WebPage> store
+      , int numRecords, int contentSize, Random random) throws IOException {
+    for(int i=0; i<numRecords; i++) {
+      store.put(getKey(i), createWebPage(i, contentSize, random));
+    }
+    store.flush();
+  }
+}
@@ -0,0 +1,106 @@
+package org.gora.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.util.Utf8;
+import org.gora.avro.PersistentDatumReader;
+import org.gora.avro.PersistentDatumWriter;
+import org.gora.examples.generated.WebPage;
+import org.gora.hbase.util.HBaseByteInterface;
+import org.gora.persistency.Persistent;
+import org.gora.util.ByteUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversions of the field values to and from bytes, with
+ * {@link ByteUtils}, which the Cassandra store uses, and with
+ * {@link HBaseByteInterface}, which the HBase store uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ByteConversionBenchmark {
+
+  /** The type of the field, the records are the metadata of the web pages */
+  @Param({"string", "int", "long", "double", "record"})
+  public String type;
+
+  private Schema schema;
+
+  private Object value;
+
+  private byte[] bytes;
+
+  private byte[] hbaseBytes;
+
+  private PersistentDatumWriter<Persistent> datumWriter;
+
+  private PersistentDatumReader<Persistent> datumReader;
+
+  @Setup
+  public void setUp() throws IOException {
+    if(type.equals("string")) {
+      schema = Schema.create(Type.STRING);
+      value = new Utf8(BenchmarkData.getKey(42));
+    } else if(type.equals("int")) {
+      schema = Schema.create(Type.INT);
+      value = 123456789;
+    } else if(type.equals("long")) {
+      schema = Schema.create(Type.LONG);
+      value = 1234567890123L;
+    } else if(type.equals("double")) {
+      schema = Schema.create(Type.DOUBLE);
+      value = Math.PI;
+    } else if(type.equals("record")) {
+      WebPage page = BenchmarkData.createWebPage(0, 0, new Random(0));
+      schema = page.getMetadata().getSchema();
+      value = page.getMetadata();
+    } else {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+
+    //as created by DataStoreBase
+    Schema pageSchema = new WebPage().getSchema();
+    datumWriter = new PersistentDatumWriter<Persistent>(pageSchema, false);
+    datumReader = new PersistentDatumReader<Persistent>(pageSchema, false);
+    bytes = ByteUtils.toBytes(value, schema, datumWriter);
+    hbaseBytes = HBaseByteInterface.toBytes(value, schema);
+  }
+
+  @Benchmark
+  public byte[] byteUtilsToBytes() throws IOException {
+    return ByteUtils.toBytes(value, schema, datumWriter);
+  }
+
+  @Benchmark
+  public Object byteUtilsFromBytes() throws IOException {
+    return ByteUtils.fromBytes(bytes, schema, datumReader, null);
+  }
+
+  @Benchmark
+  public byte[] hbaseToBytes() throws IOException {
+    return HBaseByteInterface.toBytes(value, schema);
+  }
+
+  @Benchmark
+  public Object hbaseFromBytes() throws IOException {
+    return HBaseByteInterface.fromBytes(schema, hbaseBytes);
+  }
+}
@@ -0,0 +1,155 @@
+package org.gora.benchmark;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks a MemStore shared by several threads, either a plain MemStore
+ * whose operations are serialized by synchronizing on the store, or a
+ * MemStore in the concurrent mode. The number of threads is set by the
+ * -t option of JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class ConcurrentMemStoreBenchmark {
+
+  /** The number of records read by the scans */
+  public static final int SCAN_LENGTH = 100;
+
+  /** The number of distinct records put */
+  private static final int NUM_PAGES = 100;
+
+  /** "synchronized" for a synchronized MemStore, "concurrent" otherwise */
+  @Param({"synchronized", "concurrent"})
+  public String mode;
+
+  /** The number of records loaded before the benchmarks */
+  @Param({"10000"})
+  public int numRecords;
+
+  /** The size of the web page contents in bytes */
+  @Param({"1024"})
+  public int contentSize;
+
+  private DataStore<String, WebPage> dataStore;
+
+  private boolean synchronize;
+
+  private WebPage[] pages;
+
+  /** The random numbers of the benchmark threads */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private final Random random = new Random();
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    synchronize = "synchronized".equals(mode);
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.CONCURRENT_PROPERTY
+        , Boolean.toString(!synchronize));
+    dataStore = BenchmarkData.createWebPageStore("memory", properties);
+
+    Random random = new Random(0);
+    BenchmarkData.loadWebPages(dataStore, numRecords, contentSize, random);
+    pages = new WebPage[NUM_PAGES];
+    for(int i=0; i<pages.length; i++) {
+      pages[i] = BenchmarkData.createWebPage(i, contentSize, random);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    dataStore.deleteSchema();
+    dataStore.close();
+  }
+
+  private int nextIndex(ThreadState state, int length) {
+    return state.random.nextInt(numRecords - length + 1);
+  }
+
+  @Benchmark
+  public WebPage get(ThreadState state) throws IOException {
+    String key = BenchmarkData.getKey(nextIndex(state, 1));
+    if(synchronize) {
+      synchronized (dataStore) {
+        return dataStore.get(key);
+      }
+    }
+    return dataStore.get(key);
+  }
+
+  @Benchmark
+  public void put(ThreadState state) throws IOException {
+    int index = nextIndex(state, 1);
+    String key = BenchmarkData.getKey(index);
+    if(synchronize) {
+      synchronized (dataStore) {
+        dataStore.put(key, pages[index % pages.length]);
+      }
+    } else {
+      dataStore.put(key, pages[index % pages.length]);
+    }
+  }
+
+  /** Reads {@link #SCAN_LENGTH} consecutive records */
+  @Benchmark
+  @OperationsPerInvocation(SCAN_LENGTH)
+  public void scan(ThreadState state, Blackhole blackhole) throws IOException {
+    if(synchronize) {
+      //the results of a synchronized store are only valid under the lock
+      synchronized (dataStore) {
+        scanInner(state, blackhole);
+      }
+    } else {
+      scanInner(state, blackhole);
+    }
+  }
+
+  private void scanInner(ThreadState state, Blackhole blackhole)
+  throws IOException {
+    int start = nextIndex(state, SCAN_LENGTH);
+    Query<String, WebPage> query = dataStore.newQuery();
+    query.setStartKey(BenchmarkData.getKey(start));
+    query.setEndKey(BenchmarkData.getKey(start + SCAN_LENGTH - 1));
+    Result<String, WebPage> result = query.execute();
+    try {
+      while(result.next()) {
+        blackhole.consume(result.get());
+      }
+    } finally {
+      result.close();
+    }
+  }
+}
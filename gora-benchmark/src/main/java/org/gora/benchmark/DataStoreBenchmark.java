@@ -0,0 +1,151 @@
+package org.gora.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.examples.generated.WebPage;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the gets, the batched gets, the puts and the scans of the
+ * keyed data stores. The file backed stores, which do not support gets,
+ * are benchmarked by {@link FileStoreBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataStoreBenchmark {
+
+  /** The number of keys of the batched gets */
+  public static final int BATCH_SIZE = 100;
+
+  /** The number of records read by the scans */
+  public static final int SCAN_LENGTH = 100;
+
+  /** The puts are flushed every FLUSH_INTERVAL puts */
+  public static final int FLUSH_INTERVAL = 100;
+
+  /** The number of distinct records put */
+  private static final int NUM_PAGES = 100;
+
+  /** One of the keys of {@link BenchmarkData#STORES} */
+  @Param({"memory", "offheap", "sql"})
+  public String store;
+
+  /** The number of records loaded before the benchmarks */
+  @Param({"10000"})
+  public int numRecords;
+
+  /** The size of the web page contents in bytes */
+  @Param({"1024"})
+  public int contentSize;
+
+  private DataStore<String, WebPage> dataStore;
+
+  private List<String> keys;
+
+  private WebPage[] pages;
+
+  private Random random;
+
+  private int numPuts;
+
+  @Setup
+  public void setUp() throws IOException {
+    random = new Random(0);
+    dataStore = BenchmarkData.createWebPageStore(store);
+    BenchmarkData.loadWebPages(dataStore, numRecords, contentSize, random);
+
+    keys = new ArrayList<String>(numRecords);
+    for(int i=0; i<numRecords; i++) {
+      keys.add(BenchmarkData.getKey(i));
+    }
+    pages = new WebPage[NUM_PAGES];
+    for(int i=0; i<pages.length; i++) {
+      pages[i] = BenchmarkData.createWebPage(i, contentSize, random);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    dataStore.deleteSchema();
+    dataStore.close();
+  }
+
+  private int nextIndex(int length) {
+    return random.nextInt(numRecords - length + 1);
+  }
+
+  @Benchmark
+  public WebPage get() throws IOException {
+    return dataStore.get(keys.get(nextIndex(1)));
+  }
+
+  /** Gets {@link #BATCH_SIZE} keys one at a time */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void getPerKey(Blackhole blackhole) throws IOException {
+    int start = nextIndex(BATCH_SIZE);
+    for(int i=start; i<start + BATCH_SIZE; i++) {
+      blackhole.consume(dataStore.get(keys.get(i)));
+    }
+  }
+
+  /** Gets {@link #BATCH_SIZE} keys with one getAll() */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public Map<String, WebPage> getAll() throws IOException {
+    int start = nextIndex(BATCH_SIZE);
+    return dataStore.getAll(keys.subList(start, start + BATCH_SIZE), null);
+  }
+
+  @Benchmark
+  public void put() throws IOException {
+    int index = nextIndex(1);
+    dataStore.put(keys.get(index), pages[index % pages.length]);
+    if(++numPuts % FLUSH_INTERVAL == 0) {
+      dataStore.flush();
+    }
+  }
+
+  /** Reads {@link #SCAN_LENGTH} consecutive records */
+  @Benchmark
+  @OperationsPerInvocation(SCAN_LENGTH)
+  public void scan(Blackhole blackhole) throws IOException {
+    int start = nextIndex(SCAN_LENGTH);
+    Query<String, WebPage> query = dataStore.newQuery();
+    query.setStartKey(keys.get(start));
+    query.setEndKey(keys.get(start + SCAN_LENGTH - 1));
+    Result<String, WebPage> result = query.execute();
+    try {
+      while(result.next()) {
+        blackhole.consume(result.get());
+      }
+    } finally {
+      result.close();
+    }
+  }
+}
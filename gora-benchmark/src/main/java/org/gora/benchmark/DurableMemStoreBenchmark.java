@@ -0,0 +1,181 @@
+package org.gora.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the write throughput of a concurrent MemStore with the
+ * write ahead log synced by the different policies, and the time to
+ * recover a MemStore from its log or from its snapshot.
+ */
+@Fork(1)
+public class DurableMemStoreBenchmark {
+
+  /** The number of distinct records put */
+  private static final int NUM_PAGES = 100;
+
+  @SuppressWarnings("unchecked")
+  private static DataStore<String, WebPage> createStore(Properties properties)
+  throws IOException {
+    DataStore<String, WebPage> store = DataStoreFactory.createDataStore(
+        MemStore.class, String.class, WebPage.class, properties);
+    if(store == null) {
+      throw new IOException("Cannot create the data store");
+    }
+    return store;
+  }
+
+  private static Properties getProperties(File dir) {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.WAL_DIR_PROPERTY
+        , dir.getPath());
+    return properties;
+  }
+
+  /** A concurrent store written by the benchmark threads */
+  @State(Scope.Benchmark)
+  public static class WriteState {
+
+    /** "none" for no write ahead log, or the sync policy of the log */
+    @Param({"none", "flush", "interval", "always"})
+    public String sync;
+
+    /** The number of distinct keys put */
+    @Param({"10000"})
+    public int numKeys;
+
+    /** The size of the web page contents in bytes */
+    @Param({"1024"})
+    public int contentSize;
+
+    private final File dir = new File(BenchmarkData.getDataPath(), "wal-put");
+
+    private DataStore<String, WebPage> dataStore;
+
+    private WebPage[] pages;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+      FileUtil.fullyDelete(dir);
+      Properties properties = getProperties(dir);
+      if("none".equals(sync)) {
+        properties.remove("gora.memstore." + MemStore.WAL_DIR_PROPERTY);
+      } else {
+        properties.setProperty("gora.memstore." + MemStore.WAL_SYNC_PROPERTY, sync);
+      }
+      properties.setProperty("gora.memstore." + MemStore.CONCURRENT_PROPERTY, "true");
+      dataStore = createStore(properties);
+
+      Random random = new Random(0);
+      pages = new WebPage[NUM_PAGES];
+      for(int i=0; i<pages.length; i++) {
+        pages[i] = BenchmarkData.createWebPage(i, contentSize, random);
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+      dataStore.close();
+      FileUtil.fullyDelete(dir);
+    }
+  }
+
+  /** The random numbers of the benchmark threads */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private final Random random = new Random();
+  }
+
+  /** A log or a snapshot of web pages, recovered by the benchmark */
+  @State(Scope.Benchmark)
+  public static class RecoveryState {
+
+    /** "log" to replay the write ahead log, "snapshot" to load a snapshot */
+    @Param({"log", "snapshot"})
+    public String source;
+
+    /** The number of threads decoding the records */
+    @Param({"1", "4"})
+    public int recoveryThreads;
+
+    /** The number of records recovered */
+    @Param({"100000"})
+    public int numRecords;
+
+    /** The size of the web page contents in bytes */
+    @Param({"1024"})
+    public int contentSize;
+
+    private final File dir = new File(BenchmarkData.getDataPath(), "wal-recovery");
+
+    private Properties properties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      FileUtil.fullyDelete(dir);
+      properties = getProperties(dir);
+      properties.setProperty("gora.memstore." + MemStore.RECOVERY_THREADS_PROPERTY
+          , String.valueOf(recoveryThreads));
+      properties.setProperty("gora.memstore." + MemStore.SNAPSHOT_INTERVAL_PROPERTY
+          , "0");
+      MemStore<String, WebPage> store = (MemStore<String, WebPage>) createStore(properties);
+      BenchmarkData.loadWebPages(store, numRecords, contentSize, new Random(0));
+      if("snapshot".equals(source)) {
+        store.snapshot();
+      }
+      store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      FileUtil.fullyDelete(dir);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 5)
+  @Threads(4)
+  public void put(WriteState state, ThreadState threadState) throws IOException {
+    int index = threadState.random.nextInt(state.numKeys);
+    state.dataStore.put(BenchmarkData.getKey(index)
+        , state.pages[index % state.pages.length]);
+  }
+
+  /** Initializes a store, which recovers the web pages */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 10)
+  @Threads(1)
+  public void recover(RecoveryState state) throws IOException {
+    createStore(state.properties).close();
+  }
+}
@@ -0,0 +1,107 @@
+package org.gora.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.examples.generated.WebPage;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the appends and the full scans of the file backed
+ * {@link org.gora.avro.store.AvroStore} and
+ * {@link org.gora.avro.store.DataFileAvroStore}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileStoreBenchmark {
+
+  /** The number of distinct records put */
+  private static final int NUM_PAGES = 100;
+
+  /** One of the keys of {@link BenchmarkData#STORES} */
+  @Param({"avro", "datafileavro"})
+  public String store;
+
+  /** The number of records in the scanned files */
+  @Param({"10000"})
+  public int numRecords;
+
+  /** The size of the web page contents in bytes */
+  @Param({"1024"})
+  public int contentSize;
+
+  private WebPage[] pages;
+
+  private int numPuts;
+
+  /** The store appended to, recreated at every iteration */
+  private DataStore<String, WebPage> writeStore;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random random = new Random(0);
+    pages = new WebPage[NUM_PAGES];
+    for(int i=0; i<pages.length; i++) {
+      pages[i] = BenchmarkData.createWebPage(i, contentSize, random);
+    }
+
+    DataStore<String, WebPage> dataStore = BenchmarkData.createWebPageStore(store);
+    BenchmarkData.loadWebPages(dataStore, numRecords, contentSize, random);
+    dataStore.close();
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() throws IOException {
+    writeStore = BenchmarkData.createWebPageStore(store);
+    BenchmarkData.setDataFile(writeStore, store + "-put");
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDownIteration() throws IOException {
+    writeStore.close();
+  }
+
+  @Benchmark
+  public void put() throws IOException {
+    int index = numPuts++;
+    writeStore.put(BenchmarkData.getKey(index), pages[index % pages.length]);
+  }
+
+  /** Reads all the records of the file */
+  @Benchmark
+  public long scan(Blackhole blackhole) throws IOException {
+    DataStore<String, WebPage> dataStore = BenchmarkData.createWebPageStore(store);
+    try {
+      Result<String, WebPage> result = dataStore.newQuery().execute();
+      long count = 0;
+      while(result.next()) {
+        blackhole.consume(result.get());
+        count++;
+      }
+      result.close();
+      return count;
+    } finally {
+      dataStore.close();
+    }
+  }
+}
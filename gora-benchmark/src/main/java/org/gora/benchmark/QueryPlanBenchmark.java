@@ -0,0 +1,116 @@
+package org.gora.benchmark;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.examples.generated.WebPage;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.QueryPlanCache;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per execute overhead of the queries of the same shape,
+ * with and without the caching of the query plans, and of a compiled
+ * query executed repeatedly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryPlanBenchmark {
+
+  /** The number of records returned by the queries */
+  public static final int QUERY_LENGTH = 10;
+
+  private static final String[] FIELDS = {"url", "parsedContent"};
+
+  /** One of the keys of {@link BenchmarkData#STORES} */
+  @Param({"sql"})
+  public String store;
+
+  /** The number of cached plans, 0 disables the cache */
+  @Param({"0", "100"})
+  public int cacheSize;
+
+  @Param({"1000"})
+  public int numRecords;
+
+  private DataStore<String, WebPage> dataStore;
+
+  private Query<String, WebPage> compiledQuery;
+
+  private Random random;
+
+  @Setup
+  public void setUp() throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.datastore." + QueryPlanCache.CACHE_SIZE_PROPERTY
+        , String.valueOf(cacheSize));
+
+    random = new Random(0);
+    dataStore = BenchmarkData.createWebPageStore(store, properties);
+    BenchmarkData.loadWebPages(dataStore, numRecords, 128, random);
+
+    compiledQuery = newQuery();
+    compiledQuery.compile();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    dataStore.deleteSchema();
+    dataStore.close();
+  }
+
+  private Query<String, WebPage> newQuery() {
+    int start = random.nextInt(numRecords - QUERY_LENGTH + 1);
+    Query<String, WebPage> query = dataStore.newQuery();
+    query.setFields(FIELDS);
+    query.setStartKey(BenchmarkData.getKey(start));
+    query.setEndKey(BenchmarkData.getKey(start + QUERY_LENGTH - 1));
+    return query;
+  }
+
+  private static int readAll(Query<String, WebPage> query) throws IOException {
+    Result<String, WebPage> result = query.execute();
+    int count = 0;
+    try {
+      while(result.next()) {
+        count++;
+      }
+    } finally {
+      result.close();
+    }
+    return count;
+  }
+
+  /** Builds and executes a new query of the same shape every time */
+  @Benchmark
+  public int executeNewQuery() throws IOException {
+    return readAll(newQuery());
+  }
+
+  /** Executes the same compiled query every time */
+  @Benchmark
+  public int executeCompiledQuery() throws IOException {
+    return readAll(compiledQuery);
+  }
+}
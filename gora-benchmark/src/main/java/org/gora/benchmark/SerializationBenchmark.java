@@ -0,0 +1,115 @@
+package org.gora.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.gora.avro.PersistentDatumReader;
+import org.gora.avro.PersistentDatumWriter;
+import org.gora.mapreduce.PersistentDeserializer;
+import org.gora.mapreduce.PersistentSerializer;
+import org.gora.persistency.Persistent;
+import org.gora.util.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the serialization of the example persistent classes with
+ * {@link PersistentDatumWriter} and {@link PersistentDatumReader}, which
+ * the stores use, and with {@link PersistentSerializer} and
+ * {@link PersistentDeserializer}, which MapReduce uses between the map
+ * and reduce phases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+
+  /** The persistent class, "webpage" or "employee" */
+  @Param({"webpage", "employee"})
+  public String record;
+
+  /** The size of the web page contents in bytes */
+  @Param({"1024"})
+  public int contentSize;
+
+  private Persistent persistent;
+
+  private Schema schema;
+
+  private PersistentDatumWriter<Persistent> datumWriter;
+
+  private PersistentDatumReader<Persistent> datumReader;
+
+  private byte[] bytes;
+
+  private PersistentSerializer serializer;
+
+  private PersistentDeserializer deserializer;
+
+  private ByteArrayOutputStream buffer;
+
+  @Setup
+  public void setUp() throws IOException {
+    if(record.equals("webpage")) {
+      persistent = BenchmarkData.createWebPage(0, contentSize, new Random(0));
+    } else if(record.equals("employee")) {
+      persistent = BenchmarkData.createEmployee(0);
+    } else {
+      throw new IllegalArgumentException("Unknown record: " + record);
+    }
+    schema = persistent.getSchema();
+
+    datumWriter = new PersistentDatumWriter<Persistent>(schema, true);
+    datumReader = new PersistentDatumReader<Persistent>(schema, true);
+    bytes = IOUtils.serialize(datumWriter, schema, persistent);
+
+    serializer = new PersistentSerializer();
+    deserializer = new PersistentDeserializer(persistent.getClass(), false);
+    buffer = new ByteArrayOutputStream();
+  }
+
+  @Benchmark
+  public byte[] datumWrite() throws IOException {
+    return IOUtils.serialize(datumWriter, schema, persistent);
+  }
+
+  @Benchmark
+  public Persistent datumRead() throws IOException {
+    return IOUtils.deserialize(bytes, datumReader, schema, null);
+  }
+
+  @Benchmark
+  public Persistent datumRoundTrip() throws IOException {
+    byte[] serialized = IOUtils.serialize(datumWriter, schema, persistent);
+    return IOUtils.deserialize(serialized, datumReader, schema, null);
+  }
+
+  @Benchmark
+  public Persistent serializerRoundTrip() throws IOException {
+    buffer.reset();
+    serializer.open(buffer);
+    serializer.serialize(persistent);
+    serializer.close();
+
+    deserializer.open(new ByteArrayInputStream(buffer.toByteArray()));
+    Persistent read = deserializer.deserialize(null);
+    deserializer.close();
+    return read;
+  }
+}
@@ -0,0 +1,163 @@
+package org.gora.benchmark.workload;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the indexes of the records accessed by the operations of a
+ * workload, in [0, count) where count is the number of records inserted
+ * so far. The generators are thread safe, given a Random per thread.
+ */
+public abstract class KeyGenerator {
+
+  /** The zipfian constant of the skewed distributions */
+  public static final double ZIPFIAN_CONSTANT = 0.99;
+
+  /**
+   * Returns the index of the next record to access.
+   * @param count the number of records inserted so far
+   */
+  public abstract int nextIndex(Random random, int count);
+
+  /**
+   * Creates the generator with the given name.
+   * @param distribution one of "uniform", "zipfian", "latest" or "sequential"
+   * @param recordCount the number of records loaded before the workload
+   */
+  public static KeyGenerator create(String distribution, int recordCount) {
+    if(distribution.equals("uniform")) {
+      return new UniformKeyGenerator();
+    } else if(distribution.equals("zipfian")) {
+      return new ScrambledZipfianKeyGenerator(recordCount);
+    } else if(distribution.equals("latest")) {
+      return new LatestKeyGenerator(recordCount);
+    } else if(distribution.equals("sequential")) {
+      return new SequentialKeyGenerator();
+    }
+    throw new IllegalArgumentException("Unknown key distribution: " + distribution
+        + ", should be one of uniform, zipfian, latest or sequential");
+  }
+
+  /**
+   * Every record is equally likely.
+   */
+  public static class UniformKeyGenerator extends KeyGenerator {
+    @Override
+    public int nextIndex(Random random, int count) {
+      return random.nextInt(count);
+    }
+  }
+
+  /**
+   * The records are accessed in order, wrapping around at the end.
+   */
+  public static class SequentialKeyGenerator extends KeyGenerator {
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public int nextIndex(Random random, int count) {
+      return (next.getAndIncrement() & Integer.MAX_VALUE) % count;
+    }
+  }
+
+  /**
+   * Zipfian distributed ranks in [0, items), the rank 0 being the most
+   * popular, using the algorithm of Gray et al., "Quickly Generating
+   * Billion-Record Synthetic Databases", SIGMOD 1994.
+   */
+  public static class ZipfianKeyGenerator extends KeyGenerator {
+
+    private final int items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    public ZipfianKeyGenerator(int items) {
+      this(items, ZIPFIAN_CONSTANT);
+    }
+
+    public ZipfianKeyGenerator(int items, double theta) {
+      this.items = items;
+      this.theta = theta;
+      this.zetan = zeta(items, theta);
+      this.alpha = 1d / (1d - theta);
+      this.eta = (1d - Math.pow(2d / items, 1d - theta))
+        / (1d - zeta(2, theta) / zetan);
+    }
+
+    private static double zeta(int n, double theta) {
+      double sum = 0;
+      for(int i=1; i<=n; i++) {
+        sum += 1d / Math.pow(i, theta);
+      }
+      return sum;
+    }
+
+    /** Returns the next rank in [0, items) */
+    public int nextRank(Random random) {
+      double u = random.nextDouble();
+      double uz = u * zetan;
+      if(uz < 1d) {
+        return 0;
+      }
+      if(uz < 1d + Math.pow(0.5d, theta)) {
+        return 1;
+      }
+      int rank = (int) (items * Math.pow(eta * u - eta + 1d, alpha));
+      return Math.min(rank, items - 1);
+    }
+
+    /**
+     * Returns the rank as the index, so that the first records are the
+     * most popular ones.
+     */
+    @Override
+    public int nextIndex(Random random, int count) {
+      return nextRank(random) % count;
+    }
+  }
+
+  /**
+   * Zipfian popularity, with the popular records spread over the key
+   * space by hashing the ranks, as the hot items of the real workloads
+   * are rarely adjacent.
+   */
+  public static class ScrambledZipfianKeyGenerator extends ZipfianKeyGenerator {
+
+    public ScrambledZipfianKeyGenerator(int items) {
+      super(items);
+    }
+
+    @Override
+    public int nextIndex(Random random, int count) {
+      return (int) ((fnvHash(nextRank(random)) & Long.MAX_VALUE) % count);
+    }
+
+    /** 64 bit FNV-1a hash of the value */
+    private static long fnvHash(long value) {
+      long hash = 0xCBF29CE484222325L;
+      for(int i=0; i<8; i++) {
+        hash ^= value & 0xff;
+        hash *= 0x100000001B3L;
+        value >>>= 8;
+      }
+      return hash;
+    }
+  }
+
+  /**
+   * Zipfian popularity of the most recently inserted records.
+   */
+  public static class LatestKeyGenerator extends ZipfianKeyGenerator {
+
+    public LatestKeyGenerator(int items) {
+      super(items);
+    }
+
+    @Override
+    public int nextIndex(Random random, int count) {
+      return Math.max(0, count - 1 - nextRank(random));
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.gora.benchmark.workload;
+
+import java.util.Random;
+
+/**
+ * The mix of operations, and the shape of the records and the queries of
+ * a workload. The presets follow the core workloads of the Yahoo! Cloud
+ * Serving Benchmark.
+ */
+public class Workload {
+
+  /** The operations of the workloads */
+  public static enum Operation {
+    READ, UPDATE, INSERT, SCAN
+  }
+
+  private double readProportion = 0.95;
+  private double updateProportion = 0.05;
+  private double insertProportion = 0;
+  private double scanProportion = 0;
+
+  private String distribution = "zipfian";
+
+  private int recordCount = 10000;
+  private long operationCount = 100000;
+  private int recordSize = 1024;
+  private int scanLength = 100;
+  private String[] fields = null;
+
+  /**
+   * Sets the proportions, the distribution and the scan length of the preset.
+   * @param name one of
+   * <ul>
+   * <li>"a": 50/50 reads and updates, zipfian</li>
+   * <li>"b": 95/5 reads and updates, zipfian</li>
+   * <li>"c": reads only, zipfian</li>
+   * <li>"d": 95/5 reads and inserts, latest records</li>
+   * <li>"e": 95/5 scans and inserts, zipfian</li>
+   * </ul>
+   */
+  public void setPreset(String name) {
+    if(name.equalsIgnoreCase("a")) {
+      setProportions(0.5, 0.5, 0, 0);
+      distribution = "zipfian";
+    } else if(name.equalsIgnoreCase("b")) {
+      setProportions(0.95, 0.05, 0, 0);
+      distribution = "zipfian";
+    } else if(name.equalsIgnoreCase("c")) {
+      setProportions(1, 0, 0, 0);
+      distribution = "zipfian";
+    } else if(name.equalsIgnoreCase("d")) {
+      setProportions(0.95, 0, 0.05, 0);
+      distribution = "latest";
+    } else if(name.equalsIgnoreCase("e")) {
+      setProportions(0, 0, 0.05, 0.95);
+      distribution = "zipfian";
+    } else {
+      throw new IllegalArgumentException("Unknown workload: " + name
+          + ", should be one of a, b, c, d or e");
+    }
+  }
+
+  public void setProportions(double read, double update, double insert
+      , double scan) {
+    this.readProportion = read;
+    this.updateProportion = update;
+    this.insertProportion = insert;
+    this.scanProportion = scan;
+  }
+
+  /**
+   * Chooses the next operation according to the proportions.
+   */
+  public Operation nextOperation(Random random) {
+    double total = readProportion + updateProportion + insertProportion
+      + scanProportion;
+    double value = random.nextDouble() * total;
+    if((value -= readProportion) < 0) {
+      return Operation.READ;
+    }
+    if((value -= updateProportion) < 0) {
+      return Operation.UPDATE;
+    }
+    if((value -= insertProportion) < 0) {
+      return Operation.INSERT;
+    }
+    return Operation.SCAN;
+  }
+
+  public double getReadProportion() {
+    return readProportion;
+  }
+
+  public void setReadProportion(double readProportion) {
+    this.readProportion = readProportion;
+  }
+
+  public double getUpdateProportion() {
+    return updateProportion;
+  }
+
+  public void setUpdateProportion(double updateProportion) {
+    this.updateProportion = updateProportion;
+  }
+
+  public double getInsertProportion() {
+    return insertProportion;
+  }
+
+  public void setInsertProportion(double insertProportion) {
+    this.insertProportion = insertProportion;
+  }
+
+  public double getScanProportion() {
+    return scanProportion;
+  }
+
+  public void setScanProportion(double scanProportion) {
+    this.scanProportion = scanProportion;
+  }
+
+  /** Returns the key distribution, see {@link KeyGenerator#create(String, int)} */
+  public String getDistribution() {
+    return distribution;
+  }
+
+  public void setDistribution(String distribution) {
+    this.distribution = distribution;
+  }
+
+  /** Returns the number of records loaded before the operations */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  public void setRecordCount(int recordCount) {
+    this.recordCount = recordCount;
+  }
+
+  public long getOperationCount() {
+    return operationCount;
+  }
+
+  public void setOperationCount(long operationCount) {
+    this.operationCount = operationCount;
+  }
+
+  /** Returns the size of the contents of the web pages in bytes */
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  public void setRecordSize(int recordSize) {
+    this.recordSize = recordSize;
+  }
+
+  /** Returns the maximum number of records read by the scans */
+  public int getScanLength() {
+    return scanLength;
+  }
+
+  public void setScanLength(int scanLength) {
+    this.scanLength = scanLength;
+  }
+
+  /** Returns the fields read by the reads and the scans, null for all */
+  public String[] getFields() {
+    return fields;
+  }
+
+  public void setFields(String[] fields) {
+    this.fields = fields;
+  }
+
+  @Override
+  public String toString() {
+    return "read=" + readProportion + ", update=" + updateProportion
+      + ", insert=" + insertProportion + ", scan=" + scanProportion
+      + ", distribution=" + distribution + ", records=" + recordCount
+      + ", operations=" + operationCount + ", recordsize=" + recordSize
+      + ", scanlength=" + scanLength;
+  }
+}
@@ -0,0 +1,526 @@
+package org.gora.benchmark.workload;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.gora.benchmark.BenchmarkData;
+import org.gora.benchmark.workload.Workload.Operation;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.memory.store.OffHeapMemStore;
+import org.gora.metrics.LatencyHistogram;
+import org.gora.metrics.OperationMetrics;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.sql.store.SqlStore;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.DelegatingDataStore;
+import org.gora.store.impl.FileBackedDataStoreBase;
+
+/**
+ * Loads web pages into a DataStore, and drives a {@link Workload} of
+ * reads, updates, inserts and scans against it from several threads,
+ * reporting the throughput and the latency percentiles of the operations.
+ *
+ * <p> The stores are created by the {@link DataStoreFactory} as
+ * configured in gora.properties, and every thread uses its own store
+ * instance, except for the in-memory stores and the SqlStore, whose
+ * instances are shared. The shared stores are accessed by one thread at a
+ * time, unless they are thread safe, as the concurrent MemStores are. The
+ * file backed stores support only the load phase and the scans, which
+ * read from the beginning of the file.
+ *
+ * <p> The latencies of the throttled operations are measured from the
+ * times they are scheduled to start, so that the stalls of the store are
+ * not hidden by the delayed operations.
+ */
+public class WorkloadDriver extends Configured implements Tool {
+
+  private static final Log log = LogFactory.getLog(WorkloadDriver.class);
+
+  private final Workload workload = new Workload();
+
+  private String storeName;
+
+  private int threads = 1;
+
+  /** The target total operations per second, 0 for unlimited */
+  private double target = 0;
+
+  /** The writes are flushed every flushInterval writes of a thread */
+  private int flushInterval = 1;
+
+  private long seed = System.currentTimeMillis();
+
+  private boolean load = true;
+
+  private boolean run = true;
+
+  private DataStore<String, WebPage> sharedStore;
+
+  private boolean fileBacked;
+
+  private KeyGenerator keyGenerator;
+
+  /** The number of records inserted so far, the next insert index */
+  private AtomicInteger recordCount;
+
+  private final AtomicLong remaining = new AtomicLong();
+
+  private final OperationMetrics loadMetrics = new OperationMetrics();
+
+  private final Map<Operation, OperationMetrics> metrics =
+    new EnumMap<Operation, OperationMetrics>(Operation.class);
+
+  public WorkloadDriver() {
+    for(Operation operation : Operation.values()) {
+      metrics.put(operation, new OperationMetrics());
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: WorkloadDriver [-store <name|class>] [-workload <a|b|c|d|e>]");
+    System.err.println("  [-records <n>] [-operations <n>] [-threads <n>] [-target <ops/sec>]");
+    System.err.println("  [-read <p>] [-update <p>] [-insert <p>] [-scan <p>]");
+    System.err.println("  [-distribution <uniform|zipfian|latest|sequential>]");
+    System.err.println("  [-fields <field,...>] [-recordsize <bytes>] [-scanlength <n>]");
+    System.err.println("  [-flushinterval <n>] [-seed <n>] [-load | -run]");
+    System.err.println();
+    System.err.println("  -store     one of " + BenchmarkData.STORES.keySet()
+        + " or a DataStore class, default is gora.datastore.default");
+    System.err.println("  -workload  a: 50/50 read/update, b: 95/5 read/update, c: read only,");
+    System.err.println("             d: 95/5 read/insert of the latest, e: 95/5 scan/insert");
+    System.err.println("  -load      only load the records, -run only runs the operations");
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    try {
+      parseArgs(args);
+    } catch (IllegalArgumentException ex) {
+      System.err.println(ex.getMessage());
+      usage();
+      return 1;
+    }
+
+    sharedStore = createStore();
+    fileBacked = DelegatingDataStore.unwrap(sharedStore)
+      instanceof FileBackedDataStoreBase;
+    if(fileBacked && run && (workload.getReadProportion() > 0
+        || workload.getUpdateProportion() > 0
+        || workload.getInsertProportion() > 0)) {
+      System.err.println(sharedStore.getClass().getSimpleName()
+          + " only supports scans, use -workload e -insert 0");
+      sharedStore.close();
+      return 1;
+    }
+
+    System.out.println("Store: " + DelegatingDataStore.unwrap(sharedStore)
+        .getClass().getName() + ", threads=" + threads + ", target=" + target);
+    System.out.println("Workload: " + workload);
+
+    try {
+      if(load) {
+        long start = System.nanoTime();
+        load();
+        report(System.out, "LOAD", loadMetrics, System.nanoTime() - start);
+      }
+      if(run) {
+        if(fileBacked) {
+          //reopen for reading the loaded file
+          sharedStore.close();
+          sharedStore = createStore();
+        }
+        long start = System.nanoTime();
+        runWorkload();
+        long elapsed = System.nanoTime() - start;
+        long total = 0;
+        for(OperationMetrics operationMetrics : metrics.values()) {
+          total += operationMetrics.getCount();
+        }
+        System.out.println("[OVERALL] RunTime(ms), " + elapsed / 1000000);
+        System.out.println("[OVERALL] Throughput(ops/sec), "
+            + String.format("%.1f", total * 1e9 / elapsed));
+        for(Operation operation : Operation.values()) {
+          if(metrics.get(operation).getCount() > 0) {
+            report(System.out, operation.name(), metrics.get(operation), -1);
+          }
+        }
+      }
+    } finally {
+      sharedStore.close();
+    }
+    return 0;
+  }
+
+  /** Returns the workload configured by the arguments */
+  Workload getWorkload() {
+    return workload;
+  }
+
+  void parseArgs(String[] args) {
+    for(int i=0; i<args.length; i++) {
+      String arg = args[i];
+      if(arg.equals("-load")) {
+        run = false;
+        continue;
+      } else if(arg.equals("-run")) {
+        load = false;
+        continue;
+      }
+      if(i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing the value of " + arg);
+      }
+      String value = args[++i];
+      try {
+        if(arg.equals("-store")) {
+          storeName = value;
+        } else if(arg.equals("-workload")) {
+          workload.setPreset(value);
+        } else if(arg.equals("-records")) {
+          workload.setRecordCount(Integer.parseInt(value));
+        } else if(arg.equals("-operations")) {
+          workload.setOperationCount(Long.parseLong(value));
+        } else if(arg.equals("-threads")) {
+          threads = Integer.parseInt(value);
+        } else if(arg.equals("-target")) {
+          target = Double.parseDouble(value);
+        } else if(arg.equals("-read")) {
+          workload.setReadProportion(Double.parseDouble(value));
+        } else if(arg.equals("-update")) {
+          workload.setUpdateProportion(Double.parseDouble(value));
+        } else if(arg.equals("-insert")) {
+          workload.setInsertProportion(Double.parseDouble(value));
+        } else if(arg.equals("-scan")) {
+          workload.setScanProportion(Double.parseDouble(value));
+        } else if(arg.equals("-distribution")) {
+          workload.setDistribution(value);
+        } else if(arg.equals("-fields")) {
+          workload.setFields(value.split(","));
+        } else if(arg.equals("-recordsize")) {
+          workload.setRecordSize(Integer.parseInt(value));
+        } else if(arg.equals("-scanlength")) {
+          workload.setScanLength(Integer.parseInt(value));
+        } else if(arg.equals("-flushinterval")) {
+          flushInterval = Integer.parseInt(value);
+        } else if(arg.equals("-seed")) {
+          seed = Long.parseLong(value);
+        } else {
+          throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+      } catch (NumberFormatException ex) {
+        throw new IllegalArgumentException("Illegal value of " + arg + ": " + value);
+      }
+    }
+    if(threads < 1 || workload.getRecordCount() < 1 || flushInterval < 1) {
+      throw new IllegalArgumentException(
+          "The threads, the records and the flush interval should be positive");
+    }
+    //validates the distribution
+    KeyGenerator.create(workload.getDistribution(), 1);
+    if(storeName == null) {
+      storeName = DataStoreFactory.properties.getProperty(
+          DataStoreFactory.GORA_DEFAULT_DATASTORE_KEY);
+      if(storeName == null) {
+        throw new IllegalArgumentException("No store is given, and "
+            + DataStoreFactory.GORA_DEFAULT_DATASTORE_KEY + " is not set");
+      }
+    }
+  }
+
+  /**
+   * Creates a store of web pages, decorated as configured. The file
+   * backed stores use the file named after the store, if their paths are
+   * not configured.
+   */
+  @SuppressWarnings("unchecked")
+  private DataStore<String, WebPage> createStore() throws IOException {
+    DataStore<String, WebPage> store;
+    try {
+      if(BenchmarkData.STORES.containsKey(storeName)) {
+        store = DataStoreFactory.createDataStore(BenchmarkData.STORES.get(storeName)
+            , String.class, WebPage.class);
+      } else {
+        store = DataStoreFactory.createDataStore(
+            (Class<? extends DataStore<String, WebPage>>) Class.forName(storeName)
+            , String.class, WebPage.class);
+      }
+    } catch (ClassNotFoundException ex) {
+      throw new IllegalArgumentException("Unknown data store: " + storeName);
+    }
+    if(store == null) {
+      throw new IOException("Cannot create the data store " + storeName);
+    }
+
+    if(store instanceof FileBackedDataStoreBase) {
+      FileBackedDataStoreBase<String, WebPage> fileStore =
+        (FileBackedDataStoreBase<String, WebPage>) store;
+      if(fileStore.getInputPath() == null && fileStore.getOutputPath() == null) {
+        BenchmarkData.setDataFile(store, store.getClass().getSimpleName());
+      }
+    }
+    return DataStoreFactory.decorate(store, DataStoreFactory.properties);
+  }
+
+  /**
+   * Returns whether the store can be used by the threads at the same
+   * time. The decorators guard their own state.
+   */
+  private boolean isThreadSafe() {
+    DataStore<String, WebPage> store = DelegatingDataStore.unwrap(sharedStore);
+    return store instanceof MemStore && ((MemStore<?, ?>) store).isConcurrent();
+  }
+
+  private boolean isShared() {
+    DataStore<String, WebPage> store = DelegatingDataStore.unwrap(sharedStore);
+    //the reads of SqlStore are not committed, so the locks they take in
+    //the database would block the writes of the other connections
+    return threads == 1 || fileBacked || store instanceof MemStore
+      || store instanceof OffHeapMemStore || store instanceof SqlStore;
+  }
+
+  private void load() throws Exception {
+    recordCount = new AtomicInteger();
+    final int count = workload.getRecordCount();
+    //the file backed stores have a single writer
+    int loaders = fileBacked ? 1 : threads;
+    List<Worker> workers = new ArrayList<Worker>();
+    for(int i=0; i<loaders; i++) {
+      workers.add(new Worker(i) {
+        @Override
+        protected void work() throws IOException {
+          int index;
+          int writes = 0;
+          while((index = recordCount.getAndIncrement()) < count) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+              put(index);
+              if(++writes % flushInterval == 0) {
+                flush();
+              }
+              success = true;
+            } catch (Exception ex) {
+              error(ex);
+            } finally {
+              loadMetrics.record(start, 0, success);
+            }
+          }
+          flush();
+        }
+      });
+    }
+    runWorkers(workers);
+    recordCount.set(count);
+  }
+
+  private void runWorkload() throws Exception {
+    if(recordCount == null) {
+      recordCount = new AtomicInteger(workload.getRecordCount());
+    }
+    keyGenerator = KeyGenerator.create(workload.getDistribution()
+        , workload.getRecordCount());
+    remaining.set(workload.getOperationCount());
+
+    final long intervalNanos = target > 0 ? (long) (1e9 * threads / target) : 0;
+    List<Worker> workers = new ArrayList<Worker>();
+    for(int i=0; i<threads; i++) {
+      workers.add(new Worker(i) {
+        @Override
+        protected void work() throws IOException {
+          long writes = 0;
+          long scheduled = System.nanoTime();
+          while(remaining.getAndDecrement() > 0) {
+            long start = System.nanoTime();
+            if(intervalNanos > 0) {
+              scheduled += intervalNanos;
+              if(scheduled > start) {
+                LockSupport.parkNanos(scheduled - start);
+              }
+              start = Math.min(start, scheduled);
+            }
+            Operation operation = workload.nextOperation(random);
+            boolean success = false;
+            try {
+              switch(operation) {
+              case READ: read(); break;
+              case UPDATE: put(nextIndex()); writes++; break;
+              case INSERT: put(recordCount.getAndIncrement()); writes++; break;
+              case SCAN: scan(); break;
+              }
+              if(writes >= flushInterval) {
+                flush();
+                writes = 0;
+              }
+              success = true;
+            } catch (Exception ex) {
+              error(ex);
+            } finally {
+              metrics.get(operation).record(start, 0, success);
+            }
+          }
+          flush();
+        }
+      });
+    }
+    runWorkers(workers);
+  }
+
+  private void runWorkers(List<Worker> workers) throws Exception {
+    List<Thread> workerThreads = new ArrayList<Thread>();
+    for(Worker worker : workers) {
+      Thread thread = new Thread(worker, "gora-workload-" + worker.id);
+      workerThreads.add(thread);
+      thread.start();
+    }
+    for(Thread thread : workerThreads) {
+      thread.join();
+    }
+    for(Worker worker : workers) {
+      if(worker.failure != null) {
+        throw worker.failure;
+      }
+    }
+  }
+
+  private static void report(PrintStream out, String name
+      , OperationMetrics operationMetrics, long elapsedNanos) {
+    LatencyHistogram latencies = operationMetrics.getLatencies();
+    out.println("[" + name + "] Operations, " + operationMetrics.getCount());
+    if(elapsedNanos > 0) {
+      out.println("[" + name + "] Throughput(ops/sec), " + String.format("%.1f"
+          , operationMetrics.getCount() * 1e9 / elapsedNanos));
+    }
+    out.println("[" + name + "] Errors, " + operationMetrics.getErrorCount());
+    out.println("[" + name + "] AverageLatency(us), "
+        + String.format("%.1f", latencies.getMean()));
+    out.println("[" + name + "] 50thPercentileLatency(us), " + latencies.getPercentile(50));
+    out.println("[" + name + "] 95thPercentileLatency(us), " + latencies.getPercentile(95));
+    out.println("[" + name + "] 99thPercentileLatency(us), " + latencies.getPercentile(99));
+    out.println("[" + name + "] MaxLatency(us), " + latencies.getMax());
+  }
+
+  /**
+   * A thread of the workload, with its own store and random generator.
+   */
+  private abstract class Worker implements Runnable {
+    final int id;
+    final Random random;
+    DataStore<String, WebPage> store;
+    /** The shared store if it is not thread safe, or an uncontended lock */
+    Object lock;
+    volatile Exception failure;
+    private boolean loggedError = false;
+
+    Worker(int id) {
+      this.id = id;
+      this.random = new Random(seed + id);
+    }
+
+    @Override
+    public void run() {
+      try {
+        store = isShared() ? sharedStore : createStore();
+        lock = store == sharedStore && !isThreadSafe() ? store : new Object();
+        try {
+          work();
+        } finally {
+          if(store != sharedStore) {
+            store.close();
+          }
+        }
+      } catch (Exception ex) {
+        failure = ex;
+      }
+    }
+
+    protected abstract void work() throws IOException;
+
+    int nextIndex() {
+      return keyGenerator.nextIndex(random, recordCount.get());
+    }
+
+    void error(Exception ex) {
+      if(!loggedError) {
+        log.warn("Operation failed in thread " + id + ": "
+            + StringUtils.stringifyException(ex));
+        loggedError = true;
+      }
+    }
+
+    //only the shared stores which are not thread safe are locked
+    void put(int index) throws IOException {
+      WebPage page = BenchmarkData.createWebPage(index, workload.getRecordSize()
+          , random);
+      synchronized (lock) {
+        store.put(BenchmarkData.getKey(index), page);
+      }
+    }
+
+    void flush() throws IOException {
+      synchronized (lock) {
+        store.flush();
+      }
+    }
+
+    void read() throws IOException {
+      String key = BenchmarkData.getKey(nextIndex());
+      synchronized (lock) {
+        store.get(key, workload.getFields());
+      }
+    }
+
+    void scan() throws IOException {
+      String startKey = BenchmarkData.getKey(nextIndex());
+      if(fileBacked) {
+        //every scan reads the file from the beginning
+        DataStore<String, WebPage> fileStore = createStore();
+        try {
+          scan(fileStore, null);
+        } finally {
+          fileStore.close();
+        }
+      } else {
+        synchronized (lock) {
+          scan(store, startKey);
+        }
+      }
+    }
+
+    private void scan(DataStore<String, WebPage> dataStore, String startKey)
+    throws IOException {
+      Query<String, WebPage> query = dataStore.newQuery();
+      query.setStartKey(startKey);
+      query.setFields(workload.getFields());
+      query.setLimit(workload.getScanLength());
+      Result<String, WebPage> result = query.execute();
+      try {
+        while(result.next()) {
+          result.get();
+        }
+      } finally {
+        result.close();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int ret = ToolRunner.run(new WorkloadDriver(), args);
+    System.exit(ret);
+  }
+}
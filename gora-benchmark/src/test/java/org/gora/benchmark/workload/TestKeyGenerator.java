@@ -0,0 +1,126 @@
+package org.gora.benchmark.workload;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.gora.benchmark.workload.KeyGenerator.LatestKeyGenerator;
+import org.gora.benchmark.workload.KeyGenerator.ScrambledZipfianKeyGenerator;
+import org.gora.benchmark.workload.KeyGenerator.SequentialKeyGenerator;
+import org.gora.benchmark.workload.KeyGenerator.ZipfianKeyGenerator;
+import org.junit.Test;
+
+/**
+ * Test case for {@link KeyGenerator}.
+ */
+public class TestKeyGenerator {
+
+  private static final int ITEMS = 1000;
+
+  private static final int SAMPLES = 100000;
+
+  /** Returns the number of times every index is chosen */
+  private static int[] sample(KeyGenerator generator, int count) {
+    Random random = new Random(0);
+    int[] counts = new int[count];
+    for(int i=0; i<SAMPLES; i++) {
+      int index = generator.nextIndex(random, count);
+      Assert.assertTrue("index out of range: " + index
+          , index >= 0 && index < count);
+      counts[index]++;
+    }
+    return counts;
+  }
+
+  /** Returns the index chosen the most */
+  private static int getHottest(int[] counts) {
+    int hottest = 0;
+    for(int i=1; i<counts.length; i++) {
+      if(counts[i] > counts[hottest]) {
+        hottest = i;
+      }
+    }
+    return hottest;
+  }
+
+  @Test
+  public void testCreate() throws Exception {
+    Assert.assertTrue(KeyGenerator.create("zipfian", ITEMS)
+        instanceof ScrambledZipfianKeyGenerator);
+    Assert.assertTrue(KeyGenerator.create("latest", ITEMS)
+        instanceof LatestKeyGenerator);
+    try {
+      KeyGenerator.create("normal", ITEMS);
+      Assert.fail("the distribution is unknown");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testUniform() throws Exception {
+    int[] counts = sample(KeyGenerator.create("uniform", ITEMS), ITEMS);
+    for(int count : counts) {
+      Assert.assertTrue(count > 0 && count < 3 * SAMPLES / ITEMS);
+    }
+  }
+
+  @Test
+  public void testSequential() throws Exception {
+    KeyGenerator generator = new SequentialKeyGenerator();
+    Random random = new Random(0);
+    for(int i=0; i<10; i++) {
+      Assert.assertEquals(i % 4, generator.nextIndex(random, 4));
+    }
+  }
+
+  @Test
+  public void testZipfian() throws Exception {
+    int[] counts = sample(new ZipfianKeyGenerator(ITEMS), ITEMS);
+    //the first ranks are the most popular
+    Assert.assertEquals(0, getHottest(counts));
+    Assert.assertTrue(counts[0] > counts[1]);
+    Assert.assertTrue(counts[1] > counts[10]);
+    Assert.assertTrue(counts[10] > counts[ITEMS - 1]);
+    int top = 0;
+    for(int i=0; i<ITEMS / 100; i++) {
+      top += counts[i];
+    }
+    //1% of the records take about a third of the accesses
+    Assert.assertTrue(top > SAMPLES / 4);
+
+    //the ranks wrap around when fewer records are inserted
+    sample(new ZipfianKeyGenerator(ITEMS), ITEMS / 10);
+  }
+
+  @Test
+  public void testScrambledZipfian() throws Exception {
+    int[] counts = sample(new ScrambledZipfianKeyGenerator(ITEMS), ITEMS);
+    //as skewed as the zipfian ranks
+    int[] ranks = sample(new ZipfianKeyGenerator(ITEMS), ITEMS);
+    Assert.assertTrue(counts[getHottest(counts)] >= ranks[0]);
+
+    //but the popular records are spread over the key space
+    int first = 0;
+    for(int i=0; i<ITEMS / 100; i++) {
+      first += counts[i];
+    }
+    Assert.assertTrue(first < SAMPLES / 10);
+  }
+
+  @Test
+  public void testLatest() throws Exception {
+    KeyGenerator generator = new LatestKeyGenerator(ITEMS);
+    //the latest inserted records are the most popular
+    int[] counts = sample(generator, ITEMS);
+    Assert.assertEquals(ITEMS - 1, getHottest(counts));
+    Assert.assertTrue(counts[ITEMS - 1] > counts[ITEMS - 10]);
+    Assert.assertTrue(counts[ITEMS - 10] > counts[0]);
+
+    //and follow the inserts
+    counts = sample(generator, ITEMS * 2);
+    Assert.assertEquals(ITEMS * 2 - 1, getHottest(counts));
+
+    //the first record is read before the others are inserted
+    Assert.assertEquals(0, generator.nextIndex(new Random(0), 1));
+  }
+}
@@ -0,0 +1,104 @@
+package org.gora.benchmark.workload;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.gora.benchmark.workload.Workload.Operation;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Workload}, and the parsing of the workloads by
+ * {@link WorkloadDriver}.
+ */
+public class TestWorkload {
+
+  private static final int SAMPLES = 100000;
+
+  /** Returns the ratio of every operation chosen by the workload */
+  private static Map<Operation, Double> sample(Workload workload) {
+    Random random = new Random(0);
+    Map<Operation, Double> ratios = new EnumMap<Operation, Double>(Operation.class);
+    for(Operation operation : Operation.values()) {
+      ratios.put(operation, 0d);
+    }
+    for(int i=0; i<SAMPLES; i++) {
+      Operation operation = workload.nextOperation(random);
+      ratios.put(operation, ratios.get(operation) + 1d / SAMPLES);
+    }
+    return ratios;
+  }
+
+  private static void assertRatios(Map<Operation, Double> ratios, double read
+      , double update, double insert, double scan) {
+    Assert.assertEquals(read, ratios.get(Operation.READ), 0.01);
+    Assert.assertEquals(update, ratios.get(Operation.UPDATE), 0.01);
+    Assert.assertEquals(insert, ratios.get(Operation.INSERT), 0.01);
+    Assert.assertEquals(scan, ratios.get(Operation.SCAN), 0.01);
+  }
+
+  @Test
+  public void testProportions() throws Exception {
+    Workload workload = new Workload();
+    workload.setProportions(0.5, 0.3, 0.2, 0);
+    Map<Operation, Double> ratios = sample(workload);
+    assertRatios(ratios, 0.5, 0.3, 0.2, 0);
+    Assert.assertEquals(0d, ratios.get(Operation.SCAN));
+
+    //the proportions need not add up to 1
+    workload.setProportions(1, 0, 0, 3);
+    assertRatios(sample(workload), 0.25, 0, 0, 0.75);
+  }
+
+  @Test
+  public void testPresets() throws Exception {
+    Workload workload = new Workload();
+    workload.setPreset("a");
+    assertRatios(sample(workload), 0.5, 0.5, 0, 0);
+    Assert.assertEquals("zipfian", workload.getDistribution());
+
+    workload.setPreset("D");
+    assertRatios(sample(workload), 0.95, 0, 0.05, 0);
+    Assert.assertEquals("latest", workload.getDistribution());
+
+    workload.setPreset("e");
+    assertRatios(sample(workload), 0, 0, 0.05, 0.95);
+
+    try {
+      workload.setPreset("f");
+      Assert.fail("the workload is unknown");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testParseArgs() throws Exception {
+    WorkloadDriver driver = new WorkloadDriver();
+    //the options override the preset
+    driver.parseArgs(new String[] {"-store", "mem", "-workload", "b"
+        , "-read", "0.8", "-update", "0.2", "-distribution", "uniform"
+        , "-records", "100"});
+    Workload workload = driver.getWorkload();
+    assertRatios(sample(workload), 0.8, 0.2, 0, 0);
+    Assert.assertEquals("uniform", workload.getDistribution());
+    Assert.assertEquals(100, workload.getRecordCount());
+
+    String[][] illegal = {
+        {"-store", "mem", "-threads", "0"},
+        {"-store", "mem", "-records", "many"},
+        {"-store", "mem", "-distribution", "normal"},
+        {"-store", "mem", "-records"},
+        {"-store", "mem", "-unknown", "1"},
+    };
+    for(String[] args : illegal) {
+      try {
+        new WorkloadDriver().parseArgs(args);
+        Assert.fail("the arguments are illegal: " + Arrays.toString(args));
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
@@ -15,6 +15,14 @@ public interface CassandraClient {
 
   public Row get(String key, Select select) throws IOException;
 
+  /**
+   * Fetches the given rows in a single multiget_slice round trip per
+   * column family. Rows without any columns are not included in the
+   * returned map.
+   */
+  public Map<String, Row> multiget(List<String> keys, Select select)
+  throws IOException;
+
   public RowIterable getRange(String startKey, String endKey, int rowCount,
       Select select)
   throws IOException;
@@ -25,6 +33,12 @@ public interface CassandraClient {
 
   public void mutate(String key, Mutate mutation) throws IOException;
 
+  /**
+   * Applies the mutations of all the rows in a single batch_mutate.
+   * @param rowMutations a map from row keys to mutations
+   */
+  public void mutate(Map<String, Mutate> rowMutations) throws IOException;
+
   public Map<String, Map<String, String>> describeKeySpace()
   throws IOException;
 
@@ -33,5 +47,8 @@ public interface CassandraClient {
   public List<String> describeSplits(String startToken, String endToken, int size)
   throws IOException;
 
+  /** Returns the class name of the partitioner of the cluster */
+  public String describePartitioner() throws IOException;
+
   public void close();
 }
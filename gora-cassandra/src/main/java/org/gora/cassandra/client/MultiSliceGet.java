@@ -0,0 +1,41 @@
+package org.gora.cassandra.client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.SlicePredicate;
+
+public class MultiSliceGet
+implements Callable<Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>>> {
+
+  private Cassandra.Client client;
+  private String keySpace;
+  private List<String> keys;
+  private ColumnParent parent;
+  private SlicePredicate predicate;
+  private ConsistencyLevel consistencyLevel;
+
+  public MultiSliceGet(Cassandra.Client client, String keySpace, List<String> keys,
+      ColumnParent parent, SlicePredicate predicate,
+      ConsistencyLevel consistencyLevel) {
+    this.client = client;
+    this.keySpace = keySpace;
+    this.keys = keys;
+    this.parent = parent;
+    this.predicate = predicate;
+    this.consistencyLevel = consistencyLevel;
+  }
+
+  @Override
+  public Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>> call()
+  throws Exception {
+    return new Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>>(parent,
+        client.multiget_slice(keySpace, keys, parent, predicate, consistencyLevel));
+  }
+
+}
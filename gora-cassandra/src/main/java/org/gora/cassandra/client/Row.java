@@ -12,6 +12,9 @@ public class Row {
 
   private Map<String, Map<String, Map<String, byte[]>>> data;
 
+  /** The latest timestamp of the columns */
+  private long timestamp = -1;
+
   /** this is a placeholder as a "supercolumn" for all normal columns */
   private static final String EMPTY_COLUMN = "";
 
@@ -36,6 +39,7 @@ public class Row {
 
   /*package*/ void addColumnOrSuperColumn(String columnFamily
       , byte[] superColumn, ColumnOrSuperColumn csc) {
+    timestamp = Math.max(timestamp, csc.column.timestamp);
     if (superColumn == null) {
       Map<String, byte[]> map = getOrCreate(columnFamily, EMPTY_COLUMN);
       map.put(ByteUtils.toString(csc.column.name), csc.column.value);
@@ -50,6 +54,19 @@ public class Row {
     return key;
   }
 
+  /**
+   * Returns the latest timestamp of the columns of the row, which is the
+   * time the row was last written, or -1 if the row has no columns.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /** Returns whether the row has no columns, as the deleted rows in ranges */
+  public boolean isEmpty() {
+    return data.isEmpty();
+  }
+
   public Map<String, byte[]> getColumn(String columnFamily) {
     return getSuperColumn(columnFamily, EMPTY_COLUMN);
   }
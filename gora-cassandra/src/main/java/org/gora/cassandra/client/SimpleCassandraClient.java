@@ -121,6 +121,52 @@ public class SimpleCassandraClient implements CassandraClient {
     return row;
   }
 
+  @Override
+  public Map<String, Row> multiget(List<String> keys, Select select)
+  throws IOException {
+    List<MultiSliceGet> multiSliceGets =
+      new ArrayList<MultiSliceGet>();
+    Map<ColumnParent, SlicePredicate> predicateMap = select.getPredicateMap();
+
+    for (Entry<ColumnParent, SlicePredicate> e : predicateMap.entrySet()) {
+      multiSliceGets.add(new MultiSliceGet(client, keySpace, keys,
+          e.getKey(), e.getValue(), consistencyLevel));
+    }
+    List<Future<Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>>>> results;
+    try {
+      results = SERVICE.invokeAll(multiSliceGets);
+    } catch (InterruptedException e1) {
+      throw new IOException(e1);
+    }
+
+    Map<String, Row> rowMap = new HashMap<String, Row>();
+
+    for (Future<Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>>> f
+        : results) {
+      Pair<ColumnParent, Map<String, List<ColumnOrSuperColumn>>> pair;
+      try {
+        pair = f.get();
+      } catch (Exception e1) {
+        throw new IOException(e1);
+      }
+      ColumnParent parent = pair.getFirst();
+      for (Entry<String, List<ColumnOrSuperColumn>> e : pair.getSecond().entrySet()) {
+        if (e.getValue().isEmpty()) {
+          continue;
+        }
+        Row row = rowMap.get(e.getKey());
+        if (row == null) {
+          row = new Row(e.getKey());
+          rowMap.put(row.getKey(), row);
+        }
+        for (ColumnOrSuperColumn csc : e.getValue()) {
+          row.addColumnOrSuperColumn(parent.column_family, parent.super_column, csc);
+        }
+      }
+    }
+    return rowMap;
+  }
+
   public List<Row> getRangeIntl(String startKey, String endKey, int rowCount, Select select)
   throws IOException {
     KeyRange range = new KeyRange(rowCount).setStart_key(startKey).setEnd_key(endKey);
@@ -198,6 +244,21 @@ public class SimpleCassandraClient implements CassandraClient {
     Map<String, Map<String, List<Mutation>>> rowMutations =
       new HashMap<String, Map<String,List<Mutation>>>();
     rowMutations.put(key, mutation.getMutationMap());
+    batchMutate(rowMutations);
+  }
+
+  @Override
+  public void mutate(Map<String, Mutate> mutations) throws IOException {
+    Map<String, Map<String, List<Mutation>>> rowMutations =
+      new HashMap<String, Map<String,List<Mutation>>>();
+    for (Entry<String, Mutate> e : mutations.entrySet()) {
+      rowMutations.put(e.getKey(), e.getValue().getMutationMap());
+    }
+    batchMutate(rowMutations);
+  }
+
+  private void batchMutate(Map<String, Map<String, List<Mutation>>> rowMutations)
+  throws IOException {
     try {
       client.batch_mutate(keySpace, rowMutations, consistencyLevel);
     } catch (Exception e) {
@@ -244,4 +305,13 @@ public class SimpleCassandraClient implements CassandraClient {
       throw new IOException(e);
     }
   }
+
+  @Override
+  public String describePartitioner() throws IOException {
+    try {
+      return client.describe_partitioner();
+    } catch (TException e) {
+      throw new IOException(e);
+    }
+  }
 }
@@ -1,10 +1,13 @@
 package org.gora.cassandra.query;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Iterator;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.dht.IPartitioner;
 import org.gora.cassandra.client.CassandraClient;
 import org.gora.cassandra.client.Row;
 import org.gora.cassandra.client.Select;
@@ -13,6 +16,7 @@ import org.gora.persistency.Persistent;
 import org.gora.query.Query;
 import org.gora.query.impl.ResultBase;
 import org.gora.store.DataStore;
+import org.gora.util.ByteUtils;
 
 public class CassandraResult<K, T extends Persistent>
 extends ResultBase<K, T> {
@@ -23,6 +27,18 @@ extends ResultBase<K, T> {
 
   private String[] fields;
 
+  private boolean isUsingTokens;
+
+  private String startTokenOrKey;
+
+  private String endTokenOrKey;
+
+  /** The key of the last row read */
+  private String lastKey;
+
+  /** The size of the token ring of the RandomPartitioner */
+  private static final BigInteger RING_SIZE = BigInteger.valueOf(2).pow(127);
+
   public CassandraResult(DataStore<K, T> dataStore, Query<K, T> query,
       int batchRowCount) throws IOException {
     super(dataStore, query);
@@ -30,9 +46,7 @@ extends ResultBase<K, T> {
     store = (CassandraStore<K, T>) dataStore;
     fields = query.getFields();
 
-    boolean isUsingTokens = (query instanceof CassandraPartitionQuery);
-    String startTokenOrKey;
-    String endTokenOrKey;
+    isUsingTokens = (query instanceof CassandraPartitionQuery);
 
     if (isUsingTokens) {
       CassandraPartitionQuery<K, T> partitionQuery = (CassandraPartitionQuery<K, T>) query;
@@ -44,7 +58,7 @@ extends ResultBase<K, T> {
       endTokenOrKey = cassandraQuery.getEndKey().toString();
     }
 
-    Select select = store.createSelect(fields);
+    Select select = store.getSelect(fields);
 
     CassandraClient client = store.getClientByLocation(getLocation(query));
     if (isUsingTokens) {
@@ -59,7 +73,38 @@ extends ResultBase<K, T> {
 
   @Override
   public float getProgress() throws IOException {
-    return 0;
+    if (lastKey == null) {
+      return getProgress(0f);
+    }
+    if (isUsingTokens) {
+      return getProgress(getTokenPosition(lastKey));
+    }
+    return getProgress(getKeyPosition(query.getStartKey(), query.getEndKey()
+        , key));
+  }
+
+  /**
+   * Returns the position of the token of the key in the token range of
+   * the partition. Tokens of the RandomPartitioner are interpolated on the
+   * ring, others by their bytes.
+   */
+  @SuppressWarnings("rawtypes")
+  private float getTokenPosition(String key) {
+    IPartitioner p = DatabaseDescriptor.getPartitioner();
+    @SuppressWarnings("unchecked")
+    String token = p.getTokenFactory().toString(p.getToken(key));
+    try {
+      BigInteger start = new BigInteger(startTokenOrKey);
+      BigInteger range = new BigInteger(endTokenOrKey).subtract(start).mod(RING_SIZE);
+      if (range.signum() == 0) { //the whole ring
+        range = RING_SIZE;
+      }
+      BigInteger position = new BigInteger(token).subtract(start).mod(RING_SIZE);
+      return (float) Math.min(1d, position.doubleValue() / range.doubleValue());
+    } catch (NumberFormatException ex) {
+      return ByteUtils.interpolate(ByteUtils.toBytes(startTokenOrKey)
+          , ByteUtils.toBytes(endTokenOrKey), ByteUtils.toBytes(token));
+    }
   }
 
   @Override
@@ -71,42 +116,24 @@ extends ResultBase<K, T> {
     if (row == null) {
       return false;
     }
+    //the rows of deleted objects and of the index entries have no columns
+    //of the selected families. Cassandra cannot select the columns by their
+    //timestamps, so the rows written out of the time range are skipped here
+    while (row.isEmpty() || (hasTimeRange(query)
+        && !isInTimeRange(query, row.getTimestamp()))) {
+      if (!rowIter.hasNext()) {
+        return false;
+      }
+      row = rowIter.next();
+    }
 
-    key = toKey(row.getKey());
+    lastKey = row.getKey();
+    key = store.toKey(lastKey);
     persistent = store.newInstance(row, fields);
 
     return true;
   }
 
-  @SuppressWarnings("unchecked")
-  private K toKey(String keyStr) {
-    Class<K> keyClass = dataStore.getKeyClass();
-    if (keyClass.isAssignableFrom(String.class)) {
-      return (K) keyStr;
-    }
-    if (keyClass.isAssignableFrom(Integer.class)) {
-      return (K) (Integer) Integer.parseInt(keyStr);
-    }
-    if (keyClass.isAssignableFrom(Float.class)) {
-      return (K) (Float) Float.parseFloat(keyStr);
-    }
-    if (keyClass.isAssignableFrom(Double.class)) {
-      return (K) (Double) Double.parseDouble(keyStr);
-    }
-    if (keyClass.isAssignableFrom(Long.class)) {
-      return (K) (Long) Long.parseLong(keyStr);
-    }
-    if (keyClass.isAssignableFrom(Short.class)) {
-      return (K) (Short) Short.parseShort(keyStr);
-    }
-    if (keyClass.isAssignableFrom(Byte.class)) {
-      return (K) (Byte) Byte.parseByte(keyStr);
-    }
-
-    throw new RuntimeException("Can't parse " + keyStr +
-                               " as an instance of " + keyClass);
-  }
-
   @Override
   public void close() throws IOException { }
 
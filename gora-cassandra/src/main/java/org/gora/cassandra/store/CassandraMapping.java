@@ -1,6 +1,7 @@
 package org.gora.cassandra.store;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -11,6 +12,10 @@ public class CassandraMapping {
   private Map<String, Boolean> families =
     new HashMap<String, Boolean>();
 
+  // a map from the indexed fields to the column families of their indexes
+  private Map<String, String> indexes =
+    new LinkedHashMap<String, String>();
+
   public String getKeySpace() {
     return keySpace;
   }
@@ -30,4 +35,13 @@ public class CassandraMapping {
   public boolean isColumnFamilySuper(String columnFamily) {
     return families.get(columnFamily);
   }
+
+  public void addIndex(String field, String columnFamily) {
+    indexes.put(field, columnFamily);
+  }
+
+  /** Returns the column families of the indexes, keyed by the indexed fields */
+  public Map<String, String> getIndexes() {
+    return indexes;
+  }
 }
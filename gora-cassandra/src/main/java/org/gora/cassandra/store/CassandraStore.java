@@ -3,7 +3,11 @@ package org.gora.cassandra.store;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,6 +19,7 @@ import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.util.Utf8;
+import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.thrift.TokenRange;
 import org.gora.cassandra.client.CassandraClient;
 import org.gora.cassandra.client.Mutate;
@@ -24,6 +29,9 @@ import org.gora.cassandra.client.SimpleCassandraClient;
 import org.gora.cassandra.query.CassandraPartitionQuery;
 import org.gora.cassandra.query.CassandraQuery;
 import org.gora.cassandra.query.CassandraResult;
+import org.gora.filter.Filters;
+import org.gora.index.IndexLookup;
+import org.gora.persistency.FieldDecoder;
 import org.gora.persistency.ListGenericArray;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.State;
@@ -33,6 +41,10 @@ import org.gora.persistency.StatefulMap;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
 import org.gora.query.Result;
+import org.gora.query.impl.IndexResult;
+import org.gora.query.impl.QueryPlanCache;
+import org.gora.query.impl.QueryShape;
+import org.gora.query.impl.ResultBase;
 import org.gora.store.DataStoreFactory;
 import org.gora.store.impl.DataStoreBase;
 import org.gora.util.ByteUtils;
@@ -43,6 +55,15 @@ import org.jdom.input.SAXBuilder;
 /**
  * DataStore for Cassandra.
  *
+ * <p> The fields listed with <code>&lt;index field=".." family=".."/&gt;</code>
+ * in the mapping of a class are indexed in the given column family, which
+ * should be defined in the keyspace and not hold any field. The index row
+ * of a value has a column for each key of the objects with the value, and
+ * answers the queries filtering on the field by equality. </p>
+ *
+ * <p> The rows are selected by the time ranges of the queries with the
+ * latest timestamps of their fetched columns. </p>
+ *
  * <p> Note: CassandraStore is not thread-safe. </p>
  */
 public class CassandraStore<K, T extends Persistent>
@@ -63,6 +84,12 @@ extends DataStoreBase<K, T> {
 
   private CassandraMapping mapping;
 
+  /** The selects of the fetched fields, keyed by the fields */
+  private QueryPlanCache<Select> selectCache;
+
+  /** The partitioner of the cluster, read at the first index lookup */
+  private IPartitioner<?> partitioner;
+
   @Override
   public void initialize(Class<K> keyClass, Class<T> persistentClass,
       Properties properties) throws IOException {
@@ -72,6 +99,8 @@ extends DataStoreBase<K, T> {
       DataStoreFactory.getMappingFile(properties, this, DEFAULT_MAPPING_FILE);
 
     readMapping(mappingFile);
+
+    selectCache = createQueryPlanCache();
   }
 
   @Override
@@ -98,6 +127,23 @@ extends DataStoreBase<K, T> {
     return client;
   }
 
+  /**
+   * Returns the select for the fields, from the cache if possible. The
+   * returned select is shared, and should not be modified.
+   */
+  public Select getSelect(String[] fields) {
+    if (fields == null) {
+      fields = beanFactory.getCachedPersistent().getFields();
+    }
+    QueryShape shape = new QueryShape(fields);
+    Select select = selectCache.get(shape);
+    if (select == null) {
+      select = createSelect(fields);
+      selectCache.put(shape, select);
+    }
+    return select;
+  }
+
   public Select createSelect(String[] fields) {
     Select select = new Select();
     if (fields == null) {
@@ -132,7 +178,7 @@ extends DataStoreBase<K, T> {
     if (fields == null) {
       fields = beanFactory.getCachedPersistent().getFields();
     }
-    Select select = createSelect(fields);
+    Select select = getSelect(fields);
     try {
       Row result = client.get(key.toString(), select);
       return newInstance(result, fields);
@@ -141,23 +187,36 @@ extends DataStoreBase<K, T> {
     }
   }
 
-  @SuppressWarnings("rawtypes")
-  private void setField(T persistent, Field field, StatefulMap map) {
-    persistent.put(field.pos(), map);
-  }
-
-  private void setField(T persistent, Field field, byte[] val)
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
   throws IOException {
-    persistent.put(field.pos()
-        , ByteUtils.fromBytes(val, field.schema(), datumReader, persistent.get(field.pos())));
-  }
-
-  @SuppressWarnings("rawtypes")
-  private void setField(T persistent, Field field, GenericArray list) {
-    persistent.put(field.pos(), list);
+    if (fields == null) {
+      fields = beanFactory.getCachedPersistent().getFields();
+    }
+    Select select = getSelect(fields);
+    List<String> keyStrs = new ArrayList<String>(keys.size());
+    for (K key : keys) {
+      keyStrs.add(key.toString());
+    }
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    try {
+      Map<String, Row> rows = client.multiget(keyStrs, select);
+      for (K key : keys) {
+        Row row = rows.get(key.toString());
+        if (row != null) {
+          results.put(key, newInstance(row, fields));
+        }
+      }
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    return results;
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
+  /**
+   * Returns the object of the row. The values of the fields are kept
+   * undecoded in the object if the fields are read lazily.
+   */
   public T newInstance(Row result, String[] fields)
   throws IOException {
     if(result == null)
@@ -168,64 +227,110 @@ extends DataStoreBase<K, T> {
     for (String f : fields) {
       CassandraColumn col = columnMap.get(f);
       Field field = fieldMap.get(f);
-      Schema fieldSchema = field.schema();
-      Map<String, byte[]> qualMap;
-      switch(fieldSchema.getType()) {
+      Object raw;
+      switch(field.schema().getType()) {
         case MAP:
-          if (col.isSuperColumn()) {
-            qualMap = result.getSuperColumn(col.family, col.superColumn);
-          } else {
-            qualMap = result.getColumn(col.family);
-          }
-          if (qualMap == null) {
-            continue;
-          }
-          Schema valueSchema = fieldSchema.getValueType();
-          StatefulMap map = new StatefulHashMap();
-          for (Entry<String, byte[]> e : qualMap.entrySet()) {
-            Utf8 mapKey = new Utf8(e.getKey());
-            map.put(mapKey, ByteUtils.fromBytes(e.getValue(), valueSchema, datumReader, null));
-            map.putState(mapKey, State.CLEAN);
-          }
-          setField(persistent, field, map);
-          break;
         case ARRAY:
           if (col.isSuperColumn()) {
-            qualMap = result.getSuperColumn(col.family, col.superColumn);
+            raw = result.getSuperColumn(col.family, col.superColumn);
           } else {
-            qualMap = result.getColumn(col.family);
-          }
-          if (qualMap == null) {
-            continue;
-          }
-          valueSchema = fieldSchema.getElementType();
-          ArrayList arrayList = new ArrayList();
-          for (Entry<String, byte[]> e : qualMap.entrySet()) {
-            arrayList.add(ByteUtils.fromBytes(e.getValue(), valueSchema, datumReader, null));
+            raw = result.getColumn(col.family);
           }
-          ListGenericArray arr = new ListGenericArray(fieldSchema, arrayList);
-          setField(persistent, field, arr);
           break;
         default:
-          byte[] val;
           if (col.isSuperColumn()) {
-            val = result.get(col.family, col.superColumn, col.column);
+            raw = result.get(col.family, col.superColumn, col.column);
           } else {
-            val = result.get(col.family, col.column);
+            raw = result.get(col.family, col.column);
           }
-          if (val == null) {
-            continue;
-          }
-          setField(persistent, field, val);
           break;
       }
+      if (raw == null) {
+        continue;
+      }
+      if (lazyFields) {
+        persistent.setLazy(field.pos(), raw, fieldDecoder);
+      } else {
+        persistent.put(field.pos(), decodeField(persistent, field, raw));
+      }
     }
     stateManager.clearDirty(persistent);
     return persistent;
   }
 
+  /**
+   * Decodes the value of the field from the columns of its family or super
+   * column for maps and arrays, and from the bytes of its column for the
+   * others.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private Object decodeField(Persistent persistent, Field field, Object raw)
+  throws IOException {
+    Schema fieldSchema = field.schema();
+    switch(fieldSchema.getType()) {
+      case MAP:
+        Schema valueSchema = fieldSchema.getValueType();
+        StatefulMap map = new StatefulHashMap();
+        for (Entry<String, byte[]> e : ((Map<String, byte[]>) raw).entrySet()) {
+          Utf8 mapKey = new Utf8(e.getKey());
+          map.put(mapKey, ByteUtils.fromBytes(e.getValue(), valueSchema, datumReader, null));
+          map.putState(mapKey, State.CLEAN);
+        }
+        return map;
+      case ARRAY:
+        valueSchema = fieldSchema.getElementType();
+        ArrayList arrayList = new ArrayList();
+        for (byte[] val : ((Map<String, byte[]>) raw).values()) {
+          arrayList.add(ByteUtils.fromBytes(val, valueSchema, datumReader, null));
+        }
+        return new ListGenericArray(fieldSchema, arrayList);
+      default:
+        return ByteUtils.fromBytes((byte[]) raw, fieldSchema, datumReader
+            , persistent.get(field.pos()));
+    }
+  }
+
+  /** Decodes the fields of the objects read lazily */
+  private final FieldDecoder fieldDecoder = new FieldDecoder() {
+    @Override
+    public Object decode(Persistent persistent, int fieldIndex, Object raw)
+    throws IOException {
+      return decodeField(persistent, persistent.getSchema().getFields().get(fieldIndex), raw);
+    }
+  };
+
   @Override
   public void put(K key, T obj) throws IOException {
+    updateIndexes(key, obj);
+    Mutate mutate = createMutate(obj);
+    if(!mutate.isEmpty())
+      client.mutate(key.toString(), mutate);
+  }
+
+  /**
+   * Sends the mutations of up to BATCH_COUNT rows in a single batch_mutate.
+   */
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    Map<String, Mutate> rowMutations = new LinkedHashMap<String, Mutate>();
+    for (Map.Entry<K, T> entry : entries) {
+      updateIndexes(entry.getKey(), entry.getValue());
+      Mutate mutate = createMutate(entry.getValue());
+      if (mutate.isEmpty()) {
+        continue;
+      }
+      rowMutations.put(entry.getKey().toString(), mutate);
+      if (rowMutations.size() >= BATCH_COUNT) {
+        client.mutate(rowMutations);
+        rowMutations.clear();
+      }
+    }
+    if (!rowMutations.isEmpty()) {
+      client.mutate(rowMutations);
+    }
+  }
+
+  private Mutate createMutate(T obj) throws IOException {
     Mutate mutate = new Mutate();
     Schema schema = obj.getSchema();
     StateManager stateManager = obj.getStateManager();
@@ -309,12 +414,149 @@ extends DataStoreBase<K, T> {
       }
     }
 
-    if(!mutate.isEmpty())
-      client.mutate(key.toString(), mutate);
+    return mutate;
+  }
+
+  /**
+   * Moves the key to the index rows of the new values of the dirty indexed
+   * fields of the object. The old values are read from the object's row.
+   */
+  private void updateIndexes(K key, T obj) throws IOException {
+    if (mapping.getIndexes().isEmpty()) {
+      return;
+    }
+    List<String> fields = new ArrayList<String>();
+    for (String field : mapping.getIndexes().keySet()) {
+      if (obj.isDirty(obj.getFieldIndex(field))) {
+        fields.add(field);
+      }
+    }
+    if (fields.isEmpty()) {
+      return;
+    }
+    String keyStr = key.toString();
+    Map<String, Mutate> rowMutations = getIndexRemovals(keyStr, fields);
+    for (String field : fields) {
+      Object value = obj.get(obj.getFieldIndex(field));
+      if (value != null) {
+        String row = getIndexRow(field, value);
+        Mutate mutate = rowMutations.remove(row);
+        //the entry of an unchanged value is kept
+        if (mutate == null) {
+          mutate = new Mutate();
+          mutate.put(mapping.getIndexes().get(field), keyStr, new byte[0]);
+          rowMutations.put(row, mutate);
+        }
+      }
+    }
+    if (!rowMutations.isEmpty()) {
+      client.mutate(rowMutations);
+    }
+  }
+
+  /**
+   * Returns the mutations deleting the key from the index rows of the
+   * stored values of the fields.
+   */
+  private Map<String, Mutate> getIndexRemovals(String keyStr, List<String> fields)
+  throws IOException {
+    Map<String, Mutate> rowMutations = new LinkedHashMap<String, Mutate>();
+    String[] fieldArray = fields.toArray(new String[fields.size()]);
+    T old;
+    try {
+      old = newInstance(client.get(keyStr, getSelect(fieldArray)), fieldArray);
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    if (old == null) {
+      return rowMutations;
+    }
+    for (String field : fields) {
+      Object value = old.get(old.getFieldIndex(field));
+      if (value != null) {
+        Mutate mutate = new Mutate();
+        mutate.delete(mapping.getIndexes().get(field), keyStr);
+        rowMutations.put(getIndexRow(field, value), mutate);
+      }
+    }
+    return rowMutations;
+  }
+
+  /**
+   * Returns the key of the index row of the value of the field. Numbers are
+   * converted to the type of the field, so that the filter constants of the
+   * other numeric types are looked up in the rows of the equal values.
+   */
+  private String getIndexRow(String field, Object value) {
+    value = Filters.normalize(value);
+    switch (fieldMap.get(field).schema().getType()) {
+      case INT:
+      case LONG:
+        value = ((Number) value).longValue();
+        break;
+      case FLOAT:
+      case DOUBLE:
+        value = ((Number) value).doubleValue();
+        break;
+    }
+    return field + ":" + value;
+  }
+
+  /**
+   * Returns the keys in the index row of the value of the lookup, in the
+   * order of the partitioner, as the scans return them.
+   */
+  private List<K> seekIndex(IndexLookup lookup) throws IOException {
+    String family = mapping.getIndexes().get(lookup.getField());
+    Row row;
+    try {
+      row = client.get(getIndexRow(lookup.getField(), lookup.getLowerValue())
+          , new Select().addColumnAll(family));
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    List<String> keyStrs = new ArrayList<String>();
+    Map<String, byte[]> columns = row == null ? null : row.getColumn(family);
+    if (columns != null) {
+      keyStrs.addAll(columns.keySet());
+    }
+    //the columns of the index row are sorted by the column names
+    final IPartitioner<?> partitioner = getPartitioner();
+    Collections.sort(keyStrs, new Comparator<String>() {
+      @Override
+      public int compare(String key1, String key2) {
+        return partitioner.decorateKey(key1).compareTo(
+            partitioner.decorateKey(key2));
+      }
+    });
+    List<K> keys = new ArrayList<K>(keyStrs.size());
+    for (String keyStr : keyStrs) {
+      keys.add(toKey(keyStr));
+    }
+    return keys;
+  }
+
+  private IPartitioner<?> getPartitioner() throws IOException {
+    if (partitioner == null) {
+      String className = client.describePartitioner();
+      try {
+        partitioner = (IPartitioner<?>) Class.forName(className).newInstance();
+      } catch (Exception e) {
+        throw new IOException("Cannot create the partitioner " + className, e);
+      }
+    }
+    return partitioner;
   }
 
   @Override
   public boolean delete(K key) throws IOException {
+    if (!mapping.getIndexes().isEmpty()) {
+      List<String> fields = new ArrayList<String>(mapping.getIndexes().keySet());
+      Map<String, Mutate> rowMutations = getIndexRemovals(key.toString(), fields);
+      if (!rowMutations.isEmpty()) {
+        client.mutate(rowMutations);
+      }
+    }
     Mutate mutate = new Mutate();
     for (String family : mapping.getColumnFamilies()) {
       mutate.deleteAll(family);
@@ -345,9 +587,59 @@ extends DataStoreBase<K, T> {
 
   @Override
   public Result<K, T> execute(Query<K, T> query) throws IOException {
+    if (query.getFilter() != null) {
+      // filters are evaluated on the client side, on the fetched fields
+      query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+      IndexLookup lookup = IndexLookup.create(Filters.bind(query.getFilter(), query)
+          , mapping.getIndexes().keySet());
+      //the index rows do not keep the write times of the objects
+      if (lookup != null && lookup.isEquality() && !ResultBase.hasTimeRange(query)
+          && !(query instanceof CassandraPartitionQuery)) {
+        //the objects of the index row are fetched, and filtered
+        List<K> keys = IndexResult.filterKeys(seekIndex(lookup), query);
+        return new IndexResult<K, T>(this, query, keys, BATCH_COUNT);
+      }
+    }
     return new CassandraResult<K, T>(this, query, BATCH_COUNT);
   }
 
+  /** Parses the key from the string the row of the object is keyed by */
+  @SuppressWarnings("unchecked")
+  public K toKey(String keyStr) {
+    if (keyClass.isAssignableFrom(String.class)) {
+      return (K) keyStr;
+    }
+    if (keyClass.isAssignableFrom(Integer.class)) {
+      return (K) (Integer) Integer.parseInt(keyStr);
+    }
+    if (keyClass.isAssignableFrom(Float.class)) {
+      return (K) (Float) Float.parseFloat(keyStr);
+    }
+    if (keyClass.isAssignableFrom(Double.class)) {
+      return (K) (Double) Double.parseDouble(keyStr);
+    }
+    if (keyClass.isAssignableFrom(Long.class)) {
+      return (K) (Long) Long.parseLong(keyStr);
+    }
+    if (keyClass.isAssignableFrom(Short.class)) {
+      return (K) (Short) Short.parseShort(keyStr);
+    }
+    if (keyClass.isAssignableFrom(Byte.class)) {
+      return (K) (Byte) Byte.parseByte(keyStr);
+    }
+
+    throw new RuntimeException("Can't parse " + keyStr +
+                               " as an instance of " + keyClass);
+  }
+
+
+  @Override
+  public void compile(Query<K, T> query) throws IOException {
+    super.compile(query);
+    query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+    getSelect(query.getFields());
+  }
+
   @Override
   public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
   throws IOException {
@@ -438,6 +730,23 @@ extends DataStoreBase<K, T> {
                 new CassandraColumn(columnFamily, superColumn, column));
           }
 
+          List<Element> indexes = classElement.getChildren("index");
+          for(Element index : indexes) {
+            String fieldName = index.getAttributeValue("field");
+            String family = index.getAttributeValue("family");
+            if (!columnMap.containsKey(fieldName)) {
+              throw new IOException("Field " + fieldName
+                  + " should be mapped to be indexed");
+            }
+            if (!mapping.getColumnFamilies().contains(family)
+                || mapping.isColumnFamilySuper(family)) {
+              throw new IOException("The index of " + fieldName
+                  + " should be in a standard column family of the keyspace. "
+                  + ERROR_MESSAGE);
+            }
+            mapping.addIndex(fieldName, family);
+          }
+
           break;
         }
       }
@@ -55,6 +55,7 @@ public class Employee extends PersistentBase {
   }
   public Schema getSchema() { return _SCHEMA; }
   public Object get(int _field) {
+    materialize(_field);
     switch (_field) {
     case 0: return name;
     case 1: return dateOfBirth;
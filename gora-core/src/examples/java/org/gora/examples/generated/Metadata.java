@@ -52,6 +52,7 @@ public class Metadata extends PersistentBase {
   }
   public Schema getSchema() { return _SCHEMA; }
   public Object get(int _field) {
+    materialize(_field);
     switch (_field) {
     case 0: return version;
     case 1: return data;
@@ -78,14 +79,17 @@ public class Metadata extends PersistentBase {
     return (Map<Utf8, Utf8>) get(1);
   }
   public Utf8 getFromData(Utf8 key) {
+    materialize(1);
     if (data == null) { return null; }
     return data.get(key);
   }
   public void putToData(Utf8 key, Utf8 value) {
+    materialize(1);
     getStateManager().setDirty(this, 1);
     data.put(key, value);
   }
   public Utf8 removeFromData(Utf8 key) {
+    materialize(1);
     if (data == null) { return null; }
     getStateManager().setDirty(this, 1);
     return data.remove(key);
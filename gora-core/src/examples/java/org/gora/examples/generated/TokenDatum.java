@@ -49,6 +49,7 @@ public class TokenDatum extends PersistentBase {
   }
   public Schema getSchema() { return _SCHEMA; }
   public Object get(int _field) {
+    materialize(_field);
     switch (_field) {
     case 0: return count;
     default: throw new AvroRuntimeException("Bad index");
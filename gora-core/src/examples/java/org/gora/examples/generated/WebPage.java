@@ -59,6 +59,7 @@ public class WebPage extends PersistentBase {
   }
   public Schema getSchema() { return _SCHEMA; }
   public Object get(int _field) {
+    materialize(_field);
     switch (_field) {
     case 0: return url;
     case 1: return content;
@@ -97,6 +98,7 @@ public class WebPage extends PersistentBase {
     return (GenericArray<Utf8>) get(2);
   }
   public void addToParsedContent(Utf8 element) {
+    materialize(2);
     getStateManager().setDirty(this, 2);
     parsedContent.add(element);
   }
@@ -104,14 +106,17 @@ public class WebPage extends PersistentBase {
     return (Map<Utf8, Utf8>) get(3);
   }
   public Utf8 getFromOutlinks(Utf8 key) {
+    materialize(3);
     if (outlinks == null) { return null; }
     return outlinks.get(key);
   }
   public void putToOutlinks(Utf8 key, Utf8 value) {
+    materialize(3);
     getStateManager().setDirty(this, 3);
     outlinks.put(key, value);
   }
   public Utf8 removeFromOutlinks(Utf8 key) {
+    materialize(3);
     if (outlinks == null) { return null; }
     getStateManager().setDirty(this, 3);
     return outlinks.remove(key);
@@ -84,7 +84,7 @@ public class PersistentDatumReader<T extends Persistent>
     return super.read(reuse, schema, getResolvingDecoder(decoder));
   }
 
-  protected ResolvingDecoder getResolvingDecoder(Decoder decoder)
+  protected synchronized ResolvingDecoder getResolvingDecoder(Decoder decoder)
   throws IOException {
     ResolvingDecoder resolvingDecoder = decoderCache.get(decoder);
     if(resolvingDecoder == null) {
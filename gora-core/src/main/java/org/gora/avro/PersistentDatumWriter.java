@@ -68,7 +68,9 @@ public class PersistentDatumWriter<T extends Persistent>
       int i=0;
       for (@SuppressWarnings("unused") Field field : schema.getFields()) {
         dirtyFields[i] = manager.isDirty(persistent, i);
-        readableFields[i] = manager.isReadable(persistent, i);
+        //the fields not yet decoded are decoded when written
+        readableFields[i] = manager.isReadable(persistent, i)
+          || persistent.isLazy(i);
         i++;
       }
 
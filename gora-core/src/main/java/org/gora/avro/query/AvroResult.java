@@ -3,10 +3,12 @@ package org.gora.avro.query;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.Decoder;
+import org.apache.hadoop.fs.Seekable;
 import org.gora.avro.store.AvroStore;
 import org.gora.persistency.Persistent;
 import org.gora.query.impl.ResultBase;
@@ -18,12 +20,27 @@ public class AvroResult<K, T extends Persistent> extends ResultBase<K, T> {
 
   private DatumReader<T> reader;
   private Decoder decoder;
+  private InputStream in;
+  private long inputSize;
   
   public AvroResult(AvroStore<K,T> dataStore, AvroQuery<K,T> query
       , DatumReader<T> reader, Decoder decoder) {
+    this(dataStore, query, reader, decoder, null, 0);
+  }
+
+  /**
+   * @param in the stream read by the decoder, used for reporting progress
+   * if it is {@link Seekable}
+   * @param inputSize the size of the input in bytes, or 0 if not known
+   */
+  public AvroResult(AvroStore<K,T> dataStore, AvroQuery<K,T> query
+      , DatumReader<T> reader, Decoder decoder, InputStream in
+      , long inputSize) {
     super(dataStore, query);
     this.reader = reader;
     this.decoder = decoder;
+    this.in = in;
+    this.inputSize = inputSize;
   }
 
   @Override
@@ -32,8 +49,11 @@ public class AvroResult<K, T extends Persistent> extends ResultBase<K, T> {
 
   @Override
   public float getProgress() throws IOException {
-    //TODO: FIXME
-    return 0;
+    //the decoder reads ahead of the records, so the position is an estimate
+    if(inputSize > 0 && in instanceof Seekable) {
+      return getProgress(((Seekable)in).getPos() / (float) inputSize);
+    }
+    return getProgress(0f);
   }
 
   @Override
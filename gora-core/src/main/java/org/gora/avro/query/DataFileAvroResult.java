@@ -49,9 +49,9 @@ public class DataFileAvroResult<K, T extends Persistent> extends ResultBase<K, T
   @Override
   public float getProgress() throws IOException {
     if (end == start) {
-      return 0.0f;
+      return getProgress(0f);
     } else {
-      return Math.min(1.0f, (in.tell() - start) / (float)(end - start));
+      return getProgress((in.tell() - start) / (float)(end - start));
     }
   }
 
@@ -117,8 +117,9 @@ public class AvroStore<K, T extends Persistent>
    */
   @Override
   protected Result<K,T> executeQuery(Query<K,T> query) throws IOException {
+    Decoder decoder = getDecoder();
     return new AvroResult<K,T>(this, (AvroQuery<K,T>)query,
-        getDatumReader(), getDecoder());
+        getDatumReader(), decoder, inputStream, inputSize);
   }
 
   /**
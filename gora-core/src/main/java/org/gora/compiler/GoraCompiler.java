@@ -264,6 +264,7 @@ public class GoraCompiler {
         line(1, "public Schema getSchema() { return _SCHEMA; }");
         // get method
         line(1, "public Object get(int _field) {");
+        line(2, "materialize(_field);");
         line(2, "switch (_field) {");
         i = 0;
         for (Field field : schema.getFields()) {
@@ -311,6 +312,7 @@ public class GoraCompiler {
             line(2, "return (GenericArray<"+unboxed+">) get("+i+");");
             line(1, "}");
             line(1, "public void addTo"+camelKey+"("+unboxed+" element) {");
+            line(2, "materialize("+i+");");
             line(2, "getStateManager().setDirty(this, "+i+");");
             line(2, field.name()+".add(element);");
             line(1, "}");
@@ -321,14 +323,17 @@ public class GoraCompiler {
             line(2, "return (Map<Utf8, "+unboxed+">) get("+i+");");
             line(1, "}");
             line(1, "public "+unboxed+" getFrom"+camelKey+"(Utf8 key) {");
+            line(2, "materialize("+i+");");
             line(2, "if ("+field.name()+" == null) { return null; }");
             line(2, "return "+field.name()+".get(key);");
             line(1, "}");
             line(1, "public void putTo"+camelKey+"(Utf8 key, "+unboxed+" value) {");
+            line(2, "materialize("+i+");");
             line(2, "getStateManager().setDirty(this, "+i+");");
             line(2, field.name()+".put(key, value);");
             line(1, "}");
             line(1, "public "+unboxed+" removeFrom"+camelKey+"(Utf8 key) {");
+            line(2, "materialize("+i+");");
             line(2, "if ("+field.name()+" == null) { return null; }");
             line(2, "getStateManager().setDirty(this, "+i+");");
             line(2, "return "+field.name()+".remove(key);");
@@ -0,0 +1,99 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.gora.persistency.Persistent;
+
+/**
+ * Compares the value of a field with a constant.
+ */
+public class FieldValueFilter implements Filter {
+
+  private String field;
+  private FilterOp op;
+  private Object value;
+
+  public FieldValueFilter() {
+  }
+
+  public FieldValueFilter(String field, FilterOp op, Object value) {
+    if(value == null) {
+      throw new IllegalArgumentException("Cannot compare with null, use "
+          + "Filters.isNull() instead");
+    }
+    this.field = field;
+    this.op = op;
+    this.value = Filters.normalize(value);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public FilterOp getOp() {
+    return op;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  @Override
+  public Boolean evaluate(Persistent persistent) {
+    Object fieldValue = Filters.getFieldValue(persistent, field);
+    if(fieldValue == null) {
+      return null;
+    }
+    return op.matches(Filters.compareValues(fieldValue, value));
+  }
+
+  @Override
+  public void getFields(Set<String> fields) {
+    fields.add(field);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    field = Text.readString(in);
+    op = WritableUtils.readEnum(in, FilterOp.class);
+    value = Filters.readValue(in);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, field);
+    WritableUtils.writeEnum(out, op);
+    Filters.writeValue(out, value);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(obj instanceof FieldValueFilter) {
+      FieldValueFilter that = (FieldValueFilter) obj;
+      EqualsBuilder builder = new EqualsBuilder();
+      builder.append(field, that.field);
+      builder.append(op, that.op);
+      builder.append(value, that.value);
+      return builder.isEquals();
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder().append(field).append(op).append(value)
+      .toHashCode();
+  }
+
+  @Override
+  public String toString() {
+    return field + " " + op.getSymbol() + " " + value;
+  }
+}
@@ -0,0 +1,31 @@
+package org.gora.filter;
+
+import java.util.Set;
+
+import org.apache.hadoop.io.Writable;
+import org.gora.persistency.Persistent;
+
+/**
+ * A predicate on the fields of persistent objects, which can be set to
+ * a {@link org.gora.query.Query} to restrict the results. DataStores push
+ * the filter down to the backend whenever they can, and evaluate it
+ * in memory otherwise.
+ *
+ * <p> Filters follow the SQL semantics for missing values: a comparison
+ * against a null field evaluates to unknown, and only the objects for
+ * which the filter evaluates to true are accepted.
+ * Filters are constructed by the factory methods in {@link Filters}.
+ */
+public interface Filter extends Writable {
+
+  /**
+   * Evaluates the filter against the fields of the object.
+   * @return TRUE or FALSE, or null if the result is unknown
+   */
+  public abstract Boolean evaluate(Persistent persistent);
+
+  /**
+   * Adds the names of the fields referenced by this filter to the set.
+   */
+  public abstract void getFields(Set<String> fields);
+}
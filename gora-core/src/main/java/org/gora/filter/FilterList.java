@@ -0,0 +1,122 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.io.WritableUtils;
+import org.gora.persistency.Persistent;
+import org.gora.util.IOUtils;
+
+/**
+ * Combines a list of filters with AND or OR.
+ */
+public class FilterList implements Filter {
+
+  public static enum Operator {
+    /** All the filters should accept */
+    AND,
+    /** At least one of the filters should accept */
+    OR
+  }
+
+  private Operator operator;
+  private List<Filter> filters;
+
+  public FilterList() {
+  }
+
+  public FilterList(Operator operator, Filter... filters) {
+    this.operator = operator;
+    this.filters = new ArrayList<Filter>(Arrays.asList(filters));
+  }
+
+  public Operator getOperator() {
+    return operator;
+  }
+
+  public List<Filter> getFilters() {
+    return filters;
+  }
+
+  @Override
+  public Boolean evaluate(Persistent persistent) {
+    //three valued logic, unknown only matters if no filter decides
+    boolean unknown = false;
+    for(Filter filter : filters) {
+      Boolean result = filter.evaluate(persistent);
+      if(result == null) {
+        unknown = true;
+      } else if(operator == Operator.AND && !result) {
+        return Boolean.FALSE;
+      } else if(operator == Operator.OR && result) {
+        return Boolean.TRUE;
+      }
+    }
+    if(unknown) {
+      return null;
+    }
+    return operator == Operator.AND;
+  }
+
+  @Override
+  public void getFields(Set<String> fields) {
+    for(Filter filter : filters) {
+      filter.getFields(fields);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    operator = WritableUtils.readEnum(in, Operator.class);
+    int size = WritableUtils.readVInt(in);
+    filters = new ArrayList<Filter>(size);
+    try {
+      for(int i=0; i<size; i++) {
+        Filter filter = IOUtils.deserialize(null, in, null);
+        filters.add(filter);
+      }
+    } catch (ClassNotFoundException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeEnum(out, operator);
+    WritableUtils.writeVInt(out, filters.size());
+    for(Filter filter : filters) {
+      IOUtils.serialize(null, out, filter);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(obj instanceof FilterList) {
+      FilterList that = (FilterList) obj;
+      return operator == that.operator && filters.equals(that.filters);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * operator.hashCode() + filters.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("(");
+    for(int i=0; i<filters.size(); i++) {
+      if(i > 0) {
+        builder.append(" ").append(operator).append(" ");
+      }
+      builder.append(filters.get(i));
+    }
+    return builder.append(")").toString();
+  }
+}
@@ -0,0 +1,50 @@
+package org.gora.filter;
+
+/**
+ * Comparison operators for {@link FieldValueFilter}.
+ */
+public enum FilterOp {
+  EQUALS("="),
+  NOT_EQUALS("<>"),
+  LESS("<"),
+  LESS_OR_EQUAL("<="),
+  GREATER(">"),
+  GREATER_OR_EQUAL(">=");
+
+  private final String symbol;
+
+  private FilterOp(String symbol) {
+    this.symbol = symbol;
+  }
+
+  /** Returns the SQL symbol of the operator */
+  public String getSymbol() {
+    return symbol;
+  }
+
+  /** Returns whether the result of a comparison satisfies the operator */
+  public boolean matches(int comparison) {
+    switch(this) {
+      case EQUALS:           return comparison == 0;
+      case NOT_EQUALS:       return comparison != 0;
+      case LESS:             return comparison < 0;
+      case LESS_OR_EQUAL:    return comparison <= 0;
+      case GREATER:          return comparison > 0;
+      case GREATER_OR_EQUAL: return comparison >= 0;
+    }
+    throw new IllegalStateException("Unknown operator: " + this);
+  }
+
+  /** Returns the operator which accepts exactly the values this one rejects */
+  public FilterOp negate() {
+    switch(this) {
+      case EQUALS:           return NOT_EQUALS;
+      case NOT_EQUALS:       return EQUALS;
+      case LESS:             return GREATER_OR_EQUAL;
+      case LESS_OR_EQUAL:    return GREATER;
+      case GREATER:          return LESS_OR_EQUAL;
+      case GREATER_OR_EQUAL: return LESS;
+    }
+    throw new IllegalStateException("Unknown operator: " + this);
+  }
+}
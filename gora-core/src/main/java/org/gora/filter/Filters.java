@@ -0,0 +1,349 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.gora.filter.FilterList.Operator;
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.util.ByteUtils;
+
+/**
+ * Factory methods for {@link Filter}s, and utilities for evaluating them.
+ * <pre>
+ *   query.setFilter(Filters.and(
+ *       Filters.equals("url", "http://foo.com/"),
+ *       Filters.range("version", 1, 10)));
+ * </pre>
+ */
+public class Filters {
+
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte INT_VALUE = 2;
+  private static final byte LONG_VALUE = 3;
+  private static final byte FLOAT_VALUE = 4;
+  private static final byte DOUBLE_VALUE = 5;
+  private static final byte BOOLEAN_VALUE = 6;
+  private static final byte BYTES_VALUE = 7;
+  private static final byte PARAM_VALUE = 8;
+
+  private Filters() { }
+
+  public static Filter equals(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.EQUALS, value);
+  }
+
+  public static Filter notEquals(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.NOT_EQUALS, value);
+  }
+
+  public static Filter lessThan(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.LESS, value);
+  }
+
+  public static Filter lessThanEq(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.LESS_OR_EQUAL, value);
+  }
+
+  public static Filter greaterThan(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.GREATER, value);
+  }
+
+  public static Filter greaterThanEq(String field, Object value) {
+    return new FieldValueFilter(field, FilterOp.GREATER_OR_EQUAL, value);
+  }
+
+  /**
+   * Accepts the objects whose field is in [min, max)
+   */
+  public static Filter range(String field, Object min, Object max) {
+    return and(greaterThanEq(field, min), lessThan(field, max));
+  }
+
+  public static Filter in(String field, Object... values) {
+    return new InFilter(field, values);
+  }
+
+  public static Filter isNull(String field) {
+    return new IsNullFilter(field);
+  }
+
+  public static Filter isNotNull(String field) {
+    return not(isNull(field));
+  }
+
+  public static Filter and(Filter... filters) {
+    return new FilterList(Operator.AND, filters);
+  }
+
+  public static Filter or(Filter... filters) {
+    return new FilterList(Operator.OR, filters);
+  }
+
+  public static Filter not(Filter filter) {
+    return new NotFilter(filter);
+  }
+
+  /**
+   * Returns a placeholder for a value, bound by
+   * {@link Query#setParam(String, Object)}
+   */
+  public static Param param(String name) {
+    return new Param(name);
+  }
+
+  /**
+   * Returns a placeholder for a value, bound by
+   * {@link Query#setParam(int, Object)}
+   * @param index the index of the parameter, starting from 1
+   */
+  public static Param param(int index) {
+    return new Param(index);
+  }
+
+  /**
+   * Returns whether the filter has {@link Param}s
+   */
+  public static boolean hasParams(Filter filter) {
+    if(filter instanceof FieldValueFilter) {
+      return ((FieldValueFilter)filter).getValue() instanceof Param;
+    } else if(filter instanceof InFilter) {
+      for(Object value : ((InFilter)filter).getValues()) {
+        if(value instanceof Param) {
+          return true;
+        }
+      }
+    } else if(filter instanceof NotFilter) {
+      return hasParams(((NotFilter)filter).getFilter());
+    } else if(filter instanceof FilterList) {
+      for(Filter f : ((FilterList)filter).getFilters()) {
+        if(hasParams(f)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the filter with its {@link Param}s replaced by the values
+   * bound in the query. The filter is returned as is if it has no
+   * parameters.
+   * @throws IllegalArgumentException if a parameter is not bound
+   */
+  public static Filter bind(Filter filter, Query<?, ?> query) {
+    if(filter == null || !hasParams(filter)) {
+      return filter;
+    }
+    if(filter instanceof FieldValueFilter) {
+      FieldValueFilter f = (FieldValueFilter) filter;
+      return new FieldValueFilter(f.getField(), f.getOp()
+          , bindValue(f.getValue(), query));
+    } else if(filter instanceof InFilter) {
+      InFilter f = (InFilter) filter;
+      Object[] values = new Object[f.getValues().length];
+      for(int i=0; i<values.length; i++) {
+        values[i] = bindValue(f.getValues()[i], query);
+      }
+      return new InFilter(f.getField(), values);
+    } else if(filter instanceof NotFilter) {
+      return new NotFilter(bind(((NotFilter)filter).getFilter(), query));
+    } else if(filter instanceof FilterList) {
+      FilterList list = (FilterList) filter;
+      Filter[] filters = new Filter[list.getFilters().size()];
+      for(int i=0; i<filters.length; i++) {
+        filters[i] = bind(list.getFilters().get(i), query);
+      }
+      return new FilterList(list.getOperator(), filters);
+    }
+    throw new IllegalArgumentException("Cannot bind the parameters of " + filter);
+  }
+
+  private static Object bindValue(Object value, Query<?, ?> query) {
+    if(!(value instanceof Param)) {
+      return value;
+    }
+    Param param = (Param) value;
+    Object bound = param.getName() != null ? query.getParam(param.getName())
+        : query.getParam(param.getIndex());
+    if(bound == null) {
+      throw new IllegalArgumentException("Parameter " + param + " is not bound");
+    }
+    return bound;
+  }
+
+  /**
+   * Returns whether the filter accepts the object. A null filter
+   * accepts all the objects.
+   */
+  public static boolean accept(Filter filter, Persistent persistent) {
+    if(filter == null) {
+      return true;
+    }
+    return Boolean.TRUE.equals(filter.evaluate(persistent));
+  }
+
+  /**
+   * Returns the names of the fields referenced by the filter
+   */
+  public static Set<String> getFields(Filter filter) {
+    Set<String> fields = new HashSet<String>();
+    if(filter != null) {
+      filter.getFields(fields);
+    }
+    return fields;
+  }
+
+  static Object getFieldValue(Persistent persistent, String field) {
+    return persistent.get(persistent.getFieldIndex(field));
+  }
+
+  /**
+   * Converts the value to the canonical class used by the filters,
+   * so that field values and constants can be compared.
+   */
+  public static Object normalize(Object value) {
+    if(value == null || value instanceof Param) {
+      return value;
+    } else if(value instanceof Utf8 || value instanceof CharSequence
+        || value instanceof Enum) {
+      return value.toString();
+    } else if(value instanceof Byte || value instanceof Short) {
+      return ((Number)value).intValue();
+    } else if(value instanceof byte[]) {
+      return ByteBuffer.wrap((byte[])value);
+    } else if(value instanceof Number || value instanceof Boolean
+        || value instanceof ByteBuffer) {
+      return value;
+    }
+    throw new IllegalArgumentException("Values of " + value.getClass()
+        + " cannot be used in filters");
+  }
+
+  /**
+   * Compares a field value with a filter constant. Numbers are compared
+   * by their values regardless of their types, bytes are compared
+   * lexicographically as unsigned bytes.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public static int compareValues(Object fieldValue, Object value) {
+    Object left = normalize(fieldValue);
+    Object right = normalize(value);
+    if(left instanceof Number && right instanceof Number) {
+      if(isIntegral(left) && isIntegral(right)) {
+        long l = ((Number)left).longValue();
+        long r = ((Number)right).longValue();
+        return l < r ? -1 : (l == r ? 0 : 1);
+      }
+      return Double.compare(((Number)left).doubleValue()
+          , ((Number)right).doubleValue());
+    } else if(left instanceof ByteBuffer && right instanceof ByteBuffer) {
+      return compareBytes((ByteBuffer) left, (ByteBuffer) right);
+    } else if(left.getClass().equals(right.getClass())) {
+      return ((Comparable)left).compareTo(right);
+    }
+    throw new IllegalArgumentException("Cannot compare " + left.getClass()
+        + " with " + right.getClass());
+  }
+
+  /**
+   * Compares the remaining bytes of the buffers as unsigned bytes. The
+   * direct and read only buffers, which have no accessible array, are
+   * read with absolute gets.
+   */
+  private static int compareBytes(ByteBuffer l, ByteBuffer r) {
+    if(l.hasArray() && r.hasArray()) {
+      return ByteUtils.compareTo(l.array(), l.arrayOffset() + l.position(), l.remaining()
+          , r.array(), r.arrayOffset() + r.position(), r.remaining());
+    }
+    int length = Math.min(l.remaining(), r.remaining());
+    for(int i=0; i<length; i++) {
+      int cmp = (l.get(l.position() + i) & 0xff) - (r.get(r.position() + i) & 0xff);
+      if(cmp != 0) {
+        return cmp;
+      }
+    }
+    return l.remaining() - r.remaining();
+  }
+
+  private static boolean isIntegral(Object value) {
+    return value instanceof Integer || value instanceof Long;
+  }
+
+  /** Writes a filter constant, or a {@link Param} */
+  public static void writeValue(DataOutput out, Object value) throws IOException {
+    if(value == null) {
+      out.writeByte(NULL_VALUE);
+    } else if(value instanceof String) {
+      out.writeByte(STRING_VALUE);
+      Text.writeString(out, (String) value);
+    } else if(value instanceof Integer) {
+      out.writeByte(INT_VALUE);
+      WritableUtils.writeVInt(out, (Integer) value);
+    } else if(value instanceof Long) {
+      out.writeByte(LONG_VALUE);
+      WritableUtils.writeVLong(out, (Long) value);
+    } else if(value instanceof Float) {
+      out.writeByte(FLOAT_VALUE);
+      out.writeFloat((Float) value);
+    } else if(value instanceof Double) {
+      out.writeByte(DOUBLE_VALUE);
+      out.writeDouble((Double) value);
+    } else if(value instanceof Boolean) {
+      out.writeByte(BOOLEAN_VALUE);
+      out.writeBoolean((Boolean) value);
+    } else if(value instanceof ByteBuffer) {
+      ByteBuffer buf = (ByteBuffer) value;
+      out.writeByte(BYTES_VALUE);
+      WritableUtils.writeVInt(out, buf.remaining());
+      if(buf.hasArray()) {
+        out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+      } else {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        out.write(bytes);
+      }
+    } else if(value instanceof Param) {
+      Param param = (Param) value;
+      out.writeByte(PARAM_VALUE);
+      out.writeBoolean(param.getName() != null);
+      if(param.getName() != null) {
+        Text.writeString(out, param.getName());
+      } else {
+        WritableUtils.writeVInt(out, param.getIndex());
+      }
+    } else {
+      throw new IOException("Cannot serialize value of " + value.getClass());
+    }
+  }
+
+  /** Reads a filter constant written by {@link #writeValue(DataOutput, Object)} */
+  public static Object readValue(DataInput in) throws IOException {
+    byte type = in.readByte();
+    switch(type) {
+      case NULL_VALUE:    return null;
+      case STRING_VALUE:  return Text.readString(in);
+      case INT_VALUE:     return WritableUtils.readVInt(in);
+      case LONG_VALUE:    return WritableUtils.readVLong(in);
+      case FLOAT_VALUE:   return in.readFloat();
+      case DOUBLE_VALUE:  return in.readDouble();
+      case BOOLEAN_VALUE: return in.readBoolean();
+      case BYTES_VALUE:
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+      case PARAM_VALUE:
+        return in.readBoolean() ? new Param(Text.readString(in))
+            : new Param(WritableUtils.readVInt(in));
+    }
+    throw new IOException("Unknown value type: " + type);
+  }
+}
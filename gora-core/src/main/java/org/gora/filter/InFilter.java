@@ -0,0 +1,105 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.gora.persistency.Persistent;
+
+/**
+ * Accepts the objects whose field is equal to one of the values. An
+ * InFilter without values accepts no objects.
+ */
+public class InFilter implements Filter {
+
+  private String field;
+  private Object[] values;
+
+  public InFilter() {
+  }
+
+  public InFilter(String field, Object... values) {
+    this.field = field;
+    this.values = new Object[values.length];
+    for(int i=0; i<values.length; i++) {
+      if(values[i] == null) {
+        throw new IllegalArgumentException("Cannot compare with null, use "
+            + "Filters.isNull() instead");
+      }
+      this.values[i] = Filters.normalize(values[i]);
+    }
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public Object[] getValues() {
+    return values;
+  }
+
+  @Override
+  public Boolean evaluate(Persistent persistent) {
+    Object fieldValue = Filters.getFieldValue(persistent, field);
+    if(fieldValue == null) {
+      return null;
+    }
+    for(Object value : values) {
+      if(Filters.compareValues(fieldValue, value) == 0) {
+        return Boolean.TRUE;
+      }
+    }
+    return Boolean.FALSE;
+  }
+
+  @Override
+  public void getFields(Set<String> fields) {
+    fields.add(field);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    field = Text.readString(in);
+    values = new Object[WritableUtils.readVInt(in)];
+    for(int i=0; i<values.length; i++) {
+      values[i] = Filters.readValue(in);
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, field);
+    WritableUtils.writeVInt(out, values.length);
+    for(Object value : values) {
+      Filters.writeValue(out, value);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(obj instanceof InFilter) {
+      InFilter that = (InFilter) obj;
+      EqualsBuilder builder = new EqualsBuilder();
+      builder.append(field, that.field);
+      builder.append(values, that.values);
+      return builder.isEquals();
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return new HashCodeBuilder().append(field).append(values).toHashCode();
+  }
+
+  @Override
+  public String toString() {
+    return field + " IN " + Arrays.toString(values);
+  }
+}
@@ -0,0 +1,66 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.hadoop.io.Text;
+import org.gora.persistency.Persistent;
+
+/**
+ * Accepts the objects whose field is null.
+ */
+public class IsNullFilter implements Filter {
+
+  private String field;
+
+  public IsNullFilter() {
+  }
+
+  public IsNullFilter(String field) {
+    this.field = field;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  @Override
+  public Boolean evaluate(Persistent persistent) {
+    return Filters.getFieldValue(persistent, field) == null;
+  }
+
+  @Override
+  public void getFields(Set<String> fields) {
+    fields.add(field);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    field = Text.readString(in);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Text.writeString(out, field);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(obj instanceof IsNullFilter) {
+      return field.equals(((IsNullFilter)obj).field);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return field.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return field + " IS NULL";
+  }
+}
@@ -0,0 +1,71 @@
+package org.gora.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+
+import org.gora.persistency.Persistent;
+import org.gora.util.IOUtils;
+
+/**
+ * Negates a filter. The negation of unknown is unknown.
+ */
+public class NotFilter implements Filter {
+
+  private Filter filter;
+
+  public NotFilter() {
+  }
+
+  public NotFilter(Filter filter) {
+    this.filter = filter;
+  }
+
+  public Filter getFilter() {
+    return filter;
+  }
+
+  @Override
+  public Boolean evaluate(Persistent persistent) {
+    Boolean result = filter.evaluate(persistent);
+    return result == null ? null : !result;
+  }
+
+  @Override
+  public void getFields(Set<String> fields) {
+    filter.getFields(fields);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    try {
+      filter = IOUtils.deserialize(null, in, null);
+    } catch (ClassNotFoundException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    IOUtils.serialize(null, out, filter);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(obj instanceof NotFilter) {
+      return filter.equals(((NotFilter)obj).filter);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return ~filter.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "NOT (" + filter + ")";
+  }
+}
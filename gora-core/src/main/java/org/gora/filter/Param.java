@@ -0,0 +1,65 @@
+package org.gora.filter;
+
+/**
+ * A placeholder for a filter value, which is bound to an actual value
+ * per execution by {@link org.gora.query.Query#setParam(String, Object)}
+ * or {@link org.gora.query.Query#setParam(int, Object)}. Parameters are
+ * either named, or positional with indexes starting from 1.
+ * @see Filters#param(String)
+ * @see Filters#param(int)
+ */
+public final class Param {
+
+  private final String name;
+  private final int index;
+
+  Param(String name) {
+    if(name == null) {
+      throw new IllegalArgumentException("Parameter name cannot be null");
+    }
+    this.name = name;
+    this.index = -1;
+  }
+
+  Param(int index) {
+    if(index < 1) {
+      throw new IllegalArgumentException("Parameter indexes start from 1");
+    }
+    this.name = null;
+    this.index = index;
+  }
+
+  /**
+   * Returns the name of the parameter, or null if it is positional
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the index of the parameter, or -1 if it is named
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(!(obj instanceof Param)) {
+      return false;
+    }
+    Param that = (Param) obj;
+    return index == that.index
+      && (name == null ? that.name == null : name.equals(that.name));
+  }
+
+  @Override
+  public int hashCode() {
+    return name == null ? index : name.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return name == null ? "?" + index : ":" + name;
+  }
+}
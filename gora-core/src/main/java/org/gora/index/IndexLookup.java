@@ -0,0 +1,184 @@
+package org.gora.index;
+
+import java.util.Collection;
+
+import org.gora.filter.FieldValueFilter;
+import org.gora.filter.Filter;
+import org.gora.filter.FilterList;
+import org.gora.filter.FilterOp;
+import org.gora.filter.Filters;
+
+/**
+ * An equality or a range lookup on an indexed field, derived from the
+ * filter of a query. The lookup selects a superset of the objects
+ * accepted by the filter, so the filter is still evaluated against the
+ * objects found through the index.
+ */
+public class IndexLookup {
+
+  private final String field;
+
+  private Object lowerValue;
+  private boolean lowerInclusive;
+
+  private Object upperValue;
+  private boolean upperInclusive;
+
+  public IndexLookup(String field) {
+    this.field = field;
+  }
+
+  /**
+   * Returns the lookup of the filter on one of the indexed fields, or null
+   * if the filter cannot be answered by the indexes. The filter is answered
+   * if it is a comparison of an indexed field with a constant, or a
+   * conjunction including such comparisons. Equality lookups are preferred
+   * to the ranges, and the ranges bounded at both ends to the others.
+   * @param filter the filter with its parameters bound
+   * @param indexedFields the indexed fields
+   */
+  public static IndexLookup create(Filter filter, Collection<String> indexedFields) {
+    if(filter == null || indexedFields.isEmpty()) {
+      return null;
+    }
+    if(filter instanceof FieldValueFilter) {
+      IndexLookup lookup = new IndexLookup(((FieldValueFilter)filter).getField());
+      if(indexedFields.contains(lookup.field)
+          && lookup.restrict((FieldValueFilter) filter)) {
+        return lookup;
+      }
+    } else if(filter instanceof FilterList
+        && ((FilterList)filter).getOperator() == FilterList.Operator.AND) {
+      IndexLookup best = null;
+      for(String field : indexedFields) {
+        IndexLookup lookup = new IndexLookup(field);
+        boolean restricted = false;
+        for(Filter f : ((FilterList)filter).getFilters()) {
+          if(f instanceof FieldValueFilter
+              && ((FieldValueFilter)f).getField().equals(field)) {
+            restricted |= lookup.restrict((FieldValueFilter) f);
+          }
+        }
+        if(restricted && (best == null || lookup.getRank() > best.getRank())) {
+          best = lookup;
+        }
+      }
+      return best;
+    }
+    return null;
+  }
+
+  /**
+   * Narrows the lookup by the comparison, returns false if the comparison
+   * cannot be looked up.
+   */
+  private boolean restrict(FieldValueFilter filter) {
+    Object value = filter.getValue();
+    switch(filter.getOp()) {
+      case EQUALS:
+        setLower(value, true);
+        setUpper(value, true);
+        return true;
+      case GREATER:
+      case GREATER_OR_EQUAL:
+        setLower(value, filter.getOp() == FilterOp.GREATER_OR_EQUAL);
+        return true;
+      case LESS:
+      case LESS_OR_EQUAL:
+        setUpper(value, filter.getOp() == FilterOp.LESS_OR_EQUAL);
+        return true;
+    }
+    return false;
+  }
+
+  private void setLower(Object value, boolean inclusive) {
+    int cmp = lowerValue == null ? 1 : Filters.compareValues(value, lowerValue);
+    if(cmp > 0 || (cmp == 0 && !inclusive)) {
+      lowerValue = value;
+      lowerInclusive = inclusive;
+    }
+  }
+
+  private void setUpper(Object value, boolean inclusive) {
+    int cmp = upperValue == null ? -1 : Filters.compareValues(value, upperValue);
+    if(cmp < 0 || (cmp == 0 && !inclusive)) {
+      upperValue = value;
+      upperInclusive = inclusive;
+    }
+  }
+
+  private int getRank() {
+    if(isEquality()) {
+      return 3;
+    }
+    return (lowerValue != null ? 1 : 0) + (upperValue != null ? 1 : 0);
+  }
+
+  /** Returns the indexed field */
+  public String getField() {
+    return field;
+  }
+
+  /** Returns the lower bound of the values, or null if not bounded below */
+  public Object getLowerValue() {
+    return lowerValue;
+  }
+
+  public boolean isLowerInclusive() {
+    return lowerInclusive;
+  }
+
+  /** Returns the upper bound of the values, or null if not bounded above */
+  public Object getUpperValue() {
+    return upperValue;
+  }
+
+  public boolean isUpperInclusive() {
+    return upperInclusive;
+  }
+
+  /** Returns whether the lookup is for a single value */
+  public boolean isEquality() {
+    return lowerValue != null && upperValue != null && lowerInclusive
+      && upperInclusive && Filters.compareValues(lowerValue, upperValue) == 0;
+  }
+
+  /** Returns whether no value can satisfy the bounds */
+  public boolean isEmpty() {
+    if(lowerValue == null || upperValue == null) {
+      return false;
+    }
+    int cmp = Filters.compareValues(lowerValue, upperValue);
+    return cmp > 0 || (cmp == 0 && !(lowerInclusive && upperInclusive));
+  }
+
+  /** Returns whether the value is within the bounds of the lookup */
+  public boolean contains(Object value) {
+    if(value == null) {
+      return false;
+    }
+    if(lowerValue != null) {
+      int cmp = Filters.compareValues(value, lowerValue);
+      if(cmp < 0 || (cmp == 0 && !lowerInclusive)) {
+        return false;
+      }
+    }
+    if(upperValue != null) {
+      int cmp = Filters.compareValues(value, upperValue);
+      if(cmp > 0 || (cmp == 0 && !upperInclusive)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    if(isEquality()) {
+      return field + " = " + lowerValue;
+    }
+    return field + " in " + (lowerValue == null ? "(-inf" : (lowerInclusive ? "[" : "(")
+        + lowerValue) + ", " + (upperValue == null ? "+inf)" : upperValue
+        + (upperInclusive ? "]" : ")"));
+  }
+}
@@ -0,0 +1,120 @@
+package org.gora.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.gora.filter.Filters;
+import org.gora.persistency.Persistent;
+
+/**
+ * An in memory index of the values of a field, mapping the values to
+ * the keys of the objects having them. The index also keeps the indexed
+ * value of every key, so that the objects modified in place can be
+ * reindexed. SecondaryIndex is not thread safe.
+ */
+public class SecondaryIndex<K> {
+
+  private final String field;
+
+  private final TreeMap<Object, Set<K>> entries =
+    new TreeMap<Object, Set<K>>(VALUE_ORDER);
+
+  private final Map<K, Object> values = new HashMap<K, Object>();
+
+  public SecondaryIndex(String field) {
+    this.field = field;
+  }
+
+  /** Returns the indexed field */
+  public String getField() {
+    return field;
+  }
+
+  /**
+   * Updates the entry of the key from the object put with it. The index
+   * is not touched if the indexed field of the object is not dirty and
+   * the key is already indexed.
+   */
+  public void put(K key, Persistent persistent) {
+    int fieldIndex = persistent.getFieldIndex(field);
+    if(!persistent.isDirty(fieldIndex) && values.containsKey(key)) {
+      return;
+    }
+    remove(key);
+    Object value = persistent.get(fieldIndex);
+    if(value == null) {
+      return;
+    }
+    value = Filters.normalize(value);
+    values.put(key, value);
+    Set<K> keys = entries.get(value);
+    if(keys == null) {
+      keys = new LinkedHashSet<K>();
+      entries.put(value, keys);
+    }
+    keys.add(key);
+  }
+
+  /** Removes the entry of the key */
+  public void remove(K key) {
+    Object value = values.remove(key);
+    if(value == null) {
+      return;
+    }
+    Set<K> keys = entries.get(value);
+    keys.remove(key);
+    if(keys.isEmpty()) {
+      entries.remove(value);
+    }
+  }
+
+  /**
+   * Returns the keys of the objects whose values are in the bounds of the
+   * lookup, in the order of the values.
+   */
+  public List<K> seek(IndexLookup lookup) {
+    List<K> keys = new ArrayList<K>();
+    if(lookup.isEmpty()) {
+      return keys;
+    }
+    NavigableMap<Object, Set<K>> range = entries;
+    if(lookup.getLowerValue() != null) {
+      range = range.tailMap(Filters.normalize(lookup.getLowerValue())
+          , lookup.isLowerInclusive());
+    }
+    if(lookup.getUpperValue() != null) {
+      range = range.headMap(Filters.normalize(lookup.getUpperValue())
+          , lookup.isUpperInclusive());
+    }
+    for(Collection<K> valueKeys : range.values()) {
+      keys.addAll(valueKeys);
+    }
+    return keys;
+  }
+
+  /** Removes all the entries */
+  public void clear() {
+    entries.clear();
+    values.clear();
+  }
+
+  /** Returns the number of indexed keys */
+  public int size() {
+    return values.size();
+  }
+
+  private static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+    @Override
+    public int compare(Object v1, Object v2) {
+      return Filters.compareValues(v1, v2);
+    }
+  };
+}
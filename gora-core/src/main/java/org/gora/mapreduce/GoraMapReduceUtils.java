@@ -11,7 +11,11 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.metrics.DataStoreMetrics.Operation;
+import org.gora.metrics.OperationMetrics;
 import org.gora.util.StringUtils;
 
 /**
@@ -61,4 +65,34 @@ public class GoraMapReduceUtils {
     
     return new JobContext(conf, null);
   }
+
+  /**
+   * Adds the metrics of the task's DataStore operations to the Hadoop
+   * counters of the task, in the counter group "Gora &lt;store&gt;[&lt;schema&gt;]".
+   * Does nothing if the context does not have counters.
+   */
+  public static void incrementCounters(TaskAttemptContext context
+      , DataStoreMetrics metrics) {
+    if(!(context instanceof TaskInputOutputContext)) {
+      return;
+    }
+    TaskInputOutputContext<?, ?, ?, ?> ioContext =
+      (TaskInputOutputContext<?, ?, ?, ?>) context;
+    String group = "Gora " + metrics;
+    for(Operation operation : Operation.values()) {
+      OperationMetrics operationMetrics = metrics.getMetrics(operation);
+      if(operationMetrics.getCount() == 0) {
+        continue;
+      }
+      String name = operation.getName();
+      ioContext.getCounter(group, name + " count").increment(
+          operationMetrics.getCount());
+      ioContext.getCounter(group, name + " errors").increment(
+          operationMetrics.getErrorCount());
+      ioContext.getCounter(group, name + " bytes").increment(
+          operationMetrics.getBytes());
+      ioContext.getCounter(group, name + " time (ms)").increment(
+          operationMetrics.getLatencies().getSum() / 1000);
+    }
+  }
 }
@@ -11,10 +11,12 @@ import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.gora.metrics.DataStoreMetrics;
 import org.gora.persistency.Persistent;
 import org.gora.store.DataStore;
 import org.gora.store.DataStoreFactory;
 import org.gora.store.FileBackedDataStore;
+import org.gora.store.impl.MetricsDataStore;
 
 public class GoraOutputFormat<K, T extends Persistent>
   extends OutputFormat<K, T> {
@@ -60,16 +62,27 @@ public class GoraOutputFormat<K, T extends Persistent>
       = (Class<? extends DataStore<K,T>>) conf.getClass(DATA_STORE_CLASS, null);
     Class<K> keyClass = (Class<K>) conf.getClass(OUTPUT_KEY_CLASS, null);
     Class<T> rowClass = (Class<T>) conf.getClass(OUTPUT_VALUE_CLASS, null);
-    final DataStore<K, T> store =
+    DataStore<K, T> dataStore =
       DataStoreFactory.createDataStore(dataStoreClass, keyClass, rowClass);
 
-    setOutputPath(store, context);
+    setOutputPath(dataStore, context);
+
+    //the metrics of the task are added to its counters
+    final DataStoreMetrics metrics = new DataStoreMetrics(
+        dataStore.getClass().getName(), dataStore.getSchemaName());
+    final DataStore<K, T> store = new MetricsDataStore<K, T>(dataStore, metrics
+        , DataStoreFactory.findBooleanProperty(DataStoreFactory.properties
+            , dataStore, MetricsDataStore.METRICS_BYTES_PROPERTY, "true"));
 
     return new RecordWriter<K, T>() {
       @Override
       public void close(TaskAttemptContext context) throws IOException,
           InterruptedException {
-        store.close();
+        try {
+          store.close();
+        } finally {
+          GoraMapReduceUtils.incrementCounters(context, metrics);
+        }
       }
 
       @Override
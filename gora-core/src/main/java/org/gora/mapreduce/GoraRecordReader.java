@@ -6,25 +6,57 @@ import java.io.IOException;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.metrics.DataStoreMetrics.Operation;
 import org.gora.persistency.Persistent;
 import org.gora.query.Query;
 import org.gora.query.Result;
+import org.gora.query.impl.MetricsResult;
+import org.gora.query.impl.PrefetchingResult;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.DelegatingDataStore;
+import org.gora.store.impl.MetricsDataStore;
 
 /**
  * An adapter for Result to Hadoop RecordReader.
+ * The results are read ahead by a {@link PrefetchingResult} if the query
+ * or the job configuration sets a prefetch size. The metrics of the
+ * query are added to the Hadoop counters of the task when it is closed.
  */
 public class GoraRecordReader<K, T extends Persistent> 
 extends RecordReader<K,T> {
 
+  /** The number of results to prefetch, if the query does not set it */
+  public static final String PREFETCH_SIZE_KEY = "gora.query.prefetch.size";
+
   protected Query<K,T> query;
   protected Result<K,T> result;
+
+  private TaskAttemptContext context;
+  private DataStoreMetrics metrics;
   
   public GoraRecordReader(Query<K,T> query) {
     this.query = query;
   }
 
   public void executeQuery() throws IOException {
-    this.result = query.execute();
+    if(metrics == null) {
+      this.result = query.execute();
+      return;
+    }
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      this.result = new MetricsResult<K, T>(query.execute(), metrics
+          , DataStoreFactory.findBooleanProperty(DataStoreFactory.properties
+              , query.getDataStore(), MetricsDataStore.METRICS_BYTES_PROPERTY
+              , "true"));
+      success = true;
+    } finally {
+      metrics.record(Operation.EXECUTE, start, 0, success);
+    }
   }
   
   @Override
@@ -44,7 +76,20 @@ extends RecordReader<K,T> {
 
   @Override
   public void initialize(InputSplit split, TaskAttemptContext context)
-  throws IOException, InterruptedException { }
+  throws IOException, InterruptedException {
+    if(context instanceof TaskInputOutputContext) {
+      this.context = context;
+      DataStore<K, T> store = DelegatingDataStore.unwrap(query.getDataStore());
+      this.metrics = new DataStoreMetrics(store.getClass().getName()
+          , store.getSchemaName());
+    }
+    if(query.getPrefetchSize() < 0) {
+      int prefetchSize = context.getConfiguration().getInt(PREFETCH_SIZE_KEY, -1);
+      if(prefetchSize >= 0) {
+        query.setPrefetchSize(prefetchSize);
+      }
+    }
+  }
 
   @Override
   public boolean nextKeyValue() throws IOException, InterruptedException {
@@ -57,7 +102,12 @@ extends RecordReader<K,T> {
 
   @Override
   public void close() throws IOException {
-    result.close();
+    if(result != null) {
+      result.close();
+    }
+    if(metrics != null) {
+      GoraMapReduceUtils.incrementCounters(context, metrics);
+    }
   }
 
 }
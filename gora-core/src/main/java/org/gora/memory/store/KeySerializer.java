@@ -0,0 +1,55 @@
+package org.gora.memory.store;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.gora.util.ByteUtils;
+import org.gora.util.IOUtils;
+
+/**
+ * Serializes the keys of the in memory stores to bytes. The strings and
+ * the numbers are serialized directly, other keys by the Hadoop
+ * serializations of the configuration.
+ */
+class KeySerializer<K> {
+
+  private final Class<K> keyClass;
+
+  private final Configuration conf;
+
+  public KeySerializer(Class<K> keyClass, Configuration conf) {
+    this.keyClass = keyClass;
+    this.conf = conf;
+  }
+
+  public byte[] toBytes(K key) throws IOException {
+    if(key instanceof String) {
+      return ByteUtils.toBytes((String) key);
+    } else if(key instanceof Long) {
+      return ByteUtils.toBytes((Long) key);
+    } else if(key instanceof Integer) {
+      return ByteUtils.toBytes((Integer) key);
+    }
+    DataOutputBuffer out = new DataOutputBuffer();
+    IOUtils.serialize(conf, out, key, keyClass);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @SuppressWarnings("unchecked")
+  public K fromBytes(byte[] bytes) throws IOException {
+    if(keyClass == String.class) {
+      return (K) ByteUtils.toString(bytes);
+    } else if(keyClass == Long.class) {
+      return (K) Long.valueOf(ByteUtils.toLong(bytes));
+    } else if(keyClass == Integer.class) {
+      return (K) Integer.valueOf(ByteUtils.toInt(bytes));
+    }
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    return IOUtils.deserialize(conf, in, null, keyClass);
+  }
+}
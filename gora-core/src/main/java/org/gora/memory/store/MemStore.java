@@ -1,30 +1,147 @@
 
 package org.gora.memory.store;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+import org.apache.hadoop.util.StringUtils;
+import org.gora.filter.Filters;
+import org.gora.index.IndexLookup;
+import org.gora.index.SecondaryIndex;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.impl.StateManagerImpl;
+import org.gora.query.Aggregation;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
 import org.gora.query.Result;
+import org.gora.query.impl.IndexResult;
 import org.gora.query.impl.PartitionQueryImpl;
 import org.gora.query.impl.QueryBase;
 import org.gora.query.impl.ResultBase;
 import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
 import org.gora.store.impl.DataStoreBase;
+import org.gora.util.AvroUtils;
+import org.gora.util.OperationNotSupportedException;
 
 /**
  * Memory based {@link DataStore} implementation for tests.
+ *
+ * <p> The fields of the persistent class listed in the property
+ * "gora.memstore.indexes" (or "gora.datastore.indexes"), or added by
+ * {@link #addIndex(String)}, are indexed, and the queries filtering on
+ * them are answered from the indexes, in the order of the keys as the
+ * other queries.
+ *
+ * <p> The write time of every object is kept, and the queries with time
+ * ranges return the objects written in the range.
+ *
+ * <p> MemStore is not thread safe, unless the property
+ * "gora.memstore.concurrent" is set. Concurrent stores keep the objects in
+ * a {@link ConcurrentSkipListMap}, and can be shared by any number of
+ * threads without locking. The stored objects are never modified: puts
+ * merge the dirty fields of the objects put into copies of the stored
+ * objects, as the other stores write only the dirty fields, and gets and
+ * scans return copies. The scans are weakly consistent, they may or may
+ * not see the writes made while scanning.
+ *
+ * <p> The contents of the store are lost when it is closed, unless the
+ * property "gora.memstore.wal.dir" is set. The writes are then logged to a
+ * write ahead log in a subdirectory named after the persistent class, and
+ * the objects are recovered when a store is initialized with the same
+ * directory. "gora.memstore.wal.sync" sets when the log is forced to the
+ * disk: "always" on every write, "interval" every
+ * "gora.memstore.wal.sync.interval" milliseconds, or "flush" (the default)
+ * on {@link #flush()} and {@link #close()}. Every
+ * "gora.memstore.snapshot.interval" writes, or on {@link #snapshot()}, the
+ * objects are written to a snapshot and the older log is deleted. The
+ * recovered records are decoded by "gora.memstore.recovery.threads"
+ * threads, the number of processors by default.
+ *
+ * <p> The queries are split by {@link #getPartitions(Query)} into
+ * "gora.memstore.partitions" key ranges of about the same size, the number
+ * of processors by default, which can be run in parallel, for example by
+ * a {@link org.gora.query.ParallelQueryExecutor}. The partitions of a store
+ * which is not concurrent can be run in parallel only while the store is
+ * not written.
+ *
+ * <p> If the property "gora.memstore.max.memory" is set, the store keeps
+ * the estimated size of its objects under the given number of bytes, by
+ * evicting the least recently used objects, or with "gora.memstore.eviction"
+ * set to "age", the least recently put ones. The evicted objects are
+ * dropped, unless "gora.memstore.spill.dir" is set, where they are spilled
+ * to Avro data files, which the gets and the scans read transparently. The
+ * objects read from the spill are not brought back into memory, and they
+ * are kept in the spill until they are put again or deleted.
+ *
+ * <p> Bounded stores cannot be concurrent or have a write ahead log, and
+ * "gora.memstore.eviction" and "gora.memstore.spill.dir" are only valid
+ * with "gora.memstore.max.memory". {@link #initialize(Class, Class,
+ * Properties)} throws an {@link IllegalArgumentException} for the other
+ * combinations.
  */
 public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
+  /** Comma separated names of the indexed fields */
+  public static final String INDEXES_PROPERTY = "indexes";
+
+  /** Whether the store can be shared by threads */
+  public static final String CONCURRENT_PROPERTY = "concurrent";
+
+  /** The directory of the write ahead log and the snapshots */
+  public static final String WAL_DIR_PROPERTY = "wal.dir";
+
+  /** When the write ahead log is synced: always, interval or flush */
+  public static final String WAL_SYNC_PROPERTY = "wal.sync";
+
+  /** The interval of the syncs in milliseconds, for the interval policy */
+  public static final String WAL_SYNC_INTERVAL_PROPERTY = "wal.sync.interval";
+
+  /** The number of the writes between the snapshots, 0 for no snapshots */
+  public static final String SNAPSHOT_INTERVAL_PROPERTY = "snapshot.interval";
+
+  /** The number of the threads decoding the records on recovery */
+  public static final String RECOVERY_THREADS_PROPERTY = "recovery.threads";
+
+  public static final long DEFAULT_SNAPSHOT_INTERVAL = 1000000;
+
+  /** The number of the partitions of the queries */
+  public static final String PARTITIONS_PROPERTY = "partitions";
+
+  /** The maximum estimated size of the objects in memory, 0 for no bound */
+  public static final String MAX_MEMORY_PROPERTY = "max.memory";
+
+  /** The objects evicted from a bounded store first: lru or age */
+  public static final String EVICTION_PROPERTY = "eviction";
+
+  /** The directory of the objects evicted from a bounded store */
+  public static final String SPILL_DIR_PROPERTY = "spill.dir";
+
+  /** The eviction policies of the bounded stores */
+  public static enum Eviction {
+    /** Evicts the least recently read or put objects */
+    LRU,
+    /** Evicts the least recently put objects */
+    AGE
+  }
+
   public static class MemQuery<K, T extends Persistent> extends QueryBase<K, T> {
     public MemQuery() {
       super(null);
@@ -34,20 +151,99 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     }
   }
 
+  /**
+   * A partition of a query, whose end key may be excluded, so that the
+   * end key of a partition is the start key of the next one.
+   */
+  public static class MemPartitionQuery<K, T extends Persistent>
+    extends PartitionQueryImpl<K, T> {
+
+    private boolean endKeyExclusive;
+
+    public MemPartitionQuery() {
+    }
+
+    public MemPartitionQuery(Query<K, T> baseQuery, K startKey, K endKey
+        , boolean endKeyExclusive) {
+      super(baseQuery, startKey, endKey);
+      this.endKeyExclusive = endKeyExclusive;
+    }
+
+    /** Returns whether the objects with the end key are excluded */
+    public boolean isEndKeyExclusive() {
+      return endKeyExclusive;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      super.write(out);
+      out.writeBoolean(endKeyExclusive);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      super.readFields(in);
+      endKeyExclusive = in.readBoolean();
+    }
+  }
+
   public static class MemResult<K, T extends Persistent> extends ResultBase<K, T> {
     private NavigableMap<K, T> map;
-    private Iterator<K> iterator;
+    private Map<K, Long> writeTimes;
+    private boolean copy;
+    private Iterator<Map.Entry<K, T>> iterator;
+    private MemStoreSpill<K, T> spill;
+    private Iterator<K> spilledKeys;
+    private Map.Entry<K, T> nextEntry;
+    private K nextSpilledKey;
+    private int size = -1;
+    private int read = 0;
     public MemResult(DataStore<K, T> dataStore, Query<K, T> query
         , NavigableMap<K, T> map) {
+      this(dataStore, query, map, null);
+    }
+    /**
+     * @param writeTimes the write times of the keys, to select the
+     * objects in the time range of the query, or null
+     */
+    public MemResult(DataStore<K, T> dataStore, Query<K, T> query
+        , NavigableMap<K, T> map, Map<K, Long> writeTimes) {
+      this(dataStore, query, map, writeTimes, false);
+    }
+    /**
+     * @param writeTimes the write times of the keys, to select the
+     * objects in the time range of the query, or null
+     * @param copy whether to return copies of the objects in the map,
+     * with the fields of the query, instead of the objects themselves
+     */
+    public MemResult(DataStore<K, T> dataStore, Query<K, T> query
+        , NavigableMap<K, T> map, Map<K, Long> writeTimes, boolean copy) {
       super(dataStore, query);
       this.map = map;
-      iterator = map.navigableKeySet().iterator();
+      this.copy = copy;
+      if(hasTimeRange(query)) {
+        this.writeTimes = writeTimes;
+      }
+      iterator = map.entrySet().iterator();
+    }
+    /**
+     * Merges the objects in the spill with the keys in the range of the
+     * query into the result, in the order of the keys.
+     */
+    void setSpill(MemStoreSpill<K, T> spill, NavigableMap<K, ?> spilledKeys) {
+      this.spill = spill;
+      this.spilledKeys = spilledKeys.keySet().iterator();
+      size = map.size() + spilledKeys.size();
     }
     @Override
     public void close() throws IOException { }
     @Override
     public float getProgress() throws IOException {
-      return 0;
+      if(size < 0) {
+        //the size of a concurrent map is computed by traversing it
+        size = map.size();
+      }
+      return getProgress(size == 0 ? 1f : Math.min(1f, read / (float) size));
     }
 
     @Override
@@ -55,65 +251,510 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
     @Override
     public boolean nextInner() throws IOException {
-      if(!iterator.hasNext()) {
-        return false;
+      if(spill != null) {
+        return nextMerged();
       }
+      Map.Entry<K, T> entry;
+      do {
+        if(!iterator.hasNext()) {
+          return false;
+        }
+        entry = iterator.next();
+        read++;
+      } while(writeTimes != null
+          && !isWrittenInTimeRange(query, writeTimes.get(entry.getKey())));
 
-      key = iterator.next();
-      persistent = map.get(key);
-
+      key = entry.getKey();
+      persistent = copy ? copyOf(entry.getValue(), query.getFields())
+          : entry.getValue();
       return true;
     }
+
+    /** Returns the next of the objects in the map and in the spill */
+    @SuppressWarnings("unchecked")
+    private boolean nextMerged() throws IOException {
+      while(true) {
+        if(nextEntry == null && iterator.hasNext()) {
+          nextEntry = iterator.next();
+        }
+        if(nextSpilledKey == null && spilledKeys.hasNext()) {
+          nextSpilledKey = spilledKeys.next();
+        }
+        if(nextEntry == null && nextSpilledKey == null) {
+          return false;
+        }
+        read++;
+        if(nextSpilledKey == null || (nextEntry != null
+            && ((Comparable<K>) nextEntry.getKey())
+            .compareTo(nextSpilledKey) < 0)) {
+          key = nextEntry.getKey();
+          persistent = nextEntry.getValue();
+          nextEntry = null;
+        } else {
+          key = nextSpilledKey;
+          persistent = null;
+          nextSpilledKey = null;
+        }
+        if(writeTimes == null
+            || isWrittenInTimeRange(query, writeTimes.get(key))) {
+          if(persistent == null) {
+            persistent = spill.read(key, getDataStore().newPersistent());
+          }
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether the write time is in the time range of the query. The
+   * objects without write times, which the concurrent stores are deleting,
+   * are not in any range.
+   */
+  static boolean isWrittenInTimeRange(Query<?, ?> query, Long time) {
+    return time != null && ResultBase.isInTimeRange(query, time);
+  }
+
+  private NavigableMap<K, T> map = new TreeMap<K, T>();
+
+  /** The times the objects were last written, keyed by their keys */
+  private Map<K, Long> writeTimes = new HashMap<K, Long>();
+
+  /** The secondary indexes, keyed by the indexed fields */
+  private Map<String, SecondaryIndex<K>> indexes =
+    new LinkedHashMap<String, SecondaryIndex<K>>();
+
+  private boolean concurrent;
+
+  private MemStoreJournal<K, T> journal;
+
+  private int numPartitions;
+
+  private long maxMemory;
+
+  /**
+   * The estimated sizes of the objects in memory of a bounded store, in
+   * the order they are evicted
+   */
+  private LinkedHashMap<K, Long> sizes;
+
+  /** The estimated size of the objects in memory of a bounded store */
+  private long byteSize;
+
+  private long evictionCount;
+
+  private MemStoreSpill<K, T> spill;
+
+  @Override
+  public void initialize(Class<K> keyClass, Class<T> persistentClass,
+      Properties properties) throws IOException {
+    super.initialize(keyClass, persistentClass, properties);
+    boolean isConcurrent = DataStoreFactory.findBooleanProperty(properties
+        , this, CONCURRENT_PROPERTY, "false");
+    String walDir = DataStoreFactory.findProperty(properties, this
+        , WAL_DIR_PROPERTY, null);
+    maxMemory = Long.parseLong(DataStoreFactory.findProperty(properties, this
+        , MAX_MEMORY_PROPERTY, "0"));
+    String eviction = DataStoreFactory.findProperty(properties, this
+        , EVICTION_PROPERTY, null);
+    String spillDir = DataStoreFactory.findProperty(properties, this
+        , SPILL_DIR_PROPERTY, null);
+    checkModes(isConcurrent, walDir, eviction, spillDir);
+
+    if(isConcurrent) {
+      concurrent = true;
+      map = new ConcurrentSkipListMap<K, T>();
+      writeTimes = new ConcurrentHashMap<K, Long>();
+      indexes = new ConcurrentHashMap<String, SecondaryIndex<K>>();
+    }
+    numPartitions = Integer.parseInt(DataStoreFactory.findProperty(properties
+        , this, PARTITIONS_PROPERTY
+        , String.valueOf(Runtime.getRuntime().availableProcessors())));
+    if(numPartitions < 1) {
+      throw new IllegalArgumentException("Illegal " + PARTITIONS_PROPERTY
+          + ": " + numPartitions);
+    }
+    String indexedFields = DataStoreFactory.findProperty(properties, this
+        , INDEXES_PROPERTY, null);
+    if(indexedFields != null) {
+      List<String> fields = Arrays.asList(beanFactory.getCachedPersistent().getFields());
+      for(String field : StringUtils.getStrings(indexedFields)) {
+        //the property is shared by the persistent classes
+        if(fields.contains(field.trim())) {
+          addIndex(field.trim());
+        }
+      }
+    }
+    if(maxMemory > 0) {
+      boolean accessOrder = eviction == null
+          || Eviction.valueOf(eviction.toUpperCase()) == Eviction.LRU;
+      sizes = new LinkedHashMap<K, Long>(16, 0.75f, accessOrder);
+      if(spillDir != null) {
+        //the spills of the stores sharing the directory are kept apart
+        new File(spillDir).mkdirs();
+        File dir = File.createTempFile(persistentClass.getSimpleName() + "-"
+            , "", new File(spillDir));
+        dir.delete();
+        spill = new MemStoreSpill<K, T>(dir
+            , new KeySerializer<K>(keyClass, getConf())
+            , new RecordCodec<T>(schema, datumWriter));
+      }
+    }
+    if(walDir != null) {
+      WriteAheadLog.SyncPolicy syncPolicy = WriteAheadLog.SyncPolicy.valueOf(
+          DataStoreFactory.findProperty(properties, this, WAL_SYNC_PROPERTY
+              , "flush").toUpperCase());
+      long syncInterval = Long.parseLong(DataStoreFactory.findProperty(
+          properties, this, WAL_SYNC_INTERVAL_PROPERTY, "1000"));
+      long snapshotInterval = Long.parseLong(DataStoreFactory.findProperty(
+          properties, this, SNAPSHOT_INTERVAL_PROPERTY
+          , String.valueOf(DEFAULT_SNAPSHOT_INTERVAL)));
+      int recoveryThreads = Integer.parseInt(DataStoreFactory.findProperty(
+          properties, this, RECOVERY_THREADS_PROPERTY
+          , String.valueOf(Runtime.getRuntime().availableProcessors())));
+      journal = new MemStoreJournal<K, T>(this
+          , new File(walDir, persistentClass.getSimpleName())
+          , new KeySerializer<K>(keyClass, getConf()), schema, datumWriter
+          , syncPolicy, syncInterval, snapshotInterval, recoveryThreads);
+      journal.recover();
+    }
+  }
+
+  /**
+   * Rejects the combinations of the modes which the store does not
+   * support, before any of them is set up. The eviction order of the
+   * bounded stores is not thread safe, and the write ahead log cannot
+   * recover the evicted objects.
+   */
+  private void checkModes(boolean isConcurrent, String walDir
+      , String eviction, String spillDir) {
+    if(maxMemory < 0) {
+      throw new IllegalArgumentException("Illegal " + MAX_MEMORY_PROPERTY
+          + ": " + maxMemory);
+    }
+    if(maxMemory == 0) {
+      if(eviction != null || spillDir != null) {
+        throw new IllegalArgumentException((eviction != null
+            ? EVICTION_PROPERTY : SPILL_DIR_PROPERTY) + " is set, but "
+            + MAX_MEMORY_PROPERTY + " is not");
+      }
+      return;
+    }
+    if(isConcurrent) {
+      throw new IllegalArgumentException("Bounded MemStores cannot be "
+          + "concurrent, " + MAX_MEMORY_PROPERTY + " and "
+          + CONCURRENT_PROPERTY + " are both set");
+    }
+    if(walDir != null) {
+      throw new IllegalArgumentException("Bounded MemStores cannot have a "
+          + "write ahead log, " + MAX_MEMORY_PROPERTY + " and "
+          + WAL_DIR_PROPERTY + " are both set");
+    }
+    if(eviction != null) {
+      try {
+        Eviction.valueOf(eviction.toUpperCase());
+      } catch (IllegalArgumentException ex) {
+        throw new IllegalArgumentException("Unknown " + EVICTION_PROPERTY
+            + ": " + eviction);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the store can be shared by threads
+   */
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  /**
+   * Returns the estimated size of the objects in memory in bytes, if the
+   * store is bounded
+   */
+  public long getByteSize() {
+    return byteSize;
+  }
+
+  /** Returns the number of the objects evicted from memory */
+  public long getEvictionCount() {
+    return evictionCount;
   }
 
-  private TreeMap<K, T> map = new TreeMap<K, T>();
+  /** Returns the number of the objects in the spill */
+  public int getSpilledCount() {
+    return spill == null ? 0 : spill.size();
+  }
+
+  /**
+   * Indexes the field, including the objects already in the store.
+   */
+  public void addIndex(String field) {
+    if(indexes.containsKey(field)) {
+      return;
+    }
+    if(!Arrays.asList(beanFactory.getCachedPersistent().getFields()).contains(field)) {
+      throw new IllegalArgumentException("Unknown field: " + field);
+    }
+    SecondaryIndex<K> index = new SecondaryIndex<K>(field);
+    if(concurrent) {
+      //the index is published before it is filled, so that the objects
+      //put meanwhile are either indexed by their puts or seen here
+      synchronized (index) {
+        if(((ConcurrentMap<String, SecondaryIndex<K>>) indexes)
+            .putIfAbsent(field, index) != null) {
+          return;
+        }
+        for(K key : map.keySet()) {
+          reindex(index, key);
+        }
+      }
+      return;
+    }
+    for(Map.Entry<K, T> entry : map.entrySet()) {
+      index.put(entry.getKey(), entry.getValue());
+    }
+    if(spill != null) {
+      try {
+        for(K key : spill.getKeys().keySet()) {
+          index.put(key, spill.read(key, newPersistent()));
+        }
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+    indexes.put(field, index);
+  }
 
   @Override
   public String getSchemaName() {
     return "default";
   }
 
+  /**
+   * Writes the objects in the store to a snapshot, and deletes the write
+   * ahead log written before it.
+   */
+  public void snapshot() throws IOException {
+    if(journal == null) {
+      throw new OperationNotSupportedException(
+          "The write ahead log is not enabled");
+    }
+    journal.snapshot();
+  }
+
   @Override
   public boolean delete(K key) throws IOException {
+    if(journal == null) {
+      return remove(key);
+    }
+    long sequence;
+    journal.beginWrite();
+    try {
+      synchronized (journal.getLock(key)) {
+        if(!remove(key)) {
+          return false;
+        }
+        sequence = journal.logDelete(key, System.currentTimeMillis());
+      }
+    } finally {
+      journal.endWrite();
+    }
+    journal.commit(sequence);
+    return true;
+  }
+
+  /** Deletes the object from the store, without logging the deletion */
+  boolean remove(K key) throws IOException {
+    if(concurrent) {
+      boolean deleted = map.remove(key) != null;
+      writeTimes.remove(key);
+      for(SecondaryIndex<K> index : indexes.values()) {
+        reindex(index, key);
+      }
+      return deleted;
+    }
+    for(SecondaryIndex<K> index : indexes.values()) {
+      index.remove(key);
+    }
+    writeTimes.remove(key);
+    if(sizes != null) {
+      Long size = sizes.remove(key);
+      if(size != null) {
+        byteSize -= size;
+      }
+      if(spill != null && spill.remove(key)) {
+        return true;
+      }
+    }
     return map.remove(key) != null;
   }
 
   @Override
   public long deleteByQuery(Query<K, T> query) throws IOException {
-    long deletedRows = 0;
+    //the keys are collected first, since the map cannot be modified
+    //while it is iterated
+    List<K> keys = new ArrayList<K>();
     Result<K,T> result = query.execute();
+    try {
+      while(result.next()) {
+        keys.add(result.getKey());
+      }
+    } finally {
+      result.close();
+    }
 
-    while(result.next()) {
-      if(delete(result.getKey()))
+    long deletedRows = 0;
+    for(K key : keys) {
+      if(delete(key))
         deletedRows++;
     }
-
-    return 0;
+    return deletedRows;
   }
 
   @Override
   public Result<K, T> execute(Query<K, T> query) throws IOException {
-    K startKey = query.getStartKey();
-    K endKey = query.getEndKey();
-    if(startKey == null) {
-      startKey = map.firstKey();
+    IndexLookup lookup = IndexLookup.create(Filters.bind(query.getFilter(), query)
+        , indexes.keySet());
+    if(lookup != null) {
+      //the objects are fetched by the keys found in the index, with the
+      //fields of the filter
+      query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+      SecondaryIndex<K> index = indexes.get(lookup.getField());
+      List<K> keys;
+      if(concurrent) {
+        synchronized (index) {
+          keys = index.seek(lookup);
+        }
+      } else {
+        keys = index.seek(lookup);
+      }
+      keys = IndexResult.filterKeys(keys, query);
+      if(isEndKeyExclusive(query)) {
+        keys.removeAll(Collections.singleton(query.getEndKey()));
+      }
+      //the index returns the keys in the order of the indexed values
+      Collections.sort(keys, map.comparator());
+      if(ResultBase.hasTimeRange(query)) {
+        Iterator<K> it = keys.iterator();
+        while(it.hasNext()) {
+          if(!isWrittenInTimeRange(query, writeTimes.get(it.next()))) {
+            it.remove();
+          }
+        }
+      }
+      return new IndexResult<K, T>(this, query, keys, keys.size());
     }
-    if(endKey == null) {
-      endKey = map.lastKey();
+
+    //the copies returned by the concurrent stores need the fields of the
+    //filter, which is evaluated against them
+    query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+
+    MemResult<K, T> result = new MemResult<K,T>(this, query
+        , getSubMap(map, query), writeTimes, concurrent);
+    if(isSpilled()) {
+      result.setSpill(spill, getSubMap(spill.getKeys(), query));
     }
+    return result;
+  }
+
+  private boolean isSpilled() {
+    return spill != null && spill.size() > 0;
+  }
+
+  private static<K, V> NavigableMap<K, V> getSubMap(NavigableMap<K, V> map
+      , Query<K, ?> query) {
+    NavigableMap<K, V> submap = map;
+    if(query.getStartKey() != null) {
+      submap = submap.tailMap(query.getStartKey(), true);
+    }
+    if(query.getEndKey() != null) {
+      submap = submap.headMap(query.getEndKey(), !isEndKeyExclusive(query));
+    }
+    return submap;
+  }
 
-    //check if query.fields is null
-    query.setFields(getFieldsToQuery(query.getFields()));
+  private static boolean isEndKeyExclusive(Query<?, ?> query) {
+    return query instanceof MemPartitionQuery
+        && ((MemPartitionQuery<?, ?>) query).isEndKeyExclusive();
+  }
 
-    NavigableMap<K, T> submap = map.subMap(startKey, true, endKey, true);
+  /**
+   * Queries without filters, limits and time ranges are counted from the
+   * size of the submap, and their min and max keys are the bounds of the
+   * submap.
+   */
+  @Override
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    if(map.isEmpty() && !isSpilled()) {
+      return aggregation.getFunction() == Aggregation.Function.COUNT ?
+          (Object) 0L : null;
+    }
+    if(query.getFilter() != null || query.getLimit() > 0
+        || ResultBase.hasTimeRange(query) || aggregation.getField() != null
+        || isSpilled()) {
+      return super.aggregate(query, aggregation);
+    }
+    NavigableMap<K, T> submap = getSubMap(map, query);
+    switch(aggregation.getFunction()) {
+      case COUNT:
+        return (long) submap.size();
+      case MIN_KEY:
+        return getKey(submap.firstEntry());
+      case MAX_KEY:
+        return getKey(submap.lastEntry());
+      default:
+        return super.aggregate(query, aggregation);
+    }
+  }
 
-    return new MemResult<K,T>(this, query, submap);
+  private static<K> K getKey(Map.Entry<K, ?> entry) {
+    return entry == null ? null : entry.getKey();
   }
 
   @Override
   public T get(K key, String[] fields) throws IOException {
+    T obj = getStored(key);
+    if(obj == null) {
+      return null;
+    }
+    fields = getFieldsToQuery(fields);
+    return concurrent ? copyOf(obj, fields) : getPersistent(obj, fields);
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+    throws IOException {
+    fields = getFieldsToQuery(fields);
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(K key : keys) {
+      T obj = getStored(key);
+      if(obj != null) {
+        results.put(key, concurrent ? copyOf(obj, fields)
+            : getPersistent(obj, fields));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the object stored with the key, reading it from the spill if
+   * it is not in memory, or null.
+   */
+  private T getStored(K key) throws IOException {
     T obj = map.get(key);
-    return getPersistent(obj, getFieldsToQuery(fields));
+    if(sizes == null) {
+      return obj;
+    }
+    if(obj != null) {
+      //the object is used for the lru eviction, by any of the threads
+      //reading the store
+      synchronized (sizes) {
+        sizes.get(key);
+      }
+      return obj;
+    }
+    return spill == null ? null : spill.read(key, newPersistent());
   }
 
   /**
@@ -132,6 +773,18 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     return newObj;
   }
 
+  /**
+   * Returns a deep copy of the stored object with the requested fields,
+   * which can be modified without affecting the store. The copy is not
+   * dirty, so that only the fields modified afterwards are put back.
+   */
+  @SuppressWarnings("unchecked")
+  private static<T extends Persistent> T copyOf(T obj, String[] fields) {
+    T copy = getPersistent((T) obj.clone(), fields);
+    copy.clearDirty();
+    return copy;
+  }
+
   @Override
   public Query<K, T> newQuery() {
     return new MemQuery<K, T>(this);
@@ -139,23 +792,215 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
   @Override
   public void put(K key, T obj) throws IOException {
+    if(sizes != null) {
+      storeBounded(key, obj, System.currentTimeMillis());
+      return;
+    }
+    if(journal == null) {
+      store(key, obj, System.currentTimeMillis());
+      return;
+    }
+    long sequence;
+    journal.beginWrite();
+    try {
+      //the stored object is logged, which is merged with the stored
+      //fields by the concurrent stores
+      synchronized (journal.getLock(key)) {
+        long time = System.currentTimeMillis();
+        sequence = journal.logPut(key, store(key, obj, time), time);
+      }
+    } finally {
+      journal.endWrite();
+    }
+    journal.commit(sequence);
+  }
+
+  /**
+   * Stores the object with the key.
+   * @return the stored object
+   */
+  private T store(K key, T obj, long time) {
+    if(concurrent) {
+      return putConcurrent(key, obj, time);
+    }
+    T old = map.put(key, obj);
+    writeTimes.put(key, time);
+    for(SecondaryIndex<K> index : indexes.values()) {
+      if(old != obj) {
+        //the object replaces the stored one, including its clean fields
+        index.remove(key);
+      }
+      index.put(key, obj);
+    }
+    return obj;
+  }
+
+  /**
+   * Stores the object with the key in a bounded store, replacing the
+   * spilled object if any, and evicts the objects over the bound.
+   */
+  private void storeBounded(K key, T obj, long time) throws IOException {
+    if(spill != null) {
+      spill.remove(key);
+    }
+    store(key, obj, time);
+    long size = AvroUtils.estimateSize(obj);
+    Long old = sizes.remove(key);
+    if(old != null) {
+      byteSize -= old;
+    }
+    sizes.put(key, size);
+    byteSize += size;
+
+    Iterator<Map.Entry<K, Long>> it = sizes.entrySet().iterator();
+    while(byteSize > maxMemory && it.hasNext()) {
+      Map.Entry<K, Long> eldest = it.next();
+      K evicted = eldest.getKey();
+      it.remove();
+      byteSize -= eldest.getValue();
+      T evictedObj = map.remove(evicted);
+      if(spill != null) {
+        spill.write(evicted, evictedObj, writeTimes.get(evicted));
+      } else {
+        writeTimes.remove(evicted);
+        for(SecondaryIndex<K> index : indexes.values()) {
+          index.remove(evicted);
+        }
+      }
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Replaces the stored object with a recovered one, without logging the
+   * write.
+   */
+  void apply(K key, T obj, long time) {
     map.put(key, obj);
+    writeTimes.put(key, time);
+    for(SecondaryIndex<K> index : indexes.values()) {
+      index.remove(key);
+      index.put(key, obj);
+    }
+  }
+
+  /** Returns the objects in the store, for the snapshots */
+  Iterable<Map.Entry<K, T>> getEntries() {
+    return map.entrySet();
+  }
+
+  /** Returns the time the object was last written, or null */
+  Long getWriteTime(K key) {
+    return writeTimes.get(key);
   }
 
-  @Override
   /**
-   * Returns a single partition containing the original query
+   * Replaces the stored object with a copy of it where the dirty fields
+   * are set from the object put, retrying if the stored object is replaced
+   * meanwhile. New objects are copied as a whole.
    */
+  @SuppressWarnings("unchecked")
+  private T putConcurrent(K key, T obj, long time) {
+    ConcurrentMap<K, T> concurrentMap = (ConcurrentMap<K, T>) map;
+    //the time is written before the object is published to the scans
+    writeTimes.put(key, time);
+    T copy = (T) obj.clone();
+    T stored;
+    while(true) {
+      T old = map.get(key);
+      if(old == null) {
+        if(concurrentMap.putIfAbsent(key, copy) == null) {
+          stored = copy;
+          break;
+        }
+        continue;
+      }
+      T merged = (T) copy.newInstance(new StateManagerImpl());
+      for(int i=0; i<obj.getFields().length; i++) {
+        merged.put(i, obj.isDirty(i) ? copy.get(i) : old.get(i));
+      }
+      if(concurrentMap.replace(key, old, merged)) {
+        stored = merged;
+        break;
+      }
+    }
+    for(SecondaryIndex<K> index : indexes.values()) {
+      reindex(index, key);
+    }
+    return stored;
+  }
+
+  /**
+   * Indexes the object stored with the key, if any. Since every write
+   * reindexes the key after updating the map, the last reindexing of a
+   * key sees its last stored object.
+   */
+  private void reindex(SecondaryIndex<K> index, K key) {
+    synchronized (index) {
+      index.remove(key);
+      T obj = map.get(key);
+      if(obj != null) {
+        index.put(key, obj);
+      }
+    }
+  }
+
+  /**
+   * Splits the keys of the query into at most "gora.memstore.partitions"
+   * ranges, holding the same number of objects give or take one. The first
+   * partition starts with the start key of the query, and the last one
+   * ends with its end key. The other partitions start with keys in the
+   * store, and end before the start key of the next partition, so the
+   * objects put after the partitioning are returned by a partition too.
+   */
+  @Override
   public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
       throws IOException {
     List<PartitionQuery<K, T>> list = new ArrayList<PartitionQuery<K,T>>();
-    list.add(new PartitionQueryImpl<K, T>(query));
+    NavigableMap<K, T> submap = getSubMap(map, query);
+    Iterable<K> keys = submap.keySet();
+    int size = numPartitions > 1 ? submap.size() : 0;
+    if(isSpilled()) {
+      NavigableMap<K, Long> spilled = getSubMap(spill.getKeys(), query);
+      if(!spilled.isEmpty()) {
+        //the partitions are balanced over the keys in memory and spilled
+        NavigableMap<K, Object> allKeys = new TreeMap<K, Object>(submap);
+        allKeys.putAll(spilled);
+        keys = allKeys.keySet();
+        size = numPartitions > 1 ? allKeys.size() : 0;
+      }
+    }
+    int count = Math.min(numPartitions, size);
+    if(count <= 1) {
+      list.add(new PartitionQueryImpl<K, T>(query));
+      return list;
+    }
+
+    //the partition i starts with the key at the index size * i / count
+    K startKey = query.getStartKey();
+    int index = 0;
+    for(K key : keys) {
+      if(index == (long) size * (list.size() + 1) / count) {
+        list.add(new MemPartitionQuery<K, T>(query, startKey, key, true));
+        startKey = key;
+        if(list.size() == count - 1) {
+          break;
+        }
+      }
+      index++;
+    }
+    list.add(new MemPartitionQuery<K, T>(query, startKey, query.getEndKey()
+        , false));
     return list;
   }
 
   @Override
   public void close() throws IOException {
-    map.clear();
+    if(journal != null) {
+      journal.close();
+      journal = null;
+    }
+    clear();
   }
 
   @Override
@@ -163,7 +1008,35 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
   @Override
   public void deleteSchema() throws IOException {
+    if(journal == null) {
+      clear();
+      return;
+    }
+    long sequence;
+    journal.beginExclusiveWrite();
+    try {
+      clear();
+      sequence = journal.logClear(System.currentTimeMillis());
+    } finally {
+      journal.endExclusiveWrite();
+    }
+    journal.commit(sequence);
+  }
+
+  /** Deletes all the objects from the store, without logging the deletion */
+  void clear() throws IOException {
     map.clear();
+    writeTimes.clear();
+    if(sizes != null) {
+      sizes.clear();
+      byteSize = 0;
+    }
+    if(spill != null) {
+      spill.clear();
+    }
+    for(SecondaryIndex<K> index : indexes.values()) {
+      index.clear();
+    }
   }
 
   @Override
@@ -172,5 +1045,9 @@ public class MemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
   }
 
   @Override
-  public void flush() throws IOException { }
+  public void flush() throws IOException {
+    if(journal != null) {
+      journal.sync();
+    }
+  }
 }
@@ -0,0 +1,522 @@
+package org.gora.memory.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gora.avro.PersistentDatumWriter;
+import org.gora.persistency.Persistent;
+import org.apache.hadoop.util.StringUtils;
+import org.gora.util.DaemonThreadFactory;
+
+/**
+ * Keeps the contents of a {@link MemStore} on the local disk, in a
+ * {@link WriteAheadLog} of its writes and in periodic snapshots, and
+ * recovers them when the store is initialized.
+ *
+ * <p> The snapshots are Avro data files named "snapshot-&lt;segment&gt;.avro",
+ * holding the serialized key, object and write time of every object in
+ * the store when the log was rolled to the segment. A snapshot together
+ * with the segments from its segment on hold the contents of the store,
+ * and the older snapshots and segments are deleted. The snapshots taken
+ * as the snapshot interval passes are written by a background thread if
+ * the store is concurrent, whose stored objects are replaced and not
+ * updated, and by the writer otherwise.
+ *
+ * <p> The objects are serialized by a {@link RecordCodec}, and the records
+ * read on recovery are decoded by a pool of threads, while the decoded
+ * writes are applied to the store in their order.
+ */
+class MemStoreJournal<K, T extends Persistent> implements Closeable {
+
+  private static final Log log = LogFactory.getLog(MemStoreJournal.class);
+
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".avro";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  /** The number of the records decoded together by a recovery thread */
+  private static final int BATCH_SIZE = 1024;
+
+  /** The number of the writes locking the same stripe */
+  private static final int STRIPES = 64;
+
+  private final MemStore<K, T> store;
+
+  private final File dir;
+
+  private final KeySerializer<K> keySerializer;
+
+  private final Schema schema;
+
+  private final PersistentDatumWriter<T> datumWriter;
+
+  private final RecordCodec<T> codec;
+
+  private final WriteAheadLog.SyncPolicy syncPolicy;
+
+  private final long syncInterval;
+
+  private final long snapshotInterval;
+
+  private final int recoveryThreads;
+
+  private WriteAheadLog wal;
+
+  /**
+   * The writes hold the read lock while they update the store and log the
+   * update, so that the log is rolled between the writes. The writes
+   * updating all the objects hold the write lock.
+   */
+  private final ReadWriteLock rollLock = new ReentrantReadWriteLock();
+
+  /** Orders the updates of the same key with their entries in the log */
+  private final Object[] stripes = new Object[STRIPES];
+
+  private final AtomicLong entriesSinceSnapshot = new AtomicLong();
+
+  private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+  private final Object snapshotLock = new Object();
+
+  private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(
+      new DaemonThreadFactory("memstore-snapshot"));
+
+  /** The snapshot started by the last commit, or null */
+  private volatile Future<?> snapshotFuture;
+
+  /**
+   * @param snapshotInterval the number of the entries logged between the
+   * snapshots, or 0 for no automatic snapshots
+   */
+  public MemStoreJournal(MemStore<K, T> store, File dir
+      , KeySerializer<K> keySerializer, Schema schema
+      , PersistentDatumWriter<T> datumWriter
+      , WriteAheadLog.SyncPolicy syncPolicy, long syncInterval
+      , long snapshotInterval, int recoveryThreads) {
+    this.store = store;
+    this.dir = dir;
+    this.keySerializer = keySerializer;
+    this.schema = schema;
+    this.datumWriter = datumWriter;
+    this.codec = new RecordCodec<T>(schema, datumWriter);
+    this.syncPolicy = syncPolicy;
+    this.syncInterval = syncInterval;
+    this.snapshotInterval = snapshotInterval;
+    this.recoveryThreads = recoveryThreads;
+    for(int i=0; i<STRIPES; i++) {
+      stripes[i] = new Object();
+    }
+  }
+
+  /**
+   * Loads the last snapshot and replays the log into the store, then opens
+   * a new segment of the log.
+   */
+  public void recover() throws IOException {
+    if(!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create the directory " + dir);
+    }
+    long snapshot = -1;
+    for(long segment : getSnapshots()) {
+      snapshot = segment;
+    }
+    long start = System.currentTimeMillis();
+    Recovery recovery = new Recovery();
+    try {
+      if(snapshot >= 0) {
+        recovery.loadSnapshot(getSnapshotFile(snapshot));
+      }
+      long lastSegment = Math.max(snapshot, 0);
+      List<Long> segments = WriteAheadLog.getSegments(dir);
+      for(int i=0; i<segments.size(); i++) {
+        long segment = segments.get(i);
+        if(segment >= snapshot) {
+          recovery.replay(WriteAheadLog.getSegmentFile(dir, segment)
+              , i == segments.size() - 1);
+        }
+        lastSegment = Math.max(lastSegment, segment);
+      }
+      recovery.finish();
+      wal = new WriteAheadLog(dir, lastSegment, syncPolicy, syncInterval);
+    } finally {
+      recovery.close();
+    }
+    log.info("Recovered " + recovery.count + " entries from " + dir + " in "
+        + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /** Returns the lock ordering the writes of the key */
+  public Object getLock(K key) {
+    return stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+  }
+
+  /** Called before a write updates the store */
+  public void beginWrite() {
+    rollLock.readLock().lock();
+  }
+
+  /** Called after a write updated the store and logged the update */
+  public void endWrite() {
+    rollLock.readLock().unlock();
+  }
+
+  /**
+   * Called before a write updating all the objects in the store, which is
+   * not run concurrently with the other writes.
+   */
+  public void beginExclusiveWrite() {
+    rollLock.writeLock().lock();
+  }
+
+  /** Called after a write updating all the objects in the store */
+  public void endExclusiveWrite() {
+    rollLock.writeLock().unlock();
+  }
+
+  /**
+   * Called after a write ended, to wait for its entry to be synced as set
+   * by the sync policy. Takes a snapshot, in the background if the store
+   * is concurrent, if the snapshot interval is passed and no snapshot is
+   * running.
+   * @param sequence the sequence number of the logged entry
+   */
+  public void commit(long sequence) throws IOException {
+    wal.commit(sequence);
+    if(snapshotInterval > 0
+        && entriesSinceSnapshot.incrementAndGet() >= snapshotInterval
+        && snapshotting.compareAndSet(false, true)) {
+      if(!store.isConcurrent()) {
+        try {
+          snapshot();
+        } finally {
+          snapshotting.set(false);
+        }
+        return;
+      }
+      snapshotFuture = snapshotter.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          try {
+            snapshot();
+            return null;
+          } catch (IOException ex) {
+            log.error("Cannot snapshot the store: "
+                + StringUtils.stringifyException(ex));
+            throw ex;
+          } finally {
+            snapshotting.set(false);
+          }
+        }
+      });
+    }
+  }
+
+  /** Logs the object stored with the key */
+  public long logPut(K key, T obj, long time) throws IOException {
+    return wal.append(WriteAheadLog.PUT, time, keySerializer.toBytes(key)
+        , codec.encode(obj));
+  }
+
+  /** Logs the deletion of the key */
+  public long logDelete(K key, long time) throws IOException {
+    return wal.append(WriteAheadLog.DELETE, time, keySerializer.toBytes(key)
+        , null);
+  }
+
+  /** Logs the deletion of all the objects */
+  public long logClear(long time) throws IOException {
+    return wal.append(WriteAheadLog.CLEAR, time, new byte[0], null);
+  }
+
+  /**
+   * Forces the logged entries to the disk, and waits for the snapshot
+   * running in the background if any.
+   */
+  public void sync() throws IOException {
+    wal.sync();
+    Future<?> future = snapshotFuture;
+    if(future != null) {
+      try {
+        future.get();
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      } catch (ExecutionException ex) {
+        throw new IOException(ex.getCause());
+      }
+    }
+  }
+
+  /**
+   * Rolls the log, writes the objects in the store to a snapshot, and
+   * deletes the older snapshots and segments. The writes are blocked only
+   * while the log is rolled. The writes made while the snapshot is written
+   * may or may not be in the snapshot, and are replayed from the new
+   * segment anyway.
+   */
+  public void snapshot() throws IOException {
+    synchronized (snapshotLock) {
+      long segment;
+      rollLock.writeLock().lock();
+      try {
+        segment = wal.roll();
+        entriesSinceSnapshot.set(0);
+      } finally {
+        rollLock.writeLock().unlock();
+      }
+
+      File tmp = new File(dir, SNAPSHOT_PREFIX + segment + SNAPSHOT_SUFFIX
+          + TMP_SUFFIX);
+      FileOutputStream out = new FileOutputStream(tmp);
+      DataFileWriter<GenericData.Record> writer =
+        new DataFileWriter<GenericData.Record>(
+            new GenericDatumWriter<GenericData.Record>(RecordCodec.ENTRY_SCHEMA));
+      try {
+        writer.create(RecordCodec.ENTRY_SCHEMA, out);
+        GenericData.Record record = new GenericData.Record(RecordCodec.ENTRY_SCHEMA);
+        for(Map.Entry<K, T> entry : store.getEntries()) {
+          Long time = store.getWriteTime(entry.getKey());
+          record.put("key", ByteBuffer.wrap(keySerializer.toBytes(entry.getKey())));
+          record.put("value", ByteBuffer.wrap(codec.encode(entry.getValue())));
+          record.put("time", time == null ? 0L : time);
+          writer.append(record);
+        }
+        writer.flush();
+        out.getChannel().force(false);
+      } finally {
+        writer.close();
+      }
+      if(!tmp.renameTo(getSnapshotFile(segment))) {
+        throw new IOException("Cannot rename " + tmp);
+      }
+
+      for(long old : getSnapshots()) {
+        if(old < segment) {
+          getSnapshotFile(old).delete();
+        }
+      }
+      for(long old : WriteAheadLog.getSegments(dir)) {
+        if(old < segment) {
+          WriteAheadLog.getSegmentFile(dir, old).delete();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    //the running snapshot rolls the log
+    snapshotter.shutdown();
+    try {
+      snapshotter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    if(wal != null) {
+      wal.close();
+    }
+  }
+
+  private File getSnapshotFile(long segment) {
+    return new File(dir, SNAPSHOT_PREFIX + segment + SNAPSHOT_SUFFIX);
+  }
+
+  /** Returns the segments of the snapshots, in ascending order */
+  private List<Long> getSnapshots() {
+    List<Long> snapshots = new ArrayList<Long>();
+    String[] names = dir.list();
+    if(names != null) {
+      for(String name : names) {
+        if(name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX)) {
+          try {
+            snapshots.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length()
+                , name.length() - SNAPSHOT_SUFFIX.length())));
+          } catch (NumberFormatException ignore) {
+          }
+        }
+      }
+    }
+    Collections.sort(snapshots);
+    return snapshots;
+  }
+
+  /** A write read back on recovery */
+  private class Decoded {
+    private final byte op;
+    private final long time;
+    private final K key;
+    private final T value;
+
+    Decoded(byte op, long time, K key, T value) {
+      this.op = op;
+      this.time = time;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Decodes the entries in batches by a pool of threads, and applies them
+   * to the store in their order.
+   */
+  private class Recovery implements Closeable {
+    private final ExecutorService executor;
+    private final LinkedList<Future<List<Decoded>>> pending =
+      new LinkedList<Future<List<Decoded>>>();
+    private List<WriteAheadLog.Entry> batch =
+      new ArrayList<WriteAheadLog.Entry>(BATCH_SIZE);
+    private long count;
+
+    Recovery() {
+      executor = recoveryThreads > 1 ? Executors.newFixedThreadPool(
+          recoveryThreads, new DaemonThreadFactory("memstore-recovery"))
+          : null;
+    }
+
+    void loadSnapshot(File file) throws IOException {
+      DataFileReader<GenericData.Record> reader =
+        new DataFileReader<GenericData.Record>(file
+            , new GenericDatumReader<GenericData.Record>(RecordCodec.ENTRY_SCHEMA));
+      try {
+        while(reader.hasNext()) {
+          GenericData.Record record = reader.next(null);
+          add(new WriteAheadLog.Entry(WriteAheadLog.PUT
+              , (Long) record.get("time"), RecordCodec.toBytes(record.get("key"))
+              , RecordCodec.toBytes(record.get("value"))));
+        }
+      } finally {
+        reader.close();
+      }
+    }
+
+    void replay(File segment, boolean last) throws IOException {
+      WriteAheadLog.Reader reader = new WriteAheadLog.Reader(segment, last);
+      try {
+        WriteAheadLog.Entry entry;
+        while((entry = reader.next()) != null) {
+          add(entry);
+        }
+        //the segment is followed by the one opened after the recovery
+        reader.truncate();
+      } finally {
+        reader.close();
+      }
+    }
+
+    private void add(WriteAheadLog.Entry entry) throws IOException {
+      batch.add(entry);
+      count++;
+      if(batch.size() == BATCH_SIZE) {
+        submit();
+      }
+    }
+
+    private void submit() throws IOException {
+      final List<WriteAheadLog.Entry> entries = batch;
+      batch = new ArrayList<WriteAheadLog.Entry>(BATCH_SIZE);
+      if(executor == null) {
+        apply(decode(entries));
+        return;
+      }
+      pending.add(executor.submit(new Callable<List<Decoded>>() {
+        @Override
+        public List<Decoded> call() throws Exception {
+          return decode(entries);
+        }
+      }));
+      //the batches are applied in order, keeping a few decoded ahead
+      while(pending.size() > recoveryThreads * 2) {
+        apply(pending.removeFirst());
+      }
+    }
+
+    void finish() throws IOException {
+      if(!batch.isEmpty()) {
+        submit();
+      }
+      while(!pending.isEmpty()) {
+        apply(pending.removeFirst());
+      }
+    }
+
+    private void apply(Future<List<Decoded>> future) throws IOException {
+      try {
+        apply(future.get());
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      } catch (ExecutionException ex) {
+        if(ex.getCause() instanceof IOException) {
+          throw (IOException) ex.getCause();
+        }
+        throw new IOException(ex.getCause());
+      }
+    }
+
+    private void apply(List<Decoded> decoded) throws IOException {
+      for(Decoded write : decoded) {
+        switch(write.op) {
+          case WriteAheadLog.PUT:
+            store.apply(write.key, write.value, write.time);
+            break;
+          case WriteAheadLog.DELETE:
+            store.remove(write.key);
+            break;
+          case WriteAheadLog.CLEAR:
+            store.clear();
+            break;
+        }
+      }
+    }
+
+    private List<Decoded> decode(List<WriteAheadLog.Entry> entries)
+    throws IOException {
+      //the codecs decode for a single thread
+      RecordCodec<T> decoder = new RecordCodec<T>(schema, datumWriter);
+      List<Decoded> decoded = new ArrayList<Decoded>(entries.size());
+      for(WriteAheadLog.Entry entry : entries) {
+        K key = null;
+        T value = null;
+        if(entry.op != WriteAheadLog.CLEAR) {
+          key = keySerializer.fromBytes(entry.key);
+        }
+        if(entry.value != null) {
+          value = decoder.decode(entry.value, store.newPersistent());
+        }
+        decoded.add(new Decoded(entry.op, entry.time, key, value));
+      }
+      return decoded;
+    }
+
+    @Override
+    public void close() {
+      if(executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package org.gora.memory.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.hadoop.fs.FileUtil;
+import org.gora.persistency.Persistent;
+
+/**
+ * Holds the objects evicted from a bounded {@link MemStore} in Avro data
+ * files on the local disk, the format of
+ * {@link org.gora.avro.store.DataFileAvroStore}, named
+ * "spill-&lt;segment&gt;.avro". Every object is written to a block of its
+ * own, so that it is read back by seeking to the block. The keys of the
+ * spilled objects and the positions of their blocks are kept in memory.
+ *
+ * <p> The objects replaced or deleted are not removed from the files, and
+ * a segment file is deleted once none of its objects is live. The reads
+ * can be run by any number of threads, like the gets of a MemStore, but
+ * not concurrently with the writes.
+ */
+class MemStoreSpill<K, T extends Persistent> implements Closeable {
+
+  private static final String SEGMENT_PREFIX = "spill-";
+  private static final String SEGMENT_SUFFIX = ".avro";
+
+  /** The size of the segments, after which a new segment is started */
+  static final long SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final File dir;
+
+  private final KeySerializer<K> keySerializer;
+
+  private final RecordCodec<T> codec;
+
+  /**
+   * The locations of the spilled objects, keyed by their keys. A location
+   * holds the segment in its upper and the position of the block in the
+   * segment in its lower 32 bits.
+   */
+  private final NavigableMap<K, Long> locations = new TreeMap<K, Long>();
+
+  /** The number of the live objects in the segments */
+  private final Map<Integer, Integer> liveCounts = new HashMap<Integer, Integer>();
+
+  private final Map<Integer, DataFileReader<GenericData.Record>> readers =
+    new HashMap<Integer, DataFileReader<GenericData.Record>>();
+
+  private final GenericData.Record record =
+    new GenericData.Record(RecordCodec.ENTRY_SCHEMA);
+
+  private DataFileWriter<GenericData.Record> writer;
+
+  private int segment = -1;
+
+  /** Whether objects are written after the writer was last flushed */
+  private boolean unflushed;
+
+  public MemStoreSpill(File dir, KeySerializer<K> keySerializer
+      , RecordCodec<T> codec) {
+    this.dir = dir;
+    this.keySerializer = keySerializer;
+    this.codec = codec;
+  }
+
+  /** Returns the number of the spilled objects */
+  public int size() {
+    return locations.size();
+  }
+
+  /** Returns whether an object with the key is spilled */
+  public boolean contains(K key) {
+    return locations.containsKey(key);
+  }
+
+  /** Returns the keys of the spilled objects, in ascending order */
+  public NavigableMap<K, Long> getKeys() {
+    return locations;
+  }
+
+  /** Writes the object, replacing the spilled object with the key if any */
+  public void write(K key, T obj, long time) throws IOException {
+    remove(key);
+    if(writer == null) {
+      roll();
+    }
+    long position = writer.sync();
+    if(position >= SEGMENT_SIZE) {
+      roll();
+      position = writer.sync();
+    }
+    record.put("key", ByteBuffer.wrap(keySerializer.toBytes(key)));
+    record.put("value", ByteBuffer.wrap(codec.encode(obj)));
+    record.put("time", time);
+    writer.append(record);
+    unflushed = true;
+    locations.put(key, ((long) segment << 32) | position);
+    Integer count = liveCounts.get(segment);
+    liveCounts.put(segment, count == null ? 1 : count + 1);
+  }
+
+  /**
+   * Reads the spilled object with the key into the object given.
+   * @return the object given, or null if no object with the key is spilled
+   */
+  public synchronized T read(K key, T obj) throws IOException {
+    Long location = locations.get(key);
+    if(location == null) {
+      return null;
+    }
+    int seg = (int) (location >>> 32);
+    if(seg == segment && unflushed) {
+      writer.flush();
+      unflushed = false;
+    }
+    DataFileReader<GenericData.Record> reader = readers.get(seg);
+    if(reader == null) {
+      reader = new DataFileReader<GenericData.Record>(getSegmentFile(seg)
+          , new GenericDatumReader<GenericData.Record>(RecordCodec.ENTRY_SCHEMA));
+      readers.put(seg, reader);
+    }
+    reader.seek(location & 0xFFFFFFFFL);
+    GenericData.Record read = reader.next(null);
+    return codec.decode(RecordCodec.toBytes(read.get("value")), obj);
+  }
+
+  /**
+   * Removes the spilled object with the key, deleting its segment if none
+   * of its objects is live.
+   * @return whether an object with the key was spilled
+   */
+  public boolean remove(K key) throws IOException {
+    Long location = locations.remove(key);
+    if(location == null) {
+      return false;
+    }
+    int seg = (int) (location >>> 32);
+    int count = liveCounts.get(seg) - 1;
+    if(count > 0 || seg == segment) {
+      liveCounts.put(seg, count);
+      return true;
+    }
+    deleteSegment(seg);
+    return true;
+  }
+
+  /** Removes all the spilled objects and deletes the segment files */
+  public void clear() throws IOException {
+    close();
+    locations.clear();
+    liveCounts.clear();
+    FileUtil.fullyDelete(dir);
+  }
+
+  @Override
+  public void close() throws IOException {
+    for(DataFileReader<GenericData.Record> reader : readers.values()) {
+      reader.close();
+    }
+    readers.clear();
+    if(writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+
+  /**
+   * Starts a new segment, deleting the current one if none of its objects
+   * is live.
+   */
+  private void roll() throws IOException {
+    if(writer != null) {
+      writer.close();
+      Integer count = liveCounts.get(segment);
+      if(count != null && count == 0) {
+        deleteSegment(segment);
+      }
+    } else if(!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create the directory " + dir);
+    }
+    segment++;
+    writer = new DataFileWriter<GenericData.Record>(
+        new GenericDatumWriter<GenericData.Record>(RecordCodec.ENTRY_SCHEMA));
+    writer.create(RecordCodec.ENTRY_SCHEMA, getSegmentFile(segment));
+    unflushed = false;
+  }
+
+  private void deleteSegment(int seg) throws IOException {
+    liveCounts.remove(seg);
+    DataFileReader<GenericData.Record> reader = readers.remove(seg);
+    if(reader != null) {
+      reader.close();
+    }
+    getSegmentFile(seg).delete();
+  }
+
+  private File getSegmentFile(int segment) {
+    return new File(dir, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+  }
+}
@@ -0,0 +1,298 @@
+package org.gora.memory.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sorted index of the addresses of the records of an
+ * {@link OffHeapMemStore}, in the order of their keys. The addresses are
+ * kept in pages of direct buffers outside of the Java heap, whose memory
+ * is counted against the memory cap of the {@link SlabAllocator} of the
+ * records. Only the first key of every page is kept on the heap, to find
+ * the page of a key. The other keys are read from the records by the
+ * {@link KeyReader}. The keys should be Comparable. OffHeapKeyIndex is not
+ * thread safe.
+ */
+class OffHeapKeyIndex<K> {
+
+  /** Reads the keys of the records */
+  interface KeyReader<K> {
+    K readKey(long address) throws IOException;
+  }
+
+  /** The number of addresses in a page */
+  static final int PAGE_SIZE = 1024;
+
+  /** The number of bytes of the addresses of a page */
+  static final int PAGE_BYTES = PAGE_SIZE * 8;
+
+  private static class Page<K> {
+    private final LongBuffer addresses = ByteBuffer.allocateDirect(
+        PAGE_BYTES).asLongBuffer();
+    private int size;
+    private K firstKey;
+  }
+
+  private final SlabAllocator allocator;
+
+  private final KeyReader<K> reader;
+
+  private final List<Page<K>> pages = new ArrayList<Page<K>>();
+
+  private int size;
+
+  /** Incremented by the insertions and the removals */
+  private int modCount;
+
+  /**
+   * @param allocator the allocator of the records, whose memory cap the
+   * pages are counted against
+   * @param reader the reader of the keys of the records
+   */
+  public OffHeapKeyIndex(SlabAllocator allocator, KeyReader<K> reader) {
+    this.allocator = allocator;
+    this.reader = reader;
+  }
+
+  /**
+   * Returns the address of the record of the key, or -1 if the key is
+   * not in the index.
+   */
+  public long get(K key) throws IOException {
+    if(pages.isEmpty()) {
+      return -1;
+    }
+    Page<K> page = pages.get(findPage(key));
+    int slot = findSlot(page, key);
+    return slot < 0 ? -1 : page.addresses.get(slot);
+  }
+
+  /**
+   * Sets the address of the record of the key.
+   * @return the previous address of the key, or -1
+   * @throws IOException if a page cannot be allocated under the memory cap
+   */
+  public long put(K key, long address) throws IOException {
+    if(pages.isEmpty()) {
+      pages.add(newPage());
+    }
+    int pageIndex = findPage(key);
+    Page<K> page = pages.get(pageIndex);
+    int slot = findSlot(page, key);
+    if(slot >= 0) {
+      long old = page.addresses.get(slot);
+      page.addresses.put(slot, address);
+      return old;
+    }
+    slot = -slot - 1;
+    if(page.size == PAGE_SIZE) {
+      Page<K> next = split(pageIndex);
+      if(slot > page.size) {
+        page = next;
+        slot -= PAGE_SIZE / 2;
+      }
+    }
+    LongBuffer addresses = page.addresses;
+    for(int i=page.size; i>slot; i--) {
+      addresses.put(i, addresses.get(i - 1));
+    }
+    addresses.put(slot, address);
+    page.size++;
+    if(slot == 0) {
+      page.firstKey = key;
+    }
+    size++;
+    modCount++;
+    return -1;
+  }
+
+  /** Moves the upper half of the full page to a new page after it */
+  private Page<K> split(int pageIndex) throws IOException {
+    Page<K> page = pages.get(pageIndex);
+    Page<K> next = newPage();
+    int half = PAGE_SIZE / 2;
+    for(int i=half; i<PAGE_SIZE; i++) {
+      next.addresses.put(i - half, page.addresses.get(i));
+    }
+    next.size = PAGE_SIZE - half;
+    next.firstKey = reader.readKey(next.addresses.get(0));
+    page.size = half;
+    pages.add(pageIndex + 1, next);
+    return next;
+  }
+
+  private Page<K> newPage() throws IOException {
+    allocator.reserve(PAGE_BYTES);
+    return new Page<K>();
+  }
+
+  /**
+   * Removes the key from the index.
+   * @return the address of the key, or -1 if the key is not in the index
+   */
+  public long remove(K key) throws IOException {
+    if(pages.isEmpty()) {
+      return -1;
+    }
+    int pageIndex = findPage(key);
+    Page<K> page = pages.get(pageIndex);
+    int slot = findSlot(page, key);
+    if(slot < 0) {
+      return -1;
+    }
+    LongBuffer addresses = page.addresses;
+    long address = addresses.get(slot);
+    for(int i=slot; i<page.size - 1; i++) {
+      addresses.put(i, addresses.get(i + 1));
+    }
+    page.size--;
+    if(page.size == 0) {
+      pages.remove(pageIndex);
+      allocator.release(PAGE_BYTES);
+    } else if(slot == 0) {
+      page.firstKey = reader.readKey(addresses.get(0));
+    }
+    size--;
+    modCount++;
+    return address;
+  }
+
+  /** Returns the index of the last page starting with a key not after the key */
+  private int findPage(K key) {
+    int low = 0;
+    int high = pages.size() - 1;
+    while(low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if(compare(pages.get(mid).firstKey, key) <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the slot of the key in the page, or (-(insertion point) - 1)
+   * if the key is not in the page.
+   */
+  private int findSlot(Page<K> page, K key) throws IOException {
+    int low = 0;
+    int high = page.size - 1;
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(mid == 0 ? page.firstKey
+          : reader.readKey(page.addresses.get(mid)), key);
+      if(cmp < 0) {
+        low = mid + 1;
+      } else if(cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K> int compare(K key1, K key2) {
+    return ((Comparable<K>) key1).compareTo(key2);
+  }
+
+  /** Returns the number of keys */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of bytes of the pages */
+  public long getAllocatedBytes() {
+    return pages.size() * (long) PAGE_BYTES;
+  }
+
+  /** Removes all the keys */
+  public void clear() {
+    allocator.release(getAllocatedBytes());
+    pages.clear();
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns a cursor over the keys from the start key, or the first key if
+   * the start key is null.
+   */
+  public Cursor cursor(K startKey) throws IOException {
+    Cursor cursor = new Cursor(startKey);
+    cursor.seek(startKey, true);
+    return cursor;
+  }
+
+  /**
+   * Iterates over the keys in ascending order. The cursor continues after
+   * its last key if the index is modified.
+   */
+  class Cursor {
+    private final K startKey;
+    private int pageIndex;
+    private int slot;
+    private int expectedModCount;
+    private K key;
+    private long address;
+
+    private Cursor(K startKey) {
+      this.startKey = startKey;
+    }
+
+    private void seek(K key, boolean inclusive) throws IOException {
+      expectedModCount = modCount;
+      pageIndex = 0;
+      slot = 0;
+      if(key != null && !pages.isEmpty()) {
+        pageIndex = findPage(key);
+        slot = findSlot(pages.get(pageIndex), key);
+        if(slot < 0) {
+          slot = -slot - 1;
+        } else if(!inclusive) {
+          slot++;
+        }
+      }
+    }
+
+    /**
+     * Moves to the next key.
+     * @return whether there is a next key
+     */
+    public boolean next() throws IOException {
+      if(expectedModCount != modCount) {
+        if(key == null) {
+          seek(startKey, true);
+        } else {
+          seek(key, false);
+        }
+      }
+      while(pageIndex < pages.size() && slot >= pages.get(pageIndex).size) {
+        pageIndex++;
+        slot = 0;
+      }
+      if(pageIndex >= pages.size()) {
+        return false;
+      }
+      address = pages.get(pageIndex).addresses.get(slot++);
+      key = reader.readKey(address);
+      return true;
+    }
+
+    /** Returns the current key */
+    public K getKey() {
+      return key;
+    }
+
+    /** Returns the address of the record of the current key */
+    public long getAddress() {
+      return address;
+    }
+  }
+}
@@ -0,0 +1,398 @@
+package org.gora.memory.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.gora.persistency.FieldDecoder;
+import org.gora.persistency.Persistent;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.PartitionQueryImpl;
+import org.gora.query.impl.ResultBase;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.DataStoreBase;
+import org.gora.util.ByteUtils;
+
+/**
+ * An in memory {@link DataStore} keeping the objects serialized outside
+ * of the Java heap, so that large data sets do not burden the garbage
+ * collector. The records are allocated from slabs of direct buffers by a
+ * {@link SlabAllocator}, and the slabs whose records are all deleted or
+ * overwritten are reused. The records are sorted by an
+ * {@link OffHeapKeyIndex}, which also keeps the addresses of the records
+ * off the heap. The keys should be Comparable.
+ *
+ * <p> The fields are serialized one by one as by the other stores, so
+ * that gets and scans decode only the requested fields. Puts write the
+ * dirty fields of the objects, and keep the other fields of the stored
+ * records.
+ *
+ * <p> The size of the slabs is set by the property
+ * "gora.offheapmemstore.slab.size", 1MB by default, and the memory
+ * allocated off the heap, for the records and the pages of the index, is
+ * capped by "gora.offheapmemstore.max.memory", unlimited by default. Puts
+ * exceeding the cap throw IOExceptions.
+ * OffHeapMemStore is not thread safe.
+ */
+public class OffHeapMemStore<K, T extends Persistent> extends DataStoreBase<K, T> {
+
+  /** The size of the slabs in bytes */
+  public static final String SLAB_SIZE_PROPERTY = "slab.size";
+
+  /** The maximum number of bytes of the slabs and the pages of the index */
+  public static final String MAX_MEMORY_PROPERTY = "max.memory";
+
+  public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+  /*
+   * The layout of the records is
+   * [int record length][long write time][int key length][key]
+   * [int field length]*[field]*
+   * where the lengths of the null fields are -1.
+   */
+  private static final int WRITE_TIME_OFFSET = 4;
+  private static final int KEY_LENGTH_OFFSET = 12;
+  private static final int KEY_OFFSET = 16;
+
+  public static class OffHeapResult<K, T extends Persistent> extends ResultBase<K, T> {
+    private final OffHeapMemStore<K, T> store;
+    private final OffHeapKeyIndex<K>.Cursor cursor;
+    private int read = 0;
+
+    public OffHeapResult(OffHeapMemStore<K, T> store, Query<K, T> query)
+    throws IOException {
+      super(store, query);
+      this.store = store;
+      this.cursor = store.index.cursor(query.getStartKey());
+    }
+
+    @Override
+    protected boolean nextInner() throws IOException {
+      while(cursor.next()) {
+        read++;
+        if(query.getEndKey() != null
+            && OffHeapKeyIndex.compare(cursor.getKey(), query.getEndKey()) > 0) {
+          return false;
+        }
+        if(hasTimeRange(query) && !isInTimeRange(query
+            , store.getWriteTime(cursor.getAddress()))) {
+          continue;
+        }
+        key = cursor.getKey();
+        store.decode(cursor.getAddress(), persistent, query.getFields());
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      int size = store.size();
+      return getProgress(size == 0 ? 1f : Math.min(1f, read / (float) size));
+    }
+
+    @Override
+    public void close() throws IOException { }
+  }
+
+  private SlabAllocator allocator;
+
+  private OffHeapKeyIndex<K> index;
+
+  private KeySerializer<K> keySerializer;
+
+  @Override
+  public void initialize(Class<K> keyClass, Class<T> persistentClass,
+      Properties properties) throws IOException {
+    super.initialize(keyClass, persistentClass, properties);
+    int slabSize = Integer.parseInt(DataStoreFactory.findProperty(properties
+        , this, SLAB_SIZE_PROPERTY, String.valueOf(DEFAULT_SLAB_SIZE)));
+    long maxMemory = Long.parseLong(DataStoreFactory.findProperty(properties
+        , this, MAX_MEMORY_PROPERTY, "0"));
+    allocator = new SlabAllocator(slabSize, maxMemory);
+    keySerializer = new KeySerializer<K>(keyClass, getConf());
+    index = new OffHeapKeyIndex<K>(allocator, new OffHeapKeyIndex.KeyReader<K>() {
+      @Override
+      public K readKey(long address) throws IOException {
+        return getKey(address);
+      }
+    });
+  }
+
+  /** Returns the number of objects in the store */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Returns the number of bytes allocated off the heap, for the slabs of
+   * the records and the pages of the index.
+   */
+  public long getAllocatedMemory() {
+    return allocator.getAllocatedBytes();
+  }
+
+  /** Returns the number of bytes of the records in the store */
+  public long getUsedMemory() {
+    return allocator.getUsedBytes();
+  }
+
+  /** Returns the number of slabs allocated for the records */
+  public int getSlabCount() {
+    return allocator.getSlabCount();
+  }
+
+  @Override
+  public String getSchemaName() {
+    return "default";
+  }
+
+  @Override
+  public T get(K key, String[] fields) throws IOException {
+    long address = index.get(key);
+    if(address < 0) {
+      return null;
+    }
+    T persistent = newPersistent();
+    decode(address, persistent, getFieldsToQuery(fields));
+    return persistent;
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    fields = getFieldsToQuery(fields);
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(K key : keys) {
+      long address = index.get(key);
+      if(address >= 0) {
+        T persistent = newPersistent();
+        decode(address, persistent, fields);
+        results.put(key, persistent);
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    long old = index.get(key);
+    byte[] keyBytes = keySerializer.toBytes(key);
+    List<Field> fields = schema.getFields();
+    byte[][] values = new byte[fields.size()][];
+    int length = KEY_OFFSET + keyBytes.length + 4 * fields.size();
+    for(int i=0; i<fields.size(); i++) {
+      if(old < 0 || obj.isDirty(i)) {
+        values[i] = encodeField(fields.get(i).schema(), obj.get(i));
+      } else {
+        values[i] = readField(old, i);
+      }
+      if(values[i] != null) {
+        length += values[i].length;
+      }
+    }
+
+    long address = allocator.allocate(length);
+    ByteBuffer buffer = allocator.getBuffer(address).duplicate();
+    buffer.position(SlabAllocator.getOffset(address));
+    buffer.putInt(length);
+    buffer.putLong(System.currentTimeMillis());
+    buffer.putInt(keyBytes.length);
+    buffer.put(keyBytes);
+    for(byte[] value : values) {
+      buffer.putInt(value == null ? -1 : value.length);
+    }
+    for(byte[] value : values) {
+      if(value != null) {
+        buffer.put(value);
+      }
+    }
+
+    try {
+      index.put(key, address);
+    } catch (IOException ex) {
+      //the index cannot grow under the memory cap
+      free(address);
+      throw ex;
+    }
+    if(old >= 0) {
+      free(old);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) throws IOException {
+    long address = index.remove(key);
+    if(address < 0) {
+      return false;
+    }
+    free(address);
+    return true;
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) throws IOException {
+    List<K> keys = new ArrayList<K>();
+    Result<K, T> result = query.execute();
+    try {
+      while(result.next()) {
+        keys.add(result.getKey());
+      }
+    } finally {
+      result.close();
+    }
+
+    long deletedRows = 0;
+    for(K key : keys) {
+      if(delete(key))
+        deletedRows++;
+    }
+    return deletedRows;
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) throws IOException {
+    //the filter is evaluated against the decoded fields
+    query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+    return new OffHeapResult<K, T>(this, query);
+  }
+
+  @Override
+  public Query<K, T> newQuery() {
+    return new MemStore.MemQuery<K, T>(this);
+  }
+
+  /**
+   * Returns a single partition containing the original query
+   */
+  @Override
+  public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
+      throws IOException {
+    List<PartitionQuery<K, T>> list = new ArrayList<PartitionQuery<K,T>>();
+    list.add(new PartitionQueryImpl<K, T>(query));
+    return list;
+  }
+
+  @Override
+  public void close() throws IOException {
+    clear();
+  }
+
+  @Override
+  public void createSchema() throws IOException { }
+
+  @Override
+  public void deleteSchema() throws IOException {
+    clear();
+  }
+
+  private void clear() {
+    if(index != null) {
+      index.clear();
+      allocator.clear();
+    }
+  }
+
+  @Override
+  public boolean schemaExists() throws IOException {
+    return true;
+  }
+
+  @Override
+  public void flush() throws IOException { }
+
+  private void free(long address) {
+    ByteBuffer buffer = allocator.getBuffer(address);
+    allocator.free(address, buffer.getInt(SlabAllocator.getOffset(address)));
+  }
+
+  private long getWriteTime(long address) {
+    return allocator.getBuffer(address).getLong(
+        SlabAllocator.getOffset(address) + WRITE_TIME_OFFSET);
+  }
+
+  private K getKey(long address) throws IOException {
+    ByteBuffer buffer = allocator.getBuffer(address);
+    int offset = SlabAllocator.getOffset(address);
+    return keySerializer.fromBytes(getBytes(buffer, offset + KEY_OFFSET
+        , buffer.getInt(offset + KEY_LENGTH_OFFSET)));
+  }
+
+  /** Returns the serialized field of the record, or null if it is null */
+  private byte[] readField(long address, int fieldIndex) {
+    ByteBuffer buffer = allocator.getBuffer(address);
+    int offset = SlabAllocator.getOffset(address);
+    int lengths = offset + KEY_OFFSET + buffer.getInt(offset + KEY_LENGTH_OFFSET);
+    int fieldOffset = lengths + 4 * schema.getFields().size();
+    for(int i=0; i<fieldIndex; i++) {
+      fieldOffset += Math.max(0, buffer.getInt(lengths + 4 * i));
+    }
+    int length = buffer.getInt(lengths + 4 * fieldIndex);
+    return length < 0 ? null : getBytes(buffer, fieldOffset, length);
+  }
+
+  /** Decodes the fields of the record into the persistent object */
+  private void decode(long address, T persistent, String[] fields)
+  throws IOException {
+    for(String fieldName : fields) {
+      Field field = fieldMap.get(fieldName);
+      byte[] value = readField(address, field.pos());
+      if(value == null) {
+        continue;
+      }
+      if(lazyFields) {
+        persistent.setLazy(field.pos(), value, fieldDecoder);
+      } else {
+        persistent.put(field.pos(), decodeField(field.schema(), value));
+      }
+    }
+    persistent.clearDirty();
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer, int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.get(bytes);
+    return bytes;
+  }
+
+  private byte[] encodeField(Schema fieldSchema, Object value)
+  throws IOException {
+    if(value == null) {
+      return null;
+    }
+    switch(fieldSchema.getType()) {
+      case BYTES:
+        //the buffer may be a slice of a larger array
+        ByteBuffer buffer = (ByteBuffer) value;
+        return getBytes(buffer, buffer.position(), buffer.remaining());
+      default:
+        return ByteUtils.toBytes(value, fieldSchema, datumWriter);
+    }
+  }
+
+  private Object decodeField(Schema fieldSchema, byte[] value)
+  throws IOException {
+    return ByteUtils.fromBytes(value, fieldSchema, datumReader, null);
+  }
+
+  private final FieldDecoder fieldDecoder = new FieldDecoder() {
+    @Override
+    public Object decode(Persistent persistent, int fieldIndex, Object raw)
+    throws IOException {
+      return decodeField(persistent.getSchema().getFields().get(fieldIndex).schema()
+          , (byte[]) raw);
+    }
+  };
+}
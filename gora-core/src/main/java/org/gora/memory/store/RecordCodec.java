@@ -0,0 +1,90 @@
+package org.gora.memory.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.gora.avro.PersistentDatumReader;
+import org.gora.avro.PersistentDatumWriter;
+import org.gora.persistency.Persistent;
+import org.gora.util.IOUtils;
+
+/**
+ * Serializes the objects of a {@link MemStore} field by field with the
+ * {@link PersistentDatumWriter} of the store, preceded by the flags of the
+ * non null fields, so that objects with unset fields can be written.
+ * The records holding the serialized objects on disk are of
+ * {@link #ENTRY_SCHEMA}.
+ *
+ * <p> The objects can be encoded by any number of threads, but a codec
+ * decodes objects for a single thread.
+ */
+class RecordCodec<T extends Persistent> {
+
+  /** The schema of the serialized key, object and write time */
+  static final Schema ENTRY_SCHEMA = Schema.parse(
+      "{\"type\":\"record\",\"name\":\"MemStoreEntry\"," +
+      "\"namespace\":\"org.gora.memory.store\",\"fields\":[" +
+      "{\"name\":\"key\",\"type\":\"bytes\"}," +
+      "{\"name\":\"value\",\"type\":\"bytes\"}," +
+      "{\"name\":\"time\",\"type\":\"long\"}]}");
+
+  private final Schema schema;
+
+  private final PersistentDatumWriter<T> datumWriter;
+
+  private final PersistentDatumReader<T> datumReader;
+
+  private BinaryDecoder decoder;
+
+  public RecordCodec(Schema schema, PersistentDatumWriter<T> datumWriter) {
+    this.schema = schema;
+    this.datumWriter = datumWriter;
+    this.datumReader = new PersistentDatumReader<T>(schema, false);
+  }
+
+  /** Serializes the fields of the object */
+  public byte[] encode(T obj) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = new BinaryEncoder(os);
+    List<Field> fields = schema.getFields();
+    boolean[] nonNull = new boolean[fields.size()];
+    for(int i=0; i<nonNull.length; i++) {
+      nonNull[i] = obj.get(i) != null;
+    }
+    IOUtils.writeBoolArray(encoder, nonNull);
+    for(Field field : fields) {
+      if(nonNull[field.pos()]) {
+        datumWriter.write(field.schema(), obj.get(field.pos()), encoder);
+      }
+    }
+    encoder.flush();
+    return os.toByteArray();
+  }
+
+  /** Sets the serialized fields to the object, which is returned */
+  public T decode(byte[] bytes, T obj) throws IOException {
+    decoder = DecoderFactory.defaultFactory().createBinaryDecoder(bytes, decoder);
+    boolean[] nonNull = IOUtils.readBoolArray(decoder);
+    for(Field field : schema.getFields()) {
+      if(nonNull[field.pos()]) {
+        obj.put(field.pos(), datumReader.read(null, field.schema(), decoder));
+      }
+    }
+    return obj;
+  }
+
+  /** Returns the contents of a bytes field of a record */
+  static byte[] toBytes(Object buffer) {
+    ByteBuffer bytes = (ByteBuffer) buffer;
+    byte[] arr = new byte[bytes.remaining()];
+    bytes.duplicate().get(arr);
+    return arr;
+  }
+}
@@ -0,0 +1,198 @@
+package org.gora.memory.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Allocates blocks of memory from slabs of direct {@link ByteBuffer}s,
+ * which live outside of the Java heap. The blocks are allocated
+ * sequentially from the current slab, and the slabs whose blocks are all
+ * freed are reused. Blocks larger than the slab size get slabs of their
+ * own, which are released when the blocks are freed.
+ *
+ * <p> The blocks are addressed by longs, holding the index of the slab in
+ * the high 32 bits, and the offset in the slab in the low 32 bits.
+ * SlabAllocator is not thread safe.
+ */
+class SlabAllocator {
+
+  private static class Slab {
+    private final ByteBuffer buffer;
+    /** The offset of the next block */
+    private int position;
+    /** The number of bytes in the blocks not freed */
+    private int used;
+
+    Slab(int size) {
+      buffer = ByteBuffer.allocateDirect(size);
+    }
+  }
+
+  private final int slabSize;
+
+  private final long maxMemory;
+
+  private final List<Slab> slabs = new ArrayList<Slab>();
+
+  /** The indexes of the empty slabs, and of the released large slabs */
+  private final LinkedList<Integer> freeSlabs = new LinkedList<Integer>();
+
+  private int current = -1;
+
+  private long allocatedBytes;
+
+  private long usedBytes;
+
+  /**
+   * @param slabSize the size of the slabs in bytes
+   * @param maxMemory the maximum number of bytes allocated, or a
+   * non positive value for no limit
+   */
+  public SlabAllocator(int slabSize, long maxMemory) {
+    this.slabSize = slabSize;
+    this.maxMemory = maxMemory;
+  }
+
+  /**
+   * Allocates a block of the given length.
+   * @return the address of the block
+   * @throws IOException if the memory cap would be exceeded
+   */
+  public long allocate(int length) throws IOException {
+    if(length > slabSize) {
+      int index = newSlab(length);
+      return use(index, length);
+    }
+    if(current >= 0 && slabs.get(current).used == 0) {
+      //all the blocks of the current slab are freed
+      slabs.get(current).position = 0;
+    }
+    if(current < 0 || slabs.get(current).position + length > slabSize) {
+      current = nextSlab();
+    }
+    return use(current, length);
+  }
+
+  private long use(int index, int length) {
+    Slab slab = slabs.get(index);
+    int offset = slab.position;
+    slab.position += length;
+    slab.used += length;
+    usedBytes += length;
+    return ((long) index << 32) | offset;
+  }
+
+  /** Returns an empty slab of the slab size, reusing the freed ones */
+  private int nextSlab() throws IOException {
+    for(Integer index : freeSlabs) {
+      if(slabs.get(index) != null) {
+        freeSlabs.remove(index);
+        return index;
+      }
+    }
+    return newSlab(slabSize);
+  }
+
+  private int newSlab(int size) throws IOException {
+    reserve(size);
+    Slab slab = new Slab(size);
+    //the indexes of the released slabs are reused
+    for(Integer index : freeSlabs) {
+      if(slabs.get(index) == null) {
+        freeSlabs.remove(index);
+        slabs.set(index, slab);
+        return index;
+      }
+    }
+    slabs.add(slab);
+    return slabs.size() - 1;
+  }
+
+  /**
+   * Counts memory allocated outside of the slabs, as the pages of the
+   * {@link OffHeapKeyIndex}, against the memory cap.
+   * @throws IOException if the memory cap would be exceeded
+   */
+  public void reserve(long size) throws IOException {
+    if(maxMemory > 0 && allocatedBytes + size > maxMemory) {
+      throw new IOException("Cannot allocate " + size + " bytes, "
+          + allocatedBytes + " of the maximum " + maxMemory + " bytes are allocated");
+    }
+    allocatedBytes += size;
+  }
+
+  /** Stops counting the memory reserved by {@link #reserve(long)} */
+  public void release(long size) {
+    allocatedBytes -= size;
+  }
+
+  /**
+   * Frees the block of the given length at the address.
+   */
+  public void free(long address, int length) {
+    int index = (int) (address >>> 32);
+    Slab slab = slabs.get(index);
+    slab.used -= length;
+    usedBytes -= length;
+    if(slab.used > 0 || index == current) {
+      return;
+    }
+    slab.position = 0;
+    if(slab.buffer.capacity() > slabSize) {
+      //the large slabs are not reused, their memory is released by the GC
+      slabs.set(index, null);
+      allocatedBytes -= slab.buffer.capacity();
+    }
+    freeSlabs.add(index);
+  }
+
+  /**
+   * Returns the slab of the address. The block starts at the
+   * {@link #getOffset(long)} of the slab.
+   */
+  public ByteBuffer getBuffer(long address) {
+    return slabs.get((int) (address >>> 32)).buffer;
+  }
+
+  /** Returns the offset of the address in its slab */
+  public static int getOffset(long address) {
+    return (int) address;
+  }
+
+  /** Releases all the slabs */
+  public void clear() {
+    slabs.clear();
+    freeSlabs.clear();
+    current = -1;
+    allocatedBytes = 0;
+    usedBytes = 0;
+  }
+
+  /** Returns the number of bytes of the slabs allocated and reserved */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** Returns the number of bytes of the blocks not freed */
+  public long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /** Returns the number of allocated slabs */
+  public int getSlabCount() {
+    return slabs.size() - countReleased();
+  }
+
+  private int countReleased() {
+    int count = 0;
+    for(Integer index : freeSlabs) {
+      if(slabs.get(index) == null) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,363 @@
+package org.gora.memory.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.gora.util.DaemonThreadFactory;
+
+/**
+ * An append only log of the writes to a {@link MemStore}, kept in
+ * numbered segment files named "wal-&lt;segment&gt;.log" in a directory.
+ * Every entry holds the operation, the write time, the serialized key
+ * and the serialized object, and is checksummed, so that a partially
+ * written entry at the end of the last segment is detected and skipped on
+ * recovery. A corrupt entry in an earlier segment, which was synced and
+ * closed when the log was rolled, fails the recovery.
+ *
+ * <p> The entries are buffered, and are forced to the disk as set by the
+ * {@link SyncPolicy}. The concurrent writers waiting for their entries to
+ * be synced share a single sync (group commit).
+ */
+class WriteAheadLog implements Closeable {
+
+  private static final Log log = LogFactory.getLog(WriteAheadLog.class);
+
+  /** When the entries are forced to the disk */
+  public enum SyncPolicy {
+    /** every write waits for its entry to be synced */
+    ALWAYS,
+    /** the entries are synced periodically */
+    INTERVAL,
+    /** the entries are synced by {@link WriteAheadLog#sync()} only */
+    FLUSH
+  }
+
+  public static final byte PUT = 1;
+  public static final byte DELETE = 2;
+  public static final byte CLEAR = 3;
+
+  private static final String PREFIX = "wal-";
+  private static final String SUFFIX = ".log";
+
+  /** An entry of the log */
+  public static class Entry {
+    public final byte op;
+    public final long time;
+    public final byte[] key;
+    public final byte[] value;
+
+    public Entry(byte op, long time, byte[] key, byte[] value) {
+      this.op = op;
+      this.time = time;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final File dir;
+
+  private final SyncPolicy syncPolicy;
+
+  private ScheduledExecutorService syncer;
+
+  private long segment;
+
+  private FileOutputStream fileOut;
+
+  private DataOutputStream out;
+
+  private final DataOutputBuffer payload = new DataOutputBuffer();
+
+  private final CRC32 crc = new CRC32();
+
+  /** The number of the entries appended, guarded by this */
+  private long appended;
+
+  /** The number of the entries synced, guarded by syncLock */
+  private long synced;
+
+  private final Object syncLock = new Object();
+
+  /**
+   * Opens a new segment after the given segment.
+   * @param syncInterval the interval of the syncs in milliseconds, for
+   * {@link SyncPolicy#INTERVAL}
+   */
+  public WriteAheadLog(File dir, long lastSegment, SyncPolicy syncPolicy
+      , long syncInterval) throws IOException {
+    this.dir = dir;
+    this.syncPolicy = syncPolicy;
+    open(lastSegment + 1);
+    if(syncPolicy == SyncPolicy.INTERVAL) {
+      syncer = Executors.newSingleThreadScheduledExecutor(
+          new DaemonThreadFactory("wal-sync"));
+      syncer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sync();
+          } catch (IOException ex) {
+            log.error("Cannot sync the log: " + StringUtils.stringifyException(ex));
+          }
+        }
+      }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void open(long segment) throws IOException {
+    this.segment = segment;
+    fileOut = new FileOutputStream(getSegmentFile(dir, segment));
+    out = new DataOutputStream(new BufferedOutputStream(fileOut));
+  }
+
+  /** Returns the number of the segment being written */
+  public synchronized long getSegment() {
+    return segment;
+  }
+
+  /**
+   * Appends an entry to the log. The entry is not synced, the writers
+   * should call {@link #commit(long)} with the returned sequence number.
+   * @param value the serialized object, or null
+   * @return the sequence number of the entry
+   */
+  public long append(byte op, long time, byte[] key, byte[] value)
+  throws IOException {
+    synchronized (this) {
+      payload.reset();
+      payload.writeByte(op);
+      payload.writeLong(time);
+      WritableUtils.writeVInt(payload, key.length);
+      payload.write(key);
+      if(value != null) {
+        WritableUtils.writeVInt(payload, value.length);
+        payload.write(value);
+      }
+      crc.reset();
+      crc.update(payload.getData(), 0, payload.getLength());
+      out.writeInt(payload.getLength());
+      out.writeInt((int) crc.getValue());
+      out.write(payload.getData(), 0, payload.getLength());
+      return ++appended;
+    }
+  }
+
+  /**
+   * Waits for the entry with the sequence number to be synced if the sync
+   * policy is {@link SyncPolicy#ALWAYS}.
+   */
+  public void commit(long sequence) throws IOException {
+    if(syncPolicy == SyncPolicy.ALWAYS) {
+      sync(sequence);
+    }
+  }
+
+  /** Forces all the appended entries to the disk */
+  public void sync() throws IOException {
+    long sequence;
+    synchronized (this) {
+      sequence = appended;
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Forces the entries up to the sequence number to the disk. The entries
+   * appended while a sync is running are synced together by the next one.
+   */
+  private void sync(long sequence) throws IOException {
+    synchronized (syncLock) {
+      if(synced >= sequence) {
+        return;
+      }
+      long target;
+      FileChannel channel;
+      synchronized (this) {
+        out.flush();
+        target = appended;
+        channel = fileOut.getChannel();
+      }
+      channel.force(false);
+      synced = target;
+    }
+  }
+
+  /**
+   * Syncs and closes the current segment, and opens the next one.
+   * @return the number of the new segment
+   */
+  public long roll() throws IOException {
+    synchronized (syncLock) {
+      synchronized (this) {
+        out.flush();
+        fileOut.getChannel().force(false);
+        out.close();
+        synced = appended;
+        open(segment + 1);
+        return segment;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if(syncer != null) {
+      syncer.shutdownNow();
+    }
+    synchronized (syncLock) {
+      synchronized (this) {
+        out.flush();
+        fileOut.getChannel().force(false);
+        out.close();
+        synced = appended;
+      }
+    }
+  }
+
+  /** Returns the file of the segment */
+  public static File getSegmentFile(File dir, long segment) {
+    return new File(dir, PREFIX + segment + SUFFIX);
+  }
+
+  /** Returns the numbers of the segments in the directory, in ascending order */
+  public static List<Long> getSegments(File dir) {
+    List<Long> segments = new ArrayList<Long>();
+    String[] names = dir.list();
+    if(names != null) {
+      for(String name : names) {
+        if(name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+          try {
+            segments.add(Long.parseLong(name.substring(PREFIX.length()
+                , name.length() - SUFFIX.length())));
+          } catch (NumberFormatException ignore) {
+          }
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  /**
+   * Reads the entries of a segment, until its end. A partially written or
+   * corrupt entry ends the last segment, which is written to when the
+   * process dies, and is truncated by {@link #truncate()}. It fails the
+   * reads of the other segments.
+   */
+  public static class Reader implements Closeable {
+    private final File file;
+    private final boolean last;
+    private final DataInputStream in;
+    private final CRC32 crc = new CRC32();
+
+    /** The end of the last entry read */
+    private long position;
+
+    /** Whether the segment ends with a partially written entry */
+    private boolean torn;
+
+    /**
+     * @param last whether the segment is the last one of the log
+     */
+    public Reader(File file, boolean last) throws IOException {
+      this.file = file;
+      this.last = last;
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    /** Returns the next entry, or null at the end of the segment */
+    public Entry next() throws IOException {
+      if(torn) {
+        return null;
+      }
+      in.mark(1);
+      if(in.read() < 0) {
+        return null;
+      }
+      in.reset();
+      try {
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if(length < 0 || length > file.length() - position) {
+          return corrupt();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        crc.reset();
+        crc.update(bytes);
+        if((int) crc.getValue() != checksum) {
+          return corrupt();
+        }
+        position += 8 + length;
+        DataInputStream entry = new DataInputStream(
+            new ByteArrayInputStream(bytes));
+        byte op = entry.readByte();
+        long time = entry.readLong();
+        byte[] key = new byte[WritableUtils.readVInt(entry)];
+        entry.readFully(key);
+        byte[] value = null;
+        if(entry.available() > 0) {
+          value = new byte[WritableUtils.readVInt(entry)];
+          entry.readFully(value);
+        }
+        return new Entry(op, time, key, value);
+      } catch (EOFException ex) {
+        return corrupt();
+      }
+    }
+
+    private Entry corrupt() throws IOException {
+      if(!last) {
+        throw new IOException("Corrupt entry at " + position + " of " + file);
+      }
+      log.warn("Skipping the corrupt entries from " + position + " of " + file);
+      torn = true;
+      return null;
+    }
+
+    /**
+     * Removes the partially written entry at the end of the segment if any,
+     * so that the segment can be read once it is not the last one.
+     */
+    public void truncate() throws IOException {
+      if(!torn) {
+        return;
+      }
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(position);
+        raf.getFD().sync();
+      } finally {
+        raf.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package org.gora.metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * The metrics of the operations of a DataStore class on a schema.
+ *
+ * <p> The metrics are exposed as a JMX MBean with the read-only
+ * attributes &lt;operation&gt;Count, &lt;operation&gt;Errors,
+ * &lt;operation&gt;Bytes, and &lt;operation&gt;MeanLatency,
+ * &lt;operation&gt;P50Latency, &lt;operation&gt;P99Latency,
+ * &lt;operation&gt;MaxLatency in microseconds, and the operation reset.
+ */
+public class DataStoreMetrics implements DynamicMBean {
+
+  /** The measured operations */
+  public static enum Operation {
+    GET("get"),
+    PUT("put"),
+    DELETE("delete"),
+    DELETE_BY_QUERY("deleteByQuery"),
+    EXECUTE("execute"),
+    NEXT("next"),
+    FLUSH("flush");
+
+    private final String name;
+
+    private Operation(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  private static final String[] STATS = {"Count", "Errors", "Bytes"
+    , "MeanLatency", "P50Latency", "P99Latency", "MaxLatency"};
+
+  private final String storeName;
+
+  private final String schemaName;
+
+  private final Map<Operation, OperationMetrics> operations =
+    new EnumMap<Operation, OperationMetrics>(Operation.class);
+
+  /**
+   * @param storeName the name of the DataStore class
+   * @param schemaName the schema name of the DataStore
+   */
+  public DataStoreMetrics(String storeName, String schemaName) {
+    this.storeName = storeName;
+    this.schemaName = schemaName;
+    for(Operation operation : Operation.values()) {
+      operations.put(operation, new OperationMetrics());
+    }
+  }
+
+  public String getStoreName() {
+    return storeName;
+  }
+
+  public String getSchemaName() {
+    return schemaName;
+  }
+
+  /** Returns the metrics of the operation */
+  public OperationMetrics getMetrics(Operation operation) {
+    return operations.get(operation);
+  }
+
+  /**
+   * Records an operation.
+   * @see OperationMetrics#record(long, long, boolean)
+   */
+  public void record(Operation operation, long startNanos, long bytes
+      , boolean success) {
+    operations.get(operation).record(startNanos, bytes, success);
+  }
+
+  public void reset() {
+    for(OperationMetrics metrics : operations.values()) {
+      metrics.reset();
+    }
+  }
+
+  @Override
+  public Object getAttribute(String attribute)
+  throws AttributeNotFoundException {
+    for(Operation operation : Operation.values()) {
+      if(!attribute.startsWith(operation.getName())) {
+        continue;
+      }
+      OperationMetrics metrics = operations.get(operation);
+      String stat = attribute.substring(operation.getName().length());
+      if(stat.equals("Count")) {
+        return metrics.getCount();
+      } else if(stat.equals("Errors")) {
+        return metrics.getErrorCount();
+      } else if(stat.equals("Bytes")) {
+        return metrics.getBytes();
+      } else if(stat.equals("MeanLatency")) {
+        return Math.round(metrics.getLatencies().getMean());
+      } else if(stat.equals("P50Latency")) {
+        return metrics.getLatencies().getPercentile(50);
+      } else if(stat.equals("P99Latency")) {
+        return metrics.getLatencies().getPercentile(99);
+      } else if(stat.equals("MaxLatency")) {
+        return metrics.getLatencies().getMax();
+      }
+    }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+    for(String attribute : attributes) {
+      try {
+        list.add(new Attribute(attribute, getAttribute(attribute)));
+      } catch (AttributeNotFoundException ignore) {
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute)
+  throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+  throws ReflectionException {
+    if("reset".equals(actionName)) {
+      reset();
+      return null;
+    }
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+    for(Operation operation : Operation.values()) {
+      for(String stat : STATS) {
+        attributes.add(new MBeanAttributeInfo(operation.getName() + stat
+            , "java.lang.Long", stat + " of " + operation.getName()
+            , true, false, false));
+      }
+    }
+    MBeanOperationInfo reset = new MBeanOperationInfo("reset"
+        , "Resets the metrics", new MBeanParameterInfo[0], "void"
+        , MBeanOperationInfo.ACTION);
+    return new MBeanInfo(getClass().getName()
+        , "Metrics of " + storeName + " on " + schemaName
+        , attributes.toArray(new MBeanAttributeInfo[attributes.size()])
+        , null, new MBeanOperationInfo[] {reset}, null);
+  }
+
+  @Override
+  public String toString() {
+    return storeName + "[" + schemaName + "]";
+  }
+}
@@ -0,0 +1,116 @@
+package org.gora.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, with buckets of exponentially
+ * increasing sizes. Bucket i counts the latencies in
+ * [2<sup>i-1</sup>, 2<sup>i</sup>) microseconds, so the percentiles are
+ * accurate within a factor of two.
+ */
+public class LatencyHistogram {
+
+  /** The last bucket counts the latencies of 2^38 microseconds and above */
+  public static final int NUM_BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    buckets.incrementAndGet(getBucket(micros));
+    count.incrementAndGet();
+    sum.addAndGet(micros);
+    long current;
+    while(micros > (current = max.get())) {
+      if(max.compareAndSet(current, micros)) {
+        break;
+      }
+    }
+  }
+
+  private static int getBucket(long micros) {
+    return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+  }
+
+  /** Returns the number of recorded latencies */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Returns the sum of the latencies in microseconds */
+  public long getSum() {
+    return sum.get();
+  }
+
+  /** Returns the mean latency in microseconds */
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0d : sum.get() / (double) n;
+  }
+
+  /** Returns the maximum latency in microseconds */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the upper bound of the bucket containing the percentile of
+   * the latencies, in microseconds.
+   * @param percentile the percentile in [0, 100]
+   */
+  public long getPercentile(double percentile) {
+    long n = 0;
+    long[] counts = new long[NUM_BUCKETS];
+    for(int i=0; i<NUM_BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      n += counts[i];
+    }
+    if(n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(n * Math.min(100d, percentile) / 100d);
+    long seen = 0;
+    for(int i=0; i<NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if(seen >= rank && counts[i] > 0) {
+        return Math.min(1L << i, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Returns the counts of the buckets.
+   */
+  public long[] getBuckets() {
+    long[] counts = new long[NUM_BUCKETS];
+    for(int i=0; i<NUM_BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Clears the histogram. The latencies recorded concurrently may be
+   * partially cleared.
+   */
+  public void reset() {
+    for(int i=0; i<NUM_BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+}
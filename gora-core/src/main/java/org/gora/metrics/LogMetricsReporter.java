@@ -0,0 +1,32 @@
+package org.gora.metrics;
+
+import java.util.Collection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gora.metrics.DataStoreMetrics.Operation;
+
+/**
+ * A {@link MetricsReporter} logging the metrics of the operations which
+ * are performed at least once.
+ */
+public class LogMetricsReporter implements MetricsReporter {
+
+  private static final Log log = LogFactory.getLog(LogMetricsReporter.class);
+
+  @Override
+  public void report(Collection<DataStoreMetrics> metrics) {
+    if(!log.isInfoEnabled()) {
+      return;
+    }
+    for(DataStoreMetrics storeMetrics : metrics) {
+      for(Operation operation : Operation.values()) {
+        OperationMetrics operationMetrics = storeMetrics.getMetrics(operation);
+        if(operationMetrics.getCount() > 0) {
+          log.info(storeMetrics + " " + operation.getName() + ": "
+              + operationMetrics);
+        }
+      }
+    }
+  }
+}
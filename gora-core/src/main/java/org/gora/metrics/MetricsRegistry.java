@@ -0,0 +1,162 @@
+package org.gora.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.StringUtils;
+import org.gora.util.DaemonThreadFactory;
+import org.gora.util.ReflectionUtils;
+
+/**
+ * The registry of the {@link DataStoreMetrics} of the DataStore classes
+ * and schemas. The metrics are registered to the platform MBean server
+ * as "org.gora:type=DataStoreMetrics,store=&lt;class&gt;,schema=&lt;schema&gt;",
+ * and reported to the {@link MetricsReporter}s every
+ * "gora.metrics.report.interval.ms" milliseconds.
+ */
+public class MetricsRegistry {
+
+  private static final Log log = LogFactory.getLog(MetricsRegistry.class);
+
+  /** Comma separated class names of the {@link MetricsReporter}s */
+  public static final String REPORTERS_KEY = "gora.metrics.reporters";
+
+  public static final String REPORT_INTERVAL_KEY = "gora.metrics.report.interval.ms";
+  public static final long DEFAULT_REPORT_INTERVAL = 60000;
+
+  private static final ConcurrentMap<String, DataStoreMetrics> metrics =
+    new ConcurrentHashMap<String, DataStoreMetrics>();
+
+  private static final List<MetricsReporter> reporters =
+    new CopyOnWriteArrayList<MetricsReporter>();
+
+  private static ScheduledExecutorService executor;
+
+  private static long reportInterval = DEFAULT_REPORT_INTERVAL;
+
+  private static boolean configured = false;
+
+  private MetricsRegistry() { }
+
+  /**
+   * Adds the reporters and sets the report interval from the properties,
+   * only the first time it is called.
+   */
+  public static synchronized void configure(Properties properties) {
+    if(configured || properties == null) {
+      return;
+    }
+    configured = true;
+    String interval = properties.getProperty(REPORT_INTERVAL_KEY);
+    if(interval != null) {
+      reportInterval = Long.parseLong(interval.trim());
+    }
+    String classes = properties.getProperty(REPORTERS_KEY);
+    if(classes == null) {
+      return;
+    }
+    for(String className : classes.split(",")) {
+      if(className.trim().length() == 0) {
+        continue;
+      }
+      try {
+        addReporter((MetricsReporter) ReflectionUtils.newInstance(
+            className.trim()));
+      } catch (Exception ex) {
+        log.error("Cannot create the metrics reporter " + className + ": "
+            + StringUtils.stringifyException(ex));
+      }
+    }
+  }
+
+  /**
+   * Returns the metrics of the DataStore class on the schema, creating
+   * and registering them to JMX the first time.
+   */
+  public static DataStoreMetrics getMetrics(String storeName, String schemaName) {
+    String name = storeName + "/" + schemaName;
+    DataStoreMetrics storeMetrics = metrics.get(name);
+    if(storeMetrics == null) {
+      storeMetrics = new DataStoreMetrics(storeName, schemaName);
+      DataStoreMetrics existing = metrics.putIfAbsent(name, storeMetrics);
+      if(existing != null) {
+        return existing;
+      }
+      register(storeMetrics);
+    }
+    return storeMetrics;
+  }
+
+  /**
+   * Returns the metrics of all the DataStores
+   */
+  public static Collection<DataStoreMetrics> getAllMetrics() {
+    return new ArrayList<DataStoreMetrics>(metrics.values());
+  }
+
+  /**
+   * Adds a reporter, starting the periodic reports if needed.
+   */
+  public static synchronized void addReporter(MetricsReporter reporter) {
+    reporters.add(reporter);
+    if(executor == null && reportInterval > 0) {
+      executor = Executors.newSingleThreadScheduledExecutor(
+          new DaemonThreadFactory("gora-metrics"));
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          report();
+        }
+      }, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public static synchronized void removeReporter(MetricsReporter reporter) {
+    reporters.remove(reporter);
+    if(reporters.isEmpty() && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Reports the metrics to all the reporters now.
+   */
+  public static void report() {
+    Collection<DataStoreMetrics> all = getAllMetrics();
+    for(MetricsReporter reporter : reporters) {
+      try {
+        reporter.report(all);
+      } catch (Exception ex) {
+        log.warn("Error reporting the metrics to " + reporter + ": "
+            + StringUtils.stringifyException(ex));
+      }
+    }
+  }
+
+  private static void register(DataStoreMetrics storeMetrics) {
+    try {
+      ObjectName name = new ObjectName("org.gora:type=DataStoreMetrics,store="
+          + ObjectName.quote(storeMetrics.getStoreName()) + ",schema="
+          + ObjectName.quote(String.valueOf(storeMetrics.getSchemaName())));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(storeMetrics, name);
+    } catch (JMException ex) {
+      log.warn("Cannot register the metrics of " + storeMetrics + " to JMX: "
+          + ex.getMessage());
+    }
+  }
+}
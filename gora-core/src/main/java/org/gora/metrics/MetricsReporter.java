@@ -0,0 +1,20 @@
+package org.gora.metrics;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Publishes the metrics of the DataStores. Reporters are added to the
+ * {@link MetricsRegistry}, either by the property "gora.metrics.reporters"
+ * listing their class names, or programmatically, and they are called
+ * periodically from a background thread. Reporters configured by the
+ * property should have a no-arg constructor.
+ */
+public interface MetricsReporter {
+
+  /**
+   * Reports the current metrics of the DataStores.
+   */
+  public void report(Collection<DataStoreMetrics> metrics) throws IOException;
+
+}
@@ -0,0 +1,74 @@
+package org.gora.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters and the latency histogram of a DataStore operation. The
+ * counters are lock-free, so that they can be updated by concurrent
+ * operations with low overhead.
+ */
+public class OperationMetrics {
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong errors = new AtomicLong();
+
+  private final AtomicLong bytes = new AtomicLong();
+
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  /**
+   * Records an operation.
+   * @param startNanos the value of {@link System#nanoTime()} when the
+   * operation started
+   * @param bytes the approximate number of bytes read or written
+   * @param success whether the operation succeeded
+   */
+  public void record(long startNanos, long bytes, boolean success) {
+    count.incrementAndGet();
+    if(!success) {
+      errors.incrementAndGet();
+    }
+    if(bytes > 0) {
+      this.bytes.addAndGet(bytes);
+    }
+    latencies.record(System.nanoTime() - startNanos);
+  }
+
+  /** Returns the number of operations, including the failed ones */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Returns the number of failed operations */
+  public long getErrorCount() {
+    return errors.get();
+  }
+
+  /** Returns the approximate number of bytes read or written */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /** Returns the histogram of the latencies */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  public void reset() {
+    count.set(0);
+    errors.set(0);
+    bytes.set(0);
+    latencies.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", errors=" + getErrorCount()
+      + ", bytes=" + getBytes()
+      + ", latency(us) mean=" + Math.round(latencies.getMean())
+      + " p50=" + latencies.getPercentile(50)
+      + " p99=" + latencies.getPercentile(99)
+      + " max=" + latencies.getMax();
+  }
+}
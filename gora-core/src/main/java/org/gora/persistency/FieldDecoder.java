@@ -0,0 +1,24 @@
+package org.gora.persistency;
+
+import java.io.IOException;
+
+/**
+ * FieldDecoder decodes the raw values of the fields of {@link Persistent}
+ * objects as read from a datastore. The datastores reading objects lazily
+ * keep the raw values in the objects, which are decoded on their first
+ * access.
+ * @see Persistent#setLazy(int, Object, FieldDecoder)
+ */
+public interface FieldDecoder {
+
+  /**
+   * Decodes the raw value of the field.
+   * @param persistent the object of the field
+   * @param fieldIndex the index of the field
+   * @param raw the raw value of the field
+   * @return the value of the field
+   */
+  public Object decode(Persistent persistent, int fieldIndex, Object raw)
+  throws IOException;
+
+}
@@ -164,6 +164,23 @@ public interface Persistent extends SpecificRecord, Cloneable {
    * Clears the readable state.
    */
   public void clearReadable();
-  
+
+  /**
+   * Sets the raw value of the field as read from the datastore, which is
+   * decoded by the decoder on the first access to the field. The field
+   * is not readable until it is decoded.
+   * @param fieldIndex the offset of the field in the object
+   * @param raw the raw value of the field
+   * @param decoder the decoder of the raw value
+   */
+  public void setLazy(int fieldIndex, Object raw, FieldDecoder decoder);
+
+  /**
+   * Returns whether the field holds a raw value not yet decoded.
+   * @param fieldIndex the offset of the field in the object
+   * @return whether the field is not yet decoded
+   */
+  public boolean isLazy(int fieldIndex);
+
   public Persistent clone();
 }
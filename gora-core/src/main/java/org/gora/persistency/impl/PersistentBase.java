@@ -1,14 +1,17 @@
 package org.gora.persistency.impl;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
 import org.apache.avro.specific.SpecificRecord;
 import org.gora.avro.PersistentDatumReader;
+import org.gora.persistency.FieldDecoder;
 import org.gora.persistency.ListGenericArray;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.StateManager;
@@ -30,6 +33,11 @@ public abstract class PersistentBase implements Persistent {
     
   private StateManager stateManager;
 
+  /** The raw values of the fields not yet decoded, or null if none */
+  private Object[] lazyValues;
+
+  private FieldDecoder lazyDecoder;
+
   protected PersistentBase() {
     this(new StateManagerImpl());
   }
@@ -78,6 +86,7 @@ public abstract class PersistentBase implements Persistent {
   @Override
   @SuppressWarnings("rawtypes")
   public void clear() {
+    lazyValues = null;
     List<Field> fields = getSchema().getFields();
 
     for(int i=0; i<getFields().length; i++) {
@@ -204,6 +213,47 @@ public abstract class PersistentBase implements Persistent {
     clearReadable(getFieldIndex(field));
   }
 
+  @Override
+  public void setLazy(int fieldIndex, Object raw, FieldDecoder decoder) {
+    if(lazyValues == null) {
+      lazyValues = new Object[getSchema().getFields().size()];
+    }
+    lazyValues[fieldIndex] = raw;
+    lazyDecoder = decoder;
+    clearReadable(fieldIndex);
+  }
+
+  @Override
+  public boolean isLazy(int fieldIndex) {
+    return lazyValues != null && lazyValues[fieldIndex] != null;
+  }
+
+  /**
+   * Decodes the raw value of the field if it is not yet decoded. The
+   * generated get methods call this before returning the fields, so the
+   * values are decoded transparently on their first access.
+   * @param fieldIndex the offset of the field in the object
+   */
+  protected void materialize(int fieldIndex) {
+    if(!isLazy(fieldIndex)) {
+      return;
+    }
+    Object raw = lazyValues[fieldIndex];
+    lazyValues[fieldIndex] = null;
+    Object value;
+    try {
+      value = lazyDecoder.decode(this, fieldIndex, raw);
+    } catch (IOException ex) {
+      throw new AvroRuntimeException(ex);
+    }
+    boolean dirty = isDirty(fieldIndex);
+    put(fieldIndex, value);
+    if(!dirty) {
+      clearDirty(fieldIndex);
+    }
+    setReadable(fieldIndex);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -268,7 +318,16 @@ public abstract class PersistentBase implements Persistent {
     return builder.toString();
   }
   
+  /**
+   * Returns whether the value equals the value of the field. The raw value
+   * of a field not yet decoded is discarded without decoding it, and the
+   * field is considered changed.
+   */
   protected boolean isFieldEqual(int index, Object value) {
+    if(isLazy(index)) {
+      lazyValues[index] = null;
+      return false;
+    }
     Object old = get(index);
     if (old == null && value == null)
       return true;
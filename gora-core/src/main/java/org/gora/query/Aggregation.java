@@ -0,0 +1,72 @@
+package org.gora.query;
+
+import org.gora.store.DataStore;
+
+/**
+ * An aggregate function computed over the results of a query by
+ * {@link DataStore#aggregate(Query, Aggregation)}.
+ * <pre>
+ *   long count = (Long) store.aggregate(query, Aggregation.count());
+ *   Double avg = (Double) store.aggregate(query, Aggregation.avg("version"));
+ * </pre>
+ */
+public class Aggregation {
+
+  public static enum Function {
+    /** The number of results, as a Long */
+    COUNT,
+    /** The smallest key of the results */
+    MIN_KEY,
+    /** The largest key of the results */
+    MAX_KEY,
+    /** The sum of a numeric field, as a Long for int and long fields,
+     * and as a Double for float and double fields */
+    SUM,
+    /** The average of a numeric field, as a Double */
+    AVG
+  }
+
+  private final Function function;
+  private final String field;
+
+  private Aggregation(Function function, String field) {
+    this.function = function;
+    this.field = field;
+  }
+
+  public static Aggregation count() {
+    return new Aggregation(Function.COUNT, null);
+  }
+
+  public static Aggregation minKey() {
+    return new Aggregation(Function.MIN_KEY, null);
+  }
+
+  public static Aggregation maxKey() {
+    return new Aggregation(Function.MAX_KEY, null);
+  }
+
+  public static Aggregation sum(String field) {
+    return new Aggregation(Function.SUM, field);
+  }
+
+  public static Aggregation avg(String field) {
+    return new Aggregation(Function.AVG, field);
+  }
+
+  public Function getFunction() {
+    return function;
+  }
+
+  /**
+   * Returns the field aggregated by SUM and AVG, or null
+   */
+  public String getField() {
+    return field;
+  }
+
+  @Override
+  public String toString() {
+    return field == null ? function.toString() : function + "(" + field + ")";
+  }
+}
@@ -0,0 +1,585 @@
+package org.gora.query;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.persistency.Persistent;
+import org.gora.query.impl.PrefetchingResult;
+import org.gora.query.impl.ResultBase;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.DaemonThreadFactory;
+import org.gora.util.StringUtils;
+
+/**
+ * ParallelQueryExecutor runs the {@link PartitionQuery}s of a query,
+ * as returned by {@link DataStore#getPartitions(Query)}, on a thread pool
+ * in the local JVM, without launching a MapReduce job.
+ *
+ * <p> The results of the partitions are either merged into a single
+ * {@link Result}, in no particular order or in key order, or passed to
+ * a {@link Callback} on the threads running the partitions:
+ * <pre>
+ *   ParallelQueryExecutor&lt;String, WebPage&gt; executor =
+ *     new ParallelQueryExecutor&lt;String, WebPage&gt;(store);
+ *   Result&lt;String, WebPage&gt; result = executor.execute(query);
+ *   while(result.next()) {
+ *     ...
+ *   }
+ *   result.close();
+ *   executor.close();
+ * </pre>
+ *
+ * <p> At most "parallelism" partitions are run at the same time. The
+ * parallelism and the number of results buffered for the merged Result
+ * are configured by the properties "gora.&lt;datastore&gt;.query.parallelism"
+ * and "gora.&lt;datastore&gt;.query.parallel.buffer.size" (or the
+ * "gora.datastore.query.*" counterparts). The wrapped DataStore should be
+ * thread safe.
+ */
+public class ParallelQueryExecutor<K, T extends Persistent> implements Closeable {
+
+  /** Maximum number of partitions run at the same time. Defaults to the
+   * number of processors */
+  public static final String PARALLELISM_PROPERTY = "query.parallelism";
+
+  /** Number of results buffered for the merged Result */
+  public static final String BUFFER_SIZE_PROPERTY = "query.parallel.buffer.size";
+  public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+  /**
+   * Receives the results of the partitions. The callback is called
+   * concurrently from several threads, and the objects passed to it
+   * may be reused by the subsequent calls from the same partition.
+   */
+  public interface Callback<K, T extends Persistent> {
+    /**
+     * Called for each result of the query
+     * @param partition the partition query returning the result
+     */
+    public void onResult(PartitionQuery<K, T> partition, K key, T persistent)
+    throws IOException;
+  }
+
+  private final DataStore<K, T> dataStore;
+
+  private final ExecutorService executor;
+
+  private final boolean ownsExecutor;
+
+  private final int parallelism;
+
+  private final int bufferSize;
+
+  /**
+   * Constructs a ParallelQueryExecutor with its own thread pool,
+   * configured from the default gora properties.
+   */
+  public ParallelQueryExecutor(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a ParallelQueryExecutor with its own thread pool,
+   * configured from the given properties.
+   */
+  public ParallelQueryExecutor(DataStore<K, T> dataStore, Properties properties) {
+    this.dataStore = dataStore;
+    this.parallelism = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, dataStore, PARALLELISM_PROPERTY, null)
+        , Runtime.getRuntime().availableProcessors());
+    this.bufferSize = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, dataStore, BUFFER_SIZE_PROPERTY, null), DEFAULT_BUFFER_SIZE);
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism
+        , parallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()
+        , new DaemonThreadFactory("gora-parallel-query"));
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+    this.ownsExecutor = true;
+  }
+
+  /**
+   * Constructs a ParallelQueryExecutor running the partitions on the
+   * given executor, which can be shared between several stores. The
+   * executor should have at least parallelism threads, and it is not
+   * shut down on {@link #close()}.
+   * @param parallelism maximum number of partitions run at the same time
+   * @param bufferSize number of results buffered for the merged Result
+   */
+  public ParallelQueryExecutor(DataStore<K, T> dataStore
+      , ExecutorService executor, int parallelism, int bufferSize) {
+    this.dataStore = dataStore;
+    this.executor = executor;
+    this.ownsExecutor = false;
+    this.parallelism = parallelism;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Returns the DataStore the queries are run against
+   */
+  public DataStore<K, T> getDataStore() {
+    return dataStore;
+  }
+
+  /**
+   * Returns the maximum number of partitions run at the same time
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Executes the partitions of the query, and returns the merged
+   * results in no particular order.
+   */
+  public Result<K, T> execute(Query<K, T> query) throws IOException {
+    return execute(query, false);
+  }
+
+  /**
+   * Executes the partitions of the query, and returns the merged results.
+   * The results are read ahead and not reused between the calls to
+   * {@link Result#next()}. The Result should be closed to stop the
+   * partitions which are still running.
+   * @param ordered whether to merge the results of the partitions in key
+   * order. The results of each partition should be in key order, as
+   * returned by the stores. If there are more partitions than the
+   * parallelism, the results of the partitions waiting for the merge are
+   * buffered in memory.
+   */
+  public Result<K, T> execute(Query<K, T> query, boolean ordered)
+  throws IOException {
+    ParallelResult result = new ParallelResult(query
+        , dataStore.getPartitions(query), ordered);
+    result.runner.start();
+    return result;
+  }
+
+  /**
+   * Executes the partitions of the query, passing the results to the
+   * callback, and waits for all the partitions to complete. If a partition
+   * or the callback fails, the remaining partitions are stopped and the
+   * error is thrown.
+   */
+  public void execute(Query<K, T> query, final Callback<K, T> callback)
+  throws IOException {
+    final List<PartitionQuery<K, T>> partitions = dataStore.getPartitions(query);
+    PartitionRunner runner = new PartitionRunner(partitions, true) {
+      @Override
+      protected void handle(int partition, Result<K, T> result)
+      throws IOException {
+        callback.onResult(partitions.get(partition), result.getKey()
+            , result.get());
+      }
+      @Override
+      protected synchronized void fail(IOException ex) {
+        super.fail(ex);
+        stopped = true;
+      }
+    };
+    runner.start();
+    try {
+      runner.done.await();
+    } catch (InterruptedException ex) {
+      runner.stop();
+      throw new IOException(ex);
+    }
+    if(runner.error != null) {
+      throw runner.error;
+    }
+  }
+
+  /**
+   * Shuts down the thread pool if it is owned by this object. The
+   * DataStore is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if(ownsExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Runs the partitions on at most parallelism workers, each taking the
+   * next partition to run from a shared queue.
+   */
+  private abstract class PartitionRunner implements Runnable {
+
+    protected final List<PartitionQuery<K, T>> partitions;
+
+    private final boolean reuseObjects;
+
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<Integer>();
+
+    /** The threads running the partitions, guarded by this */
+    private final Set<Thread> workers = new HashSet<Thread>();
+
+    protected final CountDownLatch done;
+
+    protected volatile boolean stopped;
+
+    protected volatile IOException error;
+
+    PartitionRunner(List<PartitionQuery<K, T>> partitions, boolean reuseObjects) {
+      this.partitions = partitions;
+      this.reuseObjects = reuseObjects;
+      for(int i=0; i<partitions.size(); i++) {
+        pending.add(i);
+      }
+      this.done = new CountDownLatch(Math.min(parallelism, partitions.size()));
+    }
+
+    void start() throws IOException {
+      long submitted = 0;
+      try {
+        for(; submitted<done.getCount(); submitted++) {
+          executor.execute(this);
+        }
+      } catch (RejectedExecutionException ex) {
+        for(long i=submitted; i<done.getCount(); i++) {
+          done.countDown();
+        }
+        stop();
+        throw new IOException(ex);
+      }
+    }
+
+    /** Stops the running partitions, and waits for their threads to exit */
+    synchronized void stop() throws IOException {
+      stopped = true;
+      for(Thread worker : workers) {
+        worker.interrupt();
+      }
+      try {
+        while(!workers.isEmpty()) {
+          wait();
+        }
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      }
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if(stopped) {
+          done.countDown();
+          return;
+        }
+        workers.add(Thread.currentThread());
+      }
+      try {
+        Integer partition;
+        while(!stopped && (partition = pending.poll()) != null) {
+          runPartition(partition);
+        }
+      } catch (InterruptedException ex) {
+        //stopped
+      } finally {
+        synchronized (this) {
+          workers.remove(Thread.currentThread());
+          notifyAll();
+        }
+        done.countDown();
+      }
+    }
+
+    private void runPartition(int partition) throws InterruptedException {
+      Result<K, T> result = null;
+      try {
+        result = partitions.get(partition).execute();
+        if(!reuseObjects && result instanceof ResultBase) {
+          ((ResultBase<K, T>) result).setReuseObjects(false);
+        }
+        while(!stopped && result.next()) {
+          handle(partition, result);
+        }
+      } catch (IOException ex) {
+        fail(ex);
+      } catch (RuntimeException ex) {
+        fail(new IOException(ex));
+      } finally {
+        if(result != null) {
+          try {
+            result.close();
+          } catch (IOException ex) {
+            fail(ex);
+          }
+        }
+      }
+      finish(partition);
+    }
+
+    /** Records the first error of the partitions */
+    protected synchronized void fail(IOException ex) {
+      if(error == null) {
+        error = ex;
+      }
+    }
+
+    /** Handles the current result of the partition */
+    protected abstract void handle(int partition, Result<K, T> result)
+    throws IOException, InterruptedException;
+
+    /** Called after the partition completes or fails */
+    protected void finish(int partition) throws InterruptedException { }
+  }
+
+  /** A result of a partition, or the end of a partition if persistent is null */
+  private static class Entry<K, T> {
+    final int partition;
+    final K key;
+    final T persistent;
+    final float progress;
+
+    Entry(int partition, K key, T persistent, float progress) {
+      this.partition = partition;
+      this.key = key;
+      this.persistent = persistent;
+      this.progress = progress;
+    }
+
+    boolean isEnd() {
+      return persistent == null;
+    }
+  }
+
+  /**
+   * The merged results of the partitions. The unordered results are
+   * read from a queue shared by the partitions, while the ordered results
+   * are merged from a queue per partition.
+   */
+  private class ParallelResult implements Result<K, T> {
+
+    private final Query<K, T> query;
+
+    private final List<BlockingQueue<Entry<K, T>>> queues;
+
+    private final PartitionRunner runner;
+
+    private final float[] progress;
+
+    /** The heads of the partitions, for the ordered merge */
+    private PriorityQueue<Entry<K, T>> heads;
+
+    private int remaining;
+
+    private boolean started;
+
+    private Entry<K, T> current;
+
+    private long offset = 0;
+
+    private boolean closed;
+
+    ParallelResult(Query<K, T> query, List<PartitionQuery<K, T>> partitions
+        , boolean ordered) {
+      this.query = query;
+      this.progress = new float[partitions.size()];
+      this.remaining = partitions.size();
+      this.queues = new ArrayList<BlockingQueue<Entry<K, T>>>();
+
+      if(!ordered) {
+        BlockingQueue<Entry<K, T>> queue =
+          new ArrayBlockingQueue<Entry<K, T>>(bufferSize + 1);
+        for(int i=0; i<partitions.size(); i++) {
+          queues.add(queue);
+        }
+      } else {
+        //the merge waits for the heads of all the partitions, so the
+        //partitions cannot block while some others have not started
+        boolean bounded = partitions.size() <= parallelism;
+        int size = Math.max(1, bufferSize / Math.max(1, partitions.size()));
+        for(int i=0; i<partitions.size(); i++) {
+          queues.add(bounded ? new ArrayBlockingQueue<Entry<K, T>>(size + 1)
+              : new LinkedBlockingQueue<Entry<K, T>>());
+        }
+        heads = new PriorityQueue<Entry<K, T>>(Math.max(1, partitions.size())
+            , new Comparator<Entry<K, T>>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public int compare(Entry<K, T> e1, Entry<K, T> e2) {
+            int cmp = ((Comparable<K>)e1.key).compareTo(e2.key);
+            return cmp != 0 ? cmp : e1.partition - e2.partition;
+          }
+        });
+      }
+
+      this.runner = new PartitionRunner(partitions, false) {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void handle(int partition, Result<K, T> result)
+        throws IOException, InterruptedException {
+          K key = result.getKey();
+          T persistent = result.get();
+          if(!(result instanceof ResultBase || result instanceof PrefetchingResult)) {
+            //the result may reuse its objects, so they are copied
+            if(key instanceof Persistent) {
+              key = (K) ((Persistent)key).clone();
+            }
+            persistent = (T) persistent.clone();
+          }
+          put(new Entry<K, T>(partition, key, persistent, result.getProgress()));
+        }
+        @Override
+        protected void finish(int partition) throws InterruptedException {
+          put(new Entry<K, T>(partition, null, null, 1f));
+        }
+        private void put(Entry<K, T> entry) throws InterruptedException {
+          //nothing is read after the result is closed
+          if(!stopped) {
+            queues.get(entry.partition).put(entry);
+          }
+        }
+      };
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      if(closed) {
+        return false;
+      }
+      if(heads == null) {
+        current = null;
+        while(remaining > 0) {
+          Entry<K, T> entry = take(queues.get(0));
+          if(entry != null) {
+            current = entry;
+            break;
+          }
+        }
+      } else {
+        if(!started) {
+          started = true;
+          for(int i=0; i<queues.size(); i++) {
+            advance(i);
+          }
+        } else if(current != null) {
+          advance(current.partition);
+        }
+        current = heads.poll();
+      }
+      if(current == null) {
+        return false;
+      }
+      offset++;
+      return true;
+    }
+
+    /** Reads the next result of the partition into the heads */
+    private void advance(int partition) throws IOException {
+      Entry<K, T> entry = take(queues.get(partition));
+      if(entry != null) {
+        heads.add(entry);
+      }
+    }
+
+    /**
+     * Takes the next entry from the queue, returning null at the end of
+     * a partition, and throwing the error of the failed partitions.
+     */
+    private Entry<K, T> take(BlockingQueue<Entry<K, T>> queue)
+    throws IOException {
+      Entry<K, T> entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      }
+      progress[entry.partition] = entry.progress;
+      if(entry.isEnd()) {
+        remaining--;
+        if(runner.error != null) {
+          throw runner.error;
+        }
+        return null;
+      }
+      return entry;
+    }
+
+    @Override
+    public K getKey() {
+      return current == null ? null : current.key;
+    }
+
+    @Override
+    public T get() {
+      return current == null ? null : current.persistent;
+    }
+
+    @Override
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * Returns the average progress of the partitions, as of their
+     * results read so far.
+     */
+    @Override
+    public float getProgress() throws IOException {
+      if(progress.length == 0) {
+        return 1f;
+      }
+      float sum = 0;
+      for(float p : progress) {
+        sum += p;
+      }
+      return sum / progress.length;
+    }
+
+    /**
+     * Stops the partitions which are still running.
+     */
+    @Override
+    public void close() throws IOException {
+      if(!closed) {
+        closed = true;
+        runner.stop();
+        for(BlockingQueue<Entry<K, T>> queue : queues) {
+          queue.clear();
+        }
+      }
+    }
+
+    @Override
+    public DataStore<K, T> getDataStore() {
+      return dataStore;
+    }
+
+    @Override
+    public Query<K, T> getQuery() {
+      return query;
+    }
+
+    @Override
+    public Class<K> getKeyClass() {
+      return dataStore.getKeyClass();
+    }
+
+    @Override
+    public Class<T> getPersistentClass() {
+      return dataStore.getPersistentClass();
+    }
+  }
+}
@@ -5,6 +5,8 @@ import java.io.IOException;
 
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.io.Writable;
+import org.gora.filter.Filter;
+import org.gora.filter.Filters;
 import org.gora.persistency.Persistent;
 import org.gora.store.DataStore;
 
@@ -34,12 +36,16 @@ public interface Query<K, T extends Persistent> extends Writable, Configurable {
    */
   public abstract Result<K,T> execute() throws IOException;
   
-//  /**
-//   * Compiles the query for performance and error checking. This 
-//   * method is an optional optimization for DataStore implementations.
-//   */
-//  public abstract void compile();
-//  
+  /**
+   * Compiles the query for performance and error checking. The DataStore
+   * checks the fields of the query, and prepares its plan to execute 
+   * the query, which is cached and reused by the queries of the same
+   * shape. This method is an optional optimization, the queries are 
+   * planned on execution otherwise.
+   * @see DataStore#compile(Query)
+   */
+  public abstract void compile() throws IOException;
+
 //  /**
 //   * Sets the query string
 //   * @param queryString the query in String
@@ -87,9 +93,18 @@ public interface Query<K, T extends Persistent> extends Writable, Configurable {
 
   public abstract long getEndTime();
 
-//  public abstract void setFilter(String filter);
-//  
-//  public abstract String getFilter();
+  /* Dimension : filter */
+  /**
+   * Sets the filter restricting the results to the objects it accepts.
+   * Filters are constructed by {@link org.gora.filter.Filters}.
+   */
+  public abstract void setFilter(Filter filter);
+
+  /**
+   * Returns the filter of the query
+   * @return the filter, or null if it is not set
+   */
+  public abstract Filter getFilter();
   
   /**
    * Sets the maximum number of results to return.
@@ -102,35 +117,55 @@ public interface Query<K, T extends Persistent> extends Writable, Configurable {
    */
   public abstract long getLimit();
 
+  /**
+   * Sets the number of results to read ahead on a background thread
+   * while the results are processed.
+   * @param prefetchSize the number of results to prefetch, 0 to disable
+   * prefetching, or a negative number to use the "query.prefetch.size"
+   * property of the store
+   * @see org.gora.query.impl.PrefetchingResult
+   */
+  public abstract void setPrefetchSize(int prefetchSize);
+
+  /**
+   * Returns the number of results to prefetch
+   * @return the prefetch size if it is set, otherwise a negative number
+   */
+  public abstract int getPrefetchSize();
+
   /* parameters */
-  /*
-  public abstract void setParam(int paramIndex, int value);
-  
-  public abstract void setParam(String paramName, int value);
-  
-  public abstract void setParam(int paramIndex, long value);
-  
-  public abstract void setParam(String paramName, long value);
-  
-  public abstract void setParam(int paramIndex, String value);
-  
-  public abstract void setParam(String paramName, String value);
-  
-  public abstract void setParam(int paramIndex, boolean value);
-  
-  public abstract void setParam(String paramName, boolean value);
-  
-  public abstract void setParam(int paramIndex, double value);
-  
-  public abstract void setParam(String paramName, double value);
-  
-  public abstract void setParam(int paramIndex, char value);
-  
-  public abstract void setParam(String paramName, char value);
-  
-  public abstract void setParam(int paramIndex, Date value);
-  
-  public abstract void setParam(String paramName, Date value);
-  */
+
+  /**
+   * Binds the value of the positional parameter. The parameters are
+   * used in the filter as {@link Filters#param(int)} placeholders, so
+   * that the query can be compiled once and executed with different
+   * values.
+   * @param paramIndex the index of the parameter, starting from 1
+   * @param value the value of the parameter
+   */
+  public abstract void setParam(int paramIndex, Object value);
+
+  /**
+   * Binds the value of the named parameter, used in the filter as a
+   * {@link Filters#param(String)} placeholder.
+   * @param paramName the name of the parameter
+   * @param value the value of the parameter
+   */
+  public abstract void setParam(String paramName, Object value);
+
+  /**
+   * Returns the value bound to the positional parameter, or null
+   */
+  public abstract Object getParam(int paramIndex);
+
+  /**
+   * Returns the value bound to the named parameter, or null
+   */
+  public abstract Object getParam(String paramName);
+
+  /**
+   * Clears the values of all the parameters
+   */
+  public abstract void clearParams();
     
 }
@@ -0,0 +1,93 @@
+package org.gora.query.impl;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+
+/**
+ * A {@link Result} of the objects found through a secondary index, which
+ * fetches the objects of the keys returned by the index seek by batched
+ * {@link DataStore#getAll(java.util.Collection, String[])} calls. The keys
+ * outside the key range of the query are skipped, and the filter of the
+ * query is evaluated against the fetched objects, so the query's fields
+ * should include the fields of the filter.
+ */
+public class IndexResult<K, T extends Persistent> extends ResultBase<K, T> {
+
+  private final List<K> keys;
+
+  private final int batchSize;
+
+  private int position = 0;
+
+  private Iterator<Map.Entry<K, T>> batch;
+
+  /**
+   * @param keys the keys found in the index
+   * @param batchSize the number of objects to fetch at once
+   */
+  public IndexResult(DataStore<K, T> dataStore, Query<K, T> query
+      , List<K> keys, int batchSize) {
+    super(dataStore, query);
+    this.keys = keys;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  @Override
+  protected boolean nextInner() throws IOException {
+    while(batch == null || !batch.hasNext()) {
+      if(position >= keys.size()) {
+        return false;
+      }
+      List<K> batchKeys = keys.subList(position
+          , Math.min(keys.size(), position + batchSize));
+      position += batchKeys.size();
+      batch = dataStore.getAll(batchKeys, query.getFields()).entrySet().iterator();
+    }
+    Map.Entry<K, T> entry = batch.next();
+    key = entry.getKey();
+    persistent = entry.getValue();
+    return true;
+  }
+
+  /** Does not clear the objects, which may be the objects held by the store */
+  @Override
+  protected void clear() { }
+
+  @Override
+  public float getProgress() throws IOException {
+    return getProgress(keys.isEmpty() ? 1f : position / (float) keys.size());
+  }
+
+  @Override
+  public void close() throws IOException { }
+
+  /**
+   * Removes the keys outside the key range of the query from the keys
+   * returned by an index. The keys should be Comparable if the query has
+   * a key range.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K> List<K> filterKeys(List<K> keys, Query<K, ?> query) {
+    K startKey = query.getStartKey();
+    K endKey = query.getEndKey();
+    if(startKey == null && endKey == null) {
+      return keys;
+    }
+    Iterator<K> it = keys.iterator();
+    while(it.hasNext()) {
+      Comparable<K> key = (Comparable<K>) it.next();
+      if((startKey != null && key.compareTo(startKey) < 0)
+          || (endKey != null && key.compareTo(endKey) > 0)) {
+        it.remove();
+      }
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,97 @@
+package org.gora.query.impl;
+
+import java.io.IOException;
+
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.metrics.DataStoreMetrics.Operation;
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.util.AvroUtils;
+
+/**
+ * A {@link Result} decorator which records the latency of every call to
+ * {@link #next()}, and the approximate size of the results, as the
+ * {@link Operation#NEXT} metrics.
+ */
+public class MetricsResult<K, T extends Persistent> implements Result<K, T> {
+
+  private final Result<K, T> result;
+
+  private final DataStoreMetrics metrics;
+
+  private final boolean measureBytes;
+
+  /**
+   * @param measureBytes whether to estimate the sizes of the results
+   */
+  public MetricsResult(Result<K, T> result, DataStoreMetrics metrics
+      , boolean measureBytes) {
+    this.result = result;
+    this.metrics = metrics;
+    this.measureBytes = measureBytes;
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    long start = System.nanoTime();
+    long bytes = 0;
+    boolean success = false;
+    try {
+      boolean ret = result.next();
+      if(ret && measureBytes) {
+        bytes = AvroUtils.estimateSize(result.get());
+      }
+      success = true;
+      return ret;
+    } finally {
+      metrics.record(Operation.NEXT, start, bytes, success);
+    }
+  }
+
+  @Override
+  public DataStore<K, T> getDataStore() {
+    return result.getDataStore();
+  }
+
+  @Override
+  public Query<K, T> getQuery() {
+    return result.getQuery();
+  }
+
+  @Override
+  public K getKey() {
+    return result.getKey();
+  }
+
+  @Override
+  public T get() {
+    return result.get();
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return result.getKeyClass();
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return result.getPersistentClass();
+  }
+
+  @Override
+  public long getOffset() {
+    return result.getOffset();
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return result.getProgress();
+  }
+
+  @Override
+  public void close() throws IOException {
+    result.close();
+  }
+}
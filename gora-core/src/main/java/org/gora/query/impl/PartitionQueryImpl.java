@@ -6,6 +6,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
 
+import org.gora.filter.Filter;
 import org.gora.persistency.Persistent;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
@@ -75,6 +76,11 @@ public String[] getLocations() {
     return baseQuery.getEndTime();
   }
 
+  @Override
+  public Filter getFilter() {
+    return baseQuery.getFilter();
+  }
+
   @Override
   public long getLimit() {
     return baseQuery.getLimit();
@@ -105,11 +111,51 @@ public String[] getLocations() {
     baseQuery.setTimeRange(startTime, endTime);
   }
 
+  @Override
+  public void setFilter(Filter filter) {
+    baseQuery.setFilter(filter);
+  }
+
   @Override
   public void setLimit(long limit) {
     baseQuery.setLimit(limit);
   }
 
+  @Override
+  public void setPrefetchSize(int prefetchSize) {
+    baseQuery.setPrefetchSize(prefetchSize);
+  }
+
+  @Override
+  public int getPrefetchSize() {
+    return baseQuery.getPrefetchSize();
+  }
+
+  @Override
+  public void setParam(int paramIndex, Object value) {
+    baseQuery.setParam(paramIndex, value);
+  }
+
+  @Override
+  public void setParam(String paramName, Object value) {
+    baseQuery.setParam(paramName, value);
+  }
+
+  @Override
+  public Object getParam(int paramIndex) {
+    return baseQuery.getParam(paramIndex);
+  }
+
+  @Override
+  public Object getParam(String paramName) {
+    return baseQuery.getParam(paramName);
+  }
+
+  @Override
+  public void clearParams() {
+    baseQuery.clearParams();
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
     super.write(out);
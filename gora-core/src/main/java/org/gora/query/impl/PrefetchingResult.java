@@ -0,0 +1,233 @@
+package org.gora.query.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.DaemonThreadFactory;
+import org.gora.util.StringUtils;
+
+/**
+ * A {@link Result} decorator which reads ahead the results of the
+ * wrapped Result on a background thread into a bounded buffer, so that
+ * the round trips of the backend overlap with the processing of the
+ * results.
+ *
+ * <p> The number of results to prefetch is set by
+ * {@link Query#setPrefetchSize(int)}, or by the property
+ * "gora.&lt;datastore&gt;.query.prefetch.size" (or
+ * "gora.datastore.query.prefetch.size"). Prefetching is disabled by
+ * default. Queries executed by {@link Query#execute()}, including the
+ * queries of {@link org.gora.mapreduce.GoraRecordReader}, are wrapped
+ * by {@link #wrap(Result)}.
+ *
+ * <p> Since the results are read ahead, the returned objects are not
+ * reused between the calls to {@link #next()}.
+ */
+public class PrefetchingResult<K, T extends Persistent> implements Result<K, T> {
+
+  /** The number of results to prefetch, 0 to disable prefetching */
+  public static final String PREFETCH_SIZE_PROPERTY = "query.prefetch.size";
+  public static final int DEFAULT_PREFETCH_SIZE = 0;
+
+  private static final ThreadFactory THREAD_FACTORY =
+    new DaemonThreadFactory("gora-prefetch");
+
+  private final Result<K, T> result;
+
+  private final BlockingQueue<Entry<K, T>> buffer;
+
+  private final Thread producer;
+
+  /** Marks the end of the results, allocated before the producer runs */
+  private final Entry<K, T> end = new Entry<K, T>(null, null, 1f);
+
+  private volatile boolean closed;
+
+  /** The error of the producer, thrown by next() after the last result */
+  private volatile IOException error;
+
+  private Entry<K, T> current;
+
+  private boolean finished;
+
+  private long offset = 0;
+
+  private float progress = 0;
+
+  /**
+   * Wraps the result by a PrefetchingResult if prefetching is enabled
+   * for its query, otherwise returns the result as is.
+   */
+  public static <K, T extends Persistent> Result<K, T> wrap(Result<K, T> result) {
+    int prefetchSize = result.getQuery().getPrefetchSize();
+    if(prefetchSize < 0) {
+      prefetchSize = StringUtils.parseInt(DataStoreFactory.findProperty(
+          DataStoreFactory.properties, result.getDataStore()
+          , PREFETCH_SIZE_PROPERTY, null), DEFAULT_PREFETCH_SIZE);
+    }
+    if(prefetchSize <= 0 || result instanceof PrefetchingResult) {
+      return result;
+    }
+    return new PrefetchingResult<K, T>(result, prefetchSize);
+  }
+
+  /**
+   * Starts prefetching the results of the wrapped result.
+   * @param result the result to read ahead
+   * @param prefetchSize the maximum number of results to buffer
+   */
+  public PrefetchingResult(Result<K, T> result, int prefetchSize) {
+    this.result = result;
+    this.buffer = new ArrayBlockingQueue<Entry<K, T>>(prefetchSize + 1);
+    if(result instanceof ResultBase) {
+      ((ResultBase<K, T>) result).setReuseObjects(false);
+    }
+    this.producer = THREAD_FACTORY.newThread(new Runnable() {
+      @Override
+      public void run() {
+        prefetch();
+      }
+    });
+    producer.start();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void prefetch() {
+    try {
+      boolean reused = !(result instanceof ResultBase);
+      while(!closed && result.next()) {
+        K key = result.getKey();
+        T persistent = result.get();
+        if(reused) {
+          //the wrapped result may reuse its objects, so they are copied
+          if(key instanceof Persistent) {
+            key = (K) ((Persistent)key).clone();
+          }
+          persistent = persistent == null ? null : (T) persistent.clone();
+        }
+        buffer.put(new Entry<K, T>(key, persistent, result.getProgress()));
+      }
+    } catch (InterruptedException ex) {
+      //closed
+    } catch (IOException ex) {
+      error = ex;
+    } catch (Throwable ex) {
+      //Errors included, so that next() does not wait for results forever
+      error = new IOException(ex);
+    } finally {
+      if(!closed) {
+        try {
+          buffer.put(end);
+        } catch (InterruptedException ignore) { }
+      }
+    }
+  }
+
+  @Override
+  public boolean next() throws IOException {
+    if(finished) {
+      return false;
+    }
+    try {
+      current = buffer.take();
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    progress = current.progress;
+    if(current.isEnd()) {
+      finished = true;
+      current = null;
+      if(error != null) {
+        throw error;
+      }
+      return false;
+    }
+    offset++;
+    return true;
+  }
+
+  @Override
+  public K getKey() {
+    return current == null ? null : current.key;
+  }
+
+  @Override
+  public T get() {
+    return current == null ? null : current.persistent;
+  }
+
+  @Override
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the progress of the wrapped result at the time the current
+   * result was read, rather than the progress of the read ahead.
+   */
+  @Override
+  public float getProgress() throws IOException {
+    return progress;
+  }
+
+  /**
+   * Stops the background thread, and closes the wrapped result.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    producer.interrupt();
+    try {
+      producer.join();
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    } finally {
+      buffer.clear();
+      result.close();
+    }
+  }
+
+  @Override
+  public DataStore<K, T> getDataStore() {
+    return result.getDataStore();
+  }
+
+  @Override
+  public Query<K, T> getQuery() {
+    return result.getQuery();
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return result.getKeyClass();
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return result.getPersistentClass();
+  }
+
+  private static class Entry<K, T> {
+    final K key;
+    final T persistent;
+    final float progress;
+
+    Entry(K key, T persistent, float progress) {
+      this.key = key;
+      this.persistent = persistent;
+      this.progress = progress;
+    }
+
+    /** The end of the results is marked by an entry without a persistent */
+    boolean isEnd() {
+      return persistent == null;
+    }
+  }
+}
@@ -4,6 +4,9 @@ package org.gora.query.impl;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -12,10 +15,14 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.gora.filter.Filter;
+import org.gora.filter.Filters;
+import org.gora.filter.Param;
 import org.gora.persistency.Persistent;
 import org.gora.query.Query;
 import org.gora.query.Result;
 import org.gora.store.DataStore;
+import org.gora.store.impl.DelegatingDataStore;
 import org.gora.util.IOUtils;
 
 /**
@@ -35,10 +42,15 @@ implements Query<K,T> {
   protected long startTime = -1;
   protected long endTime = -1;
 
-  protected String filter;
+  protected Filter filter;
 
   protected long limit = -1;
 
+  protected int prefetchSize = -1;
+
+  /** The values of the parameters of the filter */
+  protected Map<Param, Object> params = new HashMap<Param, Object>();
+
   protected boolean isCompiled = false;
 
   private Configuration conf;
@@ -49,16 +61,23 @@ implements Query<K,T> {
 
   @Override
   public Result<K,T> execute() throws IOException {
-    //compile();
-    return dataStore.execute(this);
+    return PrefetchingResult.wrap(dataStore.execute(this));
   }
 
-//  @Override
-//  public void compile() {
-//    if(!isCompiled) {
-//      isCompiled = true;
-//    }
-//  }
+  @Override
+  public void compile() throws IOException {
+    if(!isCompiled) {
+      dataStore.compile(this);
+      isCompiled = true;
+    }
+  }
+
+  /**
+   * Returns whether the query is compiled, and not modified since
+   */
+  public boolean isCompiled() {
+    return isCompiled;
+  }
 
   @Override
   public void setDataStore(DataStore<K, T> dataStore) {
@@ -82,6 +101,9 @@ implements Query<K,T> {
 
   @Override
   public void setFields(String... fields) {
+    if(!Arrays.equals(this.fields, fields)) {
+      isCompiled = false;
+    }
     this.fields = fields;
   }
 
@@ -90,6 +112,18 @@ public String[] getFields() {
     return fields;
   }
 
+  /**
+   * Returns whether the given key bounds have the shape of the current
+   * ones. The key values are bound at every execution, so only a bound
+   * appearing or disappearing, or a single key becoming a range, changes
+   * the compiled query.
+   */
+  private boolean hasSameKeyShape(K startKey, K endKey) {
+    return (this.startKey == null) == (startKey == null)
+      && (this.endKey == null) == (endKey == null)
+      && (this.startKey == this.endKey) == (startKey == endKey);
+  }
+
   @Override
   public void setKey(K key) {
     setKeyRange(key, key);
@@ -97,16 +131,25 @@ public String[] getFields() {
 
   @Override
   public void setStartKey(K startKey) {
+    if(!hasSameKeyShape(startKey, endKey)) {
+      isCompiled = false;
+    }
     this.startKey = startKey;
   }
 
   @Override
   public void setEndKey(K endKey) {
+    if(!hasSameKeyShape(startKey, endKey)) {
+      isCompiled = false;
+    }
     this.endKey = endKey;
   }
 
   @Override
   public void setKeyRange(K startKey, K endKey) {
+    if(!hasSameKeyShape(startKey, endKey)) {
+      isCompiled = false;
+    }
     this.startKey = startKey;
     this.endKey = endKey;
   }
@@ -136,16 +179,25 @@ public String[] getFields() {
 
   @Override
   public void setStartTime(long startTime) {
+    if(this.startTime != startTime) {
+      isCompiled = false;
+    }
     this.startTime = startTime;
   }
 
   @Override
   public void setEndTime(long endTime) {
+    if(this.endTime != endTime) {
+      isCompiled = false;
+    }
     this.endTime = endTime;
   }
 
   @Override
   public void setTimeRange(long startTime, long endTime) {
+    if(this.startTime != startTime || this.endTime != endTime) {
+      isCompiled = false;
+    }
     this.startTime = startTime;
     this.endTime = endTime;
   }
@@ -165,18 +217,22 @@ public String[] getFields() {
     return endTime;
   }
 
-//  @Override
-//  public void setFilter(String filter) {
-//    this.filter = filter;
-//  }
-//
-//  @Override
-//  public String getFilter() {
-//    return filter;
-//  }
+  @Override
+  public void setFilter(Filter filter) {
+    this.filter = filter;
+    isCompiled = false;
+  }
+
+  @Override
+  public Filter getFilter() {
+    return filter;
+  }
 
   @Override
   public void setLimit(long limit) {
+    if(this.limit != limit) {
+      isCompiled = false;
+    }
     this.limit = limit;
   }
 
@@ -185,6 +241,49 @@ public String[] getFields() {
     return limit;
   }
 
+  @Override
+  public void setPrefetchSize(int prefetchSize) {
+    this.prefetchSize = prefetchSize;
+  }
+
+  @Override
+  public int getPrefetchSize() {
+    return prefetchSize;
+  }
+
+  @Override
+  public void setParam(int paramIndex, Object value) {
+    setParam(Filters.param(paramIndex), value);
+  }
+
+  @Override
+  public void setParam(String paramName, Object value) {
+    setParam(Filters.param(paramName), value);
+  }
+
+  private void setParam(Param param, Object value) {
+    if(value == null) {
+      params.remove(param);
+    } else {
+      params.put(param, Filters.normalize(value));
+    }
+  }
+
+  @Override
+  public Object getParam(int paramIndex) {
+    return params.get(Filters.param(paramIndex));
+  }
+
+  @Override
+  public Object getParam(String paramName) {
+    return params.get(Filters.param(paramName));
+  }
+
+  @Override
+  public void clearParams() {
+    params.clear();
+  }
+
   @Override
   public Configuration getConf() {
     return conf;
@@ -217,19 +316,33 @@ public String[] getFields() {
       startKey = IOUtils.deserialize(null, in, null, dataStore.getKeyClass());
     if(!nullFields[3])
       endKey = IOUtils.deserialize(null, in, null, dataStore.getKeyClass());
-    if(!nullFields[4])
-      filter = Text.readString(in);
+    if(!nullFields[4]) {
+      try {
+        filter = IOUtils.deserialize(null, in, null);
+      } catch (ClassNotFoundException ex) {
+        throw new IOException(ex);
+      }
+    }
 
     startTime = WritableUtils.readVLong(in);
     endTime = WritableUtils.readVLong(in);
     limit = WritableUtils.readVLong(in);
+    prefetchSize = WritableUtils.readVInt(in);
+
+    params.clear();
+    int numParams = WritableUtils.readVInt(in);
+    for(int i=0; i<numParams; i++) {
+      Param param = (Param) Filters.readValue(in);
+      params.put(param, Filters.readValue(in));
+    }
   }
 
   @Override
   public void write(DataOutput out) throws IOException {
-    //write datastore
-    Text.writeString(out, dataStore.getClass().getCanonicalName());
-    dataStore.write(out);
+    //write datastore, without the decorators which cannot be deserialized
+    DataStore<K, T> store = DelegatingDataStore.unwrap(dataStore);
+    Text.writeString(out, store.getClass().getCanonicalName());
+    store.write(out);
 
     IOUtils.writeNullFieldsInfo(out, queryString, (fields)
         , startKey, endKey, filter);
@@ -243,11 +356,18 @@ public String[] getFields() {
     if(endKey != null)
       IOUtils.serialize(getConf(), out, endKey, dataStore.getKeyClass());
     if(filter != null)
-      Text.writeString(out, filter);
+      IOUtils.serialize(null, out, filter);
 
     WritableUtils.writeVLong(out, getStartTime());
     WritableUtils.writeVLong(out, getEndTime());
     WritableUtils.writeVLong(out, getLimit());
+    WritableUtils.writeVInt(out, getPrefetchSize());
+
+    WritableUtils.writeVInt(out, params.size());
+    for(Map.Entry<Param, Object> entry : params.entrySet()) {
+      Filters.writeValue(out, entry.getKey());
+      Filters.writeValue(out, entry.getValue());
+    }
   }
 
   @SuppressWarnings({ "rawtypes" })
@@ -263,6 +383,8 @@ public String[] getFields() {
       builder.append(endKey, that.endKey);
       builder.append(filter, that.filter);
       builder.append(limit, that.limit);
+      builder.append(prefetchSize, that.prefetchSize);
+      builder.append(params, that.params);
       return builder.isEquals();
     }
     return false;
@@ -278,6 +400,8 @@ public String[] getFields() {
     builder.append(endKey);
     builder.append(filter);
     builder.append(limit);
+    builder.append(prefetchSize);
+    builder.append(params);
     return builder.toHashCode();
   }
 
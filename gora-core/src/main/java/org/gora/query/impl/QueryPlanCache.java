@@ -0,0 +1,60 @@
+package org.gora.query.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the store specific plans of the queries, keyed by
+ * the {@link QueryShape}s of the queries. The least recently used plans
+ * are evicted when the cache is full. The cache is thread safe.
+ * @param <P> the class of the plans
+ */
+public class QueryPlanCache<P> {
+
+  /** The maximum number of plans cached per store */
+  public static final String CACHE_SIZE_PROPERTY = "query.plan.cache.size";
+  public static final int DEFAULT_CACHE_SIZE = 100;
+
+  private final Map<QueryShape, P> plans;
+
+  /**
+   * @param maxSize the maximum number of plans to keep
+   */
+  public QueryPlanCache(final int maxSize) {
+    this.plans = new LinkedHashMap<QueryShape, P>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<QueryShape, P> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the plan for the shape, or null if it is not cached
+   */
+  public synchronized P get(QueryShape shape) {
+    return plans.get(shape);
+  }
+
+  /**
+   * Caches the plan for the shape
+   */
+  public synchronized void put(QueryShape shape, P plan) {
+    plans.put(shape, plan);
+  }
+
+  /**
+   * Returns the number of cached plans
+   */
+  public synchronized int size() {
+    return plans.size();
+  }
+
+  /**
+   * Removes all the cached plans
+   */
+  public synchronized void clear() {
+    plans.clear();
+  }
+}
@@ -0,0 +1,90 @@
+package org.gora.query.impl;
+
+import java.util.Arrays;
+
+import org.gora.filter.Filter;
+import org.gora.query.Query;
+
+/**
+ * The shape of a query, identifying the queries that can be executed
+ * with the same plan. Two queries have the same shape if they have the
+ * same fields, filter and limit, and set the same key and time
+ * dimensions, regardless of the actual keys and times.
+ */
+public class QueryShape {
+
+  private final String[] fields;
+  private final boolean hasKey;
+  private final boolean hasStartKey;
+  private final boolean hasEndKey;
+  private final boolean hasTimeRange;
+  private final Filter filter;
+  private final long limit;
+  private final int hashCode;
+
+  /**
+   * Constructs the shape of the query
+   */
+  public QueryShape(Query<?, ?> query) {
+    this(query.getFields(), query.getKey() != null
+        , query.getStartKey() != null, query.getEndKey() != null
+        , query.getStartTime() > 0 || query.getEndTime() > 0
+        , query.getFilter(), query.getLimit());
+  }
+
+  /**
+   * Constructs the shape of a lookup of the given fields by key
+   */
+  public QueryShape(String[] fields) {
+    this(fields, true, true, true, false, null, -1);
+  }
+
+  private QueryShape(String[] fields, boolean hasKey, boolean hasStartKey
+      , boolean hasEndKey, boolean hasTimeRange, Filter filter, long limit) {
+    this.fields = fields == null ? null : fields.clone();
+    this.hasKey = hasKey;
+    this.hasStartKey = hasStartKey;
+    this.hasEndKey = hasEndKey;
+    this.hasTimeRange = hasTimeRange;
+    this.filter = filter;
+    this.limit = limit;
+
+    int hash = Arrays.hashCode(this.fields);
+    hash = 31 * hash + (hasKey ? 1 : 0);
+    hash = 31 * hash + (hasStartKey ? 1 : 0);
+    hash = 31 * hash + (hasEndKey ? 1 : 0);
+    hash = 31 * hash + (hasTimeRange ? 1 : 0);
+    hash = 31 * hash + (filter == null ? 0 : filter.hashCode());
+    hash = 31 * hash + (int) (limit ^ (limit >>> 32));
+    this.hashCode = hash;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if(!(obj instanceof QueryShape)) {
+      return false;
+    }
+    QueryShape that = (QueryShape) obj;
+    return hashCode == that.hashCode
+      && hasKey == that.hasKey
+      && hasStartKey == that.hasStartKey
+      && hasEndKey == that.hasEndKey
+      && hasTimeRange == that.hasTimeRange
+      && limit == that.limit
+      && Arrays.equals(fields, that.fields)
+      && (filter == null ? that.filter == null : filter.equals(that.filter));
+  }
+
+  @Override
+  public String toString() {
+    return "fields=" + Arrays.toString(fields) + ", key=" + hasKey
+      + ", startKey=" + hasStartKey + ", endKey=" + hasEndKey
+      + ", timeRange=" + hasTimeRange + ", filter=" + filter
+      + ", limit=" + limit;
+  }
+}
@@ -2,11 +2,17 @@
 package org.gora.query.impl;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+import org.apache.avro.util.Utf8;
+
+import org.gora.filter.Filter;
+import org.gora.filter.Filters;
 import org.gora.persistency.Persistent;
 import org.gora.query.Query;
 import org.gora.query.Result;
 import org.gora.store.DataStore;
+import org.gora.util.ByteUtils;
 
 /**
  * Base class for {@link Result} implementations.
@@ -28,10 +34,23 @@ public abstract class ResultBase<K, T extends Persistent>
   /** How far we have proceeded*/
   protected long offset = 0;
   
+  /** The filter evaluated in memory against the results */
+  protected Filter filter;
+
+  /** Whether the key and persistent objects are reused by next() */
+  protected boolean reuseObjects = true;
+
+  /** Whether all the results are read */
+  protected boolean finished = false;
+
+  /** The last reported progress, so that the progress never decreases */
+  private float progress = 0f;
+  
   public ResultBase(DataStore<K,T> dataStore, Query<K,T> query) {
     this.dataStore = dataStore;
     this.query = query;
     this.limit = query.getLimit();
+    this.filter = Filters.bind(query.getFilter(), query);
   }
   
   @Override
@@ -83,25 +102,135 @@ public abstract class ResultBase<K, T extends Persistent>
     }
   }
   
+  /**
+   * Sets the filter to evaluate in memory against the results, which is
+   * the query's filter with its parameters bound by default. DataStores
+   * which push the filter down to the backend completely should set this
+   * to null. Otherwise, the fields referenced by the filter should be
+   * read into the results.
+   */
+  public void setFilter(Filter filter) {
+    this.filter = filter;
+  }
+  
+  /**
+   * Sets whether next() reuses the key and persistent objects, which is
+   * the default. Otherwise new objects are created for every result, so
+   * that the previous results can be kept by the caller.
+   */
+  public void setReuseObjects(boolean reuseObjects) {
+    this.reuseObjects = reuseObjects;
+  }
+
   @Override
   public final boolean next() throws IOException {
     if(isLimitReached()) {
+      finished = true;
       return false;
     }
     
-    clear();
-    persistent = getOrCreatePersistent(persistent);
+    boolean ret;
+    do {
+      if(reuseObjects) {
+        clear();
+      } else {
+        key = null;
+        persistent = null;
+      }
+      persistent = getOrCreatePersistent(persistent);
+      ret = nextInner();
+    } while(ret && filter != null && !Filters.accept(filter, persistent));
     
-    boolean ret = nextInner();
     if(ret) ++offset;
+    else finished = true;
     return ret;
   }
   
+  /**
+   * Returns whether the query has a time range, set by
+   * {@link Query#setTimeRange(long, long)} or {@link Query#setTimestamp(long)}.
+   */
+  public static boolean hasTimeRange(Query<?, ?> query) {
+    return query.getStartTime() > 0 || query.getEndTime() > 0;
+  }
+
+  /**
+   * Returns whether the time is in the time range of the query. The start
+   * time is inclusive and the end time exclusive, unless they are equal,
+   * which selects that exact time. Non positive times are not bounds.
+   */
+  public static boolean isInTimeRange(Query<?, ?> query, long time) {
+    long startTime = query.getStartTime();
+    long endTime = query.getEndTime();
+    if(startTime > 0 && startTime == endTime) {
+      return time == startTime;
+    }
+    return (startTime <= 0 || time >= startTime)
+      && (endTime <= 0 || time < endTime);
+  }
+
   @Override
   public long getOffset() {
     return offset;
   }
   
+  /**
+   * Returns the progress from the estimated position in the results. If
+   * the query has a limit, the fraction of the limit reached is used if
+   * it is further than the position. Returns 1 once all the results
+   * are read. The progress never decreases, even if the estimates do.
+   * @param position the estimated position in the results, in [0, 1]
+   */
+  protected float getProgress(float position) {
+    if(finished) {
+      return progress = 1f;
+    }
+    if(limit > 0) {
+      position = Math.max(position, offset / (float) limit);
+    }
+    progress = Math.max(progress, Math.min(1f, position));
+    return progress;
+  }
+
+  /**
+   * Returns the position of the key between the start and end keys, in
+   * [0, 1]. Numeric keys are interpolated by their values, string and
+   * bytes keys by their bytes. Returns 0 if the position cannot be
+   * estimated.
+   * @param start the start key, or null if the range is not bounded below
+   * @param end the end key, or null if the range is not bounded above
+   */
+  protected float getKeyPosition(K start, K end, K key) {
+    if(key instanceof Number) {
+      if(!(start instanceof Number) || !(end instanceof Number)) {
+        return 0f;
+      }
+      double s = ((Number)start).doubleValue();
+      double e = ((Number)end).doubleValue();
+      if(e <= s) {
+        return 0f;
+      }
+      return (float) Math.max(0d, Math.min(1d
+          , (((Number)key).doubleValue() - s) / (e - s)));
+    }
+    byte[] keyBytes = toKeyBytes(key);
+    if(keyBytes == null) {
+      return 0f;
+    }
+    return ByteUtils.interpolate(toKeyBytes(start), toKeyBytes(end), keyBytes);
+  }
+
+  private static byte[] toKeyBytes(Object key) {
+    if(key instanceof byte[]) {
+      return (byte[]) key;
+    } else if(key instanceof ByteBuffer) {
+      return ByteUtils.toBytes((ByteBuffer) key);
+    } else if(key instanceof String || key instanceof Utf8) {
+      return ByteUtils.toBytes(key.toString());
+    }
+    return null;
+  }
+
   /**
    * {@link ResultBase#next()} calls this function to read the 
    * actual results. 
@@ -0,0 +1,292 @@
+package org.gora.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.util.DaemonThreadFactory;
+import org.gora.util.StringUtils;
+
+/**
+ * AsyncDataStore wraps a {@link DataStore}, and runs the operations
+ * on a bounded executor, returning {@link Future}s instead of blocking
+ * the calling thread.
+ *
+ * <p> The number of operations in flight against the wrapped store is
+ * bounded by a per-store concurrency limit, and the async methods block
+ * when the limit is reached. Concurrent gets for the same key and fields
+ * are coalesced into a single get from the store, so the callers share
+ * the returned object (and cancelling the future cancels it for all).
+ *
+ * <p> The wrapped DataStore should be thread safe, unless the concurrency
+ * limit is set to 1. The limit and the executor are configured by the
+ * properties "gora.&lt;datastore&gt;.async.concurrency",
+ * "gora.&lt;datastore&gt;.async.threads" and
+ * "gora.&lt;datastore&gt;.async.queue.size" (or the "gora.datastore.async.*"
+ * counterparts).
+ */
+public class AsyncDataStore<K, T extends Persistent> implements Closeable {
+
+  /** Number of threads of the executor */
+  public static final String THREADS_PROPERTY = "async.threads";
+  public static final int DEFAULT_THREADS = 10;
+
+  /** Maximum number of operations waiting in the executor queue */
+  public static final String QUEUE_SIZE_PROPERTY = "async.queue.size";
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  /** Maximum number of operations in flight against the store. Defaults to
+   * threads + queue size, so that the executor never rejects an operation */
+  public static final String CONCURRENCY_PROPERTY = "async.concurrency";
+
+  private final DataStore<K, T> dataStore;
+
+  private final ExecutorService executor;
+
+  private final boolean ownsExecutor;
+
+  private final int maxConcurrency;
+
+  private final Semaphore permits;
+
+  private final ConcurrentHashMap<GetKey<K>, AsyncTask<T>> pendingGets
+    = new ConcurrentHashMap<GetKey<K>, AsyncTask<T>>();
+
+  /**
+   * Constructs an AsyncDataStore with its own executor, configured from
+   * the default gora properties.
+   */
+  public AsyncDataStore(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs an AsyncDataStore with its own executor, configured from
+   * the given properties.
+   */
+  public AsyncDataStore(DataStore<K, T> dataStore, Properties properties) {
+    int threads = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, dataStore, THREADS_PROPERTY, null), DEFAULT_THREADS);
+    int queueSize = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, dataStore, QUEUE_SIZE_PROPERTY, null), DEFAULT_QUEUE_SIZE);
+    int concurrency = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, dataStore, CONCURRENCY_PROPERTY, null), threads + queueSize);
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads
+        , 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize)
+        , new DaemonThreadFactory("gora-async"));
+    executor.allowCoreThreadTimeOut(true);
+
+    this.dataStore = dataStore;
+    this.executor = executor;
+    this.ownsExecutor = true;
+    this.maxConcurrency = concurrency;
+    this.permits = new Semaphore(concurrency);
+  }
+
+  /**
+   * Constructs an AsyncDataStore running the operations on the given
+   * executor, which can be shared between several stores.
+   * The executor is not shut down on {@link #close()}.
+   * @param maxConcurrency maximum number of operations in flight
+   * against the store
+   */
+  public AsyncDataStore(DataStore<K, T> dataStore, ExecutorService executor
+      , int maxConcurrency) {
+    this.dataStore = dataStore;
+    this.executor = executor;
+    this.ownsExecutor = false;
+    this.maxConcurrency = maxConcurrency;
+    this.permits = new Semaphore(maxConcurrency);
+  }
+
+  /**
+   * Returns the wrapped DataStore
+   */
+  public DataStore<K, T> getDataStore() {
+    return dataStore;
+  }
+
+  /**
+   * Returns the number of operations submitted but not completed yet
+   */
+  public int getPendingCount() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  /**
+   * Asynchronously fetches the object with the given key with all the fields.
+   * @see DataStore#get(Object)
+   */
+  public Future<T> getAsync(K key) throws IOException {
+    return getAsync(key, null);
+  }
+
+  /**
+   * Asynchronously fetches the object with the given key. If a get with
+   * the same key and fields is already in flight, its future is returned.
+   * @see DataStore#get(Object, String[])
+   */
+  public Future<T> getAsync(final K key, final String[] fields)
+  throws IOException {
+    final GetKey<K> getKey = new GetKey<K>(key, fields);
+    AsyncTask<T> task = new AsyncTask<T>(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        return dataStore.get(key, fields);
+      }
+    }) {
+      @Override
+      protected void done() {
+        pendingGets.remove(getKey, this);
+        super.done();
+      }
+    };
+
+    AsyncTask<T> pending;
+    while((pending = pendingGets.putIfAbsent(getKey, task)) != null) {
+      if(!pending.isDone()) {
+        return pending;
+      }
+      //the get is finished but not removed by done() yet, and its result
+      //may be older than the writes completed since
+      pendingGets.remove(getKey, pending);
+    }
+    try {
+      execute(task);
+    } catch (IOException ex) {
+      pendingGets.remove(getKey, task);
+      throw ex;
+    }
+    return task;
+  }
+
+  /**
+   * Asynchronously inserts the object with the given key.
+   * @see DataStore#put(Object, Persistent)
+   */
+  public Future<Void> putAsync(final K key, final T obj) throws IOException {
+    return submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        dataStore.put(key, obj);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Asynchronously deletes the object with the given key.
+   * @see DataStore#delete(Object)
+   */
+  public Future<Boolean> deleteAsync(final K key) throws IOException {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return dataStore.delete(key);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously executes the query.
+   * @see DataStore#execute(Query)
+   */
+  public Future<Result<K, T>> executeAsync(final Query<K, T> query)
+  throws IOException {
+    return submit(new Callable<Result<K, T>>() {
+      @Override
+      public Result<K, T> call() throws Exception {
+        return dataStore.execute(query);
+      }
+    });
+  }
+
+  /**
+   * Waits for the pending operations to complete, and shuts down the
+   * executor if it is owned by this object. The wrapped DataStore
+   * is not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      permits.acquire(maxConcurrency);
+      permits.release(maxConcurrency);
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    if(ownsExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  private <V> Future<V> submit(Callable<V> callable) throws IOException {
+    AsyncTask<V> task = new AsyncTask<V>(callable);
+    execute(task);
+    return task;
+  }
+
+  private void execute(AsyncTask<?> task) throws IOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException ex) {
+      permits.release();
+      throw new IOException(ex);
+    }
+  }
+
+  /** A FutureTask releasing its permit on completion */
+  private class AsyncTask<V> extends FutureTask<V> {
+    AsyncTask(Callable<V> callable) {
+      super(callable);
+    }
+    @Override
+    protected void done() {
+      permits.release();
+    }
+  }
+
+  /** Identifies a get by its key and fields */
+  private static class GetKey<K> {
+    private final K key;
+    private final String[] fields;
+
+    GetKey(K key, String[] fields) {
+      this.key = key;
+      this.fields = fields;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * key.hashCode() + Arrays.hashCode(fields);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof GetKey)) {
+        return false;
+      }
+      GetKey<?> that = (GetKey<?>) obj;
+      return key.equals(that.key) && Arrays.equals(fields, that.fields);
+    }
+  }
+}
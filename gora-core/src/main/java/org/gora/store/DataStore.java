@@ -4,7 +4,9 @@ import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.hadoop.conf.Configurable;
@@ -12,6 +14,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 import org.gora.persistency.BeanFactory;
 import org.gora.persistency.Persistent;
+import org.gora.query.Aggregation;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
 import org.gora.query.Result;
@@ -122,11 +125,45 @@ public interface DataStore<K, T extends Persistent> extends Closeable,
    */
   public abstract T get(K key, String[] fields) throws IOException;
 
+  /**
+   * Returns the objects corresponding to the given keys fetching all the fields.
+   * @param keys the keys of the objects
+   * @return a map from keys to objects. Keys that cannot be found are not
+   * included in the map
+   */
+  public abstract Map<K, T> getAll(Collection<K> keys) throws IOException;
+
+  /**
+   * Returns the objects corresponding to the given keys. DataStores
+   * try to fetch the objects in as few round trips as possible.
+   * @param keys the keys of the objects
+   * @param fields the fields required in the objects. Pass null, to retrieve all fields
+   * @return a map from keys to objects, in the iteration order of the
+   * keys argument. Keys that cannot be found are not included in the map
+   */
+  public abstract Map<K, T> getAll(Collection<K> keys, String[] fields)
+    throws IOException;
+
   /**
    * Inserts the persistent object with the given key.
    */
   public abstract void put(K key, T obj) throws IOException;
 
+  /**
+   * Inserts all the persistent objects in the map. DataStores
+   * try to send the objects in as few round trips as possible.
+   * @param objs a map from keys to objects
+   */
+  public abstract void putAll(Map<K, T> objs) throws IOException;
+
+  /**
+   * Inserts all the persistent objects with the given keys. DataStores
+   * try to send the objects in as few round trips as possible.
+   * @param entries key and object pairs
+   */
+  public abstract void putAll(Iterable<Map.Entry<K, T>> entries)
+    throws IOException;
+
   /**
    * Deletes the object with the given key
    * @param key the key of the object
@@ -148,6 +185,37 @@ public interface DataStore<K, T extends Persistent> extends Closeable,
    */
   public abstract Result<K,T> execute(Query<K, T> query) throws IOException;
 
+  /**
+   * Returns the number of objects matching the query. DataStores count
+   * the objects without fetching them where possible.
+   * @param query the query to count the results of
+   * @return the number of objects matching the query
+   */
+  public abstract long count(Query<K, T> query) throws IOException;
+
+  /**
+   * Computes an aggregate function over the objects matching the query.
+   * DataStores compute the aggregate on the server side where possible.
+   * @param query the query to aggregate the results of
+   * @param aggregation the aggregate function
+   * @return the value of the aggregate as described by
+   * {@link Aggregation.Function}, or null if there are no values to
+   * aggregate (COUNT returns 0)
+   */
+  public abstract Object aggregate(Query<K, T> query, Aggregation aggregation)
+    throws IOException;
+
+  /**
+   * Compiles the query, checking that the fields of the query exist,
+   * and preparing the store specific plan to execute the query. The plans
+   * are cached by the shape of the queries, so that the later executions
+   * of the queries with the same fields, filter and key dimensions reuse
+   * them.
+   * @param query the query to compile
+   * @throws IOException if the query is not valid
+   */
+  public abstract void compile(Query<K, T> query) throws IOException;
+
   /**
    * Constructs and returns a new Query.
    * @return a new Query.
@@ -3,13 +3,19 @@ package org.gora.store;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.util.StringUtils;
 import org.gora.persistency.Persistent;
+import org.gora.store.impl.BloomFilterDataStore;
+import org.gora.store.impl.CachingDataStore;
 import org.gora.store.impl.DataStoreBase;
+import org.gora.store.impl.DelegatingDataStore;
+import org.gora.store.impl.MetricsDataStore;
+import org.gora.store.impl.TieredDataStore;
 import org.gora.util.ReflectionUtils;
 
 /**
@@ -31,6 +37,8 @@ public class DataStoreFactory {
 
   public static final String AUTO_CREATE_SCHEMA = "autocreateschema";
 
+  public static final String LAZY_FIELDS = "lazy.fields";
+
   public static final String INPUT_PATH  = "input.path";
 
   public static final String OUTPUT_PATH = "output.path";
@@ -45,10 +53,14 @@ public class DataStoreFactory {
 
   private static HashMap<Integer, DataStore<?,?>> dataStores;
 
+  /** The decorated stores of the stores, see {@link #decorate(DataStore, Properties)} */
+  private static IdentityHashMap<DataStore<?,?>, DataStore<?,?>> decoratedStores;
+
   public static Properties properties;
 
   static {
     dataStores = new HashMap<Integer, DataStore<?,?>>();
+    decoratedStores = new IdentityHashMap<DataStore<?,?>, DataStore<?,?>>();
     try {
       readProperties();
     } catch (IOException ex) {
@@ -113,6 +125,11 @@ public class DataStoreFactory {
     return dataStore;
   }
 
+  /**
+   * Returns the DataStore of the given class, wrapped by the decorators
+   * enabled in the properties.
+   * @see #decorate(DataStore, Properties)
+   */
   @SuppressWarnings("unchecked")
   public static synchronized <K, T extends Persistent> DataStore<K, T> getDataStore(
       String dataStoreClass, Class<K> keyClass, Class<T> persistentClass)
@@ -120,7 +137,55 @@ public class DataStoreFactory {
 
     Class<? extends DataStore<K,T>> c
         = (Class<? extends DataStore<K, T>>) Class.forName(dataStoreClass);
-    return getDataStore(c, keyClass, persistentClass);
+    return decorate(getDataStore(c, keyClass, persistentClass), properties);
+  }
+
+  /**
+   * Wraps the DataStore by the decorators enabled in the properties,
+   * which are a {@link TieredDataStore} if the property
+   * "gora.&lt;datastore&gt;.tiered.enabled" is set, a
+   * {@link BloomFilterDataStore} if the property
+   * "gora.&lt;datastore&gt;.bloomfilter.enabled" is set, a
+   * {@link CachingDataStore} if the property
+   * "gora.&lt;datastore&gt;.cache.enabled" is set, and a
+   * {@link MetricsDataStore} outermost if the property
+   * "gora.&lt;datastore&gt;.metrics.enabled" is set. The same decorated store
+   * is returned for the same DataStore.
+   */
+  @SuppressWarnings("unchecked")
+  public static synchronized <K, T extends Persistent> DataStore<K, T> decorate(
+      DataStore<K, T> dataStore, Properties properties) {
+    if(dataStore == null) {
+      return null;
+    }
+    DataStore<K, T> decorated = (DataStore<K, T>) decoratedStores.get(dataStore);
+    if(decorated == null) {
+      decorated = dataStore;
+      if(findBooleanProperty(properties, dataStore
+          , TieredDataStore.TIERED_ENABLED_PROPERTY, "false")) {
+        decorated = new TieredDataStore<K, T>(decorated, properties);
+      }
+      if(findBooleanProperty(properties, dataStore
+          , BloomFilterDataStore.BLOOM_FILTER_ENABLED_PROPERTY, "false")) {
+        try {
+          decorated = new BloomFilterDataStore<K, T>(decorated, properties);
+        } catch (IOException ex) {
+          //the store is correct without the filter, only slower
+          log.error("Cannot build the Bloom filter of " + dataStore.getSchemaName()
+              + ": " + StringUtils.stringifyException(ex));
+        }
+      }
+      if(findBooleanProperty(properties, dataStore
+          , CachingDataStore.CACHE_ENABLED_PROPERTY, "false")) {
+        decorated = new CachingDataStore<K, T>(decorated, properties);
+      }
+      if(findBooleanProperty(properties, dataStore
+          , MetricsDataStore.METRICS_ENABLED_PROPERTY, "false")) {
+        decorated = new MetricsDataStore<K, T>(decorated, properties);
+      }
+      decoratedStores.put(dataStore, decorated);
+    }
+    return decorated;
   }
 
   @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -181,6 +246,9 @@ public class DataStoreFactory {
   public static String findProperty(Properties properties
       , DataStore<?, ?> store, String baseKey, String defaultValue) {
 
+    //the decorators are configured by the properties of the wrapped store
+    store = DelegatingDataStore.unwrap(store);
+
     //recursively try the class names until the base class
     Class<?> clazz = store.getClass();
     while(true) {
@@ -240,6 +308,15 @@ public class DataStoreFactory {
     return findBooleanProperty(properties, store, AUTO_CREATE_SCHEMA, "true");
   }
 
+  /**
+   * Returns whether the fields of the objects read by the data store
+   * are decoded on their first access.
+   */
+  public static boolean getLazyFields(Properties properties
+      , DataStore<?,?> store) {
+    return findBooleanProperty(properties, store, LAZY_FIELDS, "false");
+  }
+
   /**
    * Returns the input path as read from the properties for file-backed data stores.
    */
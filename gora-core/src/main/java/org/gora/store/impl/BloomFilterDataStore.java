@@ -0,0 +1,470 @@
+package org.gora.store.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.IOUtils;
+
+/**
+ * BloomFilterDataStore wraps a {@link DataStore}, and keeps a Bloom filter
+ * of the keys in the store, so that {@link #get(Object, String[])} and
+ * {@link #getAll(Collection, String[])} for the keys which are definitely
+ * not in the store return without a round trip to the store.
+ *
+ * <p> The keys are added to the filter on {@link #put(Object, Persistent)}.
+ * As the keys cannot be removed from a Bloom filter, the deleted keys stay
+ * in the filter, and only make the gets for them reach the store. The
+ * filter is cleared on {@link #truncateSchema()} and
+ * {@link #deleteSchema()}, and can be rebuilt from a key only scan of the
+ * store by {@link #rebuild()}. Writes done directly to the wrapped store,
+ * or by other processes, are not seen by the filter until it is rebuilt,
+ * and the gets for such keys return null.
+ *
+ * <p> The filter is sized for the expected number of keys and the false
+ * positive rate, optionally bounded by a memory budget, which raises the
+ * false positive rate. If a file is configured, the filter is read from
+ * the file when the store is opened, rebuilt if the file does not exist
+ * or holds a filter of a different size or of another schema, and written
+ * to the file by {@link #save()} and {@link #close()}. The file is deleted
+ * when it is read, and on the first write after it is saved, so that the
+ * filter of a store which was not closed cleanly is rebuilt rather than
+ * missing the keys written since it was saved.
+ *
+ * <p> The filter is configured by the properties
+ * "gora.&lt;datastore&gt;.bloomfilter.expected.keys",
+ * "bloomfilter.false.positive.rate", "bloomfilter.max.bytes" and
+ * "bloomfilter.file" of the wrapped store (or the
+ * "gora.datastore.bloomfilter.*" counterparts). The stores returned by
+ * {@link DataStoreFactory#getDataStore(String, Class, Class)} are wrapped
+ * by a BloomFilterDataStore if "bloomfilter.enabled" is set.
+ */
+public class BloomFilterDataStore<K, T extends Persistent>
+extends DelegatingDataStore<K, T> {
+
+  private static final Log log = LogFactory.getLog(BloomFilterDataStore.class);
+
+  /** Whether the DataStoreFactory wraps the store by a BloomFilterDataStore */
+  public static final String BLOOM_FILTER_ENABLED_PROPERTY = "bloomfilter.enabled";
+
+  /** The number of keys the filter is sized for */
+  public static final String EXPECTED_KEYS_PROPERTY = "bloomfilter.expected.keys";
+  public static final int DEFAULT_EXPECTED_KEYS = 1000000;
+
+  /** The false positive rate at the expected number of keys */
+  public static final String FALSE_POSITIVE_RATE_PROPERTY =
+    "bloomfilter.false.positive.rate";
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+  /** Maximum size of the filter in bytes, 0 for no limit */
+  public static final String MAX_BYTES_PROPERTY = "bloomfilter.max.bytes";
+
+  /** The local file the filter is persisted to, none if not set */
+  public static final String FILE_PROPERTY = "bloomfilter.file";
+
+  private final int vectorSize;
+
+  private final int nbHash;
+
+  private final File file;
+
+  private BloomFilter filter;
+
+  private long keyCount = 0;
+
+  /** The filter built by {@link #rebuild()}, which the puts also add to */
+  private BloomFilter rebuilding;
+
+  private long rebuildingCount;
+
+  private final Object rebuildLock = new Object();
+
+  /** Whether the file holds the filter, which the next write invalidates */
+  private boolean saved = false;
+
+  private long negativeCount = 0;
+  private long positiveCount = 0;
+  private long falsePositiveCount = 0;
+
+  /**
+   * Constructs a BloomFilterDataStore configured from the default gora
+   * properties.
+   */
+  public BloomFilterDataStore(DataStore<K, T> dataStore) throws IOException {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a BloomFilterDataStore configured from the given properties.
+   */
+  public BloomFilterDataStore(DataStore<K, T> dataStore, Properties properties)
+  throws IOException {
+    this(dataStore
+        , Integer.parseInt(DataStoreFactory.findProperty(properties, dataStore
+            , EXPECTED_KEYS_PROPERTY, String.valueOf(DEFAULT_EXPECTED_KEYS)))
+        , Double.parseDouble(DataStoreFactory.findProperty(properties, dataStore
+            , FALSE_POSITIVE_RATE_PROPERTY
+            , String.valueOf(DEFAULT_FALSE_POSITIVE_RATE)))
+        , Long.parseLong(DataStoreFactory.findProperty(properties, dataStore
+            , MAX_BYTES_PROPERTY, "0"))
+        , getFile(DataStoreFactory.findProperty(properties, dataStore
+            , FILE_PROPERTY, null)));
+  }
+
+  /**
+   * Constructs a BloomFilterDataStore, reading the filter from the file if
+   * it exists, or else building it from the keys in the store.
+   * @param expectedKeys the number of keys the filter is sized for
+   * @param falsePositiveRate the false positive rate at the expected
+   * number of keys
+   * @param maxBytes maximum size of the filter in bytes, 0 for no limit
+   * @param file the file the filter is persisted to, or null
+   */
+  public BloomFilterDataStore(DataStore<K, T> dataStore, int expectedKeys
+      , double falsePositiveRate, long maxBytes, File file) throws IOException {
+    super(dataStore);
+    if(expectedKeys <= 0) {
+      throw new IllegalArgumentException("expected keys should be positive: "
+          + expectedKeys);
+    }
+    if(falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException(
+          "false positive rate should be in (0, 1): " + falsePositiveRate);
+    }
+
+    //the optimal number of bits and hashes for the false positive rate
+    double bits = -expectedKeys * Math.log(falsePositiveRate)
+      / (Math.log(2) * Math.log(2));
+    if(maxBytes > 0) {
+      bits = Math.min(bits, maxBytes * 8d);
+    }
+    this.vectorSize = (int) Math.max(8, Math.min(Integer.MAX_VALUE, Math.ceil(bits)));
+    this.nbHash = (int) Math.max(1, Math.round(vectorSize * Math.log(2) / expectedKeys));
+    this.file = file;
+
+    if(file == null || !file.exists() || !load()) {
+      rebuild();
+    }
+  }
+
+  private static File getFile(String path) {
+    return path == null ? null : new File(path);
+  }
+
+  @Override
+  public T get(K key, String[] fields) throws IOException {
+    if(!mightContain(key)) {
+      return null;
+    }
+    T obj = dataStore.get(key, fields);
+    if(obj == null) {
+      synchronized (this) {
+        falsePositiveCount++;
+      }
+    }
+    return obj;
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    List<K> candidates = new ArrayList<K>(keys.size());
+    for(K key : keys) {
+      if(mightContain(key)) {
+        candidates.add(key);
+      }
+    }
+    if(candidates.isEmpty()) {
+      return new LinkedHashMap<K, T>();
+    }
+    Map<K, T> results = dataStore.getAll(candidates, fields);
+    synchronized (this) {
+      falsePositiveCount += candidates.size() - results.size();
+    }
+    return results;
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    add(key);
+    dataStore.put(key, obj);
+  }
+
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    for(Map.Entry<K, T> entry : entries) {
+      add(entry.getKey());
+    }
+    dataStore.putAll(entries);
+  }
+
+  @Override
+  public void deleteSchema() throws IOException {
+    clear();
+    dataStore.deleteSchema();
+  }
+
+  @Override
+  public void truncateSchema() throws IOException {
+    clear();
+    dataStore.truncateSchema();
+  }
+
+  @Override
+  public void close() throws IOException {
+    save();
+    dataStore.close();
+  }
+
+  /**
+   * Returns false if the key is definitely not in the store, and true if
+   * it might be.
+   */
+  public boolean mightContain(K key) throws IOException {
+    Key bloomKey = new Key(toBytes(key));
+    synchronized (this) {
+      if(filter.membershipTest(bloomKey)) {
+        positiveCount++;
+        return true;
+      }
+      negativeCount++;
+      return false;
+    }
+  }
+
+  /**
+   * Rebuilds the filter from a key only scan of the wrapped store. Stores
+   * which do not support empty projections read the complete objects.
+   * The keys put while the store is scanned are added to the new filter
+   * as well.
+   */
+  public void rebuild() throws IOException {
+    synchronized (rebuildLock) {
+      synchronized (this) {
+        rebuilding = newFilter();
+        rebuildingCount = 0;
+      }
+      try {
+        if(dataStore.schemaExists()) {
+          Query<K, T> query = dataStore.newQuery();
+          query.setFields(new String[0]);
+          Result<K, T> result = dataStore.execute(query);
+          try {
+            while(result.next()) {
+              Key bloomKey = new Key(toBytes(result.getKey()));
+              synchronized (this) {
+                rebuilding.add(bloomKey);
+                rebuildingCount++;
+              }
+            }
+          } finally {
+            result.close();
+          }
+        }
+        synchronized (this) {
+          filter = rebuilding;
+          keyCount = rebuildingCount;
+        }
+      } finally {
+        synchronized (this) {
+          rebuilding = null;
+        }
+      }
+      log.info("Built the Bloom filter of " + dataStore.getSchemaName()
+          + " from " + getKeyCount() + " keys");
+    }
+  }
+
+  /**
+   * Writes the filter to its file, if the filter has a file.
+   */
+  public void save() throws IOException {
+    if(file == null) {
+      return;
+    }
+    File parent = file.getAbsoluteFile().getParentFile();
+    if(parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Cannot create the directory " + parent);
+    }
+    //the filter is written to a temporary file first, so that a failed
+    //write does not leave a truncated filter behind
+    File tmp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+    try {
+      synchronized (this) {
+        out.writeUTF(getFilterName());
+        out.writeInt(vectorSize);
+        out.writeInt(nbHash);
+        out.writeLong(keyCount);
+        filter.write(out);
+      }
+    } finally {
+      out.close();
+    }
+    synchronized (this) {
+      if(file.exists() && !file.delete()) {
+        throw new IOException("Cannot replace the Bloom filter file " + file);
+      }
+      if(!tmp.renameTo(file)) {
+        throw new IOException("Cannot rename " + tmp + " to " + file);
+      }
+      saved = true;
+    }
+  }
+
+  /**
+   * Reads the filter from its file and deletes the file, returns false if
+   * the filter in the file is of another schema or sized differently.
+   */
+  private boolean load() throws IOException {
+    BloomFilter newFilter = new BloomFilter();
+    long count;
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      if(!getFilterName().equals(in.readUTF())) {
+        log.info("The Bloom filter in " + file + " is of another schema, "
+            + "rebuilding it");
+        return false;
+      }
+      if(in.readInt() != vectorSize || in.readInt() != nbHash) {
+        log.info("The Bloom filter in " + file + " is sized differently, "
+            + "rebuilding it");
+        return false;
+      }
+      count = in.readLong();
+      newFilter.readFields(in);
+    } catch (IOException ex) {
+      log.info("Cannot read the Bloom filter in " + file + ", rebuilding it: "
+          + ex);
+      return false;
+    } finally {
+      in.close();
+    }
+    //the file is trusted again only when the filter is saved
+    if(!file.delete()) {
+      throw new IOException("Cannot delete the Bloom filter file " + file);
+    }
+    synchronized (this) {
+      filter = newFilter;
+      keyCount = count;
+    }
+    return true;
+  }
+
+  /** Returns the name of the schema and the classes the filter is of */
+  private String getFilterName() {
+    return dataStore.getSchemaName() + ":" + getKeyClass().getName() + ":"
+      + getPersistentClass().getName();
+  }
+
+  /** Deletes the saved file, which does not hold the written keys */
+  private void invalidateFile() {
+    if(saved) {
+      saved = false;
+      if(!file.delete()) {
+        log.warn("Cannot delete the Bloom filter file " + file);
+      }
+    }
+  }
+
+  private BloomFilter newFilter() {
+    return new BloomFilter(vectorSize, nbHash, Hash.MURMUR_HASH);
+  }
+
+  private void add(K key) throws IOException {
+    Key bloomKey = new Key(toBytes(key));
+    synchronized (this) {
+      invalidateFile();
+      filter.add(bloomKey);
+      keyCount++;
+      if(rebuilding != null) {
+        rebuilding.add(bloomKey);
+        rebuildingCount++;
+      }
+    }
+  }
+
+  private synchronized void clear() {
+    invalidateFile();
+    filter = newFilter();
+    keyCount = 0;
+  }
+
+  private byte[] toBytes(K key) throws IOException {
+    if(key instanceof String) {
+      return ((String)key).getBytes("UTF-8");
+    }
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    IOUtils.serialize(getConf(), buffer, key, getKeyClass());
+    byte[] bytes = new byte[buffer.getLength()];
+    System.arraycopy(buffer.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /** Returns the size of the filter in bits */
+  public int getVectorSize() {
+    return vectorSize;
+  }
+
+  /** Returns the number of hash functions of the filter */
+  public int getNbHash() {
+    return nbHash;
+  }
+
+  /**
+   * Returns the number of keys added to the filter, counting the keys
+   * put more than once and the deleted keys
+   */
+  public synchronized long getKeyCount() {
+    return keyCount;
+  }
+
+  /**
+   * Returns the expected false positive rate of the filter for the number
+   * of keys added to it.
+   */
+  public synchronized double getFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-nbHash * (double) keyCount / vectorSize)
+        , nbHash);
+  }
+
+  /** Returns the number of gets answered by the filter without the store */
+  public synchronized long getNegativeCount() {
+    return negativeCount;
+  }
+
+  /** Returns the number of gets passed by the filter to the store */
+  public synchronized long getPositiveCount() {
+    return positiveCount;
+  }
+
+  /** Returns the number of gets passed by the filter for missing keys */
+  public synchronized long getFalsePositiveCount() {
+    return falsePositiveCount;
+  }
+
+  /** Resets the negative, positive and false positive counts */
+  public synchronized void resetStats() {
+    negativeCount = positiveCount = falsePositiveCount = 0;
+  }
+}
@@ -0,0 +1,489 @@
+package org.gora.store.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.gora.persistency.Persistent;
+import org.gora.persistency.impl.StateManagerImpl;
+import org.gora.query.Query;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.AvroUtils;
+import org.gora.util.StringUtils;
+
+/**
+ * CachingDataStore wraps a {@link DataStore}, and caches the objects
+ * returned by {@link #get(Object, String[])} and
+ * {@link #getAll(Collection, String[])}, so that the gets for hot keys
+ * are served from memory.
+ *
+ * <p> The cache is aware of the fields fetched for each object, so an
+ * object cached with all of its fields serves the gets for any of its
+ * fields, while a get for fields which are not cached fetches the union
+ * of the fields from the store. The cached objects are copied in and out
+ * of the cache, so that they are not modified by the callers.
+ *
+ * <p> The cache is bounded by the number of entries and optionally by
+ * their approximate size in bytes, evicting the least recently or the
+ * least frequently used entries. The entries can expire after a time to
+ * live. The entries are invalidated on {@link #put(Object, Persistent)}
+ * and {@link #delete(Object)}, and the whole cache is invalidated on
+ * {@link #deleteByQuery(Query)} and on schema changes. Since the wrapped
+ * store may buffer the writes until it is flushed, the keys written since
+ * the last {@link #flush()} are not cached. If more keys are written
+ * between two flushes than the cache holds, no object is cached until the
+ * next flush. Queries are not cached. Writes done directly to the wrapped
+ * store are not seen by the cache until the entries expire.
+ *
+ * <p> The cache is configured by the properties
+ * "gora.&lt;datastore&gt;.cache.max.entries", "cache.max.bytes",
+ * "cache.eviction" (LRU or LFU) and "cache.ttl.ms" of the wrapped store
+ * (or the "gora.datastore.cache.*" counterparts). The stores returned by
+ * {@link DataStoreFactory#getDataStore(String, Class, Class)} are wrapped
+ * by a CachingDataStore if "cache.enabled" is set.
+ */
+public class CachingDataStore<K, T extends Persistent>
+extends DelegatingDataStore<K, T> {
+
+  /** Whether the DataStoreFactory wraps the store by a CachingDataStore */
+  public static final String CACHE_ENABLED_PROPERTY = "cache.enabled";
+
+  /** Maximum number of cached objects */
+  public static final String MAX_ENTRIES_PROPERTY = "cache.max.entries";
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /** Maximum approximate size of the cached objects in bytes, 0 for no limit */
+  public static final String MAX_BYTES_PROPERTY = "cache.max.bytes";
+
+  /** The eviction policy, LRU or LFU */
+  public static final String EVICTION_PROPERTY = "cache.eviction";
+
+  /** Time to live of the cached objects in milliseconds, 0 for no expiry */
+  public static final String TTL_PROPERTY = "cache.ttl.ms";
+
+  /** Eviction policies of the cache */
+  public static enum Eviction {
+    /** Evicts the least recently used entries */
+    LRU,
+    /** Evicts the least frequently used entries, the least recently used
+     * ones first among the entries used as frequently */
+    LFU
+  }
+
+  private final int maxEntries;
+
+  private final long maxBytes;
+
+  private final Eviction eviction;
+
+  private final long ttl;
+
+  private final Map<K, CacheEntry<K, T>> entries = new HashMap<K, CacheEntry<K, T>>();
+
+  /** The entries in eviction order, the first entry is evicted first */
+  private final TreeSet<CacheEntry<K, T>> evictionOrder;
+
+  private long bytes = 0;
+
+  /** Incremented on every access, orders the entries by recency */
+  private long clock = 0;
+
+  /** Incremented on every invalidation, so that the objects fetched
+   * before an invalidation are not cached */
+  private long invalidations = 0;
+
+  /** The keys written since the last flush, which are not cached, mapped
+   * to the number of their last write. At most maxEntries keys are kept */
+  private final Map<K, Long> pendingKeys = new HashMap<K, Long>();
+
+  /** The number of writes, numbering the writes of the pending keys */
+  private long writeCount = 0;
+
+  /** The number of the last write whose key could not be kept pending */
+  private long lastUntrackedWrite = 0;
+
+  /** The number of the last write covered by a flush */
+  private long lastFlushedWrite = 0;
+
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long evictionCount = 0;
+
+  /**
+   * Constructs a CachingDataStore configured from the default gora
+   * properties.
+   */
+  public CachingDataStore(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a CachingDataStore configured from the given properties.
+   */
+  public CachingDataStore(DataStore<K, T> dataStore, Properties properties) {
+    this(dataStore
+        , StringUtils.parseInt(DataStoreFactory.findProperty(properties
+            , dataStore, MAX_ENTRIES_PROPERTY, null), DEFAULT_MAX_ENTRIES)
+        , Long.parseLong(DataStoreFactory.findProperty(properties
+            , dataStore, MAX_BYTES_PROPERTY, "0"))
+        , Eviction.valueOf(DataStoreFactory.findProperty(properties
+            , dataStore, EVICTION_PROPERTY, Eviction.LRU.name()).toUpperCase())
+        , Long.parseLong(DataStoreFactory.findProperty(properties
+            , dataStore, TTL_PROPERTY, "0")));
+  }
+
+  /**
+   * Constructs a CachingDataStore.
+   * @param maxEntries maximum number of cached objects
+   * @param maxBytes maximum approximate size of the cached objects in
+   * bytes, 0 for no limit
+   * @param eviction the eviction policy
+   * @param ttl time to live of the cached objects in milliseconds, 0 for
+   * no expiry
+   */
+  @SuppressWarnings("unchecked")
+  public CachingDataStore(DataStore<K, T> dataStore, int maxEntries
+      , long maxBytes, Eviction eviction, long ttl) {
+    super(dataStore);
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.eviction = eviction;
+    this.ttl = ttl;
+    this.evictionOrder = new TreeSet<CacheEntry<K, T>>(
+        eviction == Eviction.LFU ? LFU_ORDER : LRU_ORDER);
+  }
+
+  @Override
+  public T get(K key, String[] fields) throws IOException {
+    fields = getFieldsToQuery(fields);
+    long version;
+    String[] fieldsToFetch;
+    synchronized (this) {
+      CacheEntry<K, T> entry = getEntry(key);
+      if(entry != null && entry.fields.containsAll(Arrays.asList(fields))) {
+        hitCount++;
+        return copy(entry.persistent, fields);
+      }
+      missCount++;
+      fieldsToFetch = entry == null ? fields : union(entry.fields, fields);
+      version = invalidations;
+    }
+
+    T obj = dataStore.get(key, fieldsToFetch);
+    if(obj == null) {
+      return null;
+    }
+    cache(key, obj, fieldsToFetch, version);
+    return fieldsToFetch == fields ? obj : copy(obj, fields);
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    fields = getFieldsToQuery(fields);
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    List<K> misses = new ArrayList<K>();
+    long version;
+    synchronized (this) {
+      for(K key : keys) {
+        CacheEntry<K, T> entry = getEntry(key);
+        if(entry != null && entry.fields.containsAll(Arrays.asList(fields))) {
+          hitCount++;
+          results.put(key, copy(entry.persistent, fields));
+        } else {
+          missCount++;
+          results.put(key, null); //keeps the order of the keys
+          misses.add(key);
+        }
+      }
+      version = invalidations;
+    }
+
+    if(!misses.isEmpty()) {
+      Map<K, T> fetched = dataStore.getAll(misses, fields);
+      for(K key : misses) {
+        T obj = fetched.get(key);
+        if(obj == null) {
+          results.remove(key);
+        } else {
+          cache(key, obj, fields, version);
+          results.put(key, obj);
+        }
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    invalidateWritten(key);
+    dataStore.put(key, obj);
+  }
+
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    for(Map.Entry<K, T> entry : entries) {
+      invalidateWritten(entry.getKey());
+    }
+    dataStore.putAll(entries);
+  }
+
+  @Override
+  public boolean delete(K key) throws IOException {
+    invalidateWritten(key);
+    return dataStore.delete(key);
+  }
+
+  /**
+   * Flushes the wrapped store, after which the keys written before are
+   * cached again. The keys written again while flushing stay pending.
+   */
+  @Override
+  public void flush() throws IOException {
+    long flushed;
+    synchronized (this) {
+      flushed = writeCount;
+    }
+    dataStore.flush();
+    synchronized (this) {
+      //the objects fetched while flushing are not cached
+      invalidations++;
+      lastFlushedWrite = Math.max(lastFlushedWrite, flushed);
+      Iterator<Long> it = pendingKeys.values().iterator();
+      while(it.hasNext()) {
+        if(it.next() <= flushed) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) throws IOException {
+    invalidateAll();
+    return dataStore.deleteByQuery(query);
+  }
+
+  @Override
+  public void deleteSchema() throws IOException {
+    invalidateAll();
+    dataStore.deleteSchema();
+  }
+
+  @Override
+  public void truncateSchema() throws IOException {
+    invalidateAll();
+    dataStore.truncateSchema();
+  }
+
+  @Override
+  public void close() throws IOException {
+    invalidateAll();
+    dataStore.close();
+  }
+
+  /**
+   * Removes the cached object with the given key
+   */
+  public synchronized void invalidate(K key) {
+    invalidations++;
+    remove(entries.get(key));
+  }
+
+  /**
+   * Removes all the cached objects
+   */
+  public synchronized void invalidateAll() {
+    invalidations++;
+    entries.clear();
+    evictionOrder.clear();
+    bytes = 0;
+  }
+
+  /** Removes the cached object of a key written to the wrapped store */
+  private synchronized void invalidateWritten(K key) {
+    writeCount++;
+    if(pendingKeys.containsKey(key) || pendingKeys.size() < maxEntries) {
+      pendingKeys.put(key, writeCount);
+    } else {
+      //too many keys to track, so none is cached until the next flush
+      lastUntrackedWrite = writeCount;
+    }
+    invalidate(key);
+  }
+
+  /** Returns the number of gets served from the cache */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of gets served from the wrapped store */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of objects evicted or expired */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** Returns the ratio of the gets served from the cache */
+  public synchronized double getHitRate() {
+    long requests = hitCount + missCount;
+    return requests == 0 ? 0d : hitCount / (double) requests;
+  }
+
+  /** Returns the number of cached objects */
+  public synchronized int getSize() {
+    return entries.size();
+  }
+
+  /** Returns the approximate size of the cached objects in bytes */
+  public synchronized long getByteSize() {
+    return bytes;
+  }
+
+  /** Resets the hit, miss and eviction counts */
+  public synchronized void resetStats() {
+    hitCount = missCount = evictionCount = 0;
+  }
+
+  /** Returns the live entry of the key, and marks it as accessed */
+  private CacheEntry<K, T> getEntry(K key) {
+    CacheEntry<K, T> entry = entries.get(key);
+    if(entry == null) {
+      return null;
+    }
+    if(ttl > 0 && System.currentTimeMillis() > entry.expires) {
+      remove(entry);
+      evictionCount++;
+      return null;
+    }
+    evictionOrder.remove(entry);
+    entry.hits++;
+    entry.lastAccess = ++clock;
+    evictionOrder.add(entry);
+    return entry;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void cache(K key, T obj, String[] fields, long version) {
+    if(maxEntries <= 0) {
+      return;
+    }
+    T copy = (T) obj.clone();
+    long size = AvroUtils.estimateSize(copy);
+    synchronized (this) {
+      if(version != invalidations || pendingKeys.containsKey(key)
+          || lastUntrackedWrite > lastFlushedWrite) {
+        return; //invalidated while fetching, or not flushed yet
+      }
+      remove(entries.get(key));
+      if(maxBytes > 0 && size > maxBytes) {
+        return;
+      }
+      CacheEntry<K, T> entry = new CacheEntry<K, T>(key, copy
+          , new HashSet<String>(Arrays.asList(fields)), size);
+      entry.lastAccess = ++clock;
+      entry.expires = System.currentTimeMillis() + ttl;
+      entries.put(key, entry);
+      evictionOrder.add(entry);
+      bytes += size;
+
+      while(entries.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes)) {
+        remove(evictionOrder.first());
+        evictionCount++;
+      }
+    }
+  }
+
+  private void remove(CacheEntry<K, T> entry) {
+    if(entry != null) {
+      entries.remove(entry.key);
+      evictionOrder.remove(entry);
+      bytes -= entry.size;
+    }
+  }
+
+  /**
+   * Returns a copy of the cached object with exactly the requested fields
+   */
+  @SuppressWarnings("unchecked")
+  private T copy(T obj, String[] fields) {
+    T clone = (T) obj.clone();
+    if(fields.length == clone.getFields().length) {
+      return clone;
+    }
+    T newObj = (T) clone.newInstance(new StateManagerImpl());
+    for(String field : fields) {
+      int index = newObj.getFieldIndex(field);
+      newObj.put(index, clone.get(index));
+    }
+    newObj.clearDirty();
+    return newObj;
+  }
+
+  private String[] getFieldsToQuery(String[] fields) {
+    if(fields != null) {
+      return fields;
+    }
+    return getBeanFactory().getCachedPersistent().getFields();
+  }
+
+  private static String[] union(Set<String> cached, String[] fields) {
+    Set<String> union = new LinkedHashSet<String>(cached);
+    union.addAll(Arrays.asList(fields));
+    return union.toArray(new String[union.size()]);
+  }
+
+  private static class CacheEntry<K, T> {
+    final K key;
+    final T persistent;
+    final Set<String> fields;
+    final long size;
+    long hits = 0;
+    long lastAccess;
+    long expires;
+
+    CacheEntry(K key, T persistent, Set<String> fields, long size) {
+      this.key = key;
+      this.persistent = persistent;
+      this.fields = fields;
+      this.size = size;
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static final Comparator LRU_ORDER = new Comparator<CacheEntry>() {
+    @Override
+    public int compare(CacheEntry e1, CacheEntry e2) {
+      return e1.lastAccess < e2.lastAccess ? -1
+          : (e1.lastAccess == e2.lastAccess ? 0 : 1);
+    }
+  };
+
+  @SuppressWarnings("rawtypes")
+  private static final Comparator LFU_ORDER = new Comparator<CacheEntry>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(CacheEntry e1, CacheEntry e2) {
+      if(e1.hits != e2.hits) {
+        return e1.hits < e2.hits ? -1 : 1;
+      }
+      return LRU_ORDER.compare(e1, e2);
+    }
+  };
+}
@@ -4,19 +4,32 @@ package org.gora.store.impl;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.gora.avro.PersistentDatumReader;
 import org.gora.avro.PersistentDatumWriter;
+import org.gora.filter.Filter;
+import org.gora.filter.Filters;
 import org.gora.persistency.BeanFactory;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.impl.BeanFactoryImpl;
+import org.gora.query.Aggregation;
+import org.gora.query.Aggregation.Function;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.QueryPlanCache;
 import org.gora.store.DataStore;
 import org.gora.store.DataStoreFactory;
 import org.gora.util.AvroUtils;
@@ -43,6 +56,9 @@ implements DataStore<K, T> {
 
   protected boolean autoCreateSchema;
 
+  /** Whether the fields of the read objects are decoded on first access */
+  protected boolean lazyFields;
+
   protected Properties properties;
 
   protected PersistentDatumReader<T> datumReader;
@@ -63,6 +79,7 @@ implements DataStore<K, T> {
     fieldMap = AvroUtils.getFieldMap(schema);
 
     autoCreateSchema = DataStoreFactory.getAutoCreateSchema(properties, this);
+    lazyFields = DataStoreFactory.getLazyFields(properties, this);
     this.properties = properties;
 
     datumReader = new PersistentDatumReader<T>(schema, false);
@@ -123,6 +140,188 @@ public T get(K key) throws IOException {
     return get(key, null);
   };
 
+  @Override
+  public Map<K, T> getAll(Collection<K> keys) throws IOException {
+    return getAll(keys, null);
+  }
+
+  /**
+   * Default implementation fetches the objects one by one using
+   * {@link #get(Object, String[])}. Subclasses which can fetch
+   * several rows in a single round trip should override this.
+   */
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+    throws IOException {
+    fields = getFieldsToQuery(fields);
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(K key : keys) {
+      T obj = get(key, fields);
+      if(obj != null) {
+        results.put(key, obj);
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void putAll(Map<K, T> objs) throws IOException {
+    putAll(objs.entrySet());
+  }
+
+  /**
+   * Default implementation puts the objects one by one using
+   * {@link #put(Object, Persistent)}.
+   */
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    for(Map.Entry<K, T> entry : entries) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public long count(Query<K, T> query) throws IOException {
+    return (Long) aggregate(query, Aggregation.count());
+  }
+
+  /**
+   * Default implementation iterates over the results of the query,
+   * fetching only the keys, or the aggregated field.
+   */
+  @Override
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    String field = aggregation.getField();
+    Type type = field == null ? null : getNumericFieldType(field);
+
+    String[] fields = query.getFields();
+    query.setFields(field == null ? new String[0] : new String[] {field});
+    Result<K, T> result = null;
+    try {
+      result = query.execute();
+      return aggregate(result, aggregation, type);
+    } finally {
+      query.setFields(fields);
+      if(result != null) {
+        result.close();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object aggregate(Result<K, T> result, Aggregation aggregation
+      , Type type) throws IOException {
+    long count = 0;
+    K key = null;
+    long longSum = 0;
+    double doubleSum = 0;
+    int index = aggregation.getField() == null ? -1
+        : fieldMap.get(aggregation.getField()).pos();
+
+    while(result.next()) {
+      switch(aggregation.getFunction()) {
+        case COUNT:
+          count++;
+          break;
+        case MIN_KEY:
+        case MAX_KEY:
+          int cmp = key == null ? 0 :
+            ((Comparable<K>)result.getKey()).compareTo(key);
+          if(key == null || (aggregation.getFunction() == Function.MIN_KEY ?
+              cmp < 0 : cmp > 0)) {
+            key = result.getKey();
+          }
+          break;
+        case SUM:
+        case AVG:
+          Number value = (Number) result.get().get(index);
+          if(value != null) {
+            count++;
+            if(type == Type.INT || type == Type.LONG) {
+              longSum += value.longValue();
+            } else {
+              doubleSum += value.doubleValue();
+            }
+          }
+          break;
+      }
+    }
+
+    switch(aggregation.getFunction()) {
+      case COUNT:
+        return count;
+      case MIN_KEY:
+      case MAX_KEY:
+        return key;
+      case SUM:
+        if(count == 0) {
+          return null;
+        }
+        return type == Type.INT || type == Type.LONG ? (Object) longSum
+            : (Object) doubleSum;
+      default:
+        if(count == 0) {
+          return null;
+        }
+        return (type == Type.INT || type == Type.LONG ? longSum : doubleSum)
+          / (double) count;
+    }
+  }
+
+  /**
+   * Returns the type of the numeric field, checking that the field exists
+   * and can be aggregated.
+   */
+  protected Type getNumericFieldType(String field) throws IOException {
+    Field f = fieldMap.get(field);
+    if(f == null) {
+      throw new IOException("Field " + field + " does not exist in "
+          + persistentClass.getName());
+    }
+    Type type = f.schema().getType();
+    switch(type) {
+      case INT: case LONG: case FLOAT: case DOUBLE:
+        return type;
+      default:
+        throw new IOException("Cannot aggregate field " + field + " of type "
+            + type);
+    }
+  }
+
+  /**
+   * Default implementation checks that the fields of the query and of
+   * its filter exist. Subclasses caching query plans should override this
+   * to prepare the plan as well.
+   */
+  @Override
+  public void compile(Query<K, T> query) throws IOException {
+    if(query.getFields() != null) {
+      checkFields(Arrays.asList(query.getFields()));
+    }
+    checkFields(Filters.getFields(query.getFilter()));
+  }
+
+  private void checkFields(Collection<String> fields) throws IOException {
+    for(String field : fields) {
+      if(!fieldMap.containsKey(field)) {
+        throw new IOException("Field " + field + " does not exist in "
+            + persistentClass.getName());
+      }
+    }
+  }
+
+  /**
+   * Creates a cache for the query plans of this store, sized by the
+   * property {@value QueryPlanCache#CACHE_SIZE_PROPERTY}.
+   */
+  protected <P> QueryPlanCache<P> createQueryPlanCache() {
+    return new QueryPlanCache<P>(StringUtils.parseInt(
+        DataStoreFactory.findProperty(properties, this
+            , QueryPlanCache.CACHE_SIZE_PROPERTY, null)
+        , QueryPlanCache.DEFAULT_CACHE_SIZE));
+  }
+
   /**
    * Checks whether the fields argument is null, and if so
    * returns all the fields of the Persistent object, else returns the
@@ -135,6 +334,21 @@ public T get(K key) throws IOException {
     return beanFactory.getCachedPersistent().getFields();
   }
 
+  /**
+   * Returns the fields to query as {@link #getFieldsToQuery(String[])},
+   * adding the fields referenced by the filter so that the filter can be
+   * evaluated on the fetched objects.
+   */
+  protected String[] getFieldsToQuery(String[] fields, Filter filter) {
+    fields = getFieldsToQuery(fields);
+    if(filter == null) {
+      return fields;
+    }
+    Set<String> allFields = new LinkedHashSet<String>(Arrays.asList(fields));
+    allFields.addAll(Filters.getFields(filter));
+    return allFields.toArray(new String[allFields.size()]);
+  }
+
   @Override
   public Configuration getConf() {
     return conf;
@@ -0,0 +1,246 @@
+package org.gora.store.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.gora.persistency.BeanFactory;
+import org.gora.persistency.Persistent;
+import org.gora.query.Aggregation;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+
+/**
+ * A base class for {@link DataStore}s wrapping another DataStore, which
+ * forwards all the operations to the wrapped store. Subclasses override
+ * the operations they decorate.
+ */
+public abstract class DelegatingDataStore<K, T extends Persistent>
+implements DataStore<K, T> {
+
+  protected final DataStore<K, T> dataStore;
+
+  public DelegatingDataStore(DataStore<K, T> dataStore) {
+    this.dataStore = dataStore;
+  }
+
+  /**
+   * Returns the wrapped DataStore
+   */
+  public DataStore<K, T> getDataStore() {
+    return dataStore;
+  }
+
+  /**
+   * Returns the innermost DataStore wrapped by the decorators, or the
+   * store itself if it is not a decorator.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, T extends Persistent> DataStore<K, T> unwrap(
+      DataStore<K, T> dataStore) {
+    while(dataStore instanceof DelegatingDataStore) {
+      dataStore = ((DelegatingDataStore<K, T>) dataStore).getDataStore();
+    }
+    return dataStore;
+  }
+
+  @Override
+  public void initialize(Class<K> keyClass, Class<T> persistentClass,
+      Properties properties) throws IOException {
+    dataStore.initialize(keyClass, persistentClass, properties);
+  }
+
+  @Override
+  public void setKeyClass(Class<K> keyClass) {
+    dataStore.setKeyClass(keyClass);
+  }
+
+  @Override
+  public Class<K> getKeyClass() {
+    return dataStore.getKeyClass();
+  }
+
+  @Override
+  public void setPersistentClass(Class<T> persistentClass) {
+    dataStore.setPersistentClass(persistentClass);
+  }
+
+  @Override
+  public Class<T> getPersistentClass() {
+    return dataStore.getPersistentClass();
+  }
+
+  @Override
+  public String getSchemaName() {
+    return dataStore.getSchemaName();
+  }
+
+  @Override
+  public void createSchema() throws IOException {
+    dataStore.createSchema();
+  }
+
+  @Override
+  public void deleteSchema() throws IOException {
+    dataStore.deleteSchema();
+  }
+
+  @Override
+  public void truncateSchema() throws IOException {
+    dataStore.truncateSchema();
+  }
+
+  @Override
+  public boolean schemaExists() throws IOException {
+    return dataStore.schemaExists();
+  }
+
+  @Override
+  public K newKey() throws IOException {
+    return dataStore.newKey();
+  }
+
+  @Override
+  public T newPersistent() throws IOException {
+    return dataStore.newPersistent();
+  }
+
+  @Override
+  public T get(K key) throws IOException {
+    return get(key, null);
+  }
+
+  @Override
+  public T get(K key, String[] fields) throws IOException {
+    return dataStore.get(key, fields);
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys) throws IOException {
+    return getAll(keys, null);
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    return dataStore.getAll(keys, fields);
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    dataStore.put(key, obj);
+  }
+
+  @Override
+  public void putAll(Map<K, T> objs) throws IOException {
+    putAll(objs.entrySet());
+  }
+
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    dataStore.putAll(entries);
+  }
+
+  @Override
+  public boolean delete(K key) throws IOException {
+    return dataStore.delete(key);
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) throws IOException {
+    return dataStore.deleteByQuery(query);
+  }
+
+  @Override
+  public Result<K, T> execute(Query<K, T> query) throws IOException {
+    return dataStore.execute(query);
+  }
+
+  @Override
+  public long count(Query<K, T> query) throws IOException {
+    return dataStore.count(query);
+  }
+
+  @Override
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    return dataStore.aggregate(query, aggregation);
+  }
+
+  @Override
+  public void compile(Query<K, T> query) throws IOException {
+    dataStore.compile(query);
+  }
+
+  /**
+   * Returns a query of the wrapped store, which is executed by this
+   * store.
+   */
+  @Override
+  public Query<K, T> newQuery() {
+    Query<K, T> query = dataStore.newQuery();
+    query.setDataStore(this);
+    return query;
+  }
+
+  /**
+   * Returns the partitions of the wrapped store, which are executed by
+   * this store.
+   */
+  @Override
+  public List<PartitionQuery<K, T>> getPartitions(Query<K, T> query)
+  throws IOException {
+    List<PartitionQuery<K, T>> partitions = dataStore.getPartitions(query);
+    for(PartitionQuery<K, T> partition : partitions) {
+      partition.setDataStore(this);
+    }
+    return partitions;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    dataStore.flush();
+  }
+
+  @Override
+  public void setBeanFactory(BeanFactory<K, T> beanFactory) {
+    dataStore.setBeanFactory(beanFactory);
+  }
+
+  @Override
+  public BeanFactory<K, T> getBeanFactory() {
+    return dataStore.getBeanFactory();
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataStore.close();
+  }
+
+  @Override
+  public Configuration getConf() {
+    return dataStore.getConf();
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    dataStore.setConf(conf);
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    dataStore.readFields(in);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    dataStore.write(out);
+  }
+}
@@ -0,0 +1,221 @@
+package org.gora.store.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.metrics.DataStoreMetrics.Operation;
+import org.gora.metrics.MetricsRegistry;
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.MetricsResult;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.AvroUtils;
+
+/**
+ * MetricsDataStore wraps a {@link DataStore}, and records the count, the
+ * error count, the approximate bytes and the latencies of its get, put,
+ * delete, deleteByQuery, execute and flush operations, and of the
+ * next() calls of its results, into {@link DataStoreMetrics}.
+ *
+ * <p> By default the metrics are those of the wrapped store's class and
+ * schema in the {@link MetricsRegistry}, which are shared by all the
+ * stores of the same class and schema, and exposed by JMX. The queries
+ * and the partitions of the store are executed by the MetricsDataStore,
+ * and serialized with the wrapped store.
+ *
+ * <p> Estimating the sizes of the objects walks their fields, which can
+ * be disabled by setting "gora.&lt;datastore&gt;.metrics.bytes" to false.
+ */
+public class MetricsDataStore<K, T extends Persistent>
+extends DelegatingDataStore<K, T> {
+
+  /** Whether {@link DataStoreFactory#decorate(DataStore, Properties)} adds
+   * the metrics */
+  public static final String METRICS_ENABLED_PROPERTY = "metrics.enabled";
+
+  /** Whether the sizes of the objects are estimated */
+  public static final String METRICS_BYTES_PROPERTY = "metrics.bytes";
+
+  private final DataStoreMetrics metrics;
+
+  private final boolean measureBytes;
+
+  /**
+   * Constructs a MetricsDataStore configured from the default gora
+   * properties.
+   */
+  public MetricsDataStore(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a MetricsDataStore recording into the registered metrics
+   * of the store's class and schema.
+   */
+  public MetricsDataStore(DataStore<K, T> dataStore, Properties properties) {
+    this(dataStore, getRegisteredMetrics(dataStore, properties)
+        , DataStoreFactory.findBooleanProperty(properties, dataStore
+            , METRICS_BYTES_PROPERTY, "true"));
+  }
+
+  /**
+   * Constructs a MetricsDataStore recording into the given metrics.
+   * @param measureBytes whether to estimate the sizes of the objects
+   */
+  public MetricsDataStore(DataStore<K, T> dataStore, DataStoreMetrics metrics
+      , boolean measureBytes) {
+    super(dataStore);
+    this.metrics = metrics;
+    this.measureBytes = measureBytes;
+  }
+
+  private static DataStoreMetrics getRegisteredMetrics(DataStore<?, ?> dataStore
+      , Properties properties) {
+    MetricsRegistry.configure(properties);
+    dataStore = unwrap(dataStore);
+    return MetricsRegistry.getMetrics(dataStore.getClass().getName()
+        , dataStore.getSchemaName());
+  }
+
+  /**
+   * Returns the metrics recorded by this store
+   */
+  public DataStoreMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public T get(K key, String[] fields) throws IOException {
+    long start = System.nanoTime();
+    long bytes = 0;
+    boolean success = false;
+    try {
+      T obj = dataStore.get(key, fields);
+      bytes = size(obj);
+      success = true;
+      return obj;
+    } finally {
+      metrics.record(Operation.GET, start, bytes, success);
+    }
+  }
+
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    long start = System.nanoTime();
+    long bytes = 0;
+    boolean success = false;
+    try {
+      Map<K, T> objs = dataStore.getAll(keys, fields);
+      if(measureBytes) {
+        for(T obj : objs.values()) {
+          bytes += size(obj);
+        }
+      }
+      success = true;
+      return objs;
+    } finally {
+      metrics.record(Operation.GET, start, bytes, success);
+    }
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    long start = System.nanoTime();
+    long bytes = size(obj);
+    boolean success = false;
+    try {
+      dataStore.put(key, obj);
+      success = true;
+    } finally {
+      metrics.record(Operation.PUT, start, bytes, success);
+    }
+  }
+
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    long start = System.nanoTime();
+    long bytes = 0;
+    if(measureBytes) {
+      //the entries may be iterated only once
+      List<Map.Entry<K, T>> list = new ArrayList<Map.Entry<K, T>>();
+      for(Map.Entry<K, T> entry : entries) {
+        bytes += size(entry.getValue());
+        list.add(entry);
+      }
+      entries = list;
+    }
+    boolean success = false;
+    try {
+      dataStore.putAll(entries);
+      success = true;
+    } finally {
+      metrics.record(Operation.PUT, start, bytes, success);
+    }
+  }
+
+  @Override
+  public boolean delete(K key) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      boolean ret = dataStore.delete(key);
+      success = true;
+      return ret;
+    } finally {
+      metrics.record(Operation.DELETE, start, 0, success);
+    }
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      long ret = dataStore.deleteByQuery(query);
+      success = true;
+      return ret;
+    } finally {
+      metrics.record(Operation.DELETE_BY_QUERY, start, 0, success);
+    }
+  }
+
+  /**
+   * Executes the query, and returns a result recording the next() calls
+   */
+  @Override
+  public Result<K, T> execute(Query<K, T> query) throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      Result<K, T> result = dataStore.execute(query);
+      success = true;
+      return new MetricsResult<K, T>(result, metrics, measureBytes);
+    } finally {
+      metrics.record(Operation.EXECUTE, start, 0, success);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      dataStore.flush();
+      success = true;
+    } finally {
+      metrics.record(Operation.FLUSH, start, 0, success);
+    }
+  }
+
+  private long size(T obj) {
+    return measureBytes ? AvroUtils.estimateSize(obj) : 0;
+  }
+}
@@ -0,0 +1,722 @@
+package org.gora.store.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.gora.filter.Filters;
+import org.gora.memory.store.MemStore;
+import org.gora.persistency.Persistent;
+import org.gora.persistency.impl.StateManagerImpl;
+import org.gora.query.Aggregation;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.PartitionQueryImpl;
+import org.gora.query.impl.QueryBase;
+import org.gora.query.impl.ResultBase;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.AvroUtils;
+import org.gora.util.StringUtils;
+
+/**
+ * TieredDataStore composes a {@link MemStore} holding the recently used
+ * objects (the hot tier) with a backing {@link DataStore}.
+ *
+ * <p> Reads are served from the hot tier, and the objects read from the
+ * backing store are promoted to it. Writes go to the backing store
+ * immediately in {@link WriteMode#THROUGH} mode, and are kept in the hot
+ * tier until the object is demoted or the store is flushed in
+ * {@link WriteMode#BACK} mode. Deletes go to both tiers immediately.
+ * Objects are demoted from the hot tier in least recently used order,
+ * when it holds more than "tiered.hot.max.entries" objects, or when they
+ * are not used for "tiered.hot.max.age.ms" milliseconds.
+ *
+ * <p> Queries, and the partitions returned by
+ * {@link #getPartitions(Query)}, merge both tiers in key order, so the
+ * keys should be {@link Comparable}, and ordered the same way by the
+ * backing store. The queries should be created by {@link #newQuery()},
+ * and the partitions are meant to be executed in the same process.
+ *
+ * <p> The hot tier is configured by the properties
+ * "gora.&lt;datastore&gt;.tiered.*" of the backing store (or the
+ * "gora.datastore.tiered.*" counterparts).
+ */
+public class TieredDataStore<K, T extends Persistent>
+extends DelegatingDataStore<K, T> {
+
+  /** How the writes reach the backing store */
+  public static enum WriteMode {
+    /** Writes go to the backing store immediately */
+    THROUGH,
+    /** Writes go to the backing store when the object is demoted, or on flush */
+    BACK
+  }
+
+  /** Whether {@link DataStoreFactory#decorate(DataStore, Properties)} adds
+   * the hot tier */
+  public static final String TIERED_ENABLED_PROPERTY = "tiered.enabled";
+
+  public static final String WRITE_MODE_PROPERTY = "tiered.write.mode";
+  public static final WriteMode DEFAULT_WRITE_MODE = WriteMode.THROUGH;
+
+  public static final String HOT_MAX_ENTRIES_PROPERTY = "tiered.hot.max.entries";
+  public static final int DEFAULT_HOT_MAX_ENTRIES = 10000;
+
+  /** Idle time in milliseconds after which the objects are demoted, 0 to
+   * demote only by size */
+  public static final String HOT_MAX_AGE_PROPERTY = "tiered.hot.max.age.ms";
+  public static final long DEFAULT_HOT_MAX_AGE = 0;
+
+  private final MemStore<K, T> hot;
+
+  private final WriteMode writeMode;
+
+  private final int maxEntries;
+
+  private final long maxAge;
+
+  /** The hot keys in least recently used order */
+  private final LinkedHashMap<K, HotEntry> entries =
+    new LinkedHashMap<K, HotEntry>(16, 0.75f, true);
+
+  /**
+   * The times the hot objects were last written through this store. The
+   * objects promoted unchanged have the write times of the backing store.
+   */
+  private final Map<K, Long> writeTimes = new HashMap<K, Long>();
+
+  private final Comparator<K> keyComparator = new Comparator<K>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(K k1, K k2) {
+      return ((Comparable<K>) k1).compareTo(k2);
+    }
+  };
+
+  private long hitCount = 0;
+
+  private long missCount = 0;
+
+  private long demotionCount = 0;
+
+  /**
+   * Constructs a TieredDataStore configured from the default gora
+   * properties.
+   */
+  public TieredDataStore(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a TieredDataStore configured from the given properties.
+   */
+  public TieredDataStore(DataStore<K, T> dataStore, Properties properties) {
+    this(dataStore, null
+        , WriteMode.valueOf(DataStoreFactory.findProperty(properties, dataStore
+            , WRITE_MODE_PROPERTY, DEFAULT_WRITE_MODE.name()).toUpperCase())
+        , StringUtils.parseInt(DataStoreFactory.findProperty(properties
+            , dataStore, HOT_MAX_ENTRIES_PROPERTY, null), DEFAULT_HOT_MAX_ENTRIES)
+        , Long.parseLong(DataStoreFactory.findProperty(properties
+            , dataStore, HOT_MAX_AGE_PROPERTY, String.valueOf(DEFAULT_HOT_MAX_AGE))));
+  }
+
+  /**
+   * Constructs a TieredDataStore.
+   * @param hot the hot tier, or null to create a new MemStore
+   * @param maxEntries maximum number of objects in the hot tier
+   * @param maxAge idle time in milliseconds after which the objects are
+   * demoted, 0 to demote only by size
+   */
+  @SuppressWarnings("unchecked")
+  public TieredDataStore(DataStore<K, T> dataStore, MemStore<K, T> hot
+      , WriteMode writeMode, int maxEntries, long maxAge) {
+    super(dataStore);
+    if(hot == null) {
+      hot = DataStoreFactory.createDataStore(MemStore.class
+          , dataStore.getKeyClass(), dataStore.getPersistentClass());
+    }
+    this.hot = hot;
+    this.writeMode = writeMode;
+    this.maxEntries = Math.max(1, maxEntries);
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Returns the hot tier
+   */
+  public MemStore<K, T> getHotStore() {
+    return hot;
+  }
+
+  public WriteMode getWriteMode() {
+    return writeMode;
+  }
+
+  @Override
+  public synchronized T get(K key, String[] fields) throws IOException {
+    demoteExpired();
+    T obj = getHot(key);
+    if(obj != null) {
+      hitCount++;
+    } else {
+      missCount++;
+      obj = dataStore.get(key, null);
+      if(obj == null) {
+        return null;
+      }
+      obj = promote(key, obj);
+      demote();
+    }
+    return copyOut(obj, fields);
+  }
+
+  @Override
+  public synchronized Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    demoteExpired();
+    Map<K, T> objs = new LinkedHashMap<K, T>();
+    List<K> missing = new ArrayList<K>();
+    for(K key : keys) {
+      T obj = getHot(key);
+      objs.put(key, obj);
+      if(obj != null) {
+        hitCount++;
+      } else {
+        missing.add(key);
+        missCount++;
+      }
+    }
+    if(!missing.isEmpty()) {
+      for(Map.Entry<K, T> entry : dataStore.getAll(missing, null).entrySet()) {
+        objs.put(entry.getKey(), promote(entry.getKey(), entry.getValue()));
+      }
+    }
+
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(Map.Entry<K, T> entry : objs.entrySet()) {
+      if(entry.getValue() != null) {
+        results.put(entry.getKey(), copyOut(entry.getValue(), fields));
+      }
+    }
+    demote();
+    return results;
+  }
+
+  @Override
+  public synchronized void put(K key, T obj) throws IOException {
+    demoteExpired();
+    T current = getHot(key);
+    T merged;
+    if(writeMode == WriteMode.THROUGH) {
+      dataStore.put(key, obj);
+      if(current != null) {
+        merged = AvroUtils.deepCopy(current);
+        AvroUtils.mergeDirtyFields(merged, obj);
+      } else if(AvroUtils.isAllDirty(obj)) {
+        merged = AvroUtils.deepCopy(obj);
+      } else {
+        return; //promoted on the next read
+      }
+      merged.clearDirty();
+    } else {
+      if(current == null && !AvroUtils.isAllDirty(obj)) {
+        //read the fields which are not written from the backing store
+        current = dataStore.get(key, null);
+        if(current != null) {
+          current.clearDirty();
+        }
+      }
+      if(current != null) {
+        merged = AvroUtils.deepCopy(current);
+        AvroUtils.mergeDirtyFields(merged, obj);
+      } else {
+        merged = AvroUtils.deepCopy(obj);
+      }
+    }
+    hot.put(key, merged);
+    HotEntry entry = entries.get(key);
+    if(entry == null) {
+      entry = new HotEntry();
+      entries.put(key, entry);
+    }
+    entry.time = System.currentTimeMillis();
+    entry.dirty = writeMode == WriteMode.BACK;
+    writeTimes.put(key, entry.time);
+    demote();
+  }
+
+  @Override
+  public synchronized boolean delete(K key) throws IOException {
+    boolean deleted = false;
+    if(entries.remove(key) != null) {
+      writeTimes.remove(key);
+      deleted = hot.delete(key);
+    }
+    return dataStore.delete(key) || deleted;
+  }
+
+  /**
+   * Writes back the modified objects, invalidates the hot objects in the
+   * query's key range, and deletes from the backing store.
+   */
+  @Override
+  public synchronized long deleteByQuery(Query<K, T> query) throws IOException {
+    writeBack();
+    K startKey = query.getStartKey();
+    K endKey = query.getEndKey();
+    Iterator<K> it = entries.keySet().iterator();
+    while(it.hasNext()) {
+      K key = it.next();
+      if(inRange(key, startKey, endKey, true)) {
+        it.remove();
+        writeTimes.remove(key);
+        hot.delete(key);
+      }
+    }
+    return dataStore.deleteByQuery(backingQuery(query, startKey, endKey, 0));
+  }
+
+  @Override
+  public synchronized Result<K, T> execute(Query<K, T> query)
+  throws IOException {
+    demoteExpired();
+    K startKey, endKey;
+    boolean endInclusive = true;
+    Query<K, T> backingQuery;
+    if(query instanceof TieredPartitionQuery) {
+      TieredPartitionQuery<K, T> partition = (TieredPartitionQuery<K, T>) query;
+      startKey = partition.getStartKey();
+      endKey = partition.getEndKey();
+      endInclusive = partition.endInclusive;
+      backingQuery = partition.backingPartition;
+    } else {
+      startKey = query.getStartKey();
+      endKey = query.getEndKey();
+      backingQuery = null;
+    }
+
+    //take the hot objects in the range, which are replaced but not
+    //modified by the writes. The hot objects written out of the time
+    //range are kept as null, since they hide the older backing objects.
+    TreeMap<K, T> snapshot = new TreeMap<K, T>(keyComparator);
+    boolean timeRange = ResultBase.hasTimeRange(query);
+    if(!entries.isEmpty()) {
+      Query<K, T> hotQuery = hot.newQuery();
+      hotQuery.setKeyRange(startKey, endKey);
+      Result<K, T> result = hot.execute(hotQuery);
+      try {
+        while(result.next()) {
+          K key = result.getKey();
+          if(!endInclusive && key.equals(endKey)) {
+            continue;
+          }
+          if(timeRange) {
+            Long time = writeTimes.get(key);
+            if(time == null) {
+              //the backing store selects the objects promoted unchanged
+              continue;
+            } else if(!ResultBase.isInTimeRange(query, time)) {
+              snapshot.put(key, null);
+              continue;
+            }
+          }
+          snapshot.put(key, result.get());
+        }
+      } finally {
+        result.close();
+      }
+    }
+
+    if(backingQuery == null) {
+      backingQuery = backingQuery(query, startKey, endKey, snapshot.size());
+    } else {
+      backingQuery = new PartitionQueryImpl<K, T>(backingQuery(query
+          , startKey, endKey, snapshot.size())
+          , backingQuery.getStartKey(), backingQuery.getEndKey()
+          , ((PartitionQuery<K, T>) backingQuery).getLocations());
+    }
+    return new TieredResult(query, snapshot, dataStore.execute(backingQuery));
+  }
+
+  /**
+   * Returns the partitions of the backing store. Each partition also
+   * covers the hot keys from its start key to the start key of the next
+   * partition.
+   */
+  @Override
+  public synchronized List<PartitionQuery<K, T>> getPartitions(
+      Query<K, T> query) throws IOException {
+    List<PartitionQuery<K, T>> backing = new ArrayList<PartitionQuery<K, T>>(
+        dataStore.getPartitions(backingQuery(query, query.getStartKey()
+            , query.getEndKey(), 0)));
+    List<PartitionQuery<K, T>> partitions = new ArrayList<PartitionQuery<K,T>>();
+    if(backing.isEmpty()) {
+      partitions.add(new PartitionQueryImpl<K, T>(query));
+      return partitions;
+    }
+
+    Collections.sort(backing, new Comparator<PartitionQuery<K, T>>() {
+      @Override
+      public int compare(PartitionQuery<K, T> p1, PartitionQuery<K, T> p2) {
+        if(p1.getStartKey() == null || p2.getStartKey() == null) {
+          return p1.getStartKey() == null ? (p2.getStartKey() == null ? 0 : -1) : 1;
+        }
+        return keyComparator.compare(p1.getStartKey(), p2.getStartKey());
+      }
+    });
+    for(int i=0; i<backing.size(); i++) {
+      boolean last = i == backing.size() - 1;
+      K startKey = i == 0 ? query.getStartKey() : backing.get(i).getStartKey();
+      K endKey = last ? query.getEndKey() : backing.get(i + 1).getStartKey();
+      partitions.add(new TieredPartitionQuery<K, T>(query, backing.get(i)
+          , startKey, endKey, last));
+    }
+    return partitions;
+  }
+
+  /** Writes back the modified objects before counting */
+  @Override
+  public long count(Query<K, T> query) throws IOException {
+    writeBack();
+    return dataStore.count(backingQuery(query, query.getStartKey()
+        , query.getEndKey(), 0));
+  }
+
+  /** Writes back the modified objects before aggregating */
+  @Override
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    writeBack();
+    return dataStore.aggregate(backingQuery(query, query.getStartKey()
+        , query.getEndKey(), 0), aggregation);
+  }
+
+  @Override
+  public Query<K, T> newQuery() {
+    return new TieredQuery<K, T>(this);
+  }
+
+  @Override
+  public synchronized void deleteSchema() throws IOException {
+    clearHot();
+    dataStore.deleteSchema();
+  }
+
+  @Override
+  public synchronized void truncateSchema() throws IOException {
+    clearHot();
+    dataStore.truncateSchema();
+  }
+
+  /**
+   * Writes back the modified objects, which stay in the hot tier, and
+   * flushes the backing store.
+   */
+  @Override
+  public void flush() throws IOException {
+    writeBack();
+    dataStore.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      clearHot();
+      hot.close();
+      dataStore.close();
+    }
+  }
+
+  /** Returns the number of objects in the hot tier */
+  public synchronized int getHotSize() {
+    return entries.size();
+  }
+
+  /** Returns the number of reads served by the hot tier */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of reads served by the backing store */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of objects demoted from the hot tier */
+  public synchronized long getDemotionCount() {
+    return demotionCount;
+  }
+
+  /**
+   * Demotes the objects not used for the maximum age, writing back the
+   * modified ones. This is also done on every operation.
+   */
+  public synchronized void demoteExpired() throws IOException {
+    if(maxAge <= 0 || entries.isEmpty()) {
+      return;
+    }
+    long expired = System.currentTimeMillis() - maxAge;
+    Iterator<Map.Entry<K, HotEntry>> it = entries.entrySet().iterator();
+    while(it.hasNext()) {
+      Map.Entry<K, HotEntry> entry = it.next();
+      if(entry.getValue().time > expired) {
+        break;
+      }
+      demote(entry.getKey(), entry.getValue());
+      it.remove();
+    }
+  }
+
+  /** Demotes the least recently used objects over the maximum size */
+  private void demote() throws IOException {
+    Iterator<Map.Entry<K, HotEntry>> it = entries.entrySet().iterator();
+    while(entries.size() > maxEntries && it.hasNext()) {
+      Map.Entry<K, HotEntry> entry = it.next();
+      demote(entry.getKey(), entry.getValue());
+      it.remove();
+    }
+  }
+
+  private void demote(K key, HotEntry entry) throws IOException {
+    T obj = hot.get(key, null);
+    if(entry.dirty && obj != null) {
+      dataStore.put(key, obj);
+    }
+    hot.delete(key);
+    writeTimes.remove(key);
+    demotionCount++;
+  }
+
+  /** Writes the modified hot objects to the backing store */
+  private synchronized void writeBack() throws IOException {
+    for(Map.Entry<K, HotEntry> entry : entries.entrySet()) {
+      if(entry.getValue().dirty) {
+        T obj = hot.get(entry.getKey(), null);
+        dataStore.put(entry.getKey(), obj);
+        //the written object is replaced, since the running queries share it
+        obj = AvroUtils.deepCopy(obj);
+        obj.clearDirty();
+        hot.put(entry.getKey(), obj);
+        entry.getValue().dirty = false;
+      }
+    }
+  }
+
+  private void clearHot() throws IOException {
+    entries.clear();
+    writeTimes.clear();
+    hot.deleteSchema();
+  }
+
+  /**
+   * Returns the hot object of the key, marking it used, or null.
+   */
+  private T getHot(K key) throws IOException {
+    HotEntry entry = entries.get(key);
+    if(entry == null) {
+      return null;
+    }
+    entry.time = System.currentTimeMillis();
+    return hot.get(key, null);
+  }
+
+  /**
+   * Adds the object read from the backing store to the hot tier.
+   */
+  private T promote(K key, T obj) throws IOException {
+    obj = AvroUtils.deepCopy(obj);
+    obj.clearDirty();
+    hot.put(key, obj);
+    HotEntry entry = new HotEntry();
+    entry.time = System.currentTimeMillis();
+    entries.put(key, entry);
+    return obj;
+  }
+
+  /**
+   * Returns a copy of the hot object with the given fields, so that the
+   * callers cannot modify the hot tier.
+   */
+  @SuppressWarnings("unchecked")
+  private T copyOut(T obj, String[] fields) {
+    T copy = (T) obj.clone();
+    if(fields != null) {
+      T projected = (T) obj.newInstance(new StateManagerImpl());
+      for(String field : fields) {
+        int index = projected.getFieldIndex(field);
+        projected.put(index, copy.get(index));
+      }
+      copy = projected;
+    }
+    copy.clearDirty();
+    return copy;
+  }
+
+  private boolean inRange(K key, K startKey, K endKey, boolean endInclusive) {
+    if(startKey != null && keyComparator.compare(key, startKey) < 0) {
+      return false;
+    }
+    if(endKey != null) {
+      int c = keyComparator.compare(key, endKey);
+      return endInclusive ? c <= 0 : c < 0;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a query of the backing store with the key range, the fields,
+   * the time range, the filter with its parameters bound, and the limit
+   * of the query. The limit is increased by the number of hot objects
+   * which replace the results of the backing store.
+   */
+  private Query<K, T> backingQuery(Query<K, T> query, K startKey, K endKey
+      , long hotCount) {
+    Query<K, T> backingQuery = dataStore.newQuery();
+    backingQuery.setKeyRange(startKey, endKey);
+    backingQuery.setFields(query.getFields());
+    backingQuery.setTimeRange(query.getStartTime(), query.getEndTime());
+    backingQuery.setFilter(Filters.bind(query.getFilter(), query));
+    if(query.getLimit() > 0) {
+      backingQuery.setLimit(query.getLimit() + hotCount);
+    }
+    return backingQuery;
+  }
+
+  /**
+   * Merges the hot objects and the results of the backing store in key
+   * order. The hot objects replace the backing results with the same key.
+   */
+  private class TieredResult extends ResultBase<K, T> {
+
+    private final TreeMap<K, T> snapshot;
+    private final Iterator<Map.Entry<K, T>> hotIterator;
+    private final Result<K, T> backingResult;
+    private final String[] fields;
+    private Map.Entry<K, T> nextHot;
+    private boolean backingPending = false;
+    private boolean backingDone = false;
+    private int hotRead = 0;
+
+    TieredResult(Query<K, T> query, TreeMap<K, T> snapshot
+        , Result<K, T> backingResult) {
+      super(TieredDataStore.this, query);
+      this.snapshot = snapshot;
+      this.hotIterator = snapshot.entrySet().iterator();
+      this.backingResult = backingResult;
+      this.fields = getFieldsToCopy(query);
+      this.nextHot = hotIterator.hasNext() ? hotIterator.next() : null;
+    }
+
+    /**
+     * Returns the fields of the query and of its filter, which is
+     * evaluated against the copied hot objects, or null for all fields.
+     */
+    private String[] getFieldsToCopy(Query<K, T> query) {
+      String[] fields = query.getFields();
+      if(fields == null || query.getFilter() == null) {
+        return fields;
+      }
+      Set<String> allFields = new LinkedHashSet<String>(Arrays.asList(fields));
+      allFields.addAll(Filters.getFields(query.getFilter()));
+      return allFields.toArray(new String[allFields.size()]);
+    }
+
+    @Override
+    protected void clear() { } //the objects are owned by the tiers
+
+    @Override
+    protected boolean nextInner() throws IOException {
+      while(!backingPending && !backingDone) {
+        if(!backingResult.next()) {
+          backingDone = true;
+        } else if(!snapshot.containsKey(backingResult.getKey())) {
+          backingPending = true;
+        }
+      }
+      while(nextHot != null && (!backingPending
+          || keyComparator.compare(nextHot.getKey(), backingResult.getKey()) < 0)) {
+        Map.Entry<K, T> entry = nextHot;
+        nextHot = hotIterator.hasNext() ? hotIterator.next() : null;
+        hotRead++;
+        if(entry.getValue() != null) {
+          key = entry.getKey();
+          persistent = copyOut(entry.getValue(), fields);
+          return true;
+        }
+      }
+      if(backingPending) {
+        key = backingResult.getKey();
+        persistent = backingResult.get();
+        backingPending = false;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      float position = backingResult.getProgress();
+      if(!snapshot.isEmpty()) {
+        position = (position + hotRead / (float) snapshot.size()) / 2;
+      }
+      return getProgress(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+      backingResult.close();
+    }
+  }
+
+  /** The query of a TieredDataStore */
+  public static class TieredQuery<K, T extends Persistent>
+  extends QueryBase<K, T> {
+    public TieredQuery() {
+      super(null);
+    }
+    public TieredQuery(DataStore<K, T> dataStore) {
+      super(dataStore);
+    }
+  }
+
+  /**
+   * A partition of a TieredDataStore, covering a partition of the
+   * backing store, and the hot keys in its range.
+   */
+  private static class TieredPartitionQuery<K, T extends Persistent>
+  extends PartitionQueryImpl<K, T> {
+    private final PartitionQuery<K, T> backingPartition;
+    private final boolean endInclusive;
+
+    TieredPartitionQuery(Query<K, T> baseQuery
+        , PartitionQuery<K, T> backingPartition, K startKey, K endKey
+        , boolean endInclusive) {
+      super(baseQuery, startKey, endKey, backingPartition.getLocations());
+      this.backingPartition = backingPartition;
+      this.endInclusive = endInclusive;
+    }
+  }
+
+  private static class HotEntry {
+    /** The last time the object is used */
+    long time;
+    /** Whether the object is modified but not written back */
+    boolean dirty;
+  }
+}
@@ -0,0 +1,468 @@
+package org.gora.store.impl;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.gora.persistency.Persistent;
+import org.gora.query.Query;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.util.AvroUtils;
+import org.gora.util.DaemonThreadFactory;
+import org.gora.util.StringUtils;
+
+/**
+ * WriteBehindDataStore wraps a {@link DataStore}, and buffers the puts
+ * and deletes in memory, writing them to the wrapped store in bulk by
+ * {@link DataStore#putAll(Iterable)}.
+ *
+ * <p> Repeated writes to the same key are coalesced, merging the dirty
+ * fields of the objects, and the dirty and deleted entries of their map
+ * fields. The buffer is flushed on a background thread when it holds
+ * "buffer.size" keys, or when its oldest write is older than the flush
+ * interval, and on {@link #flush()} and {@link #close()}. The writers
+ * block while the buffer is full and the previous flush is in progress.
+ *
+ * <p> Reads and queries are served by the wrapped store, and see the
+ * buffered writes only after they are flushed, except for
+ * {@link #deleteByQuery(Query)} which flushes the buffer first.
+ * {@link #delete(Object)} always returns true, since the delete is
+ * deferred. The writes which fail are put back into the buffer, merged
+ * with the writes buffered since, and retried by the background thread
+ * until they succeed, whatever the flush interval. An error writing to
+ * the wrapped store on the background thread is thrown by the writes
+ * waiting for the buffer, and by the next write, flush or close unless a
+ * retry succeeds before.
+ *
+ * <p> The buffer is configured by the properties
+ * "gora.&lt;datastore&gt;.writebehind.buffer.size" and
+ * "gora.&lt;datastore&gt;.writebehind.flush.interval.ms" of the wrapped store
+ * (or the "gora.datastore.writebehind.*" counterparts).
+ */
+public class WriteBehindDataStore<K, T extends Persistent>
+extends DelegatingDataStore<K, T> {
+
+  private static final Log log = LogFactory.getLog(WriteBehindDataStore.class);
+
+  /** Number of buffered keys triggering a flush */
+  public static final String BUFFER_SIZE_PROPERTY = "writebehind.buffer.size";
+  public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+  /** Maximum age of the buffered writes in milliseconds, 0 to flush only
+   * when the buffer is full */
+  public static final String FLUSH_INTERVAL_PROPERTY = "writebehind.flush.interval.ms";
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+  /** The time the background thread waits before retrying failed writes */
+  private static final long RETRY_INTERVAL = 100;
+
+  private final int bufferSize;
+
+  private final long flushInterval;
+
+  /** The buffered writes, guarded by this */
+  private Map<K, Write<T>> buffer = new LinkedHashMap<K, Write<T>>();
+
+  /** The time of the oldest buffered write */
+  private long oldest;
+
+  /** The time the failed writes are due to be retried, or 0, guarded by this */
+  private long retryTime = 0;
+
+  /** Serializes the flushes, so that the buffers are written in order */
+  private final Object flushLock = new Object();
+
+  private final Thread flusher;
+
+  private volatile boolean closed;
+
+  private volatile IOException error;
+
+  /** The number of the failed background flushes, guarded by this */
+  private long failureCount = 0;
+
+  /** Whether the background thread stopped, guarded by this */
+  private boolean flusherStopped = false;
+
+  private long coalescedCount = 0;
+
+  private long flushCount = 0;
+
+  /**
+   * Constructs a WriteBehindDataStore configured from the default gora
+   * properties.
+   */
+  public WriteBehindDataStore(DataStore<K, T> dataStore) {
+    this(dataStore, DataStoreFactory.properties);
+  }
+
+  /**
+   * Constructs a WriteBehindDataStore configured from the given properties.
+   */
+  public WriteBehindDataStore(DataStore<K, T> dataStore, Properties properties) {
+    this(dataStore
+        , StringUtils.parseInt(DataStoreFactory.findProperty(properties
+            , dataStore, BUFFER_SIZE_PROPERTY, null), DEFAULT_BUFFER_SIZE)
+        , Long.parseLong(DataStoreFactory.findProperty(properties
+            , dataStore, FLUSH_INTERVAL_PROPERTY
+            , String.valueOf(DEFAULT_FLUSH_INTERVAL))));
+  }
+
+  /**
+   * Constructs a WriteBehindDataStore.
+   * @param bufferSize number of buffered keys triggering a flush
+   * @param flushInterval maximum age of the buffered writes in
+   * milliseconds, 0 to flush only when the buffer is full
+   */
+  public WriteBehindDataStore(DataStore<K, T> dataStore, int bufferSize
+      , long flushInterval) {
+    super(dataStore);
+    this.bufferSize = Math.max(1, bufferSize);
+    this.flushInterval = flushInterval;
+    this.flusher = new DaemonThreadFactory("gora-write-behind")
+      .newThread(new Runnable() {
+      @Override
+      public void run() {
+        runFlusher();
+      }
+    });
+    flusher.start();
+  }
+
+  @Override
+  public void put(K key, T obj) throws IOException {
+    T copy = AvroUtils.deepCopy(obj);
+    synchronized (this) {
+      Write<T> write = waitForBuffer(key);
+      if(write == null) {
+        buffer.put(key, new Write<T>(false, copy));
+      } else if(write.persistent == null) {
+        write.persistent = copy; //put after a delete
+        coalescedCount++;
+      } else {
+        AvroUtils.mergeDirtyFields(write.persistent, copy);
+        coalescedCount++;
+      }
+      buffered();
+    }
+  }
+
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    for(Map.Entry<K, T> entry : entries) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Buffers the delete of the key, discarding the buffered put of the
+   * key if any.
+   * @return true, since the delete is deferred
+   */
+  @Override
+  public boolean delete(K key) throws IOException {
+    synchronized (this) {
+      if(waitForBuffer(key) != null) {
+        coalescedCount++;
+      }
+      buffer.put(key, new Write<T>(true, null));
+      buffered();
+    }
+    return true;
+  }
+
+  @Override
+  public long deleteByQuery(Query<K, T> query) throws IOException {
+    drain();
+    checkError();
+    return dataStore.deleteByQuery(query);
+  }
+
+  /** Discards the buffered writes, and deletes the schema */
+  @Override
+  public void deleteSchema() throws IOException {
+    discard();
+    dataStore.deleteSchema();
+  }
+
+  /** Discards the buffered writes, and truncates the schema */
+  @Override
+  public void truncateSchema() throws IOException {
+    discard();
+    dataStore.truncateSchema();
+  }
+
+  /**
+   * Writes the buffered writes to the wrapped store, and flushes it
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    checkError();
+    dataStore.flush();
+  }
+
+  /**
+   * Flushes the buffered writes, stops the background thread, and closes
+   * the wrapped store.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    try {
+      flush();
+    } finally {
+      dataStore.close();
+    }
+  }
+
+  /** Returns the number of keys with buffered writes */
+  public synchronized int getPendingCount() {
+    return buffer.size();
+  }
+
+  /** Returns the number of writes coalesced with a buffered write */
+  public synchronized long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  /** Returns the number of buffers written to the wrapped store */
+  public synchronized long getFlushCount() {
+    return flushCount;
+  }
+
+  /**
+   * Waits while the buffer is full, and returns the buffered write of
+   * the key, if any.
+   */
+  private Write<T> waitForBuffer(K key) throws IOException {
+    checkError();
+    if(closed) {
+      throw new IOException("WriteBehindDataStore is closed");
+    }
+    Write<T> write = buffer.get(key);
+    long failures = failureCount;
+    while(write == null && buffer.size() >= bufferSize) {
+      if(flusherStopped) {
+        throw new IOException("The background flush thread is stopped");
+      }
+      notifyAll(); //wakes up the flusher
+      try {
+        wait();
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      }
+      checkError();
+      if(failureCount != failures) {
+        //the flush the writer waits for failed
+        throw new IOException("Cannot write the buffered writes to "
+            + dataStore.getClass().getName());
+      }
+      write = buffer.get(key);
+    }
+    if(buffer.isEmpty()) {
+      oldest = System.currentTimeMillis();
+    }
+    return write;
+  }
+
+  /**
+   * Wakes up the flusher on the first buffered write to start the flush
+   * interval, and when the buffer is full.
+   */
+  private void buffered() {
+    if(buffer.size() == 1 || buffer.size() >= bufferSize) {
+      notifyAll();
+    }
+  }
+
+  private synchronized void discard() {
+    buffer.clear();
+    retryTime = 0;
+  }
+
+  private void checkError() throws IOException {
+    IOException ex = error;
+    if(ex != null) {
+      error = null;
+      throw ex;
+    }
+  }
+
+  private void runFlusher() {
+    try {
+      flushInBackground();
+    } finally {
+      synchronized (this) {
+        flusherStopped = true;
+        notifyAll(); //fails the waiting writers
+      }
+    }
+  }
+
+  private void flushInBackground() {
+    while(true) {
+      synchronized (this) {
+        try {
+          while(!closed && !isFlushDue()) {
+            long due = getNextFlushTime();
+            if(due < 0) {
+              wait();
+            } else {
+              wait(Math.max(1, due - System.currentTimeMillis()));
+            }
+          }
+        } catch (InterruptedException ex) {
+          return;
+        }
+        if(closed) {
+          return;
+        }
+      }
+      try {
+        drain();
+        dataStore.flush();
+        //the failed writes are written by the retry
+        error = null;
+      } catch (Throwable ex) {
+        log.error("Error writing to " + dataStore.getClass().getName()
+            + ": " + org.apache.hadoop.util.StringUtils.stringifyException(ex));
+        error = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+        synchronized (this) {
+          failureCount++;
+          notifyAll(); //fails the waiting writers
+          //the failed writes are retried after a while
+          try {
+            if(!closed) {
+              wait(Math.max(RETRY_INTERVAL, flushInterval));
+            }
+          } catch (InterruptedException ie) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  private boolean isFlushDue() {
+    long due = getNextFlushTime();
+    return buffer.size() >= bufferSize
+      || (due >= 0 && System.currentTimeMillis() >= due);
+  }
+
+  /**
+   * Returns the time the buffer is due to be flushed at, by the flush
+   * interval or the retry of the failed writes, or -1 if the buffer is
+   * flushed only when it is full.
+   */
+  private long getNextFlushTime() {
+    if(buffer.isEmpty()) {
+      return -1;
+    }
+    long due = flushInterval > 0 ? oldest + flushInterval : -1;
+    if(retryTime > 0 && (due < 0 || retryTime < due)) {
+      due = retryTime;
+    }
+    return due;
+  }
+
+  /**
+   * Takes the buffered writes, and writes them to the wrapped store. The
+   * writes are put back into the buffer if they fail.
+   */
+  private void drain() throws IOException {
+    synchronized (flushLock) {
+      Map<K, Write<T>> writes;
+      synchronized (this) {
+        if(buffer.isEmpty()) {
+          return;
+        }
+        writes = buffer;
+        buffer = new LinkedHashMap<K, Write<T>>();
+        retryTime = 0;
+        flushCount++;
+        notifyAll(); //wakes up the writers
+      }
+
+      boolean written = false;
+      try {
+        write(writes);
+        written = true;
+      } finally {
+        if(!written) {
+          requeue(writes);
+        }
+      }
+    }
+  }
+
+  private void write(Map<K, Write<T>> writes) throws IOException {
+    Map<K, T> puts = new LinkedHashMap<K, T>();
+    for(Map.Entry<K, Write<T>> entry : writes.entrySet()) {
+      Write<T> write = entry.getValue();
+      if(write.delete) {
+        dataStore.delete(entry.getKey());
+      }
+      if(write.persistent != null) {
+        puts.put(entry.getKey(), write.persistent);
+      }
+    }
+    if(!puts.isEmpty()) {
+      dataStore.putAll(puts);
+    }
+  }
+
+  /**
+   * Puts the failed writes back in front of the buffer, merging the writes
+   * buffered since into them. The puts and deletes are idempotent, so the
+   * writes which succeeded before the failure are written again.
+   */
+  private synchronized void requeue(Map<K, Write<T>> failed) {
+    Map<K, Write<T>> writes = new LinkedHashMap<K, Write<T>>(failed);
+    for(Map.Entry<K, Write<T>> entry : buffer.entrySet()) {
+      K key = entry.getKey();
+      Write<T> newer = entry.getValue();
+      Write<T> older = writes.get(key);
+      if(older == null || newer.delete) {
+        writes.put(key, newer);
+      } else if(older.persistent == null) {
+        writes.put(key, new Write<T>(true, newer.persistent));
+      } else {
+        AvroUtils.mergeDirtyFields(older.persistent, newer.persistent);
+        coalescedCount++;
+      }
+    }
+    if(buffer.isEmpty()) {
+      oldest = System.currentTimeMillis();
+    }
+    buffer = writes;
+    //the background thread retries the writes, even if nothing else is
+    //written
+    retryTime = System.currentTimeMillis() + Math.max(RETRY_INTERVAL
+        , flushInterval);
+    notifyAll();
+  }
+
+  /** A buffered put or delete, or a delete followed by a put */
+  private static class Write<T> {
+    final boolean delete;
+    T persistent;
+
+    Write(boolean delete, T persistent) {
+      this.delete = delete;
+      this.persistent = persistent;
+    }
+  }
+}
@@ -1,14 +1,19 @@
 
 package org.gora.util;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
 import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.util.Utf8;
 import org.gora.persistency.Persistent;
+import org.gora.persistency.State;
+import org.gora.persistency.StatefulMap;
 
 /**
  * An utility class for Avro related tasks 
@@ -48,4 +53,113 @@ public class AvroUtils {
     return (Schema) field.get(null);
   }
   
+  /**
+   * Returns a deep copy of the object with the same dirty fields, and the
+   * same states of the entries of its map fields.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Persistent> T deepCopy(T obj) {
+    T copy = (T) obj.clone();
+    List<Field> fields = obj.getSchema().getFields();
+    for(int i=0; i<fields.size(); i++) {
+      if(!obj.isDirty(i)) {
+        copy.clearDirty(i);
+        continue;
+      }
+      copy.setDirty(i); //the clone does not mark the reused maps dirty
+      if(fields.get(i).schema().getType() == Type.MAP
+          && obj.get(i) instanceof StatefulMap
+          && copy.get(i) instanceof StatefulMap) {
+        StatefulMap<Object, Object> from = (StatefulMap<Object, Object>) obj.get(i);
+        StatefulMap<Object, Object> to = (StatefulMap<Object, Object>) copy.get(i);
+        to.clearStates();
+        for(Map.Entry<Object, State> state : from.states().entrySet()) {
+          to.putState(state.getKey(), state.getValue());
+        }
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Merges the dirty fields of the object into the target object, and
+   * marks them dirty in the target. The entries of the map fields which
+   * are dirty in both objects are merged by their states, other fields
+   * are replaced. The values are not copied.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Persistent> void mergeDirtyFields(T target, T obj) {
+    List<Field> fields = obj.getSchema().getFields();
+    for(int i=0; i<fields.size(); i++) {
+      if(!obj.isDirty(i)) {
+        continue;
+      }
+      if(fields.get(i).schema().getType() == Type.MAP && target.isDirty(i)
+          && target.get(i) instanceof StatefulMap
+          && obj.get(i) instanceof StatefulMap) {
+        StatefulMap<Object, Object> from = (StatefulMap<Object, Object>) obj.get(i);
+        StatefulMap<Object, Object> to = (StatefulMap<Object, Object>) target.get(i);
+        for(Map.Entry<Object, State> state : from.states().entrySet()) {
+          if(state.getValue() == State.DELETED) {
+            to.remove(state.getKey());
+            to.putState(state.getKey(), State.DELETED);
+          } else if(from.containsKey(state.getKey())) {
+            to.put(state.getKey(), from.get(state.getKey()));
+          }
+        }
+      } else {
+        target.put(i, obj.get(i));
+      }
+      target.setDirty(i);
+    }
+  }
+
+  /**
+   * Returns whether all the fields of the object are dirty, so that it
+   * replaces the stored object completely.
+   */
+  public static boolean isAllDirty(Persistent obj) {
+    int count = obj.getSchema().getFields().size();
+    for(int i=0; i<count; i++) {
+      if(!obj.isDirty(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the approximate size of the object in bytes
+   */
+  public static long estimateSize(Object value) {
+    if(value == null) {
+      return 0;
+    } else if(value instanceof Utf8) {
+      return 16 + ((Utf8)value).getLength();
+    } else if(value instanceof CharSequence) {
+      return 40 + 2 * ((CharSequence)value).length();
+    } else if(value instanceof ByteBuffer) {
+      return 48 + ((ByteBuffer)value).capacity();
+    } else if(value instanceof Persistent) {
+      Persistent persistent = (Persistent) value;
+      long size = 16;
+      for(int i=0; i<persistent.getFields().length; i++) {
+        size += 8 + estimateSize(persistent.get(i));
+      }
+      return size;
+    } else if(value instanceof Map) {
+      long size = 48;
+      for(Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+        size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+    } else if(value instanceof Iterable) {
+      long size = 32;
+      for(Object element : (Iterable<?>)value) {
+        size += 8 + estimateSize(element);
+      }
+      return size;
+    }
+    return 16; //boxed primitives
+  }
 }
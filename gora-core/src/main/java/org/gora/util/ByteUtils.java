@@ -647,6 +647,50 @@ public class ByteUtils {
     return l1 - l2;
   }
 
+  /**
+   * Returns the position of the key between the start and end keys as a
+   * fraction in [0, 1], interpolating the bytes following the common
+   * prefix of the start and end keys as unsigned fractions.
+   * @param start the start key, or null if the range is not bounded below
+   * @param end the end key, or null if the range is not bounded above
+   * @param key the key between the start and end keys
+   */
+  public static float interpolate(byte[] start, byte[] end, byte[] key) {
+    if(start == null) {
+      start = new byte[0];
+    }
+    if(key == null || compareTo(key, start) <= 0) {
+      return 0f;
+    }
+    if(end != null && end.length > 0 && compareTo(key, end) >= 0) {
+      return 1f;
+    }
+    int prefix = 0;
+    if(end != null) {
+      while(prefix < start.length && prefix < end.length
+          && start[prefix] == end[prefix]) {
+        prefix++;
+      }
+    }
+    double s = toFraction(start, prefix);
+    double e = end == null || end.length == 0 ? 1d : toFraction(end, prefix);
+    if(e <= s) {
+      return 0f;
+    }
+    return (float) Math.max(0d, Math.min(1d, (toFraction(key, prefix) - s) / (e - s)));
+  }
+
+  /** Reads up to 8 bytes from the offset as an unsigned fraction */
+  private static double toFraction(byte[] bytes, int offset) {
+    double value = 0;
+    double scale = 1;
+    for(int i=offset; i<offset + SIZEOF_LONG && i<bytes.length; i++) {
+      scale /= 256;
+      value += (bytes[i] & 0xff) * scale;
+    }
+    return value;
+  }
+
   /**
    * @param left
    * @param right
@@ -0,0 +1,29 @@
+package org.gora.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ThreadFactory creating named daemon threads, so that background
+ * workers do not keep the JVM alive.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+  private final String namePrefix;
+  private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+  /**
+   * @param namePrefix the threads are named as namePrefix-&lt;n&gt;
+   */
+  public DaemonThreadFactory(String namePrefix) {
+    this.namePrefix = namePrefix;
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, namePrefix + "-"
+        + threadNumber.getAndIncrement());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
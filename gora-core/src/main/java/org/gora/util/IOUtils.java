@@ -46,7 +46,9 @@ public class IOUtils {
 
   public static final int BUFFER_SIZE = 8192;
 
-  private static BinaryDecoder decoder;
+  /** BinaryDecoders are reused, but cannot be shared between threads */
+  private static final ThreadLocal<BinaryDecoder> decoder =
+    new ThreadLocal<BinaryDecoder>();
 
   private static Configuration getOrCreateConf(Configuration conf) {
     if(conf == null) {
@@ -238,8 +240,10 @@ public class IOUtils {
   public static<K, T extends Persistent> K deserialize(InputStream is,
       PersistentDatumReader<T> datumReader, Schema schema, K object)
       throws IOException {
-    decoder = DecoderFactory.defaultFactory().createBinaryDecoder(is, decoder);
-    return (K)datumReader.read(object, schema, decoder);
+    BinaryDecoder in = DecoderFactory.defaultFactory()
+      .createBinaryDecoder(is, decoder.get());
+    decoder.set(in);
+    return (K)datumReader.read(object, schema, in);
   }
 
   /**
@@ -249,8 +253,10 @@ public class IOUtils {
   public static<K, T extends Persistent> K deserialize(byte[] bytes,
       PersistentDatumReader<T> datumReader, Schema schema, K object)
       throws IOException {
-    decoder = DecoderFactory.defaultFactory().createBinaryDecoder(bytes, decoder);
-    return (K)datumReader.read(object, schema, decoder);
+    BinaryDecoder in = DecoderFactory.defaultFactory()
+      .createBinaryDecoder(bytes, decoder.get());
+    decoder.set(in);
+    return (K)datumReader.read(object, schema, in);
   }
 
 
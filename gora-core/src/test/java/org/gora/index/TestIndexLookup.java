@@ -0,0 +1,92 @@
+package org.gora.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.Employee;
+import org.gora.filter.Filters;
+import org.junit.Test;
+
+/**
+ * Test case for {@link IndexLookup} and {@link SecondaryIndex}.
+ */
+public class TestIndexLookup {
+
+  private static final List<String> INDEXED = Arrays.asList("ssn", "salary");
+
+  @Test
+  public void testCreate() throws Exception {
+    IndexLookup lookup = IndexLookup.create(Filters.equals("ssn", "123"), INDEXED);
+    Assert.assertEquals("ssn", lookup.getField());
+    Assert.assertTrue(lookup.isEquality());
+
+    lookup = IndexLookup.create(Filters.range("salary", 10, 20), INDEXED);
+    Assert.assertEquals(10, lookup.getLowerValue());
+    Assert.assertTrue(lookup.isLowerInclusive());
+    Assert.assertEquals(20, lookup.getUpperValue());
+    Assert.assertFalse(lookup.isUpperInclusive());
+    Assert.assertTrue(lookup.contains(15L));
+    Assert.assertFalse(lookup.contains(20));
+
+    //the equality is preferred to the range
+    lookup = IndexLookup.create(Filters.and(Filters.greaterThan("salary", 10)
+        , Filters.equals("ssn", "123"), Filters.equals("name", "foo")), INDEXED);
+    Assert.assertEquals("ssn", lookup.getField());
+
+    //the tightest bounds are kept
+    lookup = IndexLookup.create(Filters.and(Filters.greaterThan("salary", 10)
+        , Filters.greaterThanEq("salary", 15), Filters.lessThan("salary", 12))
+        , INDEXED);
+    Assert.assertEquals(15, lookup.getLowerValue());
+    Assert.assertTrue(lookup.isEmpty());
+
+    Assert.assertNull(IndexLookup.create(Filters.equals("name", "foo"), INDEXED));
+    Assert.assertNull(IndexLookup.create(Filters.notEquals("ssn", "123"), INDEXED));
+    Assert.assertNull(IndexLookup.create(Filters.or(Filters.equals("ssn", "1")
+        , Filters.equals("ssn", "2")), INDEXED));
+    Assert.assertNull(IndexLookup.create(Filters.equals("ssn", "123")
+        , Collections.<String>emptyList()));
+  }
+
+  @Test
+  public void testSecondaryIndex() throws Exception {
+    SecondaryIndex<String> index = new SecondaryIndex<String>("salary");
+    for(int i=0; i<10; i++) {
+      Employee employee = new Employee();
+      employee.setSalary(i % 5);
+      index.put("key" + i, employee);
+    }
+    Assert.assertEquals(10, index.size());
+    Assert.assertEquals(Arrays.asList("key2", "key7")
+        , index.seek(IndexLookup.create(Filters.equals("salary", 2), INDEXED)));
+    Assert.assertEquals(Arrays.asList("key3", "key8", "key4", "key9")
+        , index.seek(IndexLookup.create(Filters.greaterThan("salary", 2L), INDEXED)));
+
+    //dirty values are reindexed
+    Employee employee = new Employee();
+    employee.setSalary(3);
+    index.put("key2", employee);
+    Assert.assertEquals(Arrays.asList("key7")
+        , index.seek(IndexLookup.create(Filters.equals("salary", 2), INDEXED)));
+    Assert.assertEquals(Arrays.asList("key3", "key8", "key2")
+        , index.seek(IndexLookup.create(Filters.equals("salary", 3), INDEXED)));
+
+    //clean objects are not reindexed
+    employee = new Employee();
+    employee.setSalary(100);
+    employee.setName(new Utf8("foo"));
+    employee.clearDirty();
+    index.put("key7", employee);
+    Assert.assertEquals(Arrays.asList("key7")
+        , index.seek(IndexLookup.create(Filters.equals("salary", 2), INDEXED)));
+
+    index.remove("key7");
+    Assert.assertTrue(index.seek(IndexLookup.create(Filters.equals("salary", 2)
+        , INDEXED)).isEmpty());
+    Assert.assertEquals(9, index.size());
+  }
+}
@@ -0,0 +1,200 @@
+package org.gora.memory.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.fs.FileUtil;
+import org.gora.examples.generated.Employee;
+import org.gora.examples.generated.WebPage;
+import org.gora.persistency.Persistent;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.DataStoreTestBase;
+import org.junit.Test;
+
+/**
+ * Test case for the bounded {@link MemStore}, which runs the data store
+ * tests with most of the objects spilled to the disk.
+ */
+public class TestBoundedMemStore extends DataStoreTestBase {
+
+  private static final String SPILL_DIR =
+    System.getProperty("test.build.data") + "/testboundedmemstore";
+
+  private static final int NUM_KEYS = 1000;
+
+  @Override
+  public void setUp() throws Exception {
+    FileUtil.fullyDelete(new File(SPILL_DIR));
+    super.setUp();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Persistent> MemStore<String, T> createStore(
+      Class<T> persistentClass, String... extraProperties) {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.MAX_MEMORY_PROPERTY, "2048");
+    for(int i=0; i<extraProperties.length; i+=2) {
+      properties.setProperty("gora.memstore." + extraProperties[i]
+          , extraProperties[i + 1]);
+    }
+    return DataStoreFactory.createDataStore(MemStore.class, String.class
+        , persistentClass, properties);
+  }
+
+  @Override
+  protected DataStore<String, Employee> createEmployeeDataStore() {
+    return createStore(Employee.class, MemStore.SPILL_DIR_PROPERTY, SPILL_DIR);
+  }
+
+  @Override
+  protected DataStore<String, WebPage> createWebPageDataStore() {
+    return createStore(WebPage.class, MemStore.SPILL_DIR_PROPERTY, SPILL_DIR);
+  }
+
+  private static Employee createEmployee(int i) {
+    Employee employee = new Employee();
+    employee.setName(new Utf8("Employee " + i));
+    employee.setSalary(i);
+    return employee;
+  }
+
+  private static String getKey(int i) {
+    return String.format("key%06d", i);
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    MemStore<String, Employee> store = createStore(Employee.class
+        , MemStore.SPILL_DIR_PROPERTY, SPILL_DIR
+        , MemStore.PARTITIONS_PROPERTY, "4");
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    Assert.assertTrue(store.getByteSize() <= 2048);
+    Assert.assertTrue(store.getSpilledCount() > NUM_KEYS / 2);
+    Assert.assertEquals(store.getEvictionCount(), store.getSpilledCount());
+
+    //the spilled objects are replaced and deleted
+    store.put(getKey(0), createEmployee(-1));
+    store.delete(getKey(1));
+    Assert.assertEquals(-1, store.get(getKey(0)).getSalary());
+    Assert.assertNull(store.get(getKey(1)));
+    Assert.assertEquals(500, store.get(getKey(500)).getSalary());
+
+    //the scans merge the objects in memory and spilled in key order
+    Result<String, Employee> result = store.newQuery().execute();
+    int count = 0;
+    String previous = null;
+    while(result.next()) {
+      if(previous != null) {
+        Assert.assertTrue(previous.compareTo(result.getKey()) < 0);
+      }
+      previous = result.getKey();
+      Assert.assertNotNull(result.get().getName());
+      count++;
+    }
+    result.close();
+    Assert.assertEquals(NUM_KEYS - 1, count);
+    Assert.assertEquals(NUM_KEYS - 1, store.count(store.newQuery()));
+
+    //the partitions cover the spilled keys
+    Query<String, Employee> query = store.newQuery();
+    query.setStartKey(getKey(100));
+    query.setEndKey(getKey(899));
+    List<PartitionQuery<String, Employee>> partitions = store.getPartitions(query);
+    Assert.assertEquals(4, partitions.size());
+    count = 0;
+    for(PartitionQuery<String, Employee> partition : partitions) {
+      result = partition.execute();
+      while(result.next()) {
+        count++;
+      }
+      result.close();
+    }
+    Assert.assertEquals(800, count);
+
+    //the spill files are deleted with the objects
+    store.deleteSchema();
+    Assert.assertEquals(0, store.getSpilledCount());
+    Assert.assertEquals(0, store.count(store.newQuery()));
+    store.close();
+    String[] files = new File(SPILL_DIR).list();
+    Assert.assertTrue(files == null || files.length == 0);
+  }
+
+  @Test
+  public void testLruEviction() throws IOException {
+    MemStore<String, Employee> store = createStore(Employee.class);
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+      //the first object is read before the others are evicted
+      Assert.assertNotNull(store.get(getKey(0)));
+    }
+    Assert.assertTrue(store.getEvictionCount() > 0);
+    Assert.assertTrue(store.getByteSize() <= 2048);
+    Assert.assertNull(store.get(getKey(1)));
+    Assert.assertNotNull(store.get(getKey(NUM_KEYS - 1)));
+    long count = store.count(store.newQuery());
+    Assert.assertEquals(NUM_KEYS - store.getEvictionCount(), count);
+    store.close();
+  }
+
+  @Test
+  public void testAgeEviction() throws IOException {
+    MemStore<String, Employee> store = createStore(Employee.class
+        , MemStore.EVICTION_PROPERTY, "age");
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+      store.get(getKey(0));
+    }
+    //the reads do not keep the oldest object
+    Assert.assertNull(store.get(getKey(0)));
+    Assert.assertNotNull(store.get(getKey(NUM_KEYS - 1)));
+    Assert.assertEquals(0, store.getSpilledCount());
+    store.close();
+  }
+
+  @Test
+  public void testConcurrentBounded() {
+    //bounded stores cannot be initialized concurrent
+    Assert.assertNull(createStore(Employee.class
+        , MemStore.CONCURRENT_PROPERTY, "true"));
+  }
+
+  @Test
+  public void testUnsupportedModes() throws Exception {
+    String[][] unsupported = {
+        {MemStore.MAX_MEMORY_PROPERTY, "2048", MemStore.CONCURRENT_PROPERTY, "true"},
+        {MemStore.MAX_MEMORY_PROPERTY, "2048", MemStore.WAL_DIR_PROPERTY, SPILL_DIR},
+        {MemStore.MAX_MEMORY_PROPERTY, "2048", MemStore.EVICTION_PROPERTY, "fifo"},
+        {MemStore.MAX_MEMORY_PROPERTY, "-1"},
+        {MemStore.SPILL_DIR_PROPERTY, SPILL_DIR},
+        {MemStore.EVICTION_PROPERTY, "age"},
+        {MemStore.PARTITIONS_PROPERTY, "0"},
+    };
+    for(String[] modes : unsupported) {
+      Properties properties = new Properties();
+      properties.putAll(DataStoreFactory.properties);
+      for(int i=0; i<modes.length; i+=2) {
+        properties.setProperty("gora.memstore." + modes[i], modes[i + 1]);
+      }
+      MemStore<String, Employee> store = new MemStore<String, Employee>();
+      try {
+        store.initialize(String.class, Employee.class, properties);
+        Assert.fail("the modes are not supported: " + Arrays.toString(modes));
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
@@ -0,0 +1,191 @@
+
+package org.gora.memory.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.Employee;
+import org.gora.examples.generated.WebPage;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.DataStoreTestBase;
+import org.gora.store.DataStoreTestUtil;
+import org.junit.Test;
+
+/**
+ * Test case for {@link MemStore} in the concurrent mode.
+ */
+public class TestConcurrentMemStore extends DataStoreTestBase {
+
+  private static final int NUM_THREADS = 4;
+
+  private static final int NUM_KEYS = 1000;
+
+  private static Properties getProperties() {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.CONCURRENT_PROPERTY, "true");
+    return properties;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected DataStore<String, Employee> createEmployeeDataStore() {
+    return DataStoreFactory.createDataStore(MemStore.class, String.class
+        , Employee.class, getProperties());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected DataStore<String, WebPage> createWebPageDataStore() {
+    return DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class, getProperties());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testIndexedQueries() throws IOException {
+    Properties properties = getProperties();
+    properties.setProperty("gora.memstore." + MemStore.INDEXES_PROPERTY, "url");
+    DataStore<String, WebPage> store = DataStoreFactory.createDataStore(
+        MemStore.class, String.class, WebPage.class, properties);
+    DataStoreTestUtil.testQueryWebPageIndex(store);
+    store.close();
+  }
+
+  @Test
+  public void testQueryEmptyStore() throws IOException {
+    Assert.assertTrue(((MemStore<String, WebPage>) webPageStore).isConcurrent());
+    Result<String, WebPage> result = webPageStore.newQuery().execute();
+    Assert.assertFalse(result.next());
+  }
+
+  @Test
+  public void testConcurrentPuts() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS * 2);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      //every thread writes its own field of all the employees
+      futures.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          for(int i=0; i<NUM_KEYS; i++) {
+            Employee employee = new Employee();
+            employee.setName(new Utf8("name" + i));
+            employeeStore.put("key" + i, employee);
+          }
+          return null;
+        }
+      }));
+      futures.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          for(int i=NUM_KEYS - 1; i>=0; i--) {
+            Employee employee = new Employee();
+            employee.setSalary(i);
+            employeeStore.put("key" + i, employee);
+          }
+          return null;
+        }
+      }));
+      //the scans run concurrently with the writes
+      for(int i=0; i<NUM_THREADS; i++) {
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for(int j=0; j<10; j++) {
+              Query<String, Employee> query = employeeStore.newQuery();
+              Result<String, Employee> result = query.execute();
+              while(result.next()) {
+                Assert.assertNotNull(result.get());
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    for(int i=0; i<NUM_KEYS; i++) {
+      Employee employee = employeeStore.get("key" + i);
+      Assert.assertEquals(new Utf8("name" + i), employee.getName());
+      Assert.assertEquals(i, employee.getSalary());
+    }
+    Query<String, Employee> query = employeeStore.newQuery();
+    Assert.assertEquals(NUM_KEYS, employeeStore.deleteByQuery(query));
+  }
+
+  @Test
+  public void testConcurrentTimeRangeScans() throws Exception {
+    final long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS + 1);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      //the keys are put and deleted while they are scanned
+      futures.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          for(int j=0; j<20; j++) {
+            for(int i=0; i<NUM_KEYS; i++) {
+              Employee employee = new Employee();
+              employee.setSalary(i);
+              employeeStore.put("key" + i, employee);
+            }
+            for(int i=0; i<NUM_KEYS; i++) {
+              employeeStore.delete("key" + i);
+            }
+          }
+          return null;
+        }
+      }));
+      for(int i=0; i<NUM_THREADS; i++) {
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            for(int j=0; j<50; j++) {
+              Query<String, Employee> query = employeeStore.newQuery();
+              query.setTimeRange(start, Long.MAX_VALUE);
+              Result<String, Employee> result = query.execute();
+              while(result.next()) {
+                Assert.assertNotNull(result.get());
+              }
+              result.close();
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testGetReturnsCopies() throws IOException {
+    Employee employee = new Employee();
+    employee.setName(new Utf8("foo"));
+    employeeStore.put("key", employee);
+
+    //neither the objects put nor the objects read are stored
+    employee.setName(new Utf8("bar"));
+    Employee read = employeeStore.get("key");
+    Assert.assertEquals(new Utf8("foo"), read.getName());
+    Assert.assertFalse(read.isDirty());
+    read.setName(new Utf8("baz"));
+    Assert.assertEquals(new Utf8("foo"), employeeStore.get("key").getName());
+  }
+}
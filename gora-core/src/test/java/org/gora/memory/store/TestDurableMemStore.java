@@ -0,0 +1,253 @@
+package org.gora.memory.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.fs.FileUtil;
+import org.gora.examples.generated.Employee;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStoreFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the write ahead log and the snapshots of {@link MemStore}.
+ */
+public class TestDurableMemStore {
+
+  private static final String WAL_DIR =
+    System.getProperty("test.build.data") + "/testdurablememstore";
+
+  private static final File EMPLOYEE_DIR = new File(WAL_DIR, "Employee");
+
+  private static final int NUM_KEYS = 1000;
+
+  @Before
+  public void setUp() throws Exception {
+    FileUtil.fullyDelete(new File(WAL_DIR));
+  }
+
+  @SuppressWarnings("unchecked")
+  private MemStore<String, Employee> createStore(String... extraProperties) {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.WAL_DIR_PROPERTY, WAL_DIR);
+    for(int i=0; i<extraProperties.length; i+=2) {
+      properties.setProperty("gora.memstore." + extraProperties[i]
+          , extraProperties[i + 1]);
+    }
+    return DataStoreFactory.createDataStore(MemStore.class, String.class
+        , Employee.class, properties);
+  }
+
+  private static Employee createEmployee(int i) {
+    Employee employee = new Employee();
+    employee.setName(new Utf8("Employee " + i));
+    employee.setSalary(i);
+    employee.setSsn(new Utf8(String.format("%09d", i)));
+    return employee;
+  }
+
+  private static String getKey(int i) {
+    return String.format("key%06d", i);
+  }
+
+  /**
+   * Asserts that the store holds the employees, except the ones whose ids
+   * are multiples of deletedModulo, unless it is 0.
+   */
+  private static void assertEmployees(MemStore<String, Employee> store
+      , int numKeys, int deletedModulo) throws IOException {
+    int deleted = 0;
+    for(int i=0; i<numKeys; i++) {
+      Employee employee = store.get(getKey(i));
+      if(deletedModulo > 0 && i % deletedModulo == 0) {
+        deleted++;
+        Assert.assertNull(employee);
+      } else {
+        Assert.assertNotNull(getKey(i), employee);
+        Assert.assertEquals(createEmployee(i).getName(), employee.getName());
+        Assert.assertEquals(i, employee.getSalary());
+      }
+    }
+    Assert.assertEquals(numKeys - deleted, store.count(store.newQuery()));
+  }
+
+  @Test
+  public void testRecovery() throws IOException {
+    MemStore<String, Employee> store = createStore();
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    for(int i=0; i<NUM_KEYS; i+=3) {
+      store.delete(getKey(i));
+    }
+    //the object put replaces the stored object
+    store.put(getKey(1), createEmployee(1));
+    store.close();
+
+    store = createStore();
+    assertEmployees(store, NUM_KEYS, 3);
+    store.close();
+  }
+
+  @Test
+  public void testSnapshots() throws IOException {
+    MemStore<String, Employee> store = createStore(
+        MemStore.SNAPSHOT_INTERVAL_PROPERTY, "100"
+        , MemStore.RECOVERY_THREADS_PROPERTY, "4"
+        , MemStore.CONCURRENT_PROPERTY, "true");
+    long start = System.currentTimeMillis();
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    long end = System.currentTimeMillis() + 1;
+    for(int i=0; i<NUM_KEYS; i+=2) {
+      store.delete(getKey(i));
+    }
+    store.flush();
+
+    //only the last snapshot and the segments written after it are kept
+    int snapshots = 0;
+    for(String name : EMPLOYEE_DIR.list()) {
+      if(name.startsWith("snapshot-")) {
+        snapshots++;
+      }
+    }
+    Assert.assertEquals(1, snapshots);
+    Assert.assertTrue(WriteAheadLog.getSegments(EMPLOYEE_DIR).size() <= 2);
+    store.close();
+
+    store = createStore(MemStore.RECOVERY_THREADS_PROPERTY, "4");
+    assertEmployees(store, NUM_KEYS, 2);
+
+    //the write times are recovered
+    Query<String, Employee> query = store.newQuery();
+    query.setTimeRange(start, end);
+    Assert.assertEquals(NUM_KEYS / 2, store.count(query));
+    query = store.newQuery();
+    query.setTimeRange(0, start);
+    Assert.assertEquals(0, store.count(query));
+
+    //a recovered store is snapshotted and recovered again
+    store.snapshot();
+    store.close();
+    store = createStore(MemStore.RECOVERY_THREADS_PROPERTY, "1");
+    assertEmployees(store, NUM_KEYS, 2);
+    store.close();
+  }
+
+  @Test
+  public void testDeleteSchema() throws IOException {
+    MemStore<String, Employee> store = createStore();
+    for(int i=0; i<10; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    store.deleteSchema();
+    store.put(getKey(1), createEmployee(1));
+    store.close();
+
+    store = createStore();
+    Result<String, Employee> result = store.newQuery().execute();
+    Assert.assertTrue(result.next());
+    Assert.assertEquals(getKey(1), result.getKey());
+    Assert.assertFalse(result.next());
+    store.close();
+  }
+
+  @Test
+  public void testCorruptTail() throws IOException {
+    MemStore<String, Employee> store = createStore();
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    store.close();
+
+    //a partially written entry at the end of the log is skipped
+    List<Long> segments = WriteAheadLog.getSegments(EMPLOYEE_DIR);
+    File segment = WriteAheadLog.getSegmentFile(EMPLOYEE_DIR
+        , segments.get(segments.size() - 1));
+    FileOutputStream out = new FileOutputStream(segment, true);
+    out.write(new byte[] {0, 0, 1, 0, 1, 2, 3});
+    out.close();
+
+    store = createStore();
+    assertEmployees(store, NUM_KEYS, 0);
+    //the writes after the recovery are logged to a new segment
+    store.delete(getKey(0));
+    store.close();
+
+    store = createStore();
+    assertEmployees(store, NUM_KEYS, NUM_KEYS);
+    store.close();
+  }
+
+  @Test
+  public void testCorruptSegment() throws IOException {
+    MemStore<String, Employee> store = createStore();
+    for(int i=0; i<NUM_KEYS; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    store.close();
+    store = createStore();
+    store.delete(getKey(0));
+    store.close();
+
+    //a corrupt entry in a segment followed by others fails the recovery
+    List<Long> segments = WriteAheadLog.getSegments(EMPLOYEE_DIR);
+    Assert.assertEquals(2, segments.size());
+    RandomAccessFile file = new RandomAccessFile(WriteAheadLog.getSegmentFile(
+        EMPLOYEE_DIR, segments.get(0)), "rw");
+    file.seek(file.length() / 2);
+    int b = file.read();
+    file.seek(file.length() / 2);
+    file.write(b ^ 0xFF);
+    file.close();
+
+    Assert.assertNull(createStore());
+  }
+
+  @Test
+  public void testConcurrentSyncedWrites() throws Exception {
+    final MemStore<String, Employee> store = createStore(
+        MemStore.CONCURRENT_PROPERTY, "true"
+        , MemStore.WAL_SYNC_PROPERTY, "always");
+    int numThreads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for(int t=0; t<numThreads; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for(int i=thread; i<NUM_KEYS; i+=4) {
+            store.put(getKey(i), createEmployee(i));
+          }
+          return null;
+        }
+      }));
+    }
+    for(Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    store.close();
+
+    MemStore<String, Employee> recovered = createStore();
+    assertEmployees(recovered, NUM_KEYS, 0);
+    recovered.close();
+  }
+}
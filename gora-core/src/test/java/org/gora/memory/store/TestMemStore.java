@@ -1,11 +1,25 @@
-
 package org.gora.memory.store;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
 import org.gora.examples.generated.Employee;
 import org.gora.examples.generated.WebPage;
+import org.gora.filter.Filters;
+import org.gora.query.ParallelQueryExecutor;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
 import org.gora.store.DataStore;
 import org.gora.store.DataStoreFactory;
 import org.gora.store.DataStoreTestBase;
+import org.gora.store.DataStoreTestUtil;
+import org.junit.Test;
 
 /**
  * Test case for {@link MemStore}.
@@ -23,4 +37,126 @@ public class TestMemStore extends DataStoreTestBase {
   protected DataStore<String, WebPage> createWebPageDataStore() {
     return DataStoreFactory.getDataStore(MemStore.class, String.class, WebPage.class);
   }
+
+  private static String getKey(int i) {
+    return String.format("key%06d", i);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static DataStore<String, WebPage> createIndexedStore() {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.INDEXES_PROPERTY, "url");
+    return DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class, properties);
+  }
+
+  @Test
+  public void testIndexedQueries() throws IOException {
+    DataStore<String, WebPage> store = createIndexedStore();
+    DataStoreTestUtil.testQueryWebPageIndex(store);
+    store.close();
+
+    //the keys found in the index are returned in key order
+    store = createIndexedStore();
+    int numKeys = 10;
+    for(int i=0; i<numKeys; i++) {
+      WebPage page = new WebPage();
+      page.setUrl(new Utf8("http://" + (char) ('z' - i) + ".com/"));
+      store.put(getKey(i), page);
+    }
+    Query<String, WebPage> query = store.newQuery();
+    query.setFilter(Filters.greaterThan("url", "http://"));
+    Result<String, WebPage> result = query.execute();
+    int count = 0;
+    while(result.next()) {
+      Assert.assertEquals(getKey(count++), result.getKey());
+    }
+    result.close();
+    Assert.assertEquals(numKeys, count);
+    store.close();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testBalancedPartitions() throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.memstore." + MemStore.PARTITIONS_PROPERTY, "4");
+    properties.setProperty("gora.memstore." + MemStore.CONCURRENT_PROPERTY, "true");
+    DataStore<String, Employee> store = DataStoreFactory.createDataStore(
+        MemStore.class, String.class, Employee.class, properties);
+    int numKeys = 1000;
+    for(int i=0; i<numKeys; i++) {
+      Employee employee = new Employee();
+      employee.setName(new Utf8("Employee " + i));
+      employee.setSalary(i);
+      store.put(getKey(i), employee);
+    }
+
+    //the keys from 100 to 900 are split into ranges of 200 keys
+    Query<String, Employee> query = store.newQuery();
+    query.setStartKey(getKey(100));
+    query.setEndKey(getKey(899));
+    List<PartitionQuery<String, Employee>> partitions = store.getPartitions(query);
+    Assert.assertEquals(4, partitions.size());
+    Assert.assertEquals(getKey(100), partitions.get(0).getStartKey());
+    Assert.assertEquals(getKey(899), partitions.get(3).getEndKey());
+    int next = 100;
+    for(PartitionQuery<String, Employee> partition : partitions) {
+      Result<String, Employee> result = partition.execute();
+      int count = 0;
+      while(result.next()) {
+        Assert.assertEquals(getKey(next++), result.getKey());
+        count++;
+      }
+      result.close();
+      Assert.assertEquals(200, count);
+    }
+    Assert.assertEquals(900, next);
+
+    //the keys put after the partitioning between two partitions are
+    //returned by the later one
+    Assert.assertEquals(getKey(300), partitions.get(1).getStartKey());
+    String between = getKey(299) + "a";
+    store.put(between, new Employee());
+    int found = 0;
+    for(PartitionQuery<String, Employee> partition : partitions) {
+      Result<String, Employee> result = partition.execute();
+      while(result.next()) {
+        if(result.getKey().equals(between)) {
+          found++;
+        }
+      }
+      result.close();
+    }
+    Assert.assertEquals(1, found);
+    store.delete(between);
+
+    //the partitions are run in parallel
+    ParallelQueryExecutor<String, Employee> executor =
+      new ParallelQueryExecutor<String, Employee>(store);
+    try {
+      Result<String, Employee> result = executor.execute(query, true);
+      List<String> keys = new ArrayList<String>();
+      while(result.next()) {
+        keys.add(result.getKey());
+        Assert.assertEquals(keys.size() + 99, result.get().getSalary());
+      }
+      result.close();
+      Assert.assertEquals(800, keys.size());
+    } finally {
+      executor.close();
+    }
+
+    //fewer objects than partitions
+    query = store.newQuery();
+    query.setStartKey(getKey(998));
+    partitions = store.getPartitions(query);
+    Assert.assertEquals(2, partitions.size());
+    Assert.assertEquals(getKey(999), partitions.get(0).getEndKey());
+    Assert.assertEquals(getKey(999), partitions.get(1).getStartKey());
+    Assert.assertNull(partitions.get(1).getEndKey());
+    store.close();
+  }
 }
@@ -0,0 +1,186 @@
+
+package org.gora.memory.store;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.Employee;
+import org.gora.examples.generated.WebPage;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.DataStoreTestBase;
+import org.junit.Test;
+
+/**
+ * Test case for {@link OffHeapMemStore}.
+ */
+public class TestOffHeapMemStore extends DataStoreTestBase {
+
+  /** Small slabs, so that the tests use many of them */
+  private static final int SLAB_SIZE = 4096;
+
+  private static Properties getProperties(long maxMemory) {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.offheapmemstore." + OffHeapMemStore.SLAB_SIZE_PROPERTY
+        , String.valueOf(SLAB_SIZE));
+    properties.setProperty("gora.offheapmemstore." + OffHeapMemStore.MAX_MEMORY_PROPERTY
+        , String.valueOf(maxMemory));
+    return properties;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected DataStore<String, Employee> createEmployeeDataStore() {
+    return DataStoreFactory.createDataStore(OffHeapMemStore.class, String.class
+        , Employee.class, getProperties(0));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected DataStore<String, WebPage> createWebPageDataStore() {
+    return DataStoreFactory.createDataStore(OffHeapMemStore.class, String.class
+        , WebPage.class, getProperties(0));
+  }
+
+  private static Employee createEmployee(int i) {
+    Employee employee = new Employee();
+    employee.setName(new Utf8("Employee " + i));
+    employee.setSalary(i);
+    employee.setSsn(new Utf8(String.format("%09d", i)));
+    return employee;
+  }
+
+  private static String getKey(int i) {
+    return String.format("key%06d", i);
+  }
+
+  @Test
+  public void testManyKeys() throws IOException {
+    OffHeapMemStore<String, Employee> store =
+      (OffHeapMemStore<String, Employee>) employeeStore;
+    //the keys are put in an order other than the sort order, to split
+    //the pages of the index in the middle
+    int numKeys = OffHeapKeyIndex.PAGE_SIZE * 5;
+    for(int i=0; i<numKeys; i++) {
+      int id = (i * 7919) % numKeys;
+      store.put(getKey(id), createEmployee(id));
+    }
+    Assert.assertEquals(numKeys, store.size());
+
+    Query<String, Employee> query = store.newQuery();
+    query.setFields("salary");
+    Result<String, Employee> result = query.execute();
+    int count = 0;
+    while(result.next()) {
+      Assert.assertEquals(getKey(count), result.getKey());
+      Assert.assertEquals(count, result.get().getSalary());
+      //only the requested fields are decoded
+      Assert.assertNull(result.get().getName());
+      count++;
+    }
+    Assert.assertEquals(numKeys, count);
+
+    //every other key is deleted while scanning
+    query = store.newQuery();
+    query.setStartKey(getKey(1));
+    result = query.execute();
+    count = 0;
+    while(result.next()) {
+      if(count++ % 2 == 0) {
+        store.delete(result.getKey());
+      }
+    }
+    Assert.assertEquals(numKeys - 1, count);
+    Assert.assertEquals(numKeys / 2, store.size());
+    for(int i=0; i<numKeys; i++) {
+      Assert.assertEquals(i % 2 == 0, store.get(getKey(i)) != null);
+    }
+  }
+
+  @Test
+  public void testMergeDirtyFields() throws IOException {
+    employeeStore.put("key", createEmployee(1));
+    Employee employee = new Employee();
+    employee.setSalary(2);
+    employeeStore.put("key", employee);
+
+    employee = employeeStore.get("key");
+    Assert.assertEquals(2, employee.getSalary());
+    Assert.assertEquals(new Utf8("Employee 1"), employee.getName());
+    Assert.assertFalse(employee.isDirty());
+  }
+
+  @Test
+  public void testSlabReuse() throws IOException {
+    OffHeapMemStore<String, Employee> store =
+      (OffHeapMemStore<String, Employee>) employeeStore;
+    int numKeys = 1000;
+    for(int i=0; i<numKeys; i++) {
+      store.put(getKey(i), createEmployee(i));
+    }
+    int slabs = store.getSlabCount();
+    long allocated = store.getAllocatedMemory();
+    Assert.assertTrue(slabs > 1);
+    Assert.assertTrue(store.getUsedMemory() <= allocated);
+
+    //the records overwritten many times reuse the freed slabs
+    for(int round=0; round<10; round++) {
+      for(int i=0; i<numKeys; i++) {
+        store.put(getKey(i), createEmployee(i));
+      }
+    }
+    Assert.assertTrue(store.getSlabCount() <= slabs + 1);
+
+    for(int i=0; i<numKeys; i++) {
+      store.delete(getKey(i));
+    }
+    Assert.assertEquals(0, store.size());
+    Assert.assertEquals(0, store.getUsedMemory());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testMaxMemory() throws IOException {
+    long maxMemory = SLAB_SIZE * 2 + OffHeapKeyIndex.PAGE_BYTES;
+    OffHeapMemStore<String, Employee> store = DataStoreFactory.createDataStore(
+        OffHeapMemStore.class, String.class, Employee.class
+        , getProperties(maxMemory));
+    try {
+      for(int i=0; i<1000; i++) {
+        store.put(getKey(i), createEmployee(i));
+      }
+      Assert.fail("the memory cap is exceeded");
+    } catch (IOException expected) {
+    }
+    Assert.assertTrue(store.getAllocatedMemory() <= maxMemory);
+    //the objects put before the failure are kept
+    Assert.assertEquals(createEmployee(0).getName(), store.get(getKey(0)).getName());
+    store.close();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testMaxMemoryIndex() throws IOException {
+    //the first page of the index does not fit beside the first slab
+    OffHeapMemStore<String, Employee> store = DataStoreFactory.createDataStore(
+        OffHeapMemStore.class, String.class, Employee.class
+        , getProperties(OffHeapKeyIndex.PAGE_BYTES));
+    try {
+      store.put(getKey(0), createEmployee(0));
+      Assert.fail("the memory cap is exceeded");
+    } catch (IOException expected) {
+    }
+    Assert.assertTrue(store.getAllocatedMemory() <= OffHeapKeyIndex.PAGE_BYTES);
+    //the record of the failed put is freed
+    Assert.assertEquals(0, store.size());
+    Assert.assertEquals(0, store.getUsedMemory());
+    Assert.assertNull(store.get(getKey(0)));
+    store.close();
+  }
+}
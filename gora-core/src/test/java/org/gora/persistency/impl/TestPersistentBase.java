@@ -8,6 +8,9 @@ import org.apache.avro.util.Utf8;
 import org.gora.examples.generated.Employee;
 import org.gora.examples.generated.WebPage;
 import org.gora.memory.store.MemStore;
+import org.gora.persistency.FieldDecoder;
+import org.gora.persistency.Persistent;
+import org.gora.persistency.StatefulHashMap;
 import org.gora.store.DataStoreFactory;
 import org.gora.store.DataStoreTestUtil;
 import org.junit.Assert;
@@ -100,4 +103,53 @@ public class TestPersistentBase {
     
     Assert.assertEquals(employee, employee.clone());
   }
+
+  @Test
+  public void testLazy() throws IOException {
+    final int[] decoded = new int[1];
+    FieldDecoder decoder = new FieldDecoder() {
+      @Override
+      public Object decode(Persistent persistent, int fieldIndex, Object raw) {
+        decoded[0]++;
+        if(fieldIndex == WebPage.Field.OUTLINKS.getIndex()) {
+          StatefulHashMap<Utf8, Utf8> map = new StatefulHashMap<Utf8, Utf8>();
+          map.put(new Utf8("foo"), new Utf8((String)raw));
+          return map;
+        }
+        return new Utf8((String)raw);
+      }
+    };
+
+    WebPage page = new WebPage();
+    page.setLazy(WebPage.Field.URL.getIndex(), "http://foo.com", decoder);
+    page.setLazy(WebPage.Field.OUTLINKS.getIndex(), "bar", decoder);
+    page.clearDirty();
+    Assert.assertTrue(page.isLazy(WebPage.Field.URL.getIndex()));
+    Assert.assertFalse(page.isReadable(WebPage.Field.URL.getIndex()));
+
+    //the fields are decoded on first access
+    Assert.assertEquals("http://foo.com", page.getUrl().toString());
+    Assert.assertEquals("http://foo.com", page.getUrl().toString());
+    Assert.assertEquals(1, decoded[0]);
+    Assert.assertFalse(page.isLazy(WebPage.Field.URL.getIndex()));
+    Assert.assertTrue(page.isReadable(WebPage.Field.URL.getIndex()));
+    Assert.assertFalse(page.isDirty());
+
+    //and by the accessors of the maps
+    Assert.assertEquals("bar", page.getFromOutlinks(new Utf8("foo")).toString());
+    Assert.assertEquals(2, decoded[0]);
+    Assert.assertFalse(page.isDirty());
+
+    //the raw values are discarded without decoding when the fields are set
+    page.setLazy(WebPage.Field.URL.getIndex(), "http://bar.com", decoder);
+    page.setUrl(new Utf8("http://baz.com"));
+    Assert.assertEquals(2, decoded[0]);
+    Assert.assertEquals("http://baz.com", page.getUrl().toString());
+    Assert.assertTrue(page.isDirty(WebPage.Field.URL.getIndex()));
+
+    page.setLazy(WebPage.Field.URL.getIndex(), "http://bar.com", decoder);
+    page.clear();
+    Assert.assertNull(page.getUrl());
+    Assert.assertEquals(2, decoded[0]);
+  }
 }
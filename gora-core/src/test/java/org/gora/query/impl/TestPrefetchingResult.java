@@ -0,0 +1,71 @@
+package org.gora.query.impl;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.gora.mock.persistency.MockPersistent;
+import org.gora.mock.store.MockDataStore;
+import org.junit.Test;
+
+/**
+ * Test case for {@link PrefetchingResult}.
+ */
+public class TestPrefetchingResult {
+
+  private MockDataStore dataStore = MockDataStore.get();
+
+  /** A result of one object, failing with the error after it */
+  private ResultBase<String, MockPersistent> failingResult(final Throwable error) {
+    return new ResultBase<String, MockPersistent>(dataStore, dataStore.newQuery()) {
+      @Override
+      protected boolean nextInner() throws IOException {
+        if(offset > 0) {
+          if(error instanceof IOException) {
+            throw (IOException) error;
+          }
+          throw (Error) error;
+        }
+        key = "key";
+        persistent = new MockPersistent();
+        return true;
+      }
+
+      @Override
+      public float getProgress() {
+        return 0;
+      }
+
+      @Override
+      public void close() { }
+    };
+  }
+
+  private static void assertFails(PrefetchingResult<String, MockPersistent> result
+      , Throwable error) throws IOException {
+    Assert.assertTrue(result.next());
+    Assert.assertEquals("key", result.getKey());
+    try {
+      result.next();
+      Assert.fail("the error of the wrapped result is thrown");
+    } catch (IOException ex) {
+      Assert.assertTrue(ex == error || ex.getCause() == error);
+    }
+    Assert.assertFalse(result.next());
+    result.close();
+  }
+
+  @Test(timeout = 10000)
+  public void testIOException() throws IOException {
+    IOException error = new IOException("failed");
+    assertFails(new PrefetchingResult<String, MockPersistent>(
+        failingResult(error), 1), error);
+  }
+
+  @Test(timeout = 10000)
+  public void testError() throws IOException {
+    Error error = new Error("failed");
+    assertFails(new PrefetchingResult<String, MockPersistent>(
+        failingResult(error), 1), error);
+  }
+}
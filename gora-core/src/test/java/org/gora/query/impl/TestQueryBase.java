@@ -2,10 +2,21 @@
 
 package org.gora.query.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
 import junit.framework.Assert;
 
+import org.gora.filter.Filters;
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.mock.persistency.MockPersistent;
 import org.gora.mock.query.MockQuery;
 import org.gora.mock.store.MockDataStore;
+import org.gora.query.Query;
+import org.gora.store.impl.MetricsDataStore;
 import org.gora.util.TestIOUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,4 +54,65 @@ public class TestQueryBase {
     TestIOUtils.testSerializeDeserialize(query);
   }
 
+  @Test
+  public void testReadWritePrefetchSize() throws Exception {
+    query.setPrefetchSize(100);
+    TestIOUtils.testSerializeDeserialize(query);
+  }
+
+  @Test
+  public void testCompile() throws Exception {
+    query.setFields(MockPersistent._ALL_FIELDS);
+    query.compile();
+    Assert.assertTrue(query.isCompiled());
+
+    query.setKeyRange(START_KEY, END_KEY);
+    Assert.assertFalse(query.isCompiled());
+  }
+
+  @Test
+  public void testReadWriteFilter() throws Exception {
+    query.setFilter(Filters.or(
+        Filters.and(Filters.range("foo", 1, 10L), Filters.isNotNull("bar")),
+        Filters.in("baz", "a", 2.0f, true, ByteBuffer.wrap(new byte[] {1, 2}))));
+    TestIOUtils.testSerializeDeserialize(query);
+  }
+
+  @Test
+  public void testReadWriteFilterDirectBytes() throws Exception {
+    ByteBuffer direct = ByteBuffer.allocateDirect(2);
+    direct.put(new byte[] {1, 2}).flip();
+    query.setFilter(Filters.in("baz", direct.asReadOnlyBuffer()));
+    TestIOUtils.testSerializeDeserialize(query);
+  }
+
+  @Test
+  public void testReadWriteParams() throws Exception {
+    query.setFilter(Filters.and(Filters.equals("foo", Filters.param("foo")),
+        Filters.greaterThan("bar", Filters.param(1))));
+    query.setParam("foo", "a");
+    query.setParam(1, 42L);
+    TestIOUtils.testSerializeDeserialize(query);
+  }
+
+
+  @Test
+  public void testReadWriteDecorated() throws Exception {
+    MetricsDataStore<String, MockPersistent> decorated =
+      new MetricsDataStore<String, MockPersistent>(dataStore
+          , new DataStoreMetrics("mock", "mock"), false);
+    Query<String, MockPersistent> decoratedQuery = decorated.newQuery();
+    decoratedQuery.setKeyRange(START_KEY, END_KEY);
+    Assert.assertSame(decorated, decoratedQuery.getDataStore());
+
+    //the query is serialized with the wrapped store
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    decoratedQuery.write(new DataOutputStream(bytes));
+    MockQuery read = new MockQuery();
+    read.readFields(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertTrue(read.getDataStore() instanceof MockDataStore);
+    Assert.assertEquals(START_KEY, read.getStartKey());
+    Assert.assertEquals(END_KEY, read.getEndKey());
+  }
 }
@@ -241,6 +241,12 @@ public abstract class DataStoreTestBase {
   public void assertPutMap() throws IOException {
   }
 
+  @Test
+  public void testPutAll() throws IOException {
+    log.info("test method: testPutAll");
+    DataStoreTestUtil.testPutAllWebPages(webPageStore);
+  }
+
   @Test
   public void testUpdate() throws IOException {
     log.info("test method: testUpdate");
@@ -276,6 +282,18 @@ public abstract class DataStoreTestBase {
     DataStoreTestUtil.testGetWebPageDefaultFields(webPageStore);
   }
 
+  @Test
+  public void testGetAllWebPages() throws IOException {
+    log.info("test method: testGetAllWebPages");
+    DataStoreTestUtil.testGetAllWebPages(webPageStore);
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    log.info("test method: testAsync");
+    DataStoreTestUtil.testAsyncWebPages(webPageStore);
+  }
+
   @Test
   public void testGetNonExisting() throws Exception {
     log.info("test method: testGetNonExisting");
@@ -318,6 +336,66 @@ public abstract class DataStoreTestBase {
     DataStoreTestUtil.testQueryWebPageSingleKeyDefaultFields(webPageStore);
   }
 
+  @Test
+  public void testQueryWebPageFilter() throws IOException {
+    log.info("test method: testQueryWebPageFilter");
+    DataStoreTestUtil.testQueryWebPageFilter(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPageIndex() throws IOException {
+    log.info("test method: testQueryWebPageIndex");
+    DataStoreTestUtil.testQueryWebPageIndex(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPageTimeRange() throws Exception {
+    log.info("test method: testQueryWebPageTimeRange");
+    DataStoreTestUtil.testQueryWebPageTimeRange(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPageCompile() throws IOException {
+    log.info("test method: testQueryWebPageCompile");
+    DataStoreTestUtil.testQueryWebPageCompile(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPageParams() throws IOException {
+    log.info("test method: testQueryWebPageParams");
+    DataStoreTestUtil.testQueryWebPageParams(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPagePrefetch() throws IOException {
+    log.info("test method: testQueryWebPagePrefetch");
+    DataStoreTestUtil.testQueryWebPagePrefetch(webPageStore);
+  }
+
+  @Test
+  public void testQueryWebPageProgress() throws IOException {
+    log.info("test method: testQueryWebPageProgress");
+    DataStoreTestUtil.testQueryWebPageProgress(webPageStore);
+  }
+
+  @Test
+  public void testParallelQueryWebPage() throws IOException {
+    log.info("test method: testParallelQueryWebPage");
+    DataStoreTestUtil.testParallelQueryWebPage(webPageStore);
+  }
+
+  @Test
+  public void testCount() throws IOException {
+    log.info("test method: testCount");
+    DataStoreTestUtil.testCountWebPages(webPageStore);
+  }
+
+  @Test
+  public void testAggregate() throws IOException {
+    log.info("test method: testAggregate");
+    DataStoreTestUtil.testAggregateEmployees(employeeStore);
+  }
+
   @Test
   public void testQueryWebPageQueryEmptyResults() throws IOException {
     log.info("test method: testQueryEmptyResults");
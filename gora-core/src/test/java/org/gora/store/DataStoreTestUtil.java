@@ -7,6 +7,7 @@ import static org.gora.examples.WebPageDataCreator.LINKS;
 import static org.gora.examples.WebPageDataCreator.SORTED_URLS;
 import static org.gora.examples.WebPageDataCreator.URLS;
 import static org.gora.examples.WebPageDataCreator.URL_INDEXES;
+import static org.gora.examples.WebPageDataCreator.createWebPage;
 import static org.gora.examples.WebPageDataCreator.createWebPageData;
 
 import java.io.IOException;
@@ -15,21 +16,31 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.util.Utf8;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.gora.examples.WebPageDataCreator;
 import org.gora.examples.generated.Employee;
 import org.gora.examples.generated.WebPage;
+import org.gora.filter.Filter;
+import org.gora.filter.Filters;
 import org.gora.persistency.Persistent;
+import org.gora.query.Aggregation;
+import org.gora.query.ParallelQueryExecutor;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
 import org.gora.query.Result;
+import org.gora.query.impl.PrefetchingResult;
 import org.gora.util.ByteUtils;
 import org.gora.util.StringUtils;
 
@@ -38,6 +49,8 @@ import org.gora.util.StringUtils;
  */
 public class DataStoreTestUtil {
 
+  private static final Log log = LogFactory.getLog(DataStoreTestUtil.class);
+
   public static final long YEAR_IN_MS = 365L * 24L * 60L * 60L * 1000L;
   private static final int NUM_KEYS = 4;
 
@@ -356,6 +369,110 @@ public class DataStoreTestUtil {
     testGetWebPage(store, null);
   }
 
+  /**
+   * Tests getting the web pages from a store reading the fields lazily,
+   * whose fields are decoded on first access.
+   */
+  public static void testGetWebPageLazy(DataStore<String, WebPage> store)
+  throws IOException {
+    createWebPageData(store);
+
+    int outlinks = WebPage.Field.OUTLINKS.getIndex();
+    for(int i=0; i<URLS.length; i++) {
+      WebPage page = store.get(URLS[i], WebPage._ALL_FIELDS);
+      if(LINKS[i].length > 0) {
+        Assert.assertTrue(page.isLazy(outlinks));
+        Assert.assertFalse(page.isReadable(outlinks));
+      }
+      assertWebPage(page, i);
+      Assert.assertFalse(page.isLazy(outlinks));
+      Assert.assertEquals(LINKS[i].length > 0, page.isReadable(outlinks));
+      Assert.assertFalse(page.isDirty());
+    }
+  }
+
+  public static void testPutAllWebPages(DataStore<String, WebPage> store)
+  throws IOException {
+    Map<String, WebPage> pages = new LinkedHashMap<String, WebPage>();
+    for(int i=0; i<URLS.length; i++) {
+      pages.put(URLS[i], createWebPage(i));
+    }
+    store.putAll(pages);
+    store.flush();
+
+    for(int i=0; i<URLS.length; i++) {
+      assertWebPage(store.get(URLS[i]), i);
+    }
+  }
+
+  public static void testGetAllWebPages(DataStore<String, WebPage> store)
+  throws IOException {
+    createWebPageData(store);
+
+    List<String> keys = new ArrayList<String>(Arrays.asList(URLS));
+    Collections.reverse(keys);
+    keys.add(1, "http://nonexisting.example.com/");
+
+    Map<String, WebPage> pages = store.getAll(keys, WebPage._ALL_FIELDS);
+    Assert.assertEquals(URLS.length, pages.size());
+    Assert.assertFalse(pages.containsKey("http://nonexisting.example.com/"));
+
+    //results should be in the order of the keys
+    int i = URLS.length - 1;
+    for(Map.Entry<String, WebPage> entry : pages.entrySet()) {
+      Assert.assertEquals(URLS[i], entry.getKey());
+      assertWebPage(entry.getValue(), i);
+      i--;
+    }
+
+    Assert.assertTrue(store.getAll(new ArrayList<String>()).isEmpty());
+  }
+
+  public static void testAsyncWebPages(DataStore<String, WebPage> store)
+  throws Exception {
+    createWebPageData(store);
+
+    AsyncDataStore<String, WebPage> asyncStore =
+      new AsyncDataStore<String, WebPage>(store);
+    try {
+      //gets for the same key are coalesced, but should return the same data
+      final int numGets = 1000;
+      List<Future<WebPage>> futures = new ArrayList<Future<WebPage>>(numGets);
+      long start = System.currentTimeMillis();
+      for(int i=0; i<numGets; i++) {
+        futures.add(asyncStore.getAsync(URLS[i % URLS.length]));
+      }
+      for(int i=0; i<numGets; i++) {
+        assertWebPage(futures.get(i).get(), i % URLS.length);
+      }
+      long elapsed = Math.max(1, System.currentTimeMillis() - start);
+      log.info("Async gets from " + store.getClass().getSimpleName() + ": "
+          + (numGets * 1000L / elapsed) + " ops/sec");
+
+      Assert.assertNull(asyncStore.getAsync("http://nonexisting.example.com/").get());
+
+      Query<String, WebPage> query = store.newQuery();
+      Result<String, WebPage> result = asyncStore.executeAsync(query).get();
+      int count = 0;
+      while(result.next()) {
+        count++;
+      }
+      result.close();
+      Assert.assertEquals(URLS.length, count);
+
+      Assert.assertTrue(asyncStore.deleteAsync(URLS[0]).get());
+      store.flush();
+      Assert.assertNull(asyncStore.getAsync(URLS[0]).get());
+
+      asyncStore.putAsync(URLS[0], createWebPage(0)).get();
+      store.flush();
+      assertWebPage(asyncStore.getAsync(URLS[0]).get(), 0);
+    } finally {
+      asyncStore.close();
+    }
+    Assert.assertEquals(0, asyncStore.getPendingCount());
+  }
+
   private static void testQueryWebPageSingleKey(DataStore<String, WebPage> store
       , String[] fields) throws IOException {
 
@@ -443,6 +560,324 @@ public class DataStoreTestUtil {
     testQueryWebPageKeyRange(store, true, true);
   }
 
+  public static void testQueryWebPageFilter(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    assertFilterResults(store, Filters.equals("url", URLS[1]), 1);
+    assertFilterResults(store, Filters.notEquals("url", URLS[1])
+        , 0, 2, 3, 4, 5, 6, 7, 8, 9);
+    assertFilterResults(store, Filters.in("url", URLS[0], URLS[2], "http://no.com/")
+        , 0, 2);
+    assertFilterResults(store, Filters.or(Filters.equals("url", URLS[3])
+        , Filters.equals("content", ByteBuffer.wrap(CONTENTS[5].getBytes())))
+        , 3, 5);
+    //direct and read only buffers are compared by their contents
+    ByteBuffer direct = ByteBuffer.allocateDirect(CONTENTS[5].length());
+    direct.put(CONTENTS[5].getBytes()).flip();
+    assertFilterResults(store, Filters.equals("content", direct.asReadOnlyBuffer())
+        , 5);
+    //an empty IN list matches nothing
+    assertFilterResults(store, Filters.in("url"));
+    assertFilterResults(store, Filters.not(Filters.greaterThanEq("url", "http://bar.com/~"))
+        , 3, 4, 5);
+    assertFilterResults(store, Filters.and(Filters.range("url", SORTED_URLS[2], SORTED_URLS[5])
+        , Filters.notEquals("url", SORTED_URLS[3]))
+        , URL_INDEXES.get(SORTED_URLS[2]), URL_INDEXES.get(SORTED_URLS[4]));
+    assertFilterResults(store, Filters.isNull("url"));
+    assertFilterResults(store, Filters.isNotNull("url"), 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    //filter combined with a key range
+    Query<String, WebPage> query = store.newQuery();
+    query.setStartKey(SORTED_URLS[0]);
+    query.setEndKey(SORTED_URLS[5]);
+    query.setFilter(Filters.greaterThan("url", SORTED_URLS[3]));
+    assertNumResults(query, 2);
+  }
+
+  public static void testQueryWebPageIndex(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    //the updated objects are found by their new values only
+    String newUrl = "http://zzz.com/";
+    WebPage page = store.get(URLS[1]);
+    page.setUrl(new Utf8(newUrl));
+    store.put(URLS[1], page);
+    store.flush();
+    assertFilterResults(store, Filters.equals("url", newUrl), 1);
+    assertFilterResults(store, Filters.equals("url", URLS[1]));
+    assertFilterResults(store, Filters.greaterThan("url", "http://zz"), 1);
+    assertFilterResults(store, Filters.and(Filters.lessThanEq("url", newUrl)
+        , Filters.greaterThan("url", SORTED_URLS[SORTED_URLS.length - 1])), 1);
+
+    //the deleted objects are not found
+    store.delete(URLS[2]);
+    store.flush();
+    assertFilterResults(store, Filters.equals("url", URLS[2]));
+  }
+
+  public static void testQueryWebPageTimeRange(DataStore<String, WebPage> store)
+    throws Exception {
+    long before = System.currentTimeMillis();
+    createWebPageData(store);
+    long after = System.currentTimeMillis() + 1;
+
+    Query<String, WebPage> query = store.newQuery();
+    query.setTimeRange(before, after);
+    assertNumResults(query, URLS.length);
+
+    query = store.newQuery();
+    query.setStartTime(after);
+    assertEmptyResults(query);
+
+    //only the updated objects are written after the start time
+    Thread.sleep(10);
+    long mid = System.currentTimeMillis();
+    WebPage page = store.get(URLS[0]);
+    page.setUrl(new Utf8(URLS[0] + "updated"));
+    store.put(URLS[0], page);
+    store.flush();
+
+    query = store.newQuery();
+    query.setStartTime(mid);
+    assertNumResults(query, 1);
+
+    query = store.newQuery();
+    query.setTimeRange(before, mid);
+    assertNumResults(query, URLS.length - 1);
+  }
+
+  private static void assertFilterResults(DataStore<String, WebPage> store
+      , Filter filter, int... expectedIndexes) throws IOException {
+    Query<String, WebPage> query = store.newQuery();
+    query.setFields(new String[] {"outlinks"});
+    query.setFilter(filter);
+    Result<String, WebPage> result = query.execute();
+
+    Set<Integer> actual = new HashSet<Integer>();
+    while(result.next()) {
+      Assert.assertTrue(actual.add(URL_INDEXES.get(result.getKey())));
+    }
+    Set<Integer> expected = new HashSet<Integer>();
+    for(int index : expectedIndexes) {
+      expected.add(index);
+    }
+    Assert.assertEquals(expected, actual);
+  }
+
+  public static void testQueryWebPageCompile(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    //queries of the same shape with different keys share the plan
+    for(int i=0; i<SORTED_URLS.length - 1; i++) {
+      Query<String, WebPage> query = store.newQuery();
+      query.setFields(new String[] {"url", "content"});
+      query.setKeyRange(SORTED_URLS[i], SORTED_URLS[i + 1]);
+      query.setFilter(Filters.notEquals("url", SORTED_URLS[i]));
+      query.compile();
+
+      Result<String, WebPage> result = query.execute();
+      Assert.assertTrue(result.next());
+      Assert.assertEquals(SORTED_URLS[i + 1], result.getKey());
+      Assert.assertEquals(SORTED_URLS[i + 1], result.get().getUrl().toString());
+      Assert.assertFalse(result.next());
+    }
+
+    Query<String, WebPage> query = store.newQuery();
+    query.setFields(new String[] {"url", "nonExistingField"});
+    try {
+      query.compile();
+      Assert.fail("compile() should throw an exception for unknown fields");
+    } catch (IOException expected) { }
+  }
+
+  public static void testQueryWebPageParams(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    Query<String, WebPage> query = store.newQuery();
+    query.setFields(new String[] {"url"});
+    query.setFilter(Filters.or(Filters.equals("url", Filters.param("url"))
+        , Filters.in("url", Filters.param(1), Filters.param(2))));
+    query.compile();
+
+    //the compiled query is executed with different bindings
+    for(int i=0; i<URLS.length - 1; i++) {
+      query.setParam("url", URLS[i]);
+      query.setParam(1, URLS[i + 1]);
+      query.setParam(2, "http://no.com/");
+      Result<String, WebPage> result = query.execute();
+      Set<String> keys = new HashSet<String>();
+      while(result.next()) {
+        keys.add(result.getKey());
+      }
+      result.close();
+      Assert.assertEquals(new HashSet<String>(Arrays.asList(URLS[i], URLS[i + 1]))
+          , keys);
+    }
+  }
+
+  public static void testQueryWebPagePrefetch(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    Query<String, WebPage> query = store.newQuery();
+    query.setPrefetchSize(2);
+    Result<String, WebPage> result = query.execute();
+    Assert.assertTrue(result instanceof PrefetchingResult);
+
+    //the prefetched objects are not reused
+    List<WebPage> pages = new ArrayList<WebPage>();
+    while(result.next()) {
+      Assert.assertEquals(result.getKey(), result.get().getUrl().toString());
+      pages.add(result.get());
+      Assert.assertEquals(pages.size(), result.getOffset());
+    }
+    Assert.assertEquals(1f, result.getProgress(), 0.001f);
+    result.close();
+
+    Assert.assertEquals(URLS.length, pages.size());
+    for(WebPage page : pages) {
+      assertWebPage(page, URL_INDEXES.get(page.getUrl().toString()));
+    }
+
+    //closing the result before reading all the results
+    result = query.execute();
+    Assert.assertTrue(result.next());
+    result.close();
+
+    query.setPrefetchSize(0);
+    result = query.execute();
+    Assert.assertFalse(result instanceof PrefetchingResult);
+    result.close();
+  }
+
+  public static void testQueryWebPageProgress(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    Query<String, WebPage> query = store.newQuery();
+    Result<String, WebPage> result = query.execute();
+    Assert.assertEquals(0f, result.getProgress(), 0.001f);
+    float progress = 0f;
+    while(result.next()) {
+      Assert.assertTrue(result.getProgress() >= progress);
+      Assert.assertTrue(result.getProgress() <= 1f);
+      progress = result.getProgress();
+    }
+    Assert.assertEquals(1f, result.getProgress(), 0.001f);
+    result.close();
+
+    //the progress of a query with a limit is at least the part of the limit
+    query.setLimit(4);
+    result = query.execute();
+    for(int i=1; i<=4; i++) {
+      Assert.assertTrue(result.next());
+      Assert.assertTrue(result.getProgress() >= i / 4f - 0.001f);
+    }
+    Assert.assertFalse(result.next());
+    Assert.assertEquals(1f, result.getProgress(), 0.001f);
+    result.close();
+  }
+
+  public static void testParallelQueryWebPage(DataStore<String, WebPage> store)
+    throws IOException {
+    createWebPageData(store);
+
+    ParallelQueryExecutor<String, WebPage> executor =
+      new ParallelQueryExecutor<String, WebPage>(store);
+    try {
+      Query<String, WebPage> query = store.newQuery();
+
+      Result<String, WebPage> result = executor.execute(query);
+      Set<String> keys = new HashSet<String>();
+      while(result.next()) {
+        assertWebPage(result.get(), URL_INDEXES.get(result.getKey()));
+        keys.add(result.getKey());
+      }
+      Assert.assertEquals(1f, result.getProgress(), 0.001f);
+      result.close();
+      Assert.assertEquals(new HashSet<String>(Arrays.asList(URLS)), keys);
+
+      result = executor.execute(query, true);
+      List<String> sortedKeys = new ArrayList<String>();
+      while(result.next()) {
+        sortedKeys.add(result.getKey());
+      }
+      result.close();
+      Assert.assertEquals(Arrays.asList(SORTED_URLS), sortedKeys);
+
+      final Set<String> callbackKeys =
+        Collections.synchronizedSet(new HashSet<String>());
+      executor.execute(query, new ParallelQueryExecutor.Callback<String, WebPage>() {
+        @Override
+        public void onResult(PartitionQuery<String, WebPage> partition
+            , String key, WebPage page) throws IOException {
+          callbackKeys.add(key);
+        }
+      });
+      Assert.assertEquals(keys, callbackKeys);
+    } finally {
+      executor.close();
+    }
+  }
+
+  public static void testCountWebPages(DataStore<String, WebPage> store)
+    throws IOException {
+    Assert.assertEquals(0, store.count(store.newQuery()));
+    createWebPageData(store);
+
+    Query<String, WebPage> query = store.newQuery();
+    Assert.assertEquals(URLS.length, store.count(query));
+    Assert.assertEquals(SORTED_URLS[0]
+        , store.aggregate(query, Aggregation.minKey()));
+    Assert.assertEquals(SORTED_URLS[SORTED_URLS.length - 1]
+        , store.aggregate(query, Aggregation.maxKey()));
+
+    query.setStartKey(SORTED_URLS[2]);
+    Assert.assertEquals(URLS.length - 2, store.count(query));
+    Assert.assertEquals(SORTED_URLS[2]
+        , store.aggregate(query, Aggregation.minKey()));
+
+    query.setLimit(3);
+    Assert.assertEquals(3, store.count(query));
+
+    query = store.newQuery();
+    query.setFilter(Filters.in("url", URLS[1], URLS[3]));
+    Assert.assertEquals(2, store.count(query));
+  }
+
+  public static void testAggregateEmployees(DataStore<String, Employee> store)
+    throws IOException {
+    store.createSchema();
+    Query<String, Employee> query = store.newQuery();
+    Assert.assertNull(store.aggregate(query, Aggregation.sum("salary")));
+
+    for(int i=1; i<=5; i++) {
+      Employee employee = createEmployee(store);
+      employee.setSalary(i * 100);
+      employee.setDateOfBirth(i);
+      store.put("ssn" + i, employee);
+    }
+    store.flush();
+
+    Assert.assertEquals(5L, store.aggregate(query, Aggregation.count()));
+    Assert.assertEquals(1500L, store.aggregate(query, Aggregation.sum("salary")));
+    Assert.assertEquals(15L, store.aggregate(query, Aggregation.sum("dateOfBirth")));
+    Assert.assertEquals(300.0, store.aggregate(query, Aggregation.avg("salary")));
+
+    query.setFilter(Filters.greaterThan("salary", 250));
+    Assert.assertEquals(3L, store.aggregate(query, Aggregation.count()));
+    Assert.assertEquals(400.0, store.aggregate(query, Aggregation.avg("salary")));
+
+    try {
+      store.aggregate(query, Aggregation.sum("name"));
+      Assert.fail("non numeric fields cannot be aggregated");
+    } catch (IOException expected) { }
+  }
+
   public static void testQueryWebPageEmptyResults(DataStore<String, WebPage> store)
     throws IOException {
     createWebPageData(store);
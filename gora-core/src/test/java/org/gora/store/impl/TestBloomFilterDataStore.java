@@ -0,0 +1,213 @@
+package org.gora.store.impl;
+
+import static org.gora.examples.WebPageDataCreator.URLS;
+import static org.gora.examples.WebPageDataCreator.createWebPageData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.Employee;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link BloomFilterDataStore}.
+ */
+public class TestBloomFilterDataStore {
+
+  private static final String FILTER_FILE =
+    System.getProperty("test.build.data") + "/testbloomfilter/webpage.bloom";
+
+  private DataStore<String, WebPage> store;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    store = DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class);
+    createWebPageData(store);
+    new File(FILTER_FILE).delete();
+  }
+
+  @Test
+  public void testRebuild() throws Exception {
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, null);
+    Assert.assertEquals(URLS.length, filtered.getKeyCount());
+
+    for(String url : URLS) {
+      Assert.assertEquals(url, filtered.get(url).getUrl().toString());
+    }
+    Assert.assertEquals(URLS.length, filtered.getPositiveCount());
+    Assert.assertEquals(0, filtered.getNegativeCount());
+  }
+
+  @Test
+  public void testNegativeGet() throws Exception {
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, null);
+
+    int misses = 100;
+    for(int i=0; i<misses; i++) {
+      Assert.assertNull(filtered.get("http://no.com/" + i));
+    }
+    Assert.assertEquals(misses, filtered.getNegativeCount()
+        + filtered.getFalsePositiveCount());
+    //at 1% false positives, almost all of the misses skip the store
+    Assert.assertTrue(filtered.getNegativeCount() > misses * 0.9);
+  }
+
+  @Test
+  public void testPut() throws Exception {
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, null);
+    String key = "http://new.com/";
+    Assert.assertFalse(filtered.mightContain(key));
+
+    WebPage page = (WebPage) store.get(URLS[0]).clone();
+    page.setUrl(new Utf8(key));
+    filtered.put(key, page);
+    Assert.assertTrue(filtered.mightContain(key));
+    Assert.assertEquals(key, filtered.get(key).getUrl().toString());
+
+    //deleted keys stay in the filter
+    filtered.delete(key);
+    Assert.assertTrue(filtered.mightContain(key));
+    Assert.assertNull(filtered.get(key));
+    Assert.assertEquals(1, filtered.getFalsePositiveCount());
+
+    filtered.truncateSchema();
+    Assert.assertEquals(0, filtered.getKeyCount());
+    Assert.assertFalse(filtered.mightContain(URLS[0]));
+  }
+
+  @Test
+  public void testGetAll() throws Exception {
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, null);
+
+    Map<String, WebPage> pages = filtered.getAll(Arrays.asList(URLS[0]
+        , "http://no.com/", URLS[1]));
+    Assert.assertEquals(Arrays.asList(URLS[0], URLS[1])
+        , Arrays.asList(pages.keySet().toArray()));
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000000, 0.01, 1024, null);
+    Assert.assertEquals(1024 * 8, filtered.getVectorSize());
+    Assert.assertEquals(1, filtered.getNbHash());
+    for(String url : URLS) {
+      Assert.assertTrue(filtered.mightContain(url));
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws Exception {
+    File file = new File(FILTER_FILE);
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, file);
+    filtered.save();
+    Assert.assertTrue(file.exists());
+
+    //the filter is read from the file, so it does not see the writes
+    //done directly to the store
+    String key = "http://new.com/";
+    WebPage page = (WebPage) store.get(URLS[0]).clone();
+    page.setUrl(new Utf8(key));
+    store.put(key, page);
+    filtered = new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0
+        , file);
+    Assert.assertFalse(file.exists());
+    Assert.assertEquals(URLS.length, filtered.getKeyCount());
+    for(String url : URLS) {
+      Assert.assertTrue(filtered.mightContain(url));
+    }
+    Assert.assertFalse(filtered.mightContain(key));
+
+    filtered.rebuild();
+    Assert.assertEquals(URLS.length + 1, filtered.getKeyCount());
+    Assert.assertTrue(filtered.mightContain(key));
+
+    //a filter of a different size is rebuilt
+    filtered = new BloomFilterDataStore<String, WebPage>(store, 2000, 0.01, 0
+        , file);
+    Assert.assertTrue(filtered.mightContain(key));
+  }
+
+  @Test
+  public void testUncleanClose() throws Exception {
+    File file = new File(FILTER_FILE);
+    BloomFilterDataStore<String, WebPage> filtered =
+      new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, file);
+    filtered.save();
+
+    //the saved filter does not hold the keys put after it is saved
+    String key = "http://new.com/";
+    WebPage page = (WebPage) store.get(URLS[0]).clone();
+    page.setUrl(new Utf8(key));
+    filtered.put(key, page);
+    Assert.assertFalse(file.exists());
+
+    //the store is opened again without being closed
+    filtered = new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0
+        , file);
+    Assert.assertTrue(filtered.mightContain(key));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOtherSchema() throws Exception {
+    File file = new File(FILTER_FILE);
+    new BloomFilterDataStore<String, WebPage>(store, 1000, 0.01, 0, file).close();
+
+    //the filter of another store in the file is not used
+    DataStore<String, Employee> employeeStore = DataStoreFactory.createDataStore(
+        MemStore.class, String.class, Employee.class);
+    employeeStore.put("foo", new Employee());
+    BloomFilterDataStore<String, Employee> filtered =
+      new BloomFilterDataStore<String, Employee>(employeeStore, 1000, 0.01, 0
+          , file);
+    Assert.assertTrue(filtered.mightContain("foo"));
+  }
+
+  @Test
+  public void testPutWhileRebuilding() throws Exception {
+    final String key = "http://new.com/";
+    final WebPage page = (WebPage) store.get(URLS[0]).clone();
+    page.setUrl(new Utf8(key));
+    final List<BloomFilterDataStore<String, WebPage>> filtered =
+      new ArrayList<BloomFilterDataStore<String, WebPage>>();
+    //the key is put after the rebuild started, and is not seen by its scan
+    DataStore<String, WebPage> wrapper =
+      new DelegatingDataStore<String, WebPage>(store) {
+      @Override
+      public boolean schemaExists() throws IOException {
+        if(!filtered.isEmpty()) {
+          filtered.get(0).put(key, page);
+        }
+        return super.schemaExists();
+      }
+      @Override
+      public void put(String key, WebPage obj) { }
+    };
+    BloomFilterDataStore<String, WebPage> filter =
+      new BloomFilterDataStore<String, WebPage>(wrapper, 1000, 0.01, 0, null);
+    filtered.add(filter);
+    filter.rebuild();
+    Assert.assertTrue(filter.mightContain(key));
+    Assert.assertEquals(URLS.length + 1, filter.getKeyCount());
+  }
+}
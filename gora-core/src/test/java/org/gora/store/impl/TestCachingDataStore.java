@@ -0,0 +1,287 @@
+package org.gora.store.impl;
+
+import static org.gora.examples.WebPageDataCreator.URLS;
+import static org.gora.examples.WebPageDataCreator.createWebPageData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.query.Query;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.CachingDataStore.Eviction;
+import org.gora.util.AvroUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link CachingDataStore}.
+ */
+public class TestCachingDataStore {
+
+  private DataStore<String, WebPage> store;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    store = DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class);
+    createWebPageData(store);
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, 0, Eviction.LRU, 0);
+
+    WebPage page = cache.get(URLS[0]);
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+
+    WebPage cached = cache.get(URLS[0]);
+    Assert.assertEquals(page, cached);
+    Assert.assertNotSame(page, cached);
+    Assert.assertEquals(1, cache.getHitCount());
+
+    Assert.assertNull(cache.get("http://no.com/"));
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testProjection() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, 0, Eviction.LRU, 0);
+
+    //a narrower projection is not served by the cache
+    WebPage page = cache.get(URLS[0], new String[] {"url"});
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertNull(page.getContent());
+    page = cache.get(URLS[0], new String[] {"content"});
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertNotNull(page.getContent());
+    Assert.assertNull(page.getUrl());
+
+    //the union of the fields is cached
+    page = cache.get(URLS[0], new String[] {"url", "content"});
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertNotNull(page.getContent());
+
+    //a full object serves any projection
+    cache.get(URLS[1]);
+    page = cache.get(URLS[1], new String[] {"url"});
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(URLS[1], page.getUrl().toString());
+    Assert.assertNull(page.getContent());
+  }
+
+  @Test
+  public void testGetAll() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, 0, Eviction.LRU, 0);
+
+    cache.get(URLS[1]);
+    Map<String, WebPage> pages = cache.getAll(Arrays.asList(URLS[0], URLS[1]
+        , "http://no.com/", URLS[2]));
+    Assert.assertEquals(Arrays.asList(URLS[0], URLS[1], URLS[2])
+        , Arrays.asList(pages.keySet().toArray()));
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(3, cache.getSize());
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, 0, Eviction.LRU, 0);
+
+    WebPage page = cache.get(URLS[0]);
+    cache.get(URLS[1]);
+    page.setContent(ByteBuffer.wrap("new content".getBytes()));
+    cache.put(URLS[0], page);
+    Assert.assertEquals(1, cache.getSize());
+    Assert.assertEquals("new content"
+        , new String(cache.get(URLS[0]).getContent().array()));
+
+    cache.delete(URLS[0]);
+    Assert.assertNull(cache.get(URLS[0]));
+
+    Query<String, WebPage> query = cache.newQuery();
+    Assert.assertSame(cache, query.getDataStore());
+    query.setKey(URLS[1]);
+    cache.get(URLS[2]);
+    cache.deleteByQuery(query);
+    Assert.assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testLRU() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 2, 0, Eviction.LRU, 0);
+
+    cache.get(URLS[0]);
+    cache.get(URLS[1]);
+    cache.get(URLS[0]);
+    cache.get(URLS[2]); //evicts URLS[1]
+    Assert.assertEquals(2, cache.getSize());
+    Assert.assertEquals(1, cache.getEvictionCount());
+
+    cache.resetStats();
+    cache.get(URLS[0]);
+    cache.get(URLS[1]);
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testLFU() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 2, 0, Eviction.LFU, 0);
+
+    cache.get(URLS[0]);
+    cache.get(URLS[0]);
+    cache.get(URLS[1]);
+    cache.get(URLS[1]);
+    cache.get(URLS[1]);
+    cache.get(URLS[2]); //evicts URLS[0]
+    cache.get(URLS[3]); //evicts URLS[2]
+
+    cache.resetStats();
+    cache.get(URLS[1]);
+    cache.get(URLS[3]);
+    cache.get(URLS[0]);
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    long size = AvroUtils.estimateSize(store.get(URLS[0]));
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, size, Eviction.LRU, 0);
+
+    cache.get(URLS[0]);
+    Assert.assertEquals(size, cache.getByteSize());
+    cache.get(URLS[1]);
+    Assert.assertTrue(cache.getByteSize() <= size);
+    Assert.assertTrue(cache.getSize() <= 1);
+  }
+
+  @Test
+  public void testTTL() throws Exception {
+    CachingDataStore<String, WebPage> cache =
+      new CachingDataStore<String, WebPage>(store, 100, 0, Eviction.LRU, 50);
+
+    cache.get(URLS[0]);
+    cache.get(URLS[0]);
+    Assert.assertEquals(1, cache.getHitCount());
+    Thread.sleep(100);
+    cache.get(URLS[0]);
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getEvictionCount());
+  }
+
+  /** A store which writes the objects put to the wrapped store on flush */
+  private static class BufferingDataStore
+  extends DelegatingDataStore<String, WebPage> {
+    private final Map<String, WebPage> buffer = new HashMap<String, WebPage>();
+    BufferingDataStore(DataStore<String, WebPage> dataStore) {
+      super(dataStore);
+    }
+    @Override
+    public void put(String key, WebPage obj) {
+      buffer.put(key, obj);
+    }
+    @Override
+    public void flush() throws IOException {
+      for(Map.Entry<String, WebPage> entry : buffer.entrySet()) {
+        dataStore.put(entry.getKey(), entry.getValue());
+      }
+      buffer.clear();
+    }
+  }
+
+  @Test
+  public void testBufferedWrites() throws Exception {
+    CachingDataStore<String, WebPage> cache = new CachingDataStore<String, WebPage>(
+        new BufferingDataStore(store), 100, 0, Eviction.LRU, 0);
+
+    cache.get(URLS[0]);
+    WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("new content".getBytes()));
+    cache.put(URLS[0], page);
+    //the old object read before the flush is not cached
+    Assert.assertFalse("new content".equals(
+        new String(cache.get(URLS[0]).getContent().array())));
+    cache.flush();
+    Assert.assertEquals("new content"
+        , new String(cache.get(URLS[0]).getContent().array()));
+
+    //the keys are cached again after the flush
+    cache.get(URLS[0]);
+    Assert.assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testWriteDuringFlush() throws Exception {
+    final WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("new content".getBytes()));
+    final List<CachingDataStore<String, WebPage>> caches =
+      new ArrayList<CachingDataStore<String, WebPage>>();
+    CachingDataStore<String, WebPage> cache = new CachingDataStore<String, WebPage>(
+        new BufferingDataStore(store) {
+      @Override
+      public void flush() throws IOException {
+        super.flush();
+        //the key is written again while the wrapped store is flushing
+        if(page.getUrl() == null) {
+          page.setUrl(new Utf8(URLS[0]));
+          caches.get(0).put(URLS[0], page);
+        }
+      }
+    }, 100, 0, Eviction.LRU, 0);
+    caches.add(cache);
+
+    cache.put(URLS[0], cache.get(URLS[0]));
+    cache.flush();
+    //the write done while flushing is not flushed yet
+    cache.get(URLS[0]);
+    cache.get(URLS[0]);
+    Assert.assertEquals(0, cache.getHitCount());
+
+    cache.flush();
+    Assert.assertEquals("new content"
+        , new String(cache.get(URLS[0]).getContent().array()));
+    cache.get(URLS[0]);
+    Assert.assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testManyBufferedWrites() throws Exception {
+    CachingDataStore<String, WebPage> cache = new CachingDataStore<String, WebPage>(
+        new BufferingDataStore(store), 2, 0, Eviction.LRU, 0);
+
+    //more keys are written than the cache holds
+    for(int i=0; i<3; i++) {
+      cache.put(URLS[i], store.get(URLS[i]));
+    }
+    cache.get(URLS[3]);
+    cache.get(URLS[3]);
+    Assert.assertEquals(0, cache.getHitCount());
+
+    cache.flush();
+    cache.get(URLS[3]);
+    cache.get(URLS[3]);
+    Assert.assertEquals(1, cache.getHitCount());
+  }
+}
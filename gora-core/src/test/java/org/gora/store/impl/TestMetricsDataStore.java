@@ -0,0 +1,200 @@
+package org.gora.store.impl;
+
+import static org.gora.examples.WebPageDataCreator.URLS;
+import static org.gora.examples.WebPageDataCreator.createWebPageData;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.metrics.DataStoreMetrics;
+import org.gora.metrics.DataStoreMetrics.Operation;
+import org.gora.metrics.LatencyHistogram;
+import org.gora.metrics.MetricsRegistry;
+import org.gora.metrics.MetricsReporter;
+import org.gora.metrics.OperationMetrics;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link MetricsDataStore}.
+ */
+public class TestMetricsDataStore {
+
+  private DataStore<String, WebPage> store;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    store = DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class);
+  }
+
+  @Test
+  public void testOperations() throws Exception {
+    DataStoreMetrics metrics = new DataStoreMetrics("mem", "webpage");
+    MetricsDataStore<String, WebPage> metricsStore =
+      new MetricsDataStore<String, WebPage>(store, metrics, true);
+
+    createWebPageData(metricsStore);
+    OperationMetrics puts = metrics.getMetrics(Operation.PUT);
+    Assert.assertEquals(URLS.length, puts.getCount());
+    Assert.assertEquals(0, puts.getErrorCount());
+    Assert.assertTrue(puts.getBytes() > 0);
+    Assert.assertEquals(URLS.length, puts.getLatencies().getCount());
+
+    metricsStore.get(URLS[0]);
+    metricsStore.get("http://no.com/");
+    Assert.assertEquals(2, metrics.getMetrics(Operation.GET).getCount());
+
+    //createWebPageData() flushes the store once
+    metricsStore.delete(URLS[0]);
+    metricsStore.flush();
+    Assert.assertEquals(1, metrics.getMetrics(Operation.DELETE).getCount());
+    Assert.assertEquals(2, metrics.getMetrics(Operation.FLUSH).getCount());
+
+    //the queries of the store are executed by the decorator
+    Query<String, WebPage> query = metricsStore.newQuery();
+    Result<String, WebPage> result = query.execute();
+    int count = 0;
+    while(result.next()) {
+      count++;
+    }
+    result.close();
+    Assert.assertEquals(URLS.length - 1, count);
+    Assert.assertEquals(1, metrics.getMetrics(Operation.EXECUTE).getCount());
+    Assert.assertEquals(count + 1, metrics.getMetrics(Operation.NEXT).getCount());
+
+    metrics.reset();
+    Assert.assertEquals(0, metrics.getMetrics(Operation.PUT).getCount());
+  }
+
+  @Test
+  public void testPutAllOnce() throws Exception {
+    DataStoreMetrics metrics = new DataStoreMetrics("mem", "webpage");
+    MetricsDataStore<String, WebPage> metricsStore =
+      new MetricsDataStore<String, WebPage>(store, metrics, true);
+    Map<String, WebPage> pages = new LinkedHashMap<String, WebPage>();
+    for(int i=0; i<3; i++) {
+      WebPage page = new WebPage();
+      page.setUrl(new Utf8(URLS[i]));
+      pages.put(URLS[i], page);
+    }
+    //the entries can be iterated only once
+    final Iterator<Map.Entry<String, WebPage>> it = pages.entrySet().iterator();
+    metricsStore.putAll(new Iterable<Map.Entry<String, WebPage>>() {
+      @Override
+      public Iterator<Map.Entry<String, WebPage>> iterator() {
+        return it;
+      }
+    });
+    metricsStore.flush();
+    for(int i=0; i<3; i++) {
+      Assert.assertNotNull(store.get(URLS[i]));
+    }
+    Assert.assertTrue(metrics.getMetrics(Operation.PUT).getBytes() > 0);
+  }
+
+  @Test
+  public void testPartitions() throws Exception {
+    createWebPageData(store);
+    DataStoreMetrics metrics = new DataStoreMetrics("mem", "webpage");
+    MetricsDataStore<String, WebPage> metricsStore =
+      new MetricsDataStore<String, WebPage>(store, metrics, false);
+
+    //the partitions of a query of the wrapped store are executed by the
+    //decorator
+    for(PartitionQuery<String, WebPage> partition
+        : metricsStore.getPartitions(store.newQuery())) {
+      partition.execute().close();
+    }
+    Assert.assertTrue(metrics.getMetrics(Operation.EXECUTE).getCount() > 0);
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    DataStore<String, WebPage> failing =
+      new DelegatingDataStore<String, WebPage>(store) {
+      @Override
+      public void put(String key, WebPage obj) throws IOException {
+        throw new IOException("expected");
+      }
+    };
+    DataStoreMetrics metrics = new DataStoreMetrics("failing", "webpage");
+    MetricsDataStore<String, WebPage> metricsStore =
+      new MetricsDataStore<String, WebPage>(failing, metrics, false);
+    try {
+      metricsStore.put(URLS[0], new WebPage());
+      Assert.fail("put should fail");
+    } catch (IOException expected) {
+    }
+    Assert.assertEquals(1, metrics.getMetrics(Operation.PUT).getCount());
+    Assert.assertEquals(1, metrics.getMetrics(Operation.PUT).getErrorCount());
+    Assert.assertEquals(0, metrics.getMetrics(Operation.PUT).getBytes());
+  }
+
+  @Test
+  public void testLatencyHistogram() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for(int i=1; i<=100; i++) {
+      histogram.record(i * 1000L); //i microseconds
+    }
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(100, histogram.getMax());
+    Assert.assertEquals(50.5, histogram.getMean(), 0.01);
+    long p50 = histogram.getPercentile(50);
+    Assert.assertTrue(p50 >= 50 && p50 <= 100);
+    Assert.assertEquals(100, histogram.getPercentile(99));
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getPercentile(50));
+  }
+
+  @Test
+  public void testRegistry() throws Exception {
+    MetricsDataStore<String, WebPage> metricsStore =
+      new MetricsDataStore<String, WebPage>(store);
+    Assert.assertSame(metricsStore.getMetrics(), MetricsRegistry.getMetrics(
+        MemStore.class.getName(), store.getSchemaName()));
+    metricsStore.get(URLS[0]);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("org.gora:type=DataStoreMetrics,store="
+        + ObjectName.quote(MemStore.class.getName()) + ",schema="
+        + ObjectName.quote(String.valueOf(store.getSchemaName())));
+    Assert.assertEquals(metricsStore.getMetrics().getMetrics(Operation.GET)
+        .getCount(), server.getAttribute(name, "getCount"));
+
+    final List<DataStoreMetrics> reported = new ArrayList<DataStoreMetrics>();
+    MetricsReporter reporter = new MetricsReporter() {
+      @Override
+      public void report(Collection<DataStoreMetrics> metrics) {
+        reported.addAll(metrics);
+      }
+    };
+    MetricsRegistry.addReporter(reporter);
+    try {
+      MetricsRegistry.report();
+      Assert.assertTrue(reported.contains(metricsStore.getMetrics()));
+    } finally {
+      MetricsRegistry.removeReporter(reporter);
+    }
+  }
+}
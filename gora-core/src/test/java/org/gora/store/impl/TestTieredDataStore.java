@@ -0,0 +1,301 @@
+package org.gora.store.impl;
+
+import static org.gora.examples.WebPageDataCreator.SORTED_URLS;
+import static org.gora.examples.WebPageDataCreator.URLS;
+import static org.gora.examples.WebPageDataCreator.createWebPageData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.WebPage;
+import org.gora.filter.Filters;
+import org.gora.memory.store.MemStore;
+import org.gora.query.PartitionQuery;
+import org.gora.query.Query;
+import org.gora.query.Result;
+import org.gora.query.impl.PartitionQueryImpl;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.gora.store.impl.TieredDataStore.WriteMode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link TieredDataStore}.
+ */
+public class TestTieredDataStore {
+
+  private static final String NEW_URL = "http://foo.com/new.html";
+
+  private DataStore<String, WebPage> store;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    store = DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class);
+    createWebPageData(store);
+  }
+
+  private TieredDataStore<String, WebPage> createTieredStore(
+      DataStore<String, WebPage> store, WriteMode writeMode, int maxEntries
+      , long maxAge) {
+    return new TieredDataStore<String, WebPage>(store, null, writeMode
+        , maxEntries, maxAge);
+  }
+
+  private WebPage createWebPage(String url) {
+    WebPage page = new WebPage();
+    page.setUrl(new Utf8(url));
+    page.setContent(ByteBuffer.wrap(url.getBytes()));
+    page.setDirty();
+    return page;
+  }
+
+  private List<String> getKeys(Result<String, WebPage> result)
+  throws IOException {
+    List<String> keys = new ArrayList<String>();
+    while(result.next()) {
+      keys.add(result.getKey());
+      Assert.assertEquals(result.getKey(), result.get().getUrl().toString());
+    }
+    result.close();
+    return keys;
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.THROUGH, 100, 0);
+
+    WebPage page = tiered.get(URLS[0]);
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertEquals(1, tiered.getMissCount());
+    Assert.assertEquals(1, tiered.getHotSize());
+
+    page = tiered.get(URLS[0], new String[] {"url"});
+    Assert.assertEquals(1, tiered.getHitCount());
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertNull(page.getContent());
+
+    //the returned objects do not change the hot tier
+    page.setUrl(new Utf8("http://bar.com/"));
+    Assert.assertEquals(URLS[0], tiered.get(URLS[0]).getUrl().toString());
+
+    Assert.assertNull(tiered.get("http://no.com/"));
+    Assert.assertEquals(2, tiered.getMissCount());
+  }
+
+  @Test
+  public void testWriteThrough() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.THROUGH, 100, 0);
+
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    Assert.assertNotNull(store.get(NEW_URL));
+    Assert.assertEquals(NEW_URL, tiered.get(NEW_URL).getUrl().toString());
+    Assert.assertEquals(1, tiered.getHitCount());
+
+    //partial writes to hot objects are merged
+    WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    tiered.put(NEW_URL, page);
+    page = tiered.get(NEW_URL);
+    Assert.assertEquals(NEW_URL, page.getUrl().toString());
+    Assert.assertEquals("content", new String(page.getContent().array()));
+    Assert.assertEquals(2, tiered.getHitCount());
+
+    Assert.assertTrue(tiered.delete(NEW_URL));
+    Assert.assertNull(tiered.get(NEW_URL));
+    Assert.assertNull(store.get(NEW_URL));
+  }
+
+  @Test
+  public void testWriteBack() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 100, 0);
+
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    Assert.assertNull(store.get(NEW_URL));
+    Assert.assertEquals(NEW_URL, tiered.get(NEW_URL).getUrl().toString());
+
+    //partial writes are merged with the backing object
+    WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    tiered.put(URLS[1], page);
+    page = tiered.get(URLS[1]);
+    Assert.assertEquals(URLS[1], page.getUrl().toString());
+    Assert.assertEquals("content", new String(page.getContent().array()));
+    Assert.assertFalse("content".equals(
+        new String(store.get(URLS[1]).getContent().array())));
+
+    tiered.flush();
+    Assert.assertNotNull(store.get(NEW_URL));
+    Assert.assertEquals("content"
+        , new String(store.get(URLS[1]).getContent().array()));
+    Assert.assertEquals(2, tiered.getHotSize());
+  }
+
+  @Test
+  public void testDemoteBySize() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 2, 0);
+
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    tiered.get(URLS[0]);
+    tiered.get(NEW_URL);
+    tiered.get(URLS[1]); //demotes URLS[0]
+    Assert.assertEquals(2, tiered.getHotSize());
+    Assert.assertEquals(1, tiered.getDemotionCount());
+    Assert.assertNull(store.get(NEW_URL));
+
+    tiered.get(URLS[2]); //demotes and writes back NEW_URL
+    Assert.assertEquals(2, tiered.getDemotionCount());
+    Assert.assertNotNull(store.get(NEW_URL));
+  }
+
+  @Test
+  public void testDemoteByAge() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 100, 50);
+
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    tiered.get(URLS[0]);
+    Assert.assertEquals(2, tiered.getHotSize());
+    Thread.sleep(100);
+    tiered.demoteExpired();
+    Assert.assertEquals(0, tiered.getHotSize());
+    Assert.assertNotNull(store.get(NEW_URL));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 100, 0);
+
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    tiered.put(URLS[1], page);
+    tiered.get(URLS[2]);
+
+    List<String> expected = new ArrayList<String>(Arrays.asList(URLS));
+    expected.add(NEW_URL);
+    Collections.sort(expected);
+
+    Query<String, WebPage> query = tiered.newQuery();
+    Result<String, WebPage> result = query.execute();
+    Assert.assertEquals(expected, getKeys(result));
+
+    //hot objects replace the backing results
+    query = tiered.newQuery();
+    query.setKey(URLS[1]);
+    result = query.execute();
+    Assert.assertTrue(result.next());
+    Assert.assertEquals("content", new String(result.get().getContent().array()));
+    Assert.assertFalse(result.next());
+    result.close();
+
+    query = tiered.newQuery();
+    query.setLimit(3);
+    Assert.assertEquals(expected.subList(0, 3), getKeys(query.execute()));
+  }
+
+  @Test
+  public void testFilterOnUnprojectedField() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 100, 0);
+    tiered.get(URLS[0]);
+
+    //the filter runs on the url, although only the content is queried
+    Query<String, WebPage> query = tiered.newQuery();
+    query.setFields("content");
+    query.setFilter(Filters.equals("url", URLS[0]));
+    Result<String, WebPage> result = query.execute();
+    Assert.assertTrue(result.next());
+    Assert.assertEquals(URLS[0], result.getKey());
+    Assert.assertFalse(result.next());
+    result.close();
+  }
+
+  @Test
+  public void testExecuteTimeRange() throws Exception {
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(store, WriteMode.BACK, 100, 0);
+    //the backing objects are written before the start of the range
+    Thread.sleep(10);
+    long start = System.currentTimeMillis();
+    Thread.sleep(10);
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    tiered.put(URLS[1], createWebPage(URLS[1]));
+    tiered.get(URLS[2]);
+    Thread.sleep(10);
+    long end = System.currentTimeMillis();
+    Thread.sleep(10);
+    tiered.put(URLS[3], createWebPage(URLS[3]));
+
+    //only the objects written in the time range are returned, and the hot
+    //objects written later hide their older backing objects
+    Query<String, WebPage> query = tiered.newQuery();
+    query.setTimeRange(start, end);
+    List<String> expected = new ArrayList<String>(Arrays.asList(NEW_URL
+        , URLS[1]));
+    Collections.sort(expected);
+    Assert.assertEquals(expected, getKeys(query.execute()));
+
+    //the objects promoted unchanged keep the write times of the backing store
+    query = tiered.newQuery();
+    query.setTimeRange(0, start);
+    List<String> keys = getKeys(query.execute());
+    Assert.assertTrue(keys.contains(URLS[2]));
+    Assert.assertFalse(keys.contains(URLS[1]));
+    Assert.assertFalse(keys.contains(URLS[3]));
+    Assert.assertFalse(keys.contains(NEW_URL));
+  }
+
+  @Test
+  public void testPartitions() throws Exception {
+    final int split = SORTED_URLS.length / 2;
+    //a backing store with two partitions
+    DataStore<String, WebPage> partitioned =
+      new DelegatingDataStore<String, WebPage>(store) {
+      @Override
+      public List<PartitionQuery<String, WebPage>> getPartitions(
+          Query<String, WebPage> query) {
+        List<PartitionQuery<String, WebPage>> partitions =
+          new ArrayList<PartitionQuery<String,WebPage>>();
+        partitions.add(new PartitionQueryImpl<String, WebPage>(query
+            , SORTED_URLS[split], null, new String[0]));
+        partitions.add(new PartitionQueryImpl<String, WebPage>(query
+            , null, SORTED_URLS[split - 1], new String[0]));
+        return partitions;
+      }
+    };
+    TieredDataStore<String, WebPage> tiered =
+      createTieredStore(partitioned, WriteMode.BACK, 100, 0);
+    tiered.put(NEW_URL, createWebPage(NEW_URL));
+    tiered.put(SORTED_URLS[split] + "0", createWebPage(SORTED_URLS[split] + "0"));
+    tiered.get(SORTED_URLS[split]);
+
+    List<String> expected = new ArrayList<String>(Arrays.asList(URLS));
+    expected.add(NEW_URL);
+    expected.add(SORTED_URLS[split] + "0");
+    Collections.sort(expected);
+
+    List<PartitionQuery<String, WebPage>> partitions =
+      tiered.getPartitions(tiered.newQuery());
+    Assert.assertEquals(2, partitions.size());
+    List<String> keys = new ArrayList<String>();
+    for(PartitionQuery<String, WebPage> partition : partitions) {
+      keys.addAll(getKeys(partition.execute()));
+    }
+    Assert.assertEquals(expected, keys);
+  }
+}
@@ -0,0 +1,264 @@
+package org.gora.store.impl;
+
+import static org.gora.examples.WebPageDataCreator.URLS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.avro.util.Utf8;
+import org.gora.examples.generated.WebPage;
+import org.gora.memory.store.MemStore;
+import org.gora.store.DataStore;
+import org.gora.store.DataStoreFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link WriteBehindDataStore}.
+ */
+public class TestWriteBehindDataStore {
+
+  private DataStore<String, WebPage> store;
+
+  private WriteBehindDataStore<String, WebPage> writeBehind;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    store = DataStoreFactory.createDataStore(MemStore.class, String.class
+        , WebPage.class);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if(writeBehind != null) {
+      writeBehind.close();
+    }
+  }
+
+  private WebPage createWebPage(String url) {
+    WebPage page = new WebPage();
+    page.setUrl(new Utf8(url));
+    return page;
+  }
+
+  @Test
+  public void testCoalesce() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(store, 100, 0);
+
+    WebPage page = createWebPage(URLS[0]);
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    page.putToOutlinks(new Utf8("a"), new Utf8("anchor a"));
+    page.putToOutlinks(new Utf8("b"), new Utf8("anchor b"));
+    writeBehind.put(URLS[0], page);
+
+    page = new WebPage();
+    page.putToOutlinks(new Utf8("c"), new Utf8("anchor c"));
+    writeBehind.put(URLS[0], page);
+
+    page = new WebPage();
+    page.putToOutlinks(new Utf8("b"), new Utf8("anchor b"));
+    page.removeFromOutlinks(new Utf8("b"));
+    writeBehind.put(URLS[0], page);
+
+    Assert.assertEquals(1, writeBehind.getPendingCount());
+    Assert.assertEquals(2, writeBehind.getCoalescedCount());
+    Assert.assertNull(store.get(URLS[0]));
+
+    writeBehind.flush();
+    Assert.assertEquals(0, writeBehind.getPendingCount());
+    page = store.get(URLS[0]);
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertEquals("content", new String(page.getContent().array()));
+    Assert.assertEquals(2, page.getOutlinks().size());
+    Assert.assertEquals("anchor a", page.getFromOutlinks(new Utf8("a")).toString());
+    Assert.assertEquals("anchor c", page.getFromOutlinks(new Utf8("c")).toString());
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(store, 100, 0);
+
+    WebPage page = createWebPage(URLS[0]);
+    writeBehind.put(URLS[0], page);
+    page.setUrl(new Utf8(URLS[1])); //does not change the buffered write
+    writeBehind.flush();
+    Assert.assertEquals(URLS[0], store.get(URLS[0]).getUrl().toString());
+  }
+
+  @Test
+  public void testDelete() throws Exception {
+    store.put(URLS[0], createWebPage(URLS[0]));
+    store.put(URLS[1], createWebPage(URLS[1]));
+    writeBehind = new WriteBehindDataStore<String, WebPage>(store, 100, 0);
+
+    writeBehind.put(URLS[0], createWebPage("http://foo.com/"));
+    writeBehind.delete(URLS[0]);
+    writeBehind.delete(URLS[1]);
+    WebPage page = new WebPage();
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    writeBehind.put(URLS[1], page);
+    Assert.assertEquals(2, writeBehind.getPendingCount());
+    Assert.assertNotNull(store.get(URLS[0]));
+
+    writeBehind.flush();
+    Assert.assertNull(store.get(URLS[0]));
+    page = store.get(URLS[1]);
+    Assert.assertNull(page.getUrl());
+    Assert.assertEquals("content", new String(page.getContent().array()));
+  }
+
+  @Test
+  public void testSizeFlush() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(store, 2, 0);
+
+    for(int i=0; i<URLS.length; i++) {
+      writeBehind.put(URLS[i], createWebPage(URLS[i]));
+      Assert.assertTrue(writeBehind.getPendingCount() <= 2);
+    }
+    //waits for the background flushes
+    long end = System.currentTimeMillis() + 5000;
+    while(writeBehind.getFlushCount() < URLS.length / 2
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(writeBehind.getFlushCount() >= URLS.length / 2);
+    Assert.assertNotNull(store.get(URLS[0]));
+  }
+
+  @Test
+  public void testTimeFlush() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(store, 100, 50);
+
+    writeBehind.put(URLS[0], createWebPage(URLS[0]));
+    long end = System.currentTimeMillis() + 5000;
+    while(writeBehind.getPendingCount() > 0
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(0, writeBehind.getPendingCount());
+    Assert.assertNotNull(store.get(URLS[0]));
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    final boolean[] closed = new boolean[1];
+    DataStore<String, WebPage> inner =
+      new DelegatingDataStore<String, WebPage>(store) {
+      @Override
+      public void close() {
+        closed[0] = true; //MemStore clears itself on close
+      }
+    };
+    WriteBehindDataStore<String, WebPage> writeBehind =
+      new WriteBehindDataStore<String, WebPage>(inner, 100, 0);
+
+    writeBehind.put(URLS[0], createWebPage(URLS[0]));
+    writeBehind.close();
+    Assert.assertTrue(closed[0]);
+    Assert.assertEquals(0, writeBehind.getPendingCount());
+    Assert.assertNotNull(store.get(URLS[0]));
+
+    try {
+      writeBehind.put(URLS[1], createWebPage(URLS[1]));
+      Assert.fail("put after close should fail");
+    } catch (IOException expected) {
+    }
+  }
+
+  /** A store whose putAll fails with the given errors, in order */
+  private DataStore<String, WebPage> failingStore(final Throwable... errors) {
+    return new DelegatingDataStore<String, WebPage>(store) {
+      private int calls = 0;
+      @Override
+      public void putAll(Iterable<Map.Entry<String, WebPage>> entries)
+      throws IOException {
+        if(calls < errors.length) {
+          Throwable error = errors[calls++];
+          if(error instanceof IOException) {
+            throw (IOException) error;
+          }
+          throw (Error) error;
+        }
+        super.putAll(entries);
+      }
+    };
+  }
+
+  @Test
+  public void testFailedWritesRetried() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(
+        failingStore(new IOException("failed")), 100, 0);
+
+    WebPage page = createWebPage(URLS[0]);
+    writeBehind.put(URLS[0], page);
+    try {
+      writeBehind.flush();
+      Assert.fail("the flush should fail");
+    } catch (IOException expected) {
+    }
+    //the failed write is kept, and merged with the writes buffered after
+    Assert.assertEquals(1, writeBehind.getPendingCount());
+    page = new WebPage();
+    page.setContent(ByteBuffer.wrap("content".getBytes()));
+    writeBehind.put(URLS[0], page);
+
+    writeBehind.flush();
+    Assert.assertEquals(0, writeBehind.getPendingCount());
+    page = store.get(URLS[0]);
+    Assert.assertEquals(URLS[0], page.getUrl().toString());
+    Assert.assertEquals("content", new String(page.getContent().array()));
+  }
+
+  @Test(timeout=10000)
+  public void testFailedWritesRetriedInBackground() throws Exception {
+    //the buffer is flushed only when it is full
+    writeBehind = new WriteBehindDataStore<String, WebPage>(
+        failingStore(new IOException("failed")), 100, 0);
+
+    writeBehind.put(URLS[0], createWebPage(URLS[0]));
+    try {
+      writeBehind.flush();
+      Assert.fail("the flush should fail");
+    } catch (IOException expected) {
+    }
+
+    //the failed write is retried without any further writes
+    while(store.get(URLS[0]) == null) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(URLS[0], store.get(URLS[0]).getUrl().toString());
+  }
+
+  @Test(timeout=10000)
+  public void testBackgroundError() throws Exception {
+    writeBehind = new WriteBehindDataStore<String, WebPage>(
+        failingStore(new Error("failed"), new Error("failed")), 1, 0);
+
+    //the writers do not wait for the full buffer forever when the
+    //background flushes fail, but they may fail
+    for(int i=0; i<3; i++) {
+      while(true) {
+        try {
+          writeBehind.put(URLS[i], createWebPage(URLS[i]));
+          break;
+        } catch (IOException ex) {
+          //the failed flushes are thrown by the writes
+        }
+      }
+    }
+
+    //the failed writes are retried by the background thread
+    long end = System.currentTimeMillis() + 5000;
+    while(writeBehind.getPendingCount() > 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    for(int i=0; i<3; i++) {
+      Assert.assertNotNull(store.get(URLS[i]));
+    }
+  }
+}
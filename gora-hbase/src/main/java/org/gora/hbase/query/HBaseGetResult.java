@@ -24,7 +24,7 @@ public class HBaseGetResult<K, T extends Persistent> extends HBaseResult<K,T> {
 
   @Override
   public float getProgress() throws IOException {
-    return key == null ? 0f : 1f;
+    return getProgress(key == null ? 0f : 1f);
   }
 
   @Override
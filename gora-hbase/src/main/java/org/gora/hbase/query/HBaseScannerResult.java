@@ -1,6 +1,8 @@
 
 package org.gora.hbase.query;
 
+import static org.gora.hbase.util.HBaseByteInterface.toBytes;
+
 import java.io.IOException;
 
 import org.apache.hadoop.hbase.client.Result;
@@ -8,6 +10,7 @@ import org.apache.hadoop.hbase.client.ResultScanner;
 import org.gora.hbase.store.HBaseStore;
 import org.gora.persistency.Persistent;
 import org.gora.query.Query;
+import org.gora.util.ByteUtils;
 
 /**
  * Result of a query based on an HBase scanner.
@@ -16,11 +19,20 @@ public class HBaseScannerResult<K, T extends Persistent>
   extends HBaseResult<K, T> {
 
   private final ResultScanner scanner;
+
+  private final byte[] startRow;
+  private final byte[] stopRow;
+
+  /** The first row read, used as the start row if the query has none */
+  private byte[] firstRow;
+  private byte[] lastRow;
   
   public HBaseScannerResult(HBaseStore<K,T> dataStore, Query<K, T> query, 
       ResultScanner scanner) {
     super(dataStore, query);
     this.scanner = scanner;
+    this.startRow = query.getStartKey() == null ? null : toBytes(query.getStartKey());
+    this.stopRow = query.getEndKey() == null ? null : toBytes(query.getEndKey());
   }
 
   // do not clear object in scanner result
@@ -35,6 +47,10 @@ public class HBaseScannerResult<K, T extends Persistent>
       return false;
     }
     
+    lastRow = result.getRow();
+    if(firstRow == null) {
+      firstRow = lastRow;
+    }
     readNext(result);
     
     return true;
@@ -47,8 +63,11 @@ public class HBaseScannerResult<K, T extends Persistent>
   
   @Override
   public float getProgress() throws IOException {
-    //TODO: if limit is set, we know how far we have gone 
-    return 0;
+    if(lastRow == null) {
+      return getProgress(0f);
+    }
+    return getProgress(ByteUtils.interpolate(
+        startRow != null ? startRow : firstRow, stopRow, lastRow));
   }
   
 }
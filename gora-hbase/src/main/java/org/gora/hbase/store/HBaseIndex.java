@@ -0,0 +1,121 @@
+package org.gora.hbase.store;
+
+import java.nio.ByteBuffer;
+
+import org.apache.avro.Schema.Type;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.gora.filter.Filters;
+import org.gora.index.IndexLookup;
+
+/**
+ * A secondary index of a field, kept in its own table. The rows of the
+ * index table are the values of the field, encoded so that their bytes
+ * sort as the values, followed by a zero byte and the key of the object.
+ * The key is also stored in the {@link #FAMILY}:{@link #QUALIFIER} cell
+ * of the row.
+ */
+class HBaseIndex {
+
+  static final String FAMILY_NAME = "i";
+
+  static final byte[] FAMILY = Bytes.toBytes(FAMILY_NAME);
+
+  static final byte[] QUALIFIER = Bytes.toBytes("k");
+
+  private static final byte SEPARATOR = 0;
+
+  private final String field;
+
+  private final Type type;
+
+  private final String tableName;
+
+  /**
+   * @param field the indexed field
+   * @param type the type of the field
+   * @param tableName the name of the index table
+   */
+  public HBaseIndex(String field, Type type, String tableName) {
+    this.field = field;
+    this.type = type;
+    this.tableName = tableName;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /** Returns whether the fields of the type can be indexed */
+  public static boolean isIndexable(Type type) {
+    switch(type) {
+      case STRING: case BYTES: case INT: case LONG:
+      case FLOAT: case DOUBLE: case BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /** Returns the row of the entry of the value and the key */
+  public byte[] getRow(Object value, byte[] key) {
+    return Bytes.add(toSortableBytes(value), new byte[] {SEPARATOR}, key);
+  }
+
+  /** Returns the first row of the entries in the bounds of the lookup */
+  public byte[] getStartRow(IndexLookup lookup) {
+    if(lookup.getLowerValue() == null) {
+      return new byte[0];
+    }
+    return toSortableBytes(lookup.getLowerValue());
+  }
+
+  /**
+   * Returns the row after the last entry in the bounds of the lookup,
+   * or an empty row if the lookup is not bounded above.
+   */
+  public byte[] getStopRow(IndexLookup lookup) {
+    if(lookup.getUpperValue() == null) {
+      return new byte[0];
+    }
+    return Bytes.add(toSortableBytes(lookup.getUpperValue())
+        , new byte[] {SEPARATOR + 1});
+  }
+
+  /**
+   * Encodes the value as a value of the field, so that the unsigned byte
+   * order of the encodings is the order of the values. The filter constants
+   * of other numeric types are converted to the type of the field, which
+   * may widen the bounds of a lookup but never narrows them.
+   */
+  private byte[] toSortableBytes(Object value) {
+    value = Filters.normalize(value);
+    switch(type) {
+      case STRING:
+        //UTF-8 preserves the order of the code points
+        return Bytes.toBytes(value.toString());
+      case INT:
+      case LONG:
+        return Bytes.toBytes(((Number)value).longValue() ^ Long.MIN_VALUE);
+      case FLOAT:
+      case DOUBLE:
+        long bits = Double.doubleToLongBits(((Number)value).doubleValue());
+        //flips all the bits of the negatives, and the sign bit of the others
+        bits ^= (bits >> 63) | Long.MIN_VALUE;
+        return Bytes.toBytes(bits);
+      case BOOLEAN:
+        return new byte[] {(byte) (((Boolean)value) ? 1 : 0)};
+      case BYTES:
+        ByteBuffer buffer = (ByteBuffer) value;
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+      default:
+        throw new IllegalArgumentException("Fields of type " + type
+            + " cannot be indexed");
+    }
+  }
+}
@@ -2,6 +2,7 @@
 package org.gora.hbase.store;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
@@ -23,7 +24,11 @@ public class HBaseMapping {
   // a map from field name to hbase column
   private Map<String, HBaseColumn> columnMap = 
     new HashMap<String, HBaseColumn>();
-  
+
+  // a map from field name to the secondary index of the field
+  private Map<String, HBaseIndex> indexes =
+    new LinkedHashMap<String, HBaseIndex>();
+
   public HBaseMapping() {
   }
   
@@ -96,4 +101,16 @@ public class HBaseMapping {
   public HBaseColumn getColumn(String fieldName) {
     return columnMap.get(fieldName);
   }
+
+  /** Adds the index of a field, and the descriptor of its table */
+  void addIndex(HBaseIndex index) {
+    addTable(index.getTableName());
+    addColumnFamily(index.getTableName(), HBaseIndex.FAMILY_NAME);
+    indexes.put(index.getField(), index);
+  }
+
+  /** Returns the indexes, keyed by the indexed fields */
+  Map<String, HBaseIndex> getIndexes() {
+    return indexes;
+  }
 }
\ No newline at end of file
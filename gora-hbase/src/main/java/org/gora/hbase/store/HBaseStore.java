@@ -5,16 +5,23 @@ import static org.gora.hbase.util.HBaseByteInterface.toBytes;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.NavigableMap;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
@@ -27,31 +34,53 @@ import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HServerAddress;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTablePool;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
+import org.gora.filter.FieldValueFilter;
+import org.gora.filter.Filter;
+import org.gora.filter.FilterList.Operator;
+import org.gora.filter.FilterOp;
+import org.gora.filter.Filters;
+import org.gora.filter.InFilter;
 import org.gora.hbase.query.HBaseGetResult;
 import org.gora.hbase.query.HBaseQuery;
 import org.gora.hbase.query.HBaseScannerResult;
 import org.gora.hbase.util.HBaseByteInterface;
+import org.gora.index.IndexLookup;
+import org.gora.persistency.FieldDecoder;
 import org.gora.persistency.ListGenericArray;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.State;
 import org.gora.persistency.StateManager;
 import org.gora.persistency.StatefulHashMap;
 import org.gora.persistency.StatefulMap;
+import org.gora.query.Aggregation;
+import org.gora.query.Aggregation.Function;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
+import org.gora.query.impl.IndexResult;
 import org.gora.query.impl.PartitionQueryImpl;
+import org.gora.query.impl.QueryPlanCache;
+import org.gora.query.impl.QueryShape;
+import org.gora.query.impl.ResultBase;
+import org.gora.store.DataStoreFactory;
 import org.gora.store.impl.DataStoreBase;
+import org.gora.util.StringUtils;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
@@ -59,6 +88,10 @@ import org.jdom.input.SAXBuilder;
 /**
  * DataStore for HBase.
  *
+ * <p> The fields listed with <code>&lt;index field=".."/&gt;</code> in the
+ * mapping of a class are indexed in their own tables, which answer the
+ * queries filtering on the fields by their values.
+ *
  * <p> Note: HBaseStore is not yet thread-safe.
  */
 public class HBaseStore<K, T extends Persistent> extends DataStoreBase<K, T>
@@ -72,16 +105,38 @@ implements Configurable {
   private static final String DEPRECATED_MAPPING_FILE = "hbase-mapping.xml";
   public static final String DEFAULT_MAPPING_FILE = "gora-hbase-mapping.xml";
 
+  /** Number of threads used to issue the gets of getAll() in parallel */
+  public static final String GET_ALL_THREADS_PROPERTY = "getall.threads";
+  public static final int DEFAULT_GET_ALL_THREADS = 10;
+
+  /** Number of objects fetched at once for the keys found in an index */
+  private static final int INDEX_BATCH_SIZE = 100;
+
   private HBaseAdmin admin;
 
   private HTable table;
 
+  private HTablePool tablePool;
+
+  /** The tables created by the pool, which are closed with the store */
+  private final List<HTable> pooledTables = new ArrayList<HTable>();
+
+  private ExecutorService getAllService;
+
+  private int getAllThreads;
+
   private Configuration conf;
 
   private boolean autoCreateSchema = true;
 
   private HBaseMapping mapping;
 
+  /** The plans of the queries and gets, keyed by their shapes */
+  private QueryPlanCache<QueryPlan> planCache;
+
+  /** The tables of the secondary indexes, keyed by the indexed fields */
+  private Map<String, HTable> indexTables = new LinkedHashMap<String, HTable>();
+
   public HBaseStore()  {
   }
 
@@ -115,6 +170,14 @@ implements Configurable {
     }
 
     table = new HTable(mapping.getTableName());
+    for(HBaseIndex index : mapping.getIndexes().values()) {
+      indexTables.put(index.getField(), new HTable(index.getTableName()));
+    }
+
+    getAllThreads = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, this, GET_ALL_THREADS_PROPERTY, null), DEFAULT_GET_ALL_THREADS);
+
+    planCache = createQueryPlanCache();
   }
 
   @Override
@@ -124,16 +187,25 @@ implements Configurable {
 
   @Override
   public void createSchema() throws IOException {
-    if(admin.tableExists(mapping.getTableName())) {
-      return;
+    if(!admin.tableExists(mapping.getTableName())) {
+      HTableDescriptor tableDesc = mapping.getTable();
+      admin.createTable(tableDesc);
+    }
+    for(HBaseIndex index : mapping.getIndexes().values()) {
+      if(!admin.tableExists(index.getTableName())) {
+        admin.createTable(mapping.getTable(index.getTableName()));
+      }
     }
-    HTableDescriptor tableDesc = mapping.getTable();
-
-    admin.createTable(tableDesc);
   }
 
   @Override
   public void deleteSchema() throws IOException {
+    for(HBaseIndex index : mapping.getIndexes().values()) {
+      if(admin.tableExists(index.getTableName())) {
+        admin.disableTable(index.getTableName());
+        admin.deleteTable(index.getTableName());
+      }
+    }
     if(!admin.tableExists(mapping.getTableName())) {
       if(table != null) {
         table.getWriteBuffer().clear();
@@ -153,14 +225,154 @@ implements Configurable {
   public T get(K key, String[] fields) throws IOException {
     fields = getFieldsToQuery(fields);
     Get get = new Get(toBytes(key));
-    addFields(get, fields);
+    addFields(get, getPlan(fields));
     Result result = table.get(get);
     return newInstance(result, fields);
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
+  /**
+   * HBase 0.20 does not have a multi get, so the gets are grouped by
+   * region server, and each group is issued from its own pooled HTable
+   * in parallel. The number of round trips is still one per key, but
+   * the latency is bounded by the slowest region server.
+   */
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] fields)
+  throws IOException {
+    final String[] requestFields = getFieldsToQuery(fields);
+    QueryPlan plan = getPlan(requestFields);
+
+    Map<HServerAddress, List<Get>> serverGets =
+      new HashMap<HServerAddress, List<Get>>();
+    for(K key : keys) {
+      byte[] row = toBytes(key);
+      Get get = new Get(row);
+      addFields(get, plan);
+      HServerAddress address = table.getRegionLocation(row).getServerAddress();
+      List<Get> gets = serverGets.get(address);
+      if(gets == null) {
+        gets = new ArrayList<Get>();
+        serverGets.put(address, gets);
+      }
+      gets.add(get);
+    }
+
+    List<Callable<List<Result>>> tasks =
+      new ArrayList<Callable<List<Result>>>(serverGets.size());
+    for(final List<Get> gets : serverGets.values()) {
+      tasks.add(new Callable<List<Result>>() {
+        @Override
+        public List<Result> call() throws Exception {
+          List<Result> results = new ArrayList<Result>(gets.size());
+          HTable pooledTable = getTablePool().getTable(mapping.getTableName());
+          try {
+            for(Get get : gets) {
+              results.add(pooledTable.get(get));
+            }
+          } finally {
+            getTablePool().putTable(pooledTable);
+          }
+          return results;
+        }
+      });
+    }
+
+    List<Future<List<Result>>> futures;
+    try {
+      futures = getGetAllService().invokeAll(tasks);
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+
+    Map<K, T> found = new HashMap<K, T>();
+    for(Future<List<Result>> future : futures) {
+      try {
+        for(Result result : future.get()) {
+          if(result != null && !result.isEmpty()) {
+            found.put(fromBytes(getKeyClass(), result.getRow())
+                , newInstance(result, requestFields));
+          }
+        }
+      } catch (Exception ex) {
+        throw new IOException(ex);
+      }
+    }
+
+    //return the objects in the order of the keys
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(K key : keys) {
+      T obj = found.get(key);
+      if(obj != null) {
+        results.put(key, obj);
+      }
+    }
+    return results;
+  }
+
+  private synchronized HTablePool getTablePool() {
+    if(tablePool == null) {
+      tablePool = new HTablePool(new HBaseConfiguration(getConf()), getAllThreads) {
+        @Override
+        protected HTable newHTable(String tableName) {
+          HTable pooledTable = super.newHTable(tableName);
+          synchronized (pooledTables) {
+            pooledTables.add(pooledTable);
+          }
+          return pooledTable;
+        }
+      };
+    }
+    return tablePool;
+  }
+
+  private synchronized ExecutorService getGetAllService() {
+    if(getAllService == null) {
+      getAllService = Executors.newFixedThreadPool(getAllThreads);
+    }
+    return getAllService;
+  }
+
   @Override
   public void put(K key, T persistent) throws IOException {
+    List<Put> puts = new ArrayList<Put>(1);
+    ArrayList<Delete> deletes = new ArrayList<Delete>(1);
+    updateIndexes(key, persistent);
+    addMutations(key, persistent, puts, deletes);
+    writeMutations(puts, deletes);
+  }
+
+  /**
+   * Sends the puts and the deletes for all the objects with list
+   * operations, which are buffered by the client write buffer.
+   */
+  @Override
+  public void putAll(Iterable<Map.Entry<K, T>> entries) throws IOException {
+    List<Put> puts = new ArrayList<Put>();
+    ArrayList<Delete> deletes = new ArrayList<Delete>();
+    for (Map.Entry<K, T> entry : entries) {
+      updateIndexes(entry.getKey(), entry.getValue());
+      addMutations(entry.getKey(), entry.getValue(), puts, deletes);
+    }
+    writeMutations(puts, deletes);
+  }
+
+  private void writeMutations(List<Put> puts, ArrayList<Delete> deletes)
+  throws IOException {
+    if (!puts.isEmpty()) {
+      table.put(puts);
+    }
+    if (!deletes.isEmpty()) {
+      table.delete(deletes);
+    }
+  }
+
+  /**
+   * Builds the Put and the Delete for the dirty fields of the object,
+   * and adds them to the given lists if they are not empty.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void addMutations(K key, T persistent, List<Put> puts
+      , List<Delete> deletes) throws IOException {
     Schema schema = persistent.getSchema();
     StateManager stateManager = persistent.getStateManager();
     byte[] keyRaw = toBytes(key);
@@ -225,13 +437,91 @@ implements Configurable {
       }
     }
     if (hasPuts) {
-      table.put(put);
+      puts.add(put);
     }
     if (hasDeletes) {
-      table.delete(delete);
+      deletes.add(delete);
+    }
+  }
+
+  /**
+   * Replaces the index entries of the dirty indexed fields of the object.
+   * The old values are read from the table to delete their entries, and
+   * the new entries are written before the object, so that an object is
+   * always found through the indexes. An entry may outlive its value if
+   * the writes of the object race, but the filters of the queries are
+   * evaluated against the fetched objects, so such entries are harmless.
+   */
+  private void updateIndexes(K key, T persistent) throws IOException {
+    if(indexTables.isEmpty()) {
+      return;
+    }
+    List<HBaseIndex> dirtyIndexes = new ArrayList<HBaseIndex>();
+    for(HBaseIndex index : mapping.getIndexes().values()) {
+      if(persistent.isDirty(persistent.getFieldIndex(index.getField()))) {
+        dirtyIndexes.add(index);
+      }
+    }
+    if(dirtyIndexes.isEmpty()) {
+      return;
+    }
+    byte[] keyRaw = toBytes(key);
+    removeIndexEntries(keyRaw, dirtyIndexes);
+    for(HBaseIndex index : dirtyIndexes) {
+      Object value = persistent.get(persistent.getFieldIndex(index.getField()));
+      if(value != null) {
+        Put put = new Put(index.getRow(value, keyRaw));
+        put.add(HBaseIndex.FAMILY, HBaseIndex.QUALIFIER, keyRaw);
+        indexTables.get(index.getField()).put(put);
+      }
     }
   }
 
+  /** Deletes the index entries of the stored values of the object */
+  private void removeIndexEntries(byte[] keyRaw, Collection<HBaseIndex> indexes)
+  throws IOException {
+    Get get = new Get(keyRaw);
+    for(HBaseIndex index : indexes) {
+      HBaseColumn col = mapping.getColumn(index.getField());
+      get.addColumn(col.family, col.qualifier);
+    }
+    Result result = table.get(get);
+    if(result == null || result.isEmpty()) {
+      return;
+    }
+    for(HBaseIndex index : indexes) {
+      HBaseColumn col = mapping.getColumn(index.getField());
+      byte[] val = result.getValue(col.family, col.qualifier);
+      if(val != null) {
+        Object value = fromBytes(fieldMap.get(index.getField()).schema(), val);
+        indexTables.get(index.getField()).delete(
+            new Delete(index.getRow(value, keyRaw)));
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the index entries in the bounds of the lookup,
+   * in the order of the rows, as the scans return them.
+   */
+  private List<K> seekIndex(IndexLookup lookup) throws IOException {
+    HBaseIndex index = mapping.getIndexes().get(lookup.getField());
+    Scan scan = new Scan(index.getStartRow(lookup), index.getStopRow(lookup));
+    scan.addColumn(HBaseIndex.FAMILY, HBaseIndex.QUALIFIER);
+    //the index entries come in the order of the values
+    Map<byte[], K> keys = new TreeMap<byte[], K>(Bytes.BYTES_COMPARATOR);
+    ResultScanner scanner = indexTables.get(lookup.getField()).getScanner(scan);
+    try {
+      for(Result result : scanner) {
+        byte[] keyRaw = result.getValue(HBaseIndex.FAMILY, HBaseIndex.QUALIFIER);
+        keys.put(keyRaw, fromBytes(keyClass, keyRaw));
+      }
+    } finally {
+      scanner.close();
+    }
+    return new ArrayList<K>(keys.values());
+  }
+
   public void delete(T obj) {
     throw new RuntimeException("Not implemented yet");
   }
@@ -242,7 +532,11 @@ implements Configurable {
    */
   @Override
   public boolean delete(K key) throws IOException {
-    table.delete(new Delete(toBytes(key)));
+    byte[] keyRaw = toBytes(key);
+    if(!indexTables.isEmpty()) {
+      removeIndexEntries(keyRaw, mapping.getIndexes().values());
+    }
+    table.delete(new Delete(keyRaw));
     //HBase does not return success information and executing a get for
     //success is a bit costly
     return true;
@@ -338,21 +632,35 @@ implements Configurable {
   public org.gora.query.Result<K, T> execute(Query<K, T> query)
       throws IOException {
 
-    //check if query.fields is null
-    query.setFields(getFieldsToQuery(query.getFields()));
+    //check if query.fields is null, and add the fields of the filter
+    query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
 
     if(query.getStartKey() != null && query.getStartKey().equals(
         query.getEndKey())) {
       Get get = new Get(toBytes(query.getStartKey()));
-      addFields(get, query.getFields());
+      addFields(get, getPlan(query));
       addTimeRange(get, query);
       Result result = table.get(get);
       return new HBaseGetResult<K,T>(this, query, result);
+    }
+
+    //the index entries are not versioned, so queries with time ranges scan
+    IndexLookup lookup = ResultBase.hasTimeRange(query) ? null
+        : IndexLookup.create(Filters.bind(query.getFilter(), query)
+            , mapping.getIndexes().keySet());
+    if(lookup != null) {
+      //the objects of the index entries are fetched, and filtered
+      List<K> keys = IndexResult.filterKeys(seekIndex(lookup), query);
+      return new IndexResult<K, T>(this, query, keys, INDEX_BATCH_SIZE);
     } else {
       ResultScanner scanner = createScanner(query);
 
-      org.gora.query.Result<K,T> result
+      HBaseScannerResult<K,T> result
       = new HBaseScannerResult<K,T>(this,query, scanner);
+      if(isExactFilter(query, getPlan(query))) {
+        //the filter is fully evaluated by the region servers
+        result.setFilter(null);
+      }
 
       return result;
     }
@@ -367,38 +675,276 @@ implements Configurable {
     if (query.getEndKey() != null) {
       scan.setStopRow(toBytes(query.getEndKey()));
     }
-    addFields(scan, query);
+    QueryPlan plan = getPlan(query);
+    addFields(scan, plan);
+    addTimeRange(scan, query);
+    if (plan.hasParams) {
+      scan.setFilter(toScanFilter(Filters.bind(query.getFilter(), query)));
+    } else if (plan.scanFilter != null) {
+      scan.setFilter(plan.scanFilter);
+    }
 
     return table.getScanner(scan);
   }
 
-  private void addFields(Get get, String[] fieldNames) {
-    for (String f : fieldNames) {
-      HBaseColumn col = mapping.getColumn(f);
-      Schema fieldSchema = fieldMap.get(f).schema();
+  /**
+   * Queries without filters are counted over a key only scan, which
+   * returns only the first cell of each row.
+   */
+  @Override
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    if (query.getFilter() != null || aggregation.getField() != null) {
+      return super.aggregate(query, aggregation);
+    }
+    Scan scan = new Scan();
+    if (query.getStartKey() != null) {
+      scan.setStartRow(toBytes(query.getStartKey()));
+    }
+    if (query.getEndKey() != null) {
+      scan.setStopRow(toBytes(query.getEndKey()));
+    }
+    addTimeRange(scan, query);
+    scan.setFilter(new FirstKeyOnlyFilter());
+
+    Function function = aggregation.getFunction();
+    long count = 0;
+    byte[] firstRow = null;
+    byte[] lastRow = null;
+    ResultScanner scanner = table.getScanner(scan);
+    try {
+      for (Result result : scanner) {
+        if (firstRow == null) {
+          firstRow = result.getRow();
+        }
+        lastRow = result.getRow();
+        count++;
+        if (function == Function.MIN_KEY
+            || (query.getLimit() > 0 && count >= query.getLimit())) {
+          break;
+        }
+      }
+    } finally {
+      scanner.close();
+    }
 
-      switch (fieldSchema.getType()) {
-        case MAP:
-        case ARRAY:
-          get.addFamily(col.family); break;
-        default:
-          get.addColumn(col.family, col.qualifier); break;
+    switch (function) {
+      case COUNT:
+        return count;
+      case MIN_KEY:
+        return firstRow == null ? null : fromBytes(keyClass, firstRow);
+      default:
+        return lastRow == null ? null : fromBytes(keyClass, lastRow);
+    }
+  }
+
+  @Override
+  public void compile(Query<K, T> query) throws IOException {
+    super.compile(query);
+    query.setFields(getFieldsToQuery(query.getFields(), query.getFilter()));
+    getPlan(query);
+  }
+
+  /** Returns the plan of the query, from the cache if possible */
+  private QueryPlan getPlan(Query<K, T> query) throws IOException {
+    QueryShape shape = new QueryShape(query);
+    QueryPlan plan = planCache.get(shape);
+    if (plan == null) {
+      plan = new QueryPlan(query.getFields());
+      if (Filters.hasParams(query.getFilter())) {
+        //the filter is converted per execution, with the bound values
+        plan.hasParams = true;
+      } else if (query.getFilter() != null) {
+        plan.scanFilter = toScanFilter(query.getFilter());
+        plan.exactFilter = toHBaseFilter(query.getFilter()) != null;
       }
+      planCache.put(shape, plan);
+    }
+    return plan;
+  }
+
+  /** Returns the plan to get the fields of a row */
+  private QueryPlan getPlan(String[] fields) {
+    QueryShape shape = new QueryShape(fields);
+    QueryPlan plan = planCache.get(shape);
+    if (plan == null) {
+      plan = new QueryPlan(fields);
+      planCache.put(shape, plan);
     }
+    return plan;
   }
 
-  private void addFields(Scan scan, Query<K,T> query)
+  private boolean isExactFilter(Query<K, T> query, QueryPlan plan)
   throws IOException {
-    String[] fields = query.getFields();
-    for (String f : fields) {
-      HBaseColumn col = mapping.getColumn(f);
-      Schema fieldSchema = fieldMap.get(f).schema();
-      switch (fieldSchema.getType()) {
-        case MAP:
-        case ARRAY:
-          scan.addFamily(col.family); break;
-        default:
-          scan.addColumn(col.family, col.qualifier); break;
+    if (plan.hasParams) {
+      return toHBaseFilter(Filters.bind(query.getFilter(), query)) != null;
+    }
+    return plan.exactFilter;
+  }
+
+  /**
+   * The columns to fetch and the scan filter of a query shape. The map
+   * and array fields are fetched as whole families, with null qualifiers.
+   */
+  private class QueryPlan {
+    final byte[][] families;
+    final byte[][] qualifiers;
+    org.apache.hadoop.hbase.filter.Filter scanFilter;
+    /** whether the scan filter is equivalent to the query filter */
+    boolean exactFilter;
+    /** whether the filter has parameters, so it cannot be precomputed */
+    boolean hasParams;
+
+    QueryPlan(String[] fields) {
+      families = new byte[fields.length][];
+      qualifiers = new byte[fields.length][];
+      for (int i = 0; i < fields.length; i++) {
+        HBaseColumn col = mapping.getColumn(fields[i]);
+        families[i] = col.family;
+        switch (fieldMap.get(fields[i]).schema().getType()) {
+          case MAP:
+          case ARRAY:
+            break;
+          default:
+            qualifiers[i] = col.qualifier; break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the HBase filter to set on the scan for the given filter,
+   * or null if no part of it can be evaluated by HBase. The conjuncts of
+   * a top level AND are converted individually, so the returned filter
+   * may accept more rows than the given filter.
+   */
+  private org.apache.hadoop.hbase.filter.Filter toScanFilter(Filter filter)
+  throws IOException {
+    if (filter instanceof org.gora.filter.FilterList &&
+        ((org.gora.filter.FilterList)filter).getOperator() == Operator.AND) {
+      FilterList list = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+      for (Filter f : ((org.gora.filter.FilterList)filter).getFilters()) {
+        org.apache.hadoop.hbase.filter.Filter hbaseFilter = toHBaseFilter(f);
+        if (hbaseFilter != null) {
+          list.addFilter(hbaseFilter);
+        }
+      }
+      return list.getFilters().isEmpty() ? null : list;
+    }
+    return toHBaseFilter(filter);
+  }
+
+  /**
+   * Converts the filter to an equivalent HBase filter. Returns null if
+   * the filter cannot be evaluated by HBase. Range comparisons are only
+   * converted for string and bytes fields, since the byte order of the
+   * other serialized types differs from their natural order.
+   */
+  private org.apache.hadoop.hbase.filter.Filter toHBaseFilter(Filter filter)
+  throws IOException {
+    if (filter instanceof FieldValueFilter) {
+      FieldValueFilter f = (FieldValueFilter) filter;
+      boolean range = f.getOp() != FilterOp.EQUALS
+        && f.getOp() != FilterOp.NOT_EQUALS;
+      return toColumnValueFilter(f.getField(), toCompareOp(f.getOp())
+          , f.getValue(), range);
+    } else if (filter instanceof InFilter) {
+      InFilter f = (InFilter) filter;
+      if (f.getValues().length == 0) {
+        return null;
+      }
+      FilterList list = new FilterList(FilterList.Operator.MUST_PASS_ONE);
+      for (Object value : f.getValues()) {
+        org.apache.hadoop.hbase.filter.Filter valueFilter
+          = toColumnValueFilter(f.getField(), CompareOp.EQUAL, value, false);
+        if (valueFilter == null) {
+          return null;
+        }
+        list.addFilter(valueFilter);
+      }
+      return list;
+    } else if (filter instanceof org.gora.filter.FilterList) {
+      org.gora.filter.FilterList f = (org.gora.filter.FilterList) filter;
+      FilterList list = new FilterList(f.getOperator() == Operator.AND ?
+          FilterList.Operator.MUST_PASS_ALL : FilterList.Operator.MUST_PASS_ONE);
+      for (Filter child : f.getFilters()) {
+        org.apache.hadoop.hbase.filter.Filter hbaseFilter = toHBaseFilter(child);
+        if (hbaseFilter == null) {
+          return null;
+        }
+        list.addFilter(hbaseFilter);
+      }
+      return list;
+    }
+    //NOT and IS NULL are evaluated on the client side
+    return null;
+  }
+
+  private SingleColumnValueFilter toColumnValueFilter(String field
+      , CompareOp op, Object value, boolean range) throws IOException {
+    HBaseColumn col = mapping.getColumn(field);
+    if (col == null || col.qualifier == null || value == null) {
+      return null;
+    }
+    Schema fieldSchema = fieldMap.get(field).schema();
+    Type type = fieldSchema.getType();
+    if (range && type != Type.STRING && type != Type.BYTES) {
+      return null;
+    }
+    byte[] bytes;
+    switch (type) {
+      case STRING:  bytes = Bytes.toBytes(value.toString()); break;
+      case INT:     bytes = Bytes.toBytes(((Number)value).intValue()); break;
+      case LONG:    bytes = Bytes.toBytes(((Number)value).longValue()); break;
+      case FLOAT:   bytes = Bytes.toBytes(((Number)value).floatValue()); break;
+      case DOUBLE:  bytes = Bytes.toBytes(((Number)value).doubleValue()); break;
+      case BOOLEAN: bytes = (Boolean)value ? new byte[] {1} : new byte[] {0}; break;
+      case ENUM:
+        bytes = new byte[] {(byte)fieldSchema.getEnumOrdinal(value.toString())};
+        break;
+      case BYTES:
+        ByteBuffer buf = (ByteBuffer) value;
+        bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        break;
+      default:
+        return null;
+    }
+    SingleColumnValueFilter filter = new SingleColumnValueFilter(col.family
+        , col.qualifier, op, bytes);
+    //missing columns are null, which never match
+    filter.setFilterIfMissing(true);
+    return filter;
+  }
+
+  private static CompareOp toCompareOp(FilterOp op) {
+    switch (op) {
+      case EQUALS:           return CompareOp.EQUAL;
+      case NOT_EQUALS:       return CompareOp.NOT_EQUAL;
+      case LESS:             return CompareOp.LESS;
+      case LESS_OR_EQUAL:    return CompareOp.LESS_OR_EQUAL;
+      case GREATER:          return CompareOp.GREATER;
+      case GREATER_OR_EQUAL: return CompareOp.GREATER_OR_EQUAL;
+    }
+    throw new IllegalArgumentException("Unknown operator: " + op);
+  }
+
+  private void addFields(Get get, QueryPlan plan) {
+    for (int i = 0; i < plan.families.length; i++) {
+      if (plan.qualifiers[i] == null) {
+        get.addFamily(plan.families[i]);
+      } else {
+        get.addColumn(plan.families[i], plan.qualifiers[i]);
+      }
+    }
+  }
+
+  private void addFields(Scan scan, QueryPlan plan) {
+    for (int i = 0; i < plan.families.length; i++) {
+      if (plan.qualifiers[i] == null) {
+        scan.addFamily(plan.families[i]);
+      } else {
+        scan.addColumn(plan.families[i], plan.qualifiers[i]);
       }
     }
   }
@@ -420,6 +966,22 @@ implements Configurable {
     }
   }
 
+  /**
+   * Restricts the scan to the cells written in the time range of the
+   * query, so only the rows with cells in the range are returned.
+   */
+  private void addTimeRange(Scan scan, Query<K, T> query) throws IOException {
+    if(query.getStartTime() > 0 || query.getEndTime() > 0) {
+      if(query.getStartTime() == query.getEndTime()) {
+        scan.setTimeStamp(query.getStartTime());
+      } else {
+        long startTime = query.getStartTime() > 0 ? query.getStartTime() : 0;
+        long endTime = query.getEndTime() > 0 ? query.getEndTime() : Long.MAX_VALUE;
+        scan.setTimeRange(startTime, endTime);
+      }
+    }
+  }
+
   private void addTimeRange(Get get, Query<K, T> query) throws IOException {
     if(query.getStartTime() > 0 || query.getEndTime() > 0) {
       if(query.getStartTime() == query.getEndTime()) {
@@ -432,7 +994,10 @@ implements Configurable {
     }
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
+  /**
+   * Returns the object of the result. The values of the fields are kept
+   * undecoded in the object if the fields are read lazily.
+   */
   public T newInstance(Result result, String[] fields)
   throws IOException {
     if(result == null || result.isEmpty())
@@ -443,63 +1008,67 @@ implements Configurable {
     for (String f : fields) {
       HBaseColumn col = mapping.getColumn(f);
       Field field = fieldMap.get(f);
-      Schema fieldSchema = field.schema();
-      switch(fieldSchema.getType()) {
+      Object raw;
+      switch(field.schema().getType()) {
         case MAP:
-          NavigableMap<byte[], byte[]> qualMap =
-            result.getNoVersionMap().get(col.getFamily());
-          if (qualMap == null) {
-            continue;
-          }
-          Schema valueSchema = fieldSchema.getValueType();
-          Map map = new HashMap();
-          for (Entry<byte[], byte[]> e : qualMap.entrySet()) {
-            map.put(new Utf8(Bytes.toString(e.getKey())),
-                fromBytes(valueSchema, e.getValue()));
-          }
-          setField(persistent, field, map);
+          raw = result.getNoVersionMap().get(col.getFamily());
           break;
         case ARRAY:
-          qualMap = result.getFamilyMap(col.getFamily());
-          if (qualMap == null) {
-            continue;
-          }
-          valueSchema = fieldSchema.getElementType();
-          ArrayList arrayList = new ArrayList();
-          for (Entry<byte[], byte[]> e : qualMap.entrySet()) {
-            arrayList.add(fromBytes(valueSchema, e.getValue()));
-          }
-          ListGenericArray arr = new ListGenericArray(fieldSchema, arrayList);
-          setField(persistent, field, arr);
+          raw = result.getFamilyMap(col.getFamily());
           break;
         default:
-          byte[] val =
-            result.getValue(col.getFamily(), col.getQualifier());
-          if (val == null) {
-            continue;
-          }
-          setField(persistent, field, val);
+          raw = result.getValue(col.getFamily(), col.getQualifier());
           break;
       }
+      if (raw == null) {
+        continue;
+      }
+      if (lazyFields) {
+        persistent.setLazy(field.pos(), raw, fieldDecoder);
+      } else {
+        persistent.put(field.pos(), decodeField(field, raw));
+      }
     }
     stateManager.clearDirty(persistent);
     return persistent;
   }
 
+  /**
+   * Decodes the value of the field from the qualifier map of its family
+   * for maps and arrays, and from the bytes of its cell for the others.
+   */
   @SuppressWarnings({ "unchecked", "rawtypes" })
-  private void setField(T persistent, Field field, Map map) {
-    persistent.put(field.pos(), new StatefulHashMap(map));
-  }
-
-  private void setField(T persistent, Field field, byte[] val)
-  throws IOException {
-    persistent.put(field.pos(), fromBytes(field.schema(), val));
+  private Object decodeField(Field field, Object raw) throws IOException {
+    Schema fieldSchema = field.schema();
+    switch(fieldSchema.getType()) {
+      case MAP:
+        Schema valueSchema = fieldSchema.getValueType();
+        Map map = new HashMap();
+        for (Entry<byte[], byte[]> e : ((Map<byte[], byte[]>) raw).entrySet()) {
+          map.put(new Utf8(Bytes.toString(e.getKey())),
+              fromBytes(valueSchema, e.getValue()));
+        }
+        return new StatefulHashMap(map);
+      case ARRAY:
+        valueSchema = fieldSchema.getElementType();
+        ArrayList arrayList = new ArrayList();
+        for (byte[] val : ((Map<byte[], byte[]>) raw).values()) {
+          arrayList.add(fromBytes(valueSchema, val));
+        }
+        return new ListGenericArray(fieldSchema, arrayList);
+      default:
+        return fromBytes(fieldSchema, (byte[]) raw);
+    }
   }
 
-  @SuppressWarnings("rawtypes")
-  private void setField(T persistent, Field field, GenericArray list) {
-    persistent.put(field.pos(), list);
-  }
+  /** Decodes the fields of the objects read lazily */
+  private final FieldDecoder fieldDecoder = new FieldDecoder() {
+    @Override
+    public Object decode(Persistent persistent, int fieldIndex, Object raw)
+    throws IOException {
+      return decodeField(persistent.getSchema().getFields().get(fieldIndex), raw);
+    }
+  };
 
   @SuppressWarnings("unchecked")
   private HBaseMapping readMapping(String filename) throws IOException {
@@ -553,6 +1122,26 @@ implements Configurable {
             mapping.addColumnFamily(mapping.getTableName(), family);//implicit family definition
           }
 
+          List<Element> indexElements = classElement.getChildren("index");
+          for(Element indexElement : indexElements) {
+            String fieldName = indexElement.getAttributeValue("field");
+            HBaseColumn column = mapping.getColumn(fieldName);
+            if(column == null || column.qualifier == null) {
+              throw new IOException("Field " + fieldName
+                  + " should be mapped to a column to be indexed");
+            }
+            Type type = fieldMap.get(fieldName).schema().getType();
+            if(!HBaseIndex.isIndexable(type)) {
+              throw new IOException("Field " + fieldName + " of type " + type
+                  + " cannot be indexed");
+            }
+            String indexTable = indexElement.getAttributeValue("table");
+            if(indexTable == null) {
+              indexTable = tableName + "_" + fieldName + "_idx";
+            }
+            mapping.addIndex(new HBaseIndex(fieldName, type, indexTable));
+          }
+
           break;
         }
       }
@@ -570,6 +1159,23 @@ implements Configurable {
     flush();
     if(table != null)
       table.close();
+    for(HTable indexTable : indexTables.values()) {
+      indexTable.close();
+    }
+    synchronized (this) {
+      if(getAllService != null) {
+        getAllService.shutdown();
+        getAllService = null;
+      }
+      //HTablePool cannot close its tables
+      tablePool = null;
+      synchronized (pooledTables) {
+        for(HTable pooledTable : pooledTables) {
+          pooledTable.close();
+        }
+        pooledTables.clear();
+      }
+    }
   }
 
   @Override
@@ -1,15 +1,26 @@
-
 package org.gora.sql.query;
 
+import java.sql.PreparedStatement;
+
 import org.gora.persistency.Persistent;
 import org.gora.query.impl.QueryBase;
 import org.gora.sql.store.SqlStore;
+import org.gora.sql.util.SqlUtils;
 
 /**
  * Query implementation covering SQL queries
+ *
+ * <p> Compiled queries keep their PreparedStatement, which is reused
+ * with the new parameters when the query is executed again. So executing
+ * a compiled query closes the results of its previous execution, and
+ * {@link #close()} should be called when the query is no longer used.
  */
 public class SqlQuery<K, T extends Persistent> extends QueryBase<K, T> {
 
+  private String statementSql;
+
+  private PreparedStatement statement;
+
   public SqlQuery() {
     super(null);
   }
@@ -18,4 +29,37 @@ public class SqlQuery<K, T extends Persistent> extends QueryBase<K, T> {
     super(dataStore);
   }
 
+  /**
+   * Returns the statement prepared for the given SQL by a previous
+   * execution, or null if there is not any.
+   */
+  public PreparedStatement getStatement(String sql) {
+    return sql.equals(statementSql) ? statement : null;
+  }
+
+  /**
+   * Returns the statement kept by the query, or null if there is not any.
+   */
+  public PreparedStatement getStatement() {
+    return statement;
+  }
+
+  /**
+   * Sets the statement to reuse for the given SQL, closing the previous
+   * statement of the query.
+   */
+  public void setStatement(String sql, PreparedStatement statement) {
+    close();
+    this.statementSql = sql;
+    this.statement = statement;
+  }
+
+  /**
+   * Closes the statement kept by the query
+   */
+  public void close() {
+    SqlUtils.close(statement);
+    statement = null;
+    statementSql = null;
+  }
 }
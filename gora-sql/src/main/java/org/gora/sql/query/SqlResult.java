@@ -16,7 +16,13 @@ public class SqlResult<K, T extends Persistent> extends ResultBase<K, T> {
 
   private ResultSet resultSet;
   private PreparedStatement statement;
+  /** The first key read, used as the start key if the query has none */
+  private K firstKey;
   
+  /**
+   * @param statement the statement to close with the results, or null
+   * if the statement is kept by the query
+   */
   public SqlResult(DataStore<K, T> dataStore, Query<K, T> query
       , ResultSet resultSet, PreparedStatement statement) {
     super(dataStore, query);
@@ -34,6 +40,9 @@ public class SqlResult<K, T extends Persistent> extends ResultBase<K, T> {
 
       SqlStore<K, T> sqlStore = ((SqlStore<K,T>)dataStore);
       key = sqlStore.readPrimaryKey(resultSet);
+      if(firstKey == null) {
+        firstKey = key;
+      }
       persistent = sqlStore.readObject(resultSet, persistent, query.getFields());
 
       return true;
@@ -50,6 +59,11 @@ public class SqlResult<K, T extends Persistent> extends ResultBase<K, T> {
 
   @Override
   public float getProgress() throws IOException {
-    return 0;
+    if(key == null) {
+      return getProgress(0f);
+    }
+    //estimated assuming that the rows are read in primary key order
+    K startKey = query.getStartKey() != null ? query.getStartKey() : firstKey;
+    return getProgress(getKeyPosition(startKey, query.getEndKey(), key));
   }
 }
@@ -1,7 +1,6 @@
 package org.gora.sql.statement;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Map.Entry;
@@ -24,8 +23,7 @@ extends InsertUpdateStatement<K, T> {
   }
 
   @Override
-  public PreparedStatement toStatement(Connection connection)
-  throws SQLException {
+  public String toSql() {
     int i;
 
     StringBuilder buf = new StringBuilder("MERGE INTO ");
@@ -82,8 +80,12 @@ extends InsertUpdateStatement<K, T> {
       i++;
     }
 
+    return buf.toString();
+  }
+
+  @Override
+  public void setParameters(PreparedStatement insert) throws SQLException {
     Column primaryColumn = mapping.getPrimaryColumn();
-    PreparedStatement insert = connection.prepareStatement(buf.toString());
     int psIndex = 1;
     for (Entry<String, ColumnData> e : columnMap.entrySet()) {
       ColumnData cd = e.getValue();
@@ -104,7 +106,5 @@ extends InsertUpdateStatement<K, T> {
         throw new SQLException(ex);
       }
     }
-
-    return insert;
   }
 }
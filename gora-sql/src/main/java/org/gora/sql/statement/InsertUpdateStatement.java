@@ -44,6 +44,24 @@ public abstract class InsertUpdateStatement<K, V extends Persistent> {
     columnMap.put(column.getName(), new ColumnData(object, schema, column));
   }
 
-  public abstract PreparedStatement toStatement(Connection connection)
+  /**
+   * Returns the parameterized SQL for the statement. The SQL only
+   * depends on the set of columns, so statements with the same columns
+   * can share a single PreparedStatement.
+   */
+  public abstract String toSql();
+
+  /**
+   * Binds the column values to the parameters of a statement prepared
+   * from {@link #toSql()}.
+   */
+  public abstract void setParameters(PreparedStatement statement)
   throws SQLException;
+
+  public PreparedStatement toStatement(Connection connection)
+  throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(toSql());
+    setParameters(statement);
+    return statement;
+  }
 }
@@ -1,7 +1,6 @@
 package org.gora.sql.statement;
 
 import java.io.IOException;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Map.Entry;
@@ -20,8 +19,7 @@ public class MySqlInsertUpdateStatement<K, V extends Persistent> extends InsertU
   }
 
   @Override
-  public PreparedStatement toStatement(Connection connection)
-  throws SQLException {
+  public String toSql() {
     int i = 0;
     StringBuilder builder = new StringBuilder("INSERT INTO ");
     builder.append(tableName);
@@ -39,7 +37,6 @@ public class MySqlInsertUpdateStatement<K, V extends Persistent> extends InsertU
     // is not in UPDATE part of sql query. This desperately needs a
     // better solution
     Column primaryColumn = mapping.getPrimaryColumn();
-    Object key = columnMap.get(primaryColumn.getName()).object;
     i = 0;
     for(String s : columnMap.keySet()) {
       if (s.equals(primaryColumn.getName())) {
@@ -51,7 +48,13 @@ public class MySqlInsertUpdateStatement<K, V extends Persistent> extends InsertU
     }
     builder.append(";");
 
-    PreparedStatement insert = connection.prepareStatement(builder.toString());
+    return builder.toString();
+  }
+
+  @Override
+  public void setParameters(PreparedStatement insert) throws SQLException {
+    Column primaryColumn = mapping.getPrimaryColumn();
+    Object key = columnMap.get(primaryColumn.getName()).object;
 
     int psIndex = 1;
     for (int count = 0; count < 2; count++) {
@@ -82,8 +85,6 @@ public class MySqlInsertUpdateStatement<K, V extends Persistent> extends InsertU
         }
       }
     }
-
-    return insert;
   }
 
 }
@@ -43,6 +43,18 @@ public class Where {
     addPart(name + " >= " + value);
   }
   
+  /** Adds a "name IN (values...)" part to the Where clause */
+  public void in(String name, String... values) {
+    StringBuilder part = new StringBuilder(name).append(" IN (");
+    for(int i=0; i<values.length; i++) {
+      if(i > 0) {
+        part.append(", ");
+      }
+      part.append(values[i]);
+    }
+    addPart(part.append(")").toString());
+  }
+
   public boolean isEmpty() {
     return builder.length() == 0;
   }
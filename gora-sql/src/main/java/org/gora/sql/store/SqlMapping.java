@@ -2,6 +2,7 @@
 package org.gora.sql.store;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 import org.gora.sql.store.SqlTypeInterface.JdbcType;
 
@@ -10,9 +11,12 @@ public class SqlMapping {
   private String tableName;
   private HashMap<String, Column> fields;
   private Column primaryColumn;
+  private LinkedHashMap<String, String> indexes;
+  private Column timestampColumn;
 
   public SqlMapping() {
     fields = new HashMap<String, Column>();
+    indexes = new LinkedHashMap<String, String>();
   }
 
   public void setTableName(String tableName) {
@@ -52,4 +56,27 @@ public class SqlMapping {
   public HashMap<String, Column> getFields() {
     return fields;
   }
+
+  /** Adds a secondary index on the column of the field */
+  public void addIndex(String indexName, String fieldName) {
+    indexes.put(indexName, fieldName);
+  }
+
+  /** Returns the indexed fields, keyed by the names of the indexes */
+  public LinkedHashMap<String, String> getIndexes() {
+    return indexes;
+  }
+
+  /** Sets the column holding the write times of the rows */
+  public void setTimestampColumn(String columnName) {
+    timestampColumn = new Column(columnName, false, JdbcType.BIGINT, -1, -1);
+  }
+
+  /**
+   * Returns the column holding the write times of the rows, or null
+   * if the write times are not kept.
+   */
+  public Column getTimestampColumn() {
+    return timestampColumn;
+  }
 }
@@ -14,11 +14,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
@@ -30,12 +34,24 @@ import org.apache.avro.specific.SpecificFixed;
 import org.apache.avro.util.Utf8;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.gora.filter.FieldValueFilter;
+import org.gora.filter.Filter;
+import org.gora.filter.FilterList;
+import org.gora.filter.Filters;
+import org.gora.filter.InFilter;
+import org.gora.filter.IsNullFilter;
+import org.gora.filter.NotFilter;
+import org.gora.persistency.FieldDecoder;
 import org.gora.persistency.Persistent;
 import org.gora.persistency.StateManager;
+import org.gora.query.Aggregation;
 import org.gora.query.PartitionQuery;
 import org.gora.query.Query;
 import org.gora.query.Result;
 import org.gora.query.impl.PartitionQueryImpl;
+import org.gora.query.impl.QueryPlanCache;
+import org.gora.query.impl.QueryShape;
+import org.gora.query.impl.ResultBase;
 import org.gora.sql.query.SqlQuery;
 import org.gora.sql.query.SqlResult;
 import org.gora.sql.statement.Delete;
@@ -63,6 +79,9 @@ import com.healthmarketscience.sqlbuilder.dbspec.basic.DbTable;
 /**
  * A DataStore implementation for RDBMS with a SQL interface. SqlStore
  * uses JDBC drivers to communicate with the DB.
+ * <p>The time ranges of the queries are matched against the write times
+ * kept in the column of the optional <code>&lt;timestamp column=".."/&gt;</code>
+ * element of the mapping. Without that column, time ranges are ignored.
  */
 public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
@@ -84,6 +103,9 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
   private static final Log log = LogFactory.getLog(SqlStore.class);
 
+  /** The schema of the values of the timestamp column */
+  private static final Schema TIMESTAMP_SCHEMA = Schema.create(Type.LONG);
+
   /** The JDBC Driver class name */
   protected static final String DRIVER_CLASS_PROPERTY = "jdbc.driver";
 
@@ -98,6 +120,11 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
   protected static final String DEFAULT_MAPPING_FILE = "gora-sql-mapping.xml";
 
+  /** Maximum number of keys to put in a single IN clause in getAll() */
+  protected static final String GET_ALL_BATCH_SIZE_PROPERTY = "getall.batchsize";
+
+  protected static final int DEFAULT_GET_ALL_BATCH_SIZE = 100;
+
   private String jdbcDriverClass;
   private String jdbcUrl;
   private String jdbcUsername;
@@ -111,7 +138,8 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
   private boolean dbMixedCaseIdentifiers, dbLowerCaseIdentifiers, dbUpperCaseIdentifiers;
   private HashMap<String, JdbcType> dbTypeMap;
 
-  private HashSet<PreparedStatement> writeCache;
+  /** Batched insert/update statements, keyed by their SQL */
+  private LinkedHashMap<String, PreparedStatement> writeCache;
 
   private int keySqlType;
 
@@ -123,6 +151,14 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
   private DBVendor dbVendor;
 
+  private int getAllBatchSize;
+
+  /** SELECT statements of the queries, keyed by the query shapes */
+  private QueryPlanCache<String> selectCache;
+
+  /** SELECT statements of the gets, keyed by the fields */
+  private QueryPlanCache<String> getSelectCache;
+
   @Override
   public void initialize(Class<K> keyClass, Class<T> persistentClass,
       Properties properties) throws IOException {
@@ -147,10 +183,17 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
 
     sqlTable = createSqlTable(mapping);
 
-    writeCache = new HashSet<PreparedStatement>();
+    writeCache = new LinkedHashMap<String, PreparedStatement>();
 
     keySqlType = SqlTypeInterface.getSqlType(keyClass);
 
+    getAllBatchSize = StringUtils.parseInt(DataStoreFactory.findProperty(
+        properties, this, GET_ALL_BATCH_SIZE_PROPERTY, null)
+        , DEFAULT_GET_ALL_BATCH_SIZE);
+
+    selectCache = createQueryPlanCache();
+    getSelectCache = createQueryPlanCache();
+
     if(autoCreateSchema) {
       createSchema();
     }
@@ -209,6 +252,53 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
         SqlUtils.close(statement);
       }
     }
+    createIndexes();
+  }
+
+  /**
+   * Creates the secondary indexes of the mapping which do not exist yet.
+   * The database maintains the indexes on the writes, and uses them for
+   * the conditions of the query filters.
+   */
+  private void createIndexes() throws IOException {
+    if(mapping.getIndexes().isEmpty()) {
+      return;
+    }
+    Set<String> existing = new HashSet<String>();
+    ResultSet resultSet = null;
+    try {
+      resultSet = connection.getMetaData().getIndexInfo(null, null
+          , mapping.getTableName(), false, true);
+      while(resultSet.next()) {
+        String indexName = resultSet.getString("INDEX_NAME");
+        if(indexName != null) {
+          existing.add(indexName.toLowerCase());
+        }
+      }
+    } catch (SQLException ex) {
+      throw new IOException(ex);
+    } finally {
+      SqlUtils.close(resultSet);
+    }
+
+    for(Map.Entry<String, String> index : mapping.getIndexes().entrySet()) {
+      if(existing.contains(index.getKey().toLowerCase())) {
+        continue;
+      }
+      log.info("creating index: " + index.getKey());
+      PreparedStatement statement = null;
+      try {
+        statement = connection.prepareStatement("CREATE INDEX " + index.getKey()
+            + " ON " + sqlTable.getAbsoluteName()
+            + " (" + getColumnName(index.getValue()) + ")");
+        statement.executeUpdate();
+        connection.commit();
+      } catch (SQLException ex) {
+        throw new IOException(ex);
+      } finally {
+        SqlUtils.close(statement);
+      }
+    }
   }
 
   private ColumnConstraint getColumnConstraint(Column column) {
@@ -304,7 +394,7 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
   public void flush() throws IOException {
     Exception deferred = null;
     synchronized (writeCache) {
-      for(PreparedStatement stmt : writeCache) {
+      for(PreparedStatement stmt : writeCache.values()) {
         try {
           stmt.executeBatch();
         } catch (SQLException ex) {
@@ -312,7 +402,7 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
           break;
         }
       }
-      for(PreparedStatement stmt : writeCache) {
+      for(PreparedStatement stmt : writeCache.values()) {
         SqlUtils.close(stmt);
       }
       writeCache.clear();
@@ -333,29 +423,7 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     ResultSet resultSet = null;
     PreparedStatement statement = null;
     try {
-      Where where = new Where();
-      SelectStatement select = new SelectStatement(mapping.getTableName());
-      select.setWhere(where);
-
-//      boolean isPrimarySelected = false;
-//      for (int i = 0; i < requestFields.length; i++) {
-//        if(primaryColumn.getName().equals(primaryColumn)) {
-//          isPrimarySelected = true;
-//          break;
-//        }
-//      }
-//      if(!isPrimarySelected) {
-//        requestFields = StringUtils.append(requestFields, primaryColumn.getName());
-//      }
-
-      for (int i = 0; i < requestFields.length; i++) {
-        Column column = mapping.getColumn(requestFields[i]);
-
-        select.addToSelectList(column.getName());
-      }
-
-      where.equals(primaryColumn.getName(), "?");
-      statement = getConnection().prepareStatement(select.toString());
+      statement = getConnection().prepareStatement(getSelectSql(requestFields));
 
       setObject(statement, 1, key, keySqlType, primaryColumn);
 
@@ -374,39 +442,225 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     }
   }
 
+  /**
+   * Fetches the rows with "SELECT ... WHERE pk IN (?, ...)" statements,
+   * each covering at most getAllBatchSize keys.
+   */
+  @Override
+  public Map<K, T> getAll(Collection<K> keys, String[] requestFields)
+    throws IOException {
+    requestFields = getFieldsToQuery(requestFields);
+
+    List<K> keyList = new ArrayList<K>(keys);
+    Map<K, T> found = new HashMap<K, T>();
+
+    for(int start=0; start < keyList.size(); start += getAllBatchSize) {
+      List<K> batch = keyList.subList(start
+          , Math.min(keyList.size(), start + getAllBatchSize));
+
+      ResultSet resultSet = null;
+      PreparedStatement statement = null;
+      try {
+        Where where = new Where();
+        SelectStatement select = new SelectStatement(mapping.getTableName());
+        select.setWhere(where);
+
+        select.addToSelectList(primaryColumn.getName());
+        for (int i = 0; i < requestFields.length; i++) {
+          Column column = mapping.getColumn(requestFields[i]);
+
+          select.addToSelectList(column.getName());
+        }
+
+        String[] params = new String[batch.size()];
+        Arrays.fill(params, "?");
+        where.in(primaryColumn.getName(), params);
+
+        statement = getConnection().prepareStatement(select.toString());
+
+        int offset = 1;
+        for(K key : batch) {
+          setObject(statement, offset++, key, keySqlType, primaryColumn);
+        }
+
+        resultSet = statement.executeQuery();
+
+        while(resultSet.next()) {
+          K key = readPrimaryKey(resultSet);
+          found.put(key, readObject(resultSet, newPersistent(), requestFields));
+        }
+      } catch (SQLException ex) {
+        throw new IOException(ex);
+      } finally {
+        SqlUtils.close(resultSet);
+        SqlUtils.close(statement);
+      }
+    }
+
+    //return the objects in the order of the keys
+    Map<K, T> results = new LinkedHashMap<K, T>();
+    for(K key : keys) {
+      T obj = found.get(key);
+      if(obj != null) {
+        results.put(key, obj);
+      }
+    }
+    return results;
+  }
+
   @Override
   public Result<K, T> execute(Query<K, T> query) throws IOException {
     query.setFields(getFieldsToQuery(query.getFields()));
-    String[] requestFields = query.getFields();
 
     ResultSet resultSet = null;
     PreparedStatement statement = null;
+    //compiled queries reuse their statement between executions
+    boolean reuseStatement = query instanceof SqlQuery
+      && ((SqlQuery<K, T>) query).isCompiled();
     try {
-      Where where = constructWhereClause(query);
-      SelectStatement select = new SelectStatement(mapping.getTableName());
-      select.setWhere(where);
+      String sql = getSelectSql(query);
+      if (reuseStatement) {
+        SqlQuery<K, T> sqlQuery = (SqlQuery<K, T>) query;
+        statement = sqlQuery.getStatement(sql);
+        if (statement == null) {
+          statement = getConnection().prepareStatement(sql);
+          sqlQuery.setStatement(sql, statement);
+        } else {
+          statement.clearParameters();
+        }
+      } else {
+        statement = getConnection().prepareStatement(sql);
+      }
 
-      select.addToSelectList(primaryColumn.getName());
-      for (int i = 0; i < requestFields.length; i++) {
-        Column column = mapping.getColumn(requestFields[i]);
+      setParametersForPreparedStatement(statement, query);
 
-        select.addToSelectList(column.getName());
-      }
+      resultSet = statement.executeQuery();
 
-      if(query.getLimit() > 0) {
-        select.setLimit(query.getLimit());
-      }
+      SqlResult<K, T> result = new SqlResult<K, T>(this, query, resultSet
+          , reuseStatement ? null : statement);
+      //the filter is evaluated by the database
+      result.setFilter(null);
+      return result;
+    } catch (SQLException ex) {
+      throw new IOException(ex);
+    }
+  }
 
-      statement = getConnection().prepareStatement(select.toString());
+  /**
+   * Computes the aggregate with a SELECT COUNT(*), MIN, MAX or SUM
+   * statement. Queries with limits are aggregated by iterating over the
+   * keys, since the LIMIT applies to the aggregated row.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object aggregate(Query<K, T> query, Aggregation aggregation)
+  throws IOException {
+    if (query.getLimit() > 0) {
+      return super.aggregate(query, aggregation);
+    }
+    Type type = null;
+    SelectStatement select = new SelectStatement(mapping.getTableName());
+    select.setWhere(constructWhereClause(query));
+    switch (aggregation.getFunction()) {
+      case COUNT:
+        select.addToSelectList("COUNT(*)");
+        break;
+      case MIN_KEY:
+        select.addToSelectList("MIN(" + primaryColumn.getName() + ")");
+        break;
+      case MAX_KEY:
+        select.addToSelectList("MAX(" + primaryColumn.getName() + ")");
+        break;
+      default:
+        //the average is computed from the sum and count, since AVG returns
+        //an integer for integral columns in some databases
+        type = getNumericFieldType(aggregation.getField());
+        String columnName = getColumnName(aggregation.getField());
+        select.addToSelectList("SUM(" + columnName + ")");
+        select.addToSelectList("COUNT(" + columnName + ")");
+        break;
+    }
 
+    ResultSet resultSet = null;
+    PreparedStatement statement = null;
+    try {
+      statement = getConnection().prepareStatement(select.toString());
       setParametersForPreparedStatement(statement, query);
-
       resultSet = statement.executeQuery();
-
-      return new SqlResult<K, T>(this, query, resultSet, statement);
+      resultSet.next();
+
+      switch (aggregation.getFunction()) {
+        case COUNT:
+          return resultSet.getLong(1);
+        case MIN_KEY:
+        case MAX_KEY:
+          return (K) resultSet.getObject(1);
+        default:
+          long count = resultSet.getLong(2);
+          if (count == 0) {
+            return null;
+          }
+          boolean integral = type == Type.INT || type == Type.LONG;
+          if (aggregation.getFunction() == Aggregation.Function.SUM) {
+            return integral ? (Object) resultSet.getLong(1)
+                : (Object) resultSet.getDouble(1);
+          }
+          return (integral ? resultSet.getLong(1) : resultSet.getDouble(1))
+            / (double) count;
+      }
     } catch (SQLException ex) {
       throw new IOException(ex);
+    } finally {
+      SqlUtils.close(resultSet);
+      SqlUtils.close(statement);
+    }
+  }
+
+  @Override
+  public void compile(Query<K, T> query) throws IOException {
+    super.compile(query);
+    query.setFields(getFieldsToQuery(query.getFields()));
+    getSelectSql(query);
+  }
+
+  /** Returns the SELECT statement for the query, from the cache if possible */
+  private String getSelectSql(Query<K, T> query) {
+    QueryShape shape = new QueryShape(query);
+    String sql = selectCache.get(shape);
+    if (sql == null) {
+      SelectStatement select = new SelectStatement(mapping.getTableName());
+      select.setWhere(constructWhereClause(query));
+
+      select.addToSelectList(primaryColumn.getName());
+      for (String field : query.getFields()) {
+        select.addToSelectList(mapping.getColumn(field).getName());
+      }
+
+      if(query.getLimit() > 0) {
+        select.setLimit(query.getLimit());
+      }
+      sql = select.toString();
+      selectCache.put(shape, sql);
     }
+    return sql;
+  }
+
+  /** Returns the SELECT statement to get the fields of a row by its key */
+  private String getSelectSql(String[] fields) {
+    QueryShape shape = new QueryShape(fields);
+    String sql = getSelectCache.get(shape);
+    if (sql == null) {
+      Where where = new Where();
+      SelectStatement select = new SelectStatement(mapping.getTableName());
+      select.setWhere(where);
+      for (String field : fields) {
+        select.addToSelectList(mapping.getColumn(field).getName());
+      }
+      where.equals(primaryColumn.getName(), "?");
+      sql = select.toString();
+      getSelectCache.put(shape, sql);
+    }
+    return sql;
   }
 
   private Where constructWhereClause(Query<K,T> query) {
@@ -421,9 +675,60 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
         where.lessThanEq(primaryColumn.getName(), "?");
       }
     }
+    if (mapping.getTimestampColumn() != null
+        && ResultBase.hasTimeRange(query)) {
+      //both bounds are always set, so that the SQL only depends on the shape
+      where.greaterThanEq(mapping.getTimestampColumn().getName(), "?");
+      where.lessThan(mapping.getTimestampColumn().getName(), "?");
+    }
+    if (query.getFilter() != null) {
+      where.addPart(constructFilterCondition(query.getFilter()));
+    }
     return where;
   }
 
+  /** Returns the SQL condition for the filter, with parameters for the values */
+  private String constructFilterCondition(Filter filter) {
+    if (filter instanceof FieldValueFilter) {
+      FieldValueFilter f = (FieldValueFilter) filter;
+      return getColumnName(f.getField()) + " " + f.getOp().getSymbol() + " ?";
+    } else if (filter instanceof InFilter) {
+      InFilter f = (InFilter) filter;
+      if (f.getValues().length == 0) {
+        //an empty IN list is not valid SQL, and matches nothing
+        return "1=0";
+      }
+      String[] params = new String[f.getValues().length];
+      Arrays.fill(params, "?");
+      Where in = new Where();
+      in.in(getColumnName(f.getField()), params);
+      return in.toString();
+    } else if (filter instanceof IsNullFilter) {
+      return getColumnName(((IsNullFilter) filter).getField()) + " IS NULL";
+    } else if (filter instanceof NotFilter) {
+      return "NOT (" + constructFilterCondition(((NotFilter) filter).getFilter()) + ")";
+    } else if (filter instanceof FilterList) {
+      FilterList list = (FilterList) filter;
+      StringBuilder builder = new StringBuilder("(");
+      for (int i = 0; i < list.getFilters().size(); i++) {
+        if (i > 0) {
+          builder.append(" ").append(list.getOperator()).append(" ");
+        }
+        builder.append(constructFilterCondition(list.getFilters().get(i)));
+      }
+      return builder.append(")").toString();
+    }
+    throw new IllegalArgumentException("Filter is not supported: " + filter);
+  }
+
+  private String getColumnName(String field) {
+    Column column = mapping.getColumn(field);
+    if (column == null) {
+      throw new IllegalArgumentException("Field is not mapped: " + field);
+    }
+    return column.getName();
+  }
+
   private void setParametersForPreparedStatement(PreparedStatement statement
       , Query<K,T> query) throws SQLException, IOException {
     int offset = 1;
@@ -437,6 +742,78 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
         setObject(statement, offset++, query.getEndKey(), keySqlType, primaryColumn);
       }
     }
+    if(mapping.getTimestampColumn() != null && ResultBase.hasTimeRange(query)) {
+      long startTime = query.getStartTime();
+      long endTime = query.getEndTime();
+      if(startTime > 0 && startTime == endTime) {
+        endTime = startTime + 1;
+      }
+      statement.setLong(offset++, startTime > 0 ? startTime : 0L);
+      statement.setLong(offset++, endTime > 0 ? endTime : Long.MAX_VALUE);
+    }
+    if(query.getFilter() != null) {
+      setFilterParameters(statement, offset
+          , Filters.bind(query.getFilter(), query));
+    }
+  }
+
+  /**
+   * Binds the values of the filter in the order of
+   * {@link #constructFilterCondition(Filter)}.
+   * @return the next parameter index
+   */
+  private int setFilterParameters(PreparedStatement statement, int offset
+      , Filter filter) throws SQLException, IOException {
+    if (filter instanceof FieldValueFilter) {
+      FieldValueFilter f = (FieldValueFilter) filter;
+      setFilterValue(statement, offset++, f.getField(), f.getValue());
+    } else if (filter instanceof InFilter) {
+      InFilter f = (InFilter) filter;
+      for (Object value : f.getValues()) {
+        setFilterValue(statement, offset++, f.getField(), value);
+      }
+    } else if (filter instanceof NotFilter) {
+      offset = setFilterParameters(statement, offset, ((NotFilter) filter).getFilter());
+    } else if (filter instanceof FilterList) {
+      for (Filter f : ((FilterList) filter).getFilters()) {
+        offset = setFilterParameters(statement, offset, f);
+      }
+    }
+    return offset;
+  }
+
+  private void setFilterValue(PreparedStatement statement, int index
+      , String field, Object value) throws SQLException, IOException {
+    Schema fieldSchema = fieldMap.get(field).schema();
+    switch(fieldSchema.getType()) {
+      case STRING: case ENUM:
+        statement.setString(index, value.toString());
+        break;
+      case BOOLEAN:
+        statement.setBoolean(index, (Boolean) value);
+        break;
+      case INT:
+        statement.setInt(index, ((Number) value).intValue());
+        break;
+      case LONG:
+        statement.setLong(index, ((Number) value).longValue());
+        break;
+      case FLOAT:
+        statement.setFloat(index, ((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        statement.setDouble(index, ((Number) value).doubleValue());
+        break;
+      case BYTES: case FIXED:
+        ByteBuffer buf = (ByteBuffer) value;
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        setBytes(statement, mapping.getColumn(field), index, bytes);
+        break;
+      default:
+        throw new IOException("Cannot filter on field " + field + " of type "
+            + fieldSchema.getType());
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -444,6 +821,11 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     return (K) resultSet.getObject(primaryColumn.getName());
   }
 
+  /**
+   * Reads the requested fields of the object from the current row. If the
+   * fields are read lazily, the serialized map, array and record fields
+   * are kept as bytes in the object, and deserialized on first access.
+   */
   public T readObject(ResultSet rs, T persistent
       , String[] requestFields) throws SQLException, IOException {
     if(rs == null) {
@@ -462,6 +844,14 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
       if (rs.getObject(columnIndex) == null) {
         continue;
       }
+      if (lazyFields && (type == Type.MAP || type == Type.ARRAY
+          || type == Type.RECORD)) {
+        byte[] bytes = readBytes(rs, columnIndex);
+        if (bytes != null) {
+          persistent.setLazy(field.pos(), bytes, fieldDecoder);
+        }
+        continue;
+      }
       switch(type) {
         case MAP:
           readField(rs, columnIndex, persistent.get(field.pos()), fieldSchema, column);
@@ -512,6 +902,30 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     return persistent;
   }
 
+  /** Reads the bytes of a serialized field, or null if the column is empty */
+  private byte[] readBytes(ResultSet resultSet, int columnIndex)
+    throws SQLException, IOException {
+    switch(JdbcType.get(resultSet.getMetaData().getColumnType(columnIndex))) {
+      case BLOB          : Blob blob = resultSet.getBlob(columnIndex);
+                           return blob == null ? null : IOUtils.readFully(blob.getBinaryStream());
+      case BINARY        :
+      case VARBINARY     : return resultSet.getBytes(columnIndex);
+      case LONGVARBINARY : return IOUtils.readFully(resultSet.getBinaryStream(columnIndex));
+    }
+    return null;
+  }
+
+  /** Deserializes the fields of the objects read lazily */
+  private final FieldDecoder fieldDecoder = new FieldDecoder() {
+    @Override
+    public Object decode(Persistent persistent, int fieldIndex, Object raw)
+    throws IOException {
+      Schema fieldSchema = persistent.getSchema().getFields().get(fieldIndex).schema();
+      return IOUtils.deserialize((byte[]) raw, datumReader, fieldSchema
+          , persistent.get(fieldIndex));
+    }
+  };
+
   protected byte[] getBytes(ResultSet resultSet, int columnIndex, Schema schema, Column column)
     throws SQLException, IOException {
     switch(column.getJdbcType()) {
@@ -593,11 +1007,22 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
         return;
       }
 
-      //jdbc already should cache the ps
-      PreparedStatement insert = insertStatement.toStatement(connection);
-      insert.addBatch();
+      if (mapping.getTimestampColumn() != null) {
+        insertStatement.setObject(System.currentTimeMillis()
+            , TIMESTAMP_SCHEMA, mapping.getTimestampColumn());
+      }
+
+      //statements with the same columns share a single batched
+      //PreparedStatement until the next flush
+      String sql = insertStatement.toSql();
       synchronized (writeCache) {
-        writeCache.add(insert);
+        PreparedStatement insert = writeCache.get(sql);
+        if (insert == null) {
+          insert = connection.prepareStatement(sql);
+          writeCache.put(sql, insert);
+        }
+        insertStatement.setParameters(insert);
+        insert.addBatch();
       }
 
     }catch (Exception ex) {
@@ -784,6 +1209,9 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
     for(Map.Entry<String, Column> entry : mapping.getFields().entrySet()) {
       addColumn(table, entry.getValue());
     }
+    if(mapping.getTimestampColumn() != null) {
+      addColumn(table, mapping.getTimestampColumn());
+    }
 
     return table;
   }
@@ -849,6 +1277,26 @@ public class SqlStore<K, T extends Persistent> extends DataStoreBase<K, T> {
             addField(mapping, fieldName, field);
           }
 
+          List<Element> indexes = classElement.getChildren("index");
+
+          for(Element index:indexes) {
+            String fieldName = index.getAttributeValue("field");
+            Column column = mapping.getColumn(fieldName);
+            if(column == null) {
+              throw new IOException("Index on unmapped field: " + fieldName);
+            }
+            String indexName = index.getAttributeValue("name");
+            if(indexName == null) {
+              indexName = tableName + "_" + column.getName() + "_idx";
+            }
+            mapping.addIndex(getIdentifier(indexName), fieldName);
+          }
+
+          Element timestampEl = classElement.getChild("timestamp");
+          if(timestampEl != null) {
+            mapping.setTimestampColumn(timestampEl.getAttributeValue("column"));
+          }
+
           break;
         }
       }
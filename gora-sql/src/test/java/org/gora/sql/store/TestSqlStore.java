@@ -2,13 +2,28 @@
 package org.gora.sql.store;
 
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import junit.framework.Assert;
 
 import org.gora.examples.generated.Employee;
 import org.gora.examples.generated.WebPage;
+import org.gora.filter.Filters;
+import org.gora.query.Query;
+import org.gora.query.Result;
 import org.gora.sql.GoraSqlTestDriver;
+import org.gora.sql.query.SqlQuery;
 import org.gora.store.DataStore;
 import org.gora.store.DataStoreFactory;
 import org.gora.store.DataStoreTestBase;
+import org.gora.store.DataStoreTestUtil;
+import org.junit.Test;
 
 /**
  * Test case for {@link SqlStore}
@@ -36,6 +51,113 @@ public class TestSqlStore extends DataStoreTestBase {
     return store;
   }
 
+  @Test
+  public void testIndexes() throws Exception {
+    //the indexes of the mapping are created with the tables
+    Connection connection = DriverManager.getConnection(DataStoreFactory.findProperty(
+        DataStoreFactory.properties, webPageStore, "jdbc.url", null));
+    try {
+      Assert.assertTrue(getIndexNames(connection, "WEBPAGE").contains("WEBPAGE_URL_IDX"));
+      Assert.assertTrue(getIndexNames(connection, "EMPLOYEE").contains("EMPLOYEE_SSN_IDX"));
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void testGetWebPageLazy() throws Exception {
+    Properties properties = new Properties();
+    properties.putAll(DataStoreFactory.properties);
+    properties.setProperty("gora.sqlstore." + DataStoreFactory.LAZY_FIELDS, "true");
+    SqlStore<String, WebPage> store = new SqlStore<String, WebPage>();
+    store.initialize(String.class, WebPage.class, properties);
+    try {
+      DataStoreTestUtil.testGetWebPageLazy(store);
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testCompiledQueryReusesStatement() throws Exception {
+    for(int i=0; i<10; i++) {
+      Employee employee = DataStoreTestUtil.createEmployee(employeeStore);
+      employee.setSalary(i * 100);
+      employeeStore.put("key" + i, employee);
+    }
+    employeeStore.flush();
+
+    SqlQuery<String, Employee> query =
+      (SqlQuery<String, Employee>) employeeStore.newQuery();
+    query.setFilter(Filters.greaterThanEq("salary", Filters.param("min")));
+    query.setParam("min", 500);
+    query.compile();
+    Assert.assertEquals(5, count(query));
+    PreparedStatement statement = query.getStatement();
+    Assert.assertNotNull(statement);
+
+    //the parameters are rebound to the same statement
+    query.setParam("min", 800);
+    Assert.assertEquals(2, count(query));
+    Assert.assertTrue(query.isCompiled());
+    Assert.assertSame(statement, query.getStatement());
+    query.close();
+  }
+
+  @Test
+  public void testCompiledQueryReusesStatementForKeys() throws Exception {
+    for(int i=0; i<10; i++) {
+      employeeStore.put("key" + i, DataStoreTestUtil.createEmployee(employeeStore));
+    }
+    employeeStore.flush();
+
+    SqlQuery<String, Employee> query =
+      (SqlQuery<String, Employee>) employeeStore.newQuery();
+    query.setKeyRange("key1", "key3");
+    query.compile();
+    Assert.assertEquals(3, count(query));
+    PreparedStatement statement = query.getStatement();
+    Assert.assertNotNull(statement);
+
+    //the new bounds are rebound to the same statement
+    query.setKeyRange("key4", "key6");
+    Assert.assertTrue(query.isCompiled());
+    Assert.assertEquals(3, count(query));
+    Assert.assertSame(statement, query.getStatement());
+    query.setStartKey("key5");
+    query.setEndKey("key9");
+    Assert.assertTrue(query.isCompiled());
+    Assert.assertEquals(5, count(query));
+    Assert.assertSame(statement, query.getStatement());
+
+    //dropping a bound changes the statement
+    query.setEndKey(null);
+    Assert.assertFalse(query.isCompiled());
+    query.close();
+  }
+
+  private static long count(Query<String, Employee> query) throws IOException {
+    Result<String, Employee> result = query.execute();
+    long count = 0;
+    while(result.next()) {
+      count++;
+    }
+    result.close();
+    return count;
+  }
+
+  private static Set<String> getIndexNames(Connection connection, String table)
+  throws Exception {
+    Set<String> names = new HashSet<String>();
+    ResultSet resultSet = connection.getMetaData().getIndexInfo(null, null, table
+        , false, true);
+    while(resultSet.next()) {
+      names.add(resultSet.getString("INDEX_NAME"));
+    }
+    resultSet.close();
+    return names;
+  }
+
   //@Override
   public void testDeleteByQueryFields() {
     //TODO: implement delete fields in SqlStore